@@ -0,0 +1,65 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.service.DbService;
+import com.gralll.sam.service.PropertyStorage;
+import com.gralll.sam.stub.InMemoryDynamoDBClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A ContactUsTable write through DbService against the Document API path it replaced,
+ * a table lookup and an Item conversion per call.
+ * Average item size and write units per put are printed after each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DbServiceBenchmark {
+
+    private final InMemoryDynamoDBClient dynamoDBClient = new InMemoryDynamoDBClient();
+    private final DynamoDB dynamoDB = new DynamoDB(dynamoDBClient);
+    private final DbService dbService = new DbService(dynamoDBClient, new PropertyStorage());
+    private final ContactUsRequest contactUsRequest = new ContactUsRequest(
+            "Question", "Alex", "+79999999999", "alex@gmail.com", "How much does it cost?");
+
+    @Benchmark
+    public void putItem() {
+        dbService.putContactUsRequest("f81d4fae-7dec-11d0-a765-00a0c91e6bf6", contactUsRequest);
+    }
+
+    @Benchmark
+    public void documentApiPutItem() {
+        dynamoDB.getTable("ContactUsTable").putItem(new Item()
+                .withPrimaryKey("Id", "f81d4fae-7dec-11d0-a765-00a0c91e6bf6")
+                .withString("Subject", contactUsRequest.getSubject())
+                .withString("Username", contactUsRequest.getUsername())
+                .withString("Phone", contactUsRequest.getPhone())
+                .withString("Email", contactUsRequest.getEmail())
+                .withString("Question", contactUsRequest.getQuestion()));
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        long writes = Math.max(1, dynamoDBClient.getWrites());
+        System.out.printf("%n%.1f bytes, %.2f write units per item%n",
+                (double) dynamoDBClient.getItemBytes() / writes, (double) dynamoDBClient.getWriteUnits() / writes);
+        dynamoDBClient.clear();
+    }
+}
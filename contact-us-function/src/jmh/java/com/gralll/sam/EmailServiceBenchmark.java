@@ -0,0 +1,43 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.simpleemail.model.SendEmailRequest;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.service.EmailService;
+import com.gralll.sam.stub.InMemorySesClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Template fill and SendEmailRequest construction, SES call itself is in-memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailServiceBenchmark {
+
+    private final EmailService emailService = new EmailService(new InMemorySesClient());
+    private final ContactUsRequest contactUsRequest = new ContactUsRequest(
+            "Question", "Alex", "+79999999999", "alex@gmail.com", "How much does it cost?");
+
+    @Benchmark
+    public SendEmailRequest buildSendEmailRequest() {
+        return emailService.buildSendEmailRequest("from@gmail.com", "to@gmail.com", contactUsRequest);
+    }
+
+    @Benchmark
+    public String sendEmail() {
+        return emailService.sendEmail("from@gmail.com", "to@gmail.com", contactUsRequest);
+    }
+}
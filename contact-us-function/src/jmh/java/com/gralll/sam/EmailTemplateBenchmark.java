@@ -0,0 +1,89 @@
+package com.gralll.sam;
+
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.service.EmailService;
+import com.gralll.sam.template.Template;
+import com.gralll.sam.template.TemplateLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compiled template rendering vs. the former classpath read + String.format per email.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailTemplateBenchmark {
+
+    private static final String LEGACY_TEMPLATE =
+            "<html>\n"
+                    + "    <head></head>\n"
+                    + "    <body>\n"
+                    + "        <h1>Contact Us form from 'YOUR_SITE'</h1>\n"
+                    + "        <p>User name: %s</p>\n"
+                    + "        <p>User email: %s</p>\n"
+                    + "        <p>User phone: %s</p>\n"
+                    + "        <cite>Question: %s</cite>\n"
+                    + "    </body>\n"
+                    + "</html>";
+
+    private ContactUsRequest contactUsRequest;
+    private Template<ContactUsRequest> template;
+
+    @Setup
+    public void setUp() {
+        contactUsRequest = new ContactUsRequest(
+                "Question", "Alex", "+79999999999", "alex@gmail.com",
+                "How much does it cost to deliver <b>100</b> items & more?");
+        template = TemplateLoader.load(EmailService.EMAIL_TEMPLATE, EmailService.EMAIL_TEMPLATE_BINDINGS);
+    }
+
+    @Benchmark
+    public String compiledTemplate() {
+        return template.render(contactUsRequest);
+    }
+
+    @Benchmark
+    public String legacyReadAndFormat(Blackhole blackhole) throws IOException {
+        // Resource placeholders have changed, so the read result is only consumed
+        String source = new String(
+                Objects.requireNonNull(getClass().getClassLoader()
+                                                 .getResourceAsStream(EmailService.EMAIL_TEMPLATE)).readAllBytes(),
+                UTF_8);
+        blackhole.consume(source);
+        return String.format(
+                LEGACY_TEMPLATE,
+                contactUsRequest.getUsername(),
+                contactUsRequest.getEmail(),
+                contactUsRequest.getPhone(),
+                contactUsRequest.getQuestion());
+    }
+
+    @Benchmark
+    public String legacyFormatOnly() {
+        return String.format(
+                LEGACY_TEMPLATE,
+                contactUsRequest.getUsername(),
+                contactUsRequest.getEmail(),
+                contactUsRequest.getPhone(),
+                contactUsRequest.getQuestion());
+    }
+}
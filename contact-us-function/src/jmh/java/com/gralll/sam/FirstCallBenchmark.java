@@ -0,0 +1,56 @@
+package com.gralll.sam;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.service.RequestService;
+import com.gralll.sam.service.ResponseService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The first request body parse and response build of a fresh JVM, as on a cold container:
+ * every fork measures a single call, with Jackson databind and with hand-written codecs.
+ * Services are built beforehand, as they are at init phase.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class FirstCallBenchmark {
+
+    private static final String BODY = "{\"subject\":\"Question\",\"username\":\"Alex\",\"phone\":\"+79999999999\","
+            + "\"email\":\"alex@gmail.com\",\"question\":\"How much does it cost?\"}";
+
+    @Param({"false", "true"})
+    private boolean jsonCodecs;
+
+    private RequestService requestService;
+    private ResponseService responseService;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        requestService = new RequestService(objectMapper, jsonCodecs);
+        responseService = new ResponseService(objectMapper, jsonCodecs);
+    }
+
+    @Benchmark
+    public ContactUsProxyResponse firstCall() {
+        ContactUsRequest request = requestService.parseContactUsRequest(BODY);
+        return responseService.buildResponse(200, "Message " + request.getEmail() + " has been sent successfully.");
+    }
+}
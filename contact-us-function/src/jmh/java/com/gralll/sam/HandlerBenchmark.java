@@ -0,0 +1,77 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.service.AwsClientFactory;
+import com.gralll.sam.stub.InMemoryDynamoDBClient;
+import com.gralll.sam.stub.InMemorySesClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end App.handleRequest with in-memory SES and DynamoDB, i.e. the cost of our own code.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlerBenchmark {
+
+    private App app;
+    private InMemoryDynamoDBClient dynamoDBClient;
+    private APIGatewayProxyRequestEvent request;
+    private APIGatewayProxyRequestEvent duplicateRequest;
+    private long idempotencyKey;
+
+    @Setup
+    public void setUp() throws IOException {
+        dynamoDBClient = new InMemoryDynamoDBClient();
+        app = new App(new AwsClientFactory(new InMemorySesClient(), dynamoDBClient, null));
+        ObjectMapper objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        request = objectMapper.readValue(
+                getClass().getClassLoader().getResourceAsStream("contact_us_request.json"),
+                APIGatewayProxyRequestEvent.class);
+        request.setHeaders(new HashMap<>());
+        duplicateRequest = objectMapper.readValue(
+                getClass().getClassLoader().getResourceAsStream("contact_us_request.json"),
+                APIGatewayProxyRequestEvent.class);
+        duplicateRequest.setHeaders(new HashMap<>());
+        duplicateRequest.getHeaders().put("Idempotency-Key", "duplicate");
+        app.handleRequest(duplicateRequest, null);
+    }
+
+    /**
+     * A fresh Idempotency-Key per call, so every request is really sent and persisted.
+     */
+    @Benchmark
+    public ContactUsProxyResponse handleRequest() {
+        request.getHeaders().put("Idempotency-Key", Long.toString(idempotencyKey++));
+        ContactUsProxyResponse response = app.handleRequest(request, null);
+        dynamoDBClient.clear();
+        return response;
+    }
+
+    /**
+     * A retried request answered from the idempotency cache.
+     */
+    @Benchmark
+    public ContactUsProxyResponse handleDuplicate() {
+        return app.handleRequest(duplicateRequest, null);
+    }
+}
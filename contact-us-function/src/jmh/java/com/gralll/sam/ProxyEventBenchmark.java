@@ -0,0 +1,63 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.model.ProxyEvent;
+import com.gralll.sam.service.ProxyEventReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event decoding of StreamApp vs. APIGatewayProxyRequestEvent POJO binding of App.
+ * Allocated bytes per request are reported as gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProxyEventBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectReader pojoReader = objectMapper.readerFor(APIGatewayProxyRequestEvent.class)
+                                                        .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private final ProxyEventReader eventReader = new ProxyEventReader(new JsonFactory());
+
+    private byte[] event;
+
+    @Setup
+    public void setUp() throws IOException {
+        event = Objects.requireNonNull(
+                getClass().getClassLoader().getResourceAsStream("contact_us_request.json")).readAllBytes();
+    }
+
+    @Benchmark
+    public ContactUsRequest pojoBinding() throws IOException {
+        APIGatewayProxyRequestEvent request = pojoReader.readValue(event);
+        return objectMapper.readValue(request.getBody(), ContactUsRequest.class);
+    }
+
+    @Benchmark
+    public ContactUsRequest streamingReader() throws IOException {
+        ProxyEvent proxyEvent = eventReader.read(new ByteArrayInputStream(event));
+        return objectMapper.readValue(proxyEvent.getBody(), ContactUsRequest.class);
+    }
+}
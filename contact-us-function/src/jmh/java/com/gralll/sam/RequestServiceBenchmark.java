@@ -0,0 +1,56 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.service.RequestService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestServiceBenchmark {
+
+    @Param({"true", "false"})
+    private boolean jsonCodecs;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private RequestService requestService;
+
+    private APIGatewayProxyRequestEvent request;
+
+    @Setup
+    public void setUp() throws IOException {
+        requestService = new RequestService(objectMapper, jsonCodecs);
+        request = objectMapper.readerFor(APIGatewayProxyRequestEvent.class)
+                              .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                              .readValue(getClass().getClassLoader().getResourceAsStream("contact_us_request.json"));
+    }
+
+    @Benchmark
+    public ContactUsRequest getContactUsRequest() {
+        return requestService.getContactUsRequest(request);
+    }
+
+    @Benchmark
+    public String getAsPrettyString() {
+        return requestService.getAsPrettyString(request);
+    }
+}
@@ -0,0 +1,38 @@
+package com.gralll.sam;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.service.ResponseService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseServiceBenchmark {
+
+    private final ResponseService responseService = new ResponseService(new ObjectMapper());
+
+    @Benchmark
+    public ContactUsProxyResponse successResponse() {
+        return responseService.buildResponse(200,
+                "Message 0102016f0c3c7e1a-c4f5b6a1-e2c4-4b8f-9b2b-6a7e8f6b1c2d-000000 has been sent successfully.");
+    }
+
+    @Benchmark
+    public ContactUsProxyResponse clientErrorResponse() {
+        return responseService.buildResponse(400, "Client error.");
+    }
+}
@@ -0,0 +1,321 @@
+package com.gralll.sam.load;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.gralll.sam.App;
+import com.gralll.sam.metrics.Histogram;
+import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.service.AwsClientFactory;
+import com.gralll.sam.stub.InMemoryDynamoDBClient;
+import com.gralll.sam.stub.InMemorySesClient;
+import com.gralll.sam.stub.LatencyModel;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays API Gateway events against App.handleRequest with in-memory SES and DynamoDB of a given
+ * latency and error rate, to size MemorySize and timeouts of template.yaml from data:
+ * <pre>
+ * ./gradlew loadTest [-Pload.requests=5000] [-Pload.concurrency=4] [-Pload.rate=100] [-Pload.maxHeap=200m]
+ * </pre>
+ * Every worker is a container of its own App, taking one invocation at a time. With a rate, requests arrive
+ * by a Poisson process and response latency counts from the arrival, queueing for a free container included;
+ * without one, workers run back to back. Synthesized requests differ by email, Idempotency-Key and source IP.
+ * <p>
+ * GC pauses and the heap high-water mark are of the whole JVM, so concurrency 1 sizes a single container.
+ */
+public final class LoadTest {
+
+    // Unknown event fields are skipped, as the Lambda runtime does
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99, 0.999};
+    private static final String[] QUANTILE_NAMES = {"p50", "p95", "p99", "p99.9"};
+    // nanoTime may be negative
+    private static final long STOP = Long.MIN_VALUE;
+
+    private final int requests = Integer.getInteger("load.requests", 5000);
+    private final int warmUpRequests = Integer.getInteger("load.warmUp", 1000);
+    private final int concurrency = Integer.getInteger("load.concurrency", 4);
+    private final double rate = Double.parseDouble(System.getProperty("load.rate", "0"));
+    private final LatencyModel sesLatency = latency("ses", "30", "120");
+    private final LatencyModel dbLatency = latency("db", "6", "25");
+    private final List<JsonNode> events = new ArrayList<>();
+
+    private final Histogram responseMicros = new Histogram();
+    private final Histogram serviceMicros = new Histogram();
+    private final Histogram gcPauseMicros = new Histogram();
+    private final LongAdder gcPauseTotalMicros = new LongAdder();
+    private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private volatile boolean recording;
+
+    public static void main(String[] args) throws Exception {
+        LoadTest loadTest = new LoadTest();
+        loadTest.readEvents(System.getProperty("load.events", ""));
+        loadTest.run();
+        // Executors of async submission keep the JVM alive otherwise
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        InMemorySesClient sesClient = new InMemorySesClient(sesLatency);
+        InMemoryDynamoDBClient dynamoDBClient = new InMemoryDynamoDBClient(dbLatency, false);
+        List<App> containers = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            containers.add(new App(new AwsClientFactory(sesClient, dynamoDBClient, null)));
+        }
+        listenToGc();
+
+        // JIT compilation and lazy initialization are not measured
+        runClosedLoop(containers, warmUpRequests);
+        System.gc();
+        resetPeakHeap();
+        statusCodes.clear();
+        long emailsBefore = sesClient.getSent();
+        long writesBefore = dynamoDBClient.getWrites();
+        recording = true;
+
+        long start = System.nanoTime();
+        if (rate > 0) {
+            runOpenLoop(containers, requests);
+        } else {
+            runClosedLoop(containers, requests);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        recording = false;
+
+        report(elapsedNanos, getPeakHeap(), sesClient.getSent() - emailsBefore,
+                dynamoDBClient.getWrites() - writesBefore);
+    }
+
+    private void runClosedLoop(List<App> containers, int count) throws InterruptedException {
+        AtomicInteger remaining = new AtomicInteger(count);
+        List<Thread> workers = new ArrayList<>();
+        for (App app : containers) {
+            workers.add(start(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    invoke(app, nextRequest(), System.nanoTime());
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    private void runOpenLoop(List<App> containers, int count) throws InterruptedException {
+        BlockingQueue<Long> arrivals = new ArrayBlockingQueue<>(count + containers.size());
+        List<Thread> workers = new ArrayList<>();
+        for (App app : containers) {
+            workers.add(start(() -> {
+                try {
+                    for (long arrival = arrivals.take(); arrival != STOP; arrival = arrivals.take()) {
+                        invoke(app, nextRequest(), arrival);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        // Poisson arrivals: exponential gaps of the mean 1 / rate
+        long arrival = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            arrival += (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) / rate * 1e9);
+            long wait = arrival - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            arrivals.put(arrival);
+        }
+        for (int i = 0; i < containers.size(); i++) {
+            arrivals.put(STOP);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    private void invoke(App app, APIGatewayProxyRequestEvent request, long arrivalNanos) {
+        long begin = System.nanoTime();
+        ContactUsProxyResponse response = app.handleRequest(request, null);
+        long end = System.nanoTime();
+        if (recording) {
+            responseMicros.record(TimeUnit.NANOSECONDS.toMicros(end - arrivalNanos));
+            serviceMicros.record(TimeUnit.NANOSECONDS.toMicros(end - begin));
+        }
+        statusCodes.computeIfAbsent(response != null ? response.getStatusCode() : -1, code -> new LongAdder())
+                   .increment();
+    }
+
+    private APIGatewayProxyRequestEvent nextRequest() {
+        int n = sequence.getAndIncrement();
+        ObjectNode event = events.get(n % events.size()).deepCopy();
+        JsonNode body = event.get("body");
+        if (body != null && body.isTextual() && body.asText().contains("\"email\"")) {
+            try {
+                ObjectNode contactUsRequest = (ObjectNode) OBJECT_MAPPER.readTree(body.asText());
+                contactUsRequest.put("email", "load-" + n + "@example.com");
+                event.put("body", OBJECT_MAPPER.writeValueAsString(contactUsRequest));
+            } catch (IOException e) {
+                throw new IllegalStateException("Event body is not a JSON object.", e);
+            }
+        }
+        APIGatewayProxyRequestEvent request = OBJECT_MAPPER.convertValue(event, APIGatewayProxyRequestEvent.class);
+        if (request.getHeaders() == null) {
+            request.setHeaders(new HashMap<>());
+        }
+        request.getHeaders().put("Idempotency-Key", "load-" + n);
+        if (request.getRequestContext() != null && request.getRequestContext().getIdentity() != null) {
+            request.getRequestContext().getIdentity().setSourceIp("10." + (n >> 16 & 255) + "." + (n >> 8 & 255)
+                    + "." + (n & 255));
+        }
+        return request;
+    }
+
+    /**
+     * @param paths comma separated event files, the sample contact_us_request.json if empty
+     */
+    private void readEvents(String paths) throws IOException {
+        if (paths.isEmpty()) {
+            try (InputStream input = LoadTest.class.getClassLoader().getResourceAsStream("contact_us_request.json")) {
+                events.add(OBJECT_MAPPER.readTree(input));
+            }
+            return;
+        }
+        for (String path : paths.split(",")) {
+            events.add(OBJECT_MAPPER.readTree(new File(path.trim())));
+        }
+    }
+
+    private void listenToGc() {
+        NotificationListener listener = (notification, handback) -> {
+            if (recording && GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+                    .equals(notification.getType())) {
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from(
+                        (CompositeData) notification.getUserData());
+                long pauseMicros = TimeUnit.MILLISECONDS.toMicros(info.getGcInfo().getDuration());
+                gcPauseMicros.record(pauseMicros);
+                gcPauseTotalMicros.add(pauseMicros);
+            }
+        };
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+        }
+    }
+
+    private static void resetPeakHeap() {
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    // Pools peak at different moments, so the sum is an upper bound
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private void report(long elapsedNanos, long peakHeapBytes, long emails, long writes) throws IOException {
+        double seconds = elapsedNanos / 1e9;
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("requests", requests);
+        results.put("concurrency", concurrency);
+        results.put("rate", rate);
+        results.put("ses", sesLatency.toString());
+        results.put("dynamodb", dbLatency.toString());
+        results.put("throughput", requests / seconds);
+        results.put("statusCodes", new TreeMap<>(statusCodes));
+        results.put("emails", emails);
+        results.put("writes", writes);
+        results.put("responseMillis", quantiles(responseMicros));
+        results.put("serviceMillis", quantiles(serviceMicros));
+        results.put("gcPauses", gcPauseMicros.getTotalCount());
+        results.put("gcPauseTotalMillis", gcPauseTotalMicros.sum() / 1000.0);
+        results.put("gcPauseMillis", quantiles(gcPauseMicros));
+        results.put("peakHeapMb", peakHeapBytes / 1048576.0);
+        results.put("maxHeapMb", Runtime.getRuntime().maxMemory() / 1048576.0);
+
+        System.out.printf("%d requests, %d containers, %s%n", requests, concurrency,
+                rate > 0 ? String.format("Poisson arrivals at %.1f req/s", rate) : "closed loop");
+        System.out.printf("SES: %s; DynamoDB: %s%n", sesLatency, dbLatency);
+        System.out.printf("Throughput: %.1f req/s over %.1f s, status codes %s, %d emails, %d writes%n",
+                requests / seconds, seconds, results.get("statusCodes"), emails, writes);
+        System.out.printf("%-10s %9s %9s %9s %9s %9s%n", "ms", "p50", "p95", "p99", "p99.9", "max");
+        printQuantiles("response", responseMicros);
+        printQuantiles("service", serviceMicros);
+        printQuantiles("gc pause", gcPauseMicros);
+        System.out.printf("GC: %d pauses, %.1f ms in total; heap high-water %.1f MB of %.1f MB max%n",
+                gcPauseMicros.getTotalCount(), gcPauseTotalMicros.sum() / 1000.0,
+                peakHeapBytes / 1048576.0, Runtime.getRuntime().maxMemory() / 1048576.0);
+
+        String resultsPath = System.getProperty("load.results");
+        if (resultsPath != null) {
+            File resultsFile = new File(resultsPath);
+            resultsFile.getParentFile().mkdirs();
+            OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValue(resultsFile, results);
+        }
+    }
+
+    private static Map<String, Double> quantiles(Histogram histogram) {
+        Map<String, Double> quantiles = new LinkedHashMap<>();
+        for (int i = 0; i < QUANTILES.length; i++) {
+            quantiles.put(QUANTILE_NAMES[i], histogram.getValueAtQuantile(QUANTILES[i]) / 1000.0);
+        }
+        quantiles.put("max", histogram.getMax() / 1000.0);
+        return quantiles;
+    }
+
+    private static void printQuantiles(String name, Histogram histogram) {
+        StringBuilder line = new StringBuilder(String.format("%-10s", name));
+        Iterator<Double> values = quantiles(histogram).values().iterator();
+        while (values.hasNext()) {
+            line.append(String.format(" %9.2f", values.next()));
+        }
+        System.out.println(line);
+    }
+
+    private static LatencyModel latency(String service, String medianMillis, String p99Millis) {
+        return new LatencyModel(
+                Double.parseDouble(System.getProperty("load." + service + "MedianMs", medianMillis)),
+                Double.parseDouble(System.getProperty("load." + service + "P99Ms", p99Millis)),
+                Double.parseDouble(System.getProperty("load." + service + "ErrorRate", "0")));
+    }
+
+    private static Thread start(Runnable worker) {
+        Thread thread = new Thread(worker, "load-worker");
+        thread.start();
+        return thread;
+    }
+}
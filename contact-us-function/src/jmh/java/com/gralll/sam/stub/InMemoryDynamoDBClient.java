@@ -0,0 +1,140 @@
+package com.gralll.sam.stub;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.TableStatus;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DynamoDB stand-in keeping items by table and "Id" attribute in memory.
+ * Updates are accepted but not applied, only writes are of interest.
+ * <p>
+ * Write capacity is accounted the way DynamoDB does it: one unit per started KB
+ * of an item, attribute names included. Calls may be given a {@link LatencyModel}.
+ */
+public class InMemoryDynamoDBClient extends AbstractAmazonDynamoDB {
+
+    private final Map<String, Map<String, AttributeValue>> items = new ConcurrentHashMap<>();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder writeUnits = new LongAdder();
+    private final LongAdder itemBytes = new LongAdder();
+    private final LatencyModel latency;
+    private final boolean keepItems;
+
+    public InMemoryDynamoDBClient() {
+        this(LatencyModel.NONE, true);
+    }
+
+    /**
+     * @param keepItems false to only account writes, so long runs do not fill the heap
+     */
+    public InMemoryDynamoDBClient(LatencyModel latency, boolean keepItems) {
+        this.latency = latency;
+        this.keepItems = keepItems;
+    }
+
+    @Override
+    public PutItemResult putItem(PutItemRequest request) {
+        latency.call("dynamodb");
+        double units = put(request.getTableName(), request.getItem());
+        PutItemResult result = new PutItemResult();
+        if (request.getReturnConsumedCapacity() != null
+                && !ReturnConsumedCapacity.NONE.toString().equals(request.getReturnConsumedCapacity())) {
+            result.setConsumedCapacity(new ConsumedCapacity()
+                    .withTableName(request.getTableName())
+                    .withCapacityUnits(units));
+        }
+        return result;
+    }
+
+    @Override
+    public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+        latency.call("dynamodb");
+        request.getRequestItems().forEach((table, writeRequests) -> writeRequests.forEach(
+                writeRequest -> put(table, writeRequest.getPutRequest().getItem())));
+        return new BatchWriteItemResult().withUnprocessedItems(Collections.emptyMap());
+    }
+
+    @Override
+    public UpdateItemResult updateItem(UpdateItemRequest request) {
+        latency.call("dynamodb");
+        return new UpdateItemResult();
+    }
+
+    @Override
+    public DescribeTableResult describeTable(DescribeTableRequest request) {
+        return new DescribeTableResult().withTable(new TableDescription()
+                .withTableName(request.getTableName())
+                .withTableStatus(TableStatus.ACTIVE));
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    public long getWriteUnits() {
+        return writeUnits.sum();
+    }
+
+    public long getItemBytes() {
+        return itemBytes.sum();
+    }
+
+    public void clear() {
+        items.clear();
+        writes.reset();
+        writeUnits.reset();
+        itemBytes.reset();
+    }
+
+    private double put(String table, Map<String, AttributeValue> item) {
+        if (keepItems) {
+            items.put(table + "/" + item.get("Id").getS(), item);
+        }
+        int size = sizeOf(item);
+        int units = (size + 1023) / 1024;
+        writes.increment();
+        writeUnits.add(units);
+        itemBytes.add(size);
+        return units;
+    }
+
+    private static int sizeOf(Map<String, AttributeValue> item) {
+        int size = 0;
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            size += utf8Length(attribute.getKey());
+            AttributeValue value = attribute.getValue();
+            if (value.getS() != null) {
+                size += utf8Length(value.getS());
+            } else if (value.getN() != null) {
+                // Numbers are stored as 2 digits per byte plus a byte
+                size += (value.getN().length() + 1) / 2 + 1;
+            }
+        }
+        return size;
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
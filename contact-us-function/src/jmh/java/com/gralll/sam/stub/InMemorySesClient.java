@@ -0,0 +1,49 @@
+package com.gralll.sam.stub;
+
+import com.amazonaws.services.simpleemail.AbstractAmazonSimpleEmailService;
+import com.amazonaws.services.simpleemail.model.GetSendQuotaRequest;
+import com.amazonaws.services.simpleemail.model.GetSendQuotaResult;
+import com.amazonaws.services.simpleemail.model.SendEmailRequest;
+import com.amazonaws.services.simpleemail.model.SendEmailResult;
+import com.amazonaws.services.simpleemail.model.SendRawEmailRequest;
+import com.amazonaws.services.simpleemail.model.SendRawEmailResult;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SES stand-in which accepts every email without a network call, optionally after a {@link LatencyModel}.
+ */
+public class InMemorySesClient extends AbstractAmazonSimpleEmailService {
+
+    private final AtomicLong sent = new AtomicLong();
+    private final LatencyModel latency;
+
+    public InMemorySesClient() {
+        this(LatencyModel.NONE);
+    }
+
+    public InMemorySesClient(LatencyModel latency) {
+        this.latency = latency;
+    }
+
+    @Override
+    public SendEmailResult sendEmail(SendEmailRequest request) {
+        latency.call("ses");
+        return new SendEmailResult().withMessageId("in-memory-" + sent.incrementAndGet());
+    }
+
+    @Override
+    public SendRawEmailResult sendRawEmail(SendRawEmailRequest request) {
+        latency.call("ses");
+        return new SendRawEmailResult().withMessageId("in-memory-" + sent.incrementAndGet());
+    }
+
+    @Override
+    public GetSendQuotaResult getSendQuota(GetSendQuotaRequest request) {
+        return new GetSendQuotaResult().withMax24HourSend(200.0).withMaxSendRate(1.0).withSentLast24Hours(0.0);
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+}
@@ -0,0 +1,68 @@
+package com.gralll.sam.stub;
+
+import com.amazonaws.AmazonServiceException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and errors of a stubbed AWS call: log-normal latency given by its median and p99,
+ * and a share of calls failing with 503, the way a real dependency has a long tail.
+ */
+public final class LatencyModel {
+
+    public static final LatencyModel NONE = new LatencyModel(0, 0, 0);
+
+    // Standard normal quantile of 0.99
+    private static final double Z_99 = 2.326;
+
+    private final double medianMillis;
+    private final double sigma;
+    private final double errorRate;
+
+    /**
+     * @param medianMillis 0 for no latency
+     * @param p99Millis    at least the median
+     * @param errorRate    share of calls from 0 to 1
+     */
+    public LatencyModel(double medianMillis, double p99Millis, double errorRate) {
+        this.medianMillis = medianMillis;
+        this.sigma = medianMillis > 0 ? Math.log(Math.max(p99Millis, medianMillis) / medianMillis) / Z_99 : 0;
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Waits for a sampled latency, then fails the call by the error rate.
+     */
+    public void call(String service) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (medianMillis > 0) {
+            double millis = medianMillis * Math.exp(sigma * random.nextGaussian());
+            sleep(TimeUnit.MICROSECONDS.toNanos((long) (millis * 1000)));
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            AmazonServiceException error = new AmazonServiceException("Injected failure");
+            error.setServiceName(service);
+            error.setStatusCode(503);
+            error.setErrorCode("ServiceUnavailable");
+            error.setErrorType(AmazonServiceException.ErrorType.Service);
+            throw error;
+        }
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return medianMillis > 0
+                ? String.format("median %.1f ms, p99 %.1f ms, errors %.2f%%",
+                        medianMillis, medianMillis * Math.exp(sigma * Z_99), errorRate * 100)
+                : String.format("no latency, errors %.2f%%", errorRate * 100);
+    }
+}
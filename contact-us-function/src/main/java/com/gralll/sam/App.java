@@ -1,45 +1,140 @@
 package com.gralll.sam;
 
-import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.attachment.AttachmentService;
+import com.gralll.sam.attachment.MultipartRequestReader;
 import com.gralll.sam.exception.ContactUsLambdaClientException;
+import com.gralll.sam.exception.ContactUsLambdaConflictException;
+import com.gralll.sam.exception.ContactUsLambdaPartialFailureException;
+import com.gralll.sam.exception.ContactUsLambdaThrottledException;
+import com.gralll.sam.exception.ContactUsLambdaValidationException;
+import com.gralll.sam.logging.RequestLogger;
+import com.gralll.sam.metrics.Metrics;
 import com.gralll.sam.model.ContactUsProxyResponse;
 import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.model.ProxyEvent;
+import com.gralll.sam.resilience.CircuitBreaker;
+import com.gralll.sam.resilience.CircuitBreakerOpenException;
+import com.gralll.sam.resilience.Deadline;
+import com.gralll.sam.search.SearchIndex;
+import com.gralll.sam.service.AdmissionService;
+import com.gralll.sam.service.AsyncSubmissionService;
 import com.gralll.sam.service.AwsClientFactory;
 import com.gralll.sam.service.DbService;
 import com.gralll.sam.service.EmailService;
+import com.gralll.sam.service.IdempotencyService;
 import com.gralll.sam.service.PropertyStorage;
+import com.gralll.sam.service.QueryService;
+import com.gralll.sam.service.QueueService;
 import com.gralll.sam.service.RequestService;
+import com.gralll.sam.service.ResponseCompressor;
 import com.gralll.sam.service.ResponseService;
+import com.gralll.sam.service.SearchService;
+import com.gralll.sam.service.WarmUpService;
+import com.gralll.sam.spam.SpamFilter;
+import com.gralll.sam.startup.Startup;
+import com.gralll.sam.startup.StartupTimer;
+import com.gralll.sam.tenant.Tenant;
+import com.gralll.sam.tenant.TenantRegistry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.function.Supplier;
 
-import static java.lang.Boolean.FALSE;
+import static java.lang.Boolean.TRUE;
 
 /**
  * Request ad response types can be Input and Output stream or any custom objects.
  * Using streams directly helps to avoid different handling
  * when executing Lambda locally and in AWS environment.
  */
-public class App implements RequestHandler<AwsProxyRequest, ContactUsProxyResponse> {
+public class App implements RequestHandler<APIGatewayProxyRequestEvent, ContactUsProxyResponse> {
 
     // Use static variables to keep a context between executions
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final AwsClientFactory awsClientFactory = new AwsClientFactory();
-    private final EmailService emailService = new EmailService(awsClientFactory.getSesClient());
-    private final DbService dbService = new DbService(awsClientFactory.getDynamoDB());
-    private final ResponseService responseService = new ResponseService(objectMapper);
-    private final RequestService requestService = new RequestService(objectMapper);
     private final PropertyStorage propertyStorage = new PropertyStorage();
+    private final EmailService emailService;
+    private final DbService dbService;
+    private final ResponseService responseService;
+    private final RequestService requestService;
+    private final AttachmentService attachmentService;
+    private final MultipartRequestReader multipartRequestReader;
+    private final QueueService queueService;
+    private final AsyncSubmissionService asyncSubmissionService;
+    private final WarmUpService warmUpService;
+    private final IdempotencyService idempotencyService;
+    private final QueryService queryService;
+    private final SearchService searchService;
+    private final AdmissionService admissionService;
+    private final SpamFilter spamFilter;
+    private final TenantRegistry tenantRegistry;
+    private final ResponseCompressor responseCompressor = new ResponseCompressor();
+    private final Map<String, CircuitBreaker> circuitBreakers;
+    private final RequestLogger requestLogger;
 
     // Use custom logger or logger from a Lambda context by
     // calling context.getLogger()
     private static final Logger LOG = LogManager.getLogger(App.class);
 
+    public App() {
+        this(new AwsClientFactory());
+    }
+
+    /**
+     * @param awsClientFactory sdk clients, stub ones can be passed for local runs and benchmarks
+     */
+    public App(AwsClientFactory awsClientFactory) {
+        // Preloading classes and serializers while eager sdk clients are being built in background
+        Startup.init(objectMapper);
+        Metrics.configure(Boolean.parseBoolean(propertyStorage.getValue("METRICS_ENABLED")),
+                propertyStorage.getValue("METRICS_NAMESPACE"));
+
+        attachmentService = new AttachmentService(awsClientFactory::getS3Client, propertyStorage);
+        emailService = new EmailService(awsClientFactory.getSesClient(), attachmentService, propertyStorage);
+        dbService = new DbService(awsClientFactory.getDynamoDBClient(), propertyStorage);
+        boolean jsonCodecs = isJsonCodecsEnabled();
+        responseService = new ResponseService(objectMapper, jsonCodecs);
+        requestService = new RequestService(objectMapper, jsonCodecs);
+        multipartRequestReader = new MultipartRequestReader(attachmentService);
+        queueService = new QueueService(awsClientFactory::getSqsClient,
+                propertyStorage.getValue("CONTACT_US_QUEUE_URL"));
+        asyncSubmissionService = new AsyncSubmissionService(emailService, dbService);
+        warmUpService = new WarmUpService(requestService, responseService, emailService, dbService, propertyStorage);
+        idempotencyService = new IdempotencyService(awsClientFactory.getDynamoDB(),
+                propertyStorage.getValue("IDEMPOTENCY_TABLE"),
+                Integer.parseInt(propertyStorage.getValue("IDEMPOTENCY_CACHE_SIZE")),
+                Long.parseLong(propertyStorage.getValue("IDEMPOTENCY_TTL_SECONDS")));
+        queryService = new QueryService(awsClientFactory.getDynamoDBClient(), objectMapper,
+                Integer.parseInt(propertyStorage.getValue("QUERY_CACHE_SIZE")),
+                Long.parseLong(propertyStorage.getValue("QUERY_CACHE_TTL_SECONDS")));
+        searchService = new SearchService(awsClientFactory.getDynamoDBClient(),
+                SearchIndex.create(propertyStorage, awsClientFactory::getS3Client));
+        admissionService = new AdmissionService(propertyStorage);
+        spamFilter = StartupTimer.time("spam-filter", () -> SpamFilter.create(propertyStorage));
+        tenantRegistry = StartupTimer.time("tenant-registry",
+                () -> TenantRegistry.create(propertyStorage, awsClientFactory::getDynamoDBClient));
+        circuitBreakers = awsClientFactory.getCircuitBreakers();
+        requestLogger = new RequestLogger(requestService,
+                Double.parseDouble(propertyStorage.getValue("LOG_SAMPLE_RATE")));
+
+        if (Boolean.parseBoolean(propertyStorage.getValue("WARM_UP_ON_INIT"))) {
+            String report = StartupTimer.time("warm-up", () -> Metrics.withoutRecording(warmUpService::warmUp));
+            LOG.info("Lambda was warmed up at init phase: {}", report);
+        }
+        LOG.info(StartupTimer.report());
+    }
+
     /**
      * Send ContactUs form data to a specific email
      * and put the form data into database.
@@ -50,57 +145,321 @@ public class App implements RequestHandler<AwsProxyRequest, ContactUsProxyRespon
      * @return Proxy response to API Gateway
      */
     @Override
-    public ContactUsProxyResponse handleRequest(AwsProxyRequest request, Context context) {
-        try {
-            LOG.info("Request received.");
-            LOG.debug(requestService.getAsPrettyString(request));
+    public ContactUsProxyResponse handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+        ContactUsProxyResponse proxyResponse = handleProxyEvent(() -> {
+            requestLogger.log(request);
+            return toProxyEvent(request);
+        }, context);
+        Metrics.flush(proxyResponse.getStatusCode());
+        return proxyResponse;
+    }
+
+    /**
+     * Handles an event whether it has been bound by the runtime and adapted by {@link #handleRequest}
+     * or read by {@link StreamApp} without POJO binding.
+     * Metrics are flushed by the caller once the response is written.
+     *
+     * @param eventReader reads an API Gateway event, may throw a client exception
+     * @param context     Lambda context
+     * @return Proxy response to API Gateway
+     */
+    ContactUsProxyResponse handleProxyEvent(Supplier<ProxyEvent> eventReader, Context context) {
+        return handleSafely(context, () -> {
+            ProxyEvent event = eventReader.get();
 
-            return isWarmUpRequest(request)
+            ContactUsProxyResponse response = event.hasHeader("X-WARM-UP")
                     ? handleWarmUpRequest()
-                    : handleRealRequest(request);
+                    : isQuery(event)
+                    ? handleQuery(event)
+                    : handleRealRequest(Metrics.time(Metrics.BODY_PARSE, () -> parseContactUsRequest(event)), event);
+            return responseCompressor.compress(response, event.getHeader("Accept"), event.getHeader("Accept-Encoding"));
+        });
+    }
+
+    private ContactUsProxyResponse handleSafely(Context context, Supplier<ContactUsProxyResponse> handler) {
+        long start = System.nanoTime();
+        // SDK calls are cut at the deadline, so there is time left to respond
+        Deadline.start(context != null ? context.getRemainingTimeInMillis() : 0);
+        try {
+            LOG.info("Request received.");
+            return handler.get();
+        } catch (ContactUsLambdaThrottledException e) {
+            LOG.warn("Request was not handled due to throttling: {}", e.getMessage());
+            return responseService.buildThrottledResponse(e.getRetryAfterSeconds());
+        } catch (ContactUsLambdaConflictException e) {
+            LOG.warn("Request was not handled as the same one is in progress.", e);
+            return responseService.buildResponse(409, ResponseService.CONFLICT);
+        } catch (ContactUsLambdaValidationException e) {
+            LOG.warn("Request was rejected: {}", e.getFieldErrors());
+            return responseService.buildValidationErrorResponse(e.getFieldErrors());
         } catch (ContactUsLambdaClientException e) {
             LOG.error("Request was not handled due to a client error.", e);
-            return responseService.buildResponse(400, "Client error.");
+            return responseService.buildResponse(400, ResponseService.CLIENT_ERROR);
+        } catch (ContactUsLambdaPartialFailureException e) {
+            LOG.error("Request was partially handled: submission {}, email sent: {}, persisted: {}.",
+                    e.getSubmissionId(), e.isEmailSent(), e.isPersisted(), e);
+            return responseService.buildResponse(500, ResponseService.SERVER_ERROR);
         } catch (Exception e) {
+            ContactUsLambdaThrottledException throttled = AdmissionService.asThrottled(e);
+            if (throttled != null) {
+                LOG.warn("Request was not handled due to AWS throttling.", e);
+                return responseService.buildThrottledResponse(throttled.getRetryAfterSeconds());
+            }
+            CircuitBreakerOpenException circuitOpen = CircuitBreakerOpenException.findIn(e);
+            if (circuitOpen != null) {
+                LOG.warn("Request was not handled as a downstream circuit is open.", e);
+                return responseService.buildUnavailableResponse(circuitOpen.getRetryAfterSeconds());
+            }
             LOG.error("Request was not handled due to a server error.", e);
-            return responseService.buildResponse(500, "Server error.");
+            return responseService.buildResponse(500, ResponseService.SERVER_ERROR);
+        } finally {
+            Deadline.clear();
+            Metrics.record(Metrics.HANDLER, start);
         }
     }
 
-    private ContactUsProxyResponse handleRealRequest(AwsProxyRequest request) {
-        // Parsing an input request
-        ContactUsRequest contactUsRequest = requestService.getContactUsRequest(request);
+    /**
+     * Retries and double submits with the same Idempotency-Key header or the same content
+     * get the original response without sending another email, before any rate limit is checked.
+     * Other senders over their rate limit get 429 right away.
+     * <p>
+     * Files of a multipart request are stored while it is read, as its content hash covers them;
+     * they are deleted if the request turns out to be a duplicate or is rejected.
+     */
+    private ContactUsProxyResponse handleRealRequest(ContactUsRequest contactUsRequest, ProxyEvent event) {
+        Tenant tenant = tenantRegistry.resolve(event);
+        if (contactUsRequest != null) {
+            contactUsRequest.setTenantId(tenant.getId());
+        }
+        List<String> attachments = contactUsRequest != null
+                ? contactUsRequest.getAttachments()
+                : Collections.emptyList();
+        String idempotencyKey = idempotencyService.getKey(tenant.getId(), event.getHeader("Idempotency-Key"),
+                contactUsRequest);
+        AtomicBoolean handled = new AtomicBoolean();
+        ContactUsProxyResponse response;
+        try {
+            // A throttled request releases its key, so it can be retried later
+            response = idempotencyService.execute(idempotencyKey, () -> {
+                handled.set(true);
+                admissionService.admitTenant(tenant);
+                admissionService.admitSender(event.getSourceIp(),
+                        contactUsRequest != null ? contactUsRequest.getEmail() : null);
+                return submit(contactUsRequest, event, tenant);
+            });
+        } catch (ContactUsLambdaThrottledException | ContactUsLambdaConflictException e) {
+            attachmentService.delete(attachments);
+            throw e;
+        }
+        if (!handled.get()) {
+            // The original request keeps its own files
+            attachmentService.delete(attachments);
+        }
+        return response;
+    }
+
+    /**
+     * Lists persisted submissions page by page, see {@link QueryService} for parameters,
+     * or finds them by words with q, see {@link SearchService}.
+     */
+    private ContactUsProxyResponse handleQuery(ProxyEvent event) {
+        Map<String, String> parameters = event.getQueryStringParameters();
+        return responseService.buildPageResponse(parameters.containsKey("q")
+                ? searchService.search(parameters)
+                : queryService.query(parameters));
+    }
+
+    private ContactUsProxyResponse submit(ContactUsRequest contactUsRequest, ProxyEvent event, Tenant tenant) {
+        // Scored before any mode, so suspects are never queued or emailed
+        double spamScore = Metrics.time(Metrics.SPAM_FILTER,
+                () -> spamFilter.score(contactUsRequest, event.getSourceIp()));
+        if (spamFilter.isSuspect(spamScore)) {
+            return handleSuspect(contactUsRequest, spamScore);
+        }
+        if (tenant.isDigest()) {
+            if (isDegraded("dynamodb")) {
+                // BatchApp sends it on its own, which is better than losing it
+                LOG.warn("DynamoDB circuit is open, digest request is queued instead.");
+                return handleQueued(contactUsRequest, event, tenant);
+            }
+            admissionService.admitWrite();
+            return handleDigest(contactUsRequest, tenant);
+        }
+        if (isQueueMode()) {
+            return handleQueued(contactUsRequest, event, tenant);
+        }
+        boolean outbox = isOutboxMode();
+        if (outbox ? isDegraded("dynamodb") : isDegraded("ses", "dynamodb")) {
+            // BatchApp sends and persists the request once SES and DynamoDB are back, SQS retries it meanwhile
+            LOG.warn("A downstream circuit is open, request is queued instead.");
+            return handleQueued(contactUsRequest, event, tenant);
+        }
+        if (outbox) {
+            admissionService.admitWrite();
+            return handleOutbox(contactUsRequest);
+        }
+        // Emails of queued and outbox requests are paced by BatchApp and OutboxApp to the SES rate of their functions
+        admissionService.admitDelivery();
+
+        String messageId = isAsyncMode()
+                ? handleAsync(contactUsRequest, tenant)
+                : handleSync(contactUsRequest, tenant);
+
+        return responseService.buildResponse(200,
+                String.format("Message %s has been sent successfully.", messageId));
+    }
 
-        // Sending email to an agent
+    private String handleSync(ContactUsRequest contactUsRequest, Tenant tenant) {
+        // Sending email to an agent of the site
         String messageId = emailService.sendEmail(
-                propertyStorage.getValue("SENDER_EMAIL"),
-                propertyStorage.getValue("RECIPIENT_EMAIL"),
+                tenant.getSenderEmail(),
+                tenant.getRecipientEmail(),
                 contactUsRequest);
         LOG.info("ContactUs email message has been sent successfully.");
 
         // Saving request to DB
         dbService.putContactUsRequest(messageId, contactUsRequest);
         LOG.info("ContactUsRequest has been written to DB.");
+        return messageId;
+    }
 
-        return responseService.buildResponse(200,
-                String.format("Message %s has been sent successfully.", messageId));
+    private String handleAsync(ContactUsRequest contactUsRequest, Tenant tenant) {
+        // Sending email and saving request to DB in parallel
+        String messageId = asyncSubmissionService.submit(
+                tenant.getSenderEmail(),
+                tenant.getRecipientEmail(),
+                contactUsRequest);
+        LOG.info("ContactUs email message has been sent and ContactUsRequest has been written to DB.");
+        return messageId;
+    }
+
+    /**
+     * Stores a suspect request for review without emailing it. The answer is the same
+     * as for an accepted one, so bots learn nothing.
+     */
+    private ContactUsProxyResponse handleSuspect(ContactUsRequest contactUsRequest, double spamScore) {
+        admissionService.admitWrite();
+        // Files of a suspect are not kept, a reviewer decides on its text
+        attachmentService.delete(contactUsRequest.getAttachments());
+        contactUsRequest.setAttachments(Collections.emptyList());
+        String submissionId = UUID.randomUUID().toString();
+        dbService.putSuspectContactUsRequest(submissionId, contactUsRequest, spamScore);
+        LOG.warn("ContactUsRequest has been stored as suspect, spam score {}.", spamScore);
+        return responseService.buildResponse(202,
+                String.format("Message %s has been accepted.", submissionId));
+    }
+
+    /**
+     * Only persists a request as pending, OutboxApp sends it from the table stream.
+     */
+    private ContactUsProxyResponse handleOutbox(ContactUsRequest contactUsRequest) {
+        String submissionId = UUID.randomUUID().toString();
+        dbService.putPendingContactUsRequest(submissionId, contactUsRequest);
+        LOG.info("ContactUsRequest has been written to DB as pending.");
+        return responseService.buildResponse(202,
+                String.format("Message %s has been accepted.", submissionId));
+    }
+
+    /**
+     * Only persists a request, DigestApp sends it with other requests of the site in a periodic digest.
+     */
+    private ContactUsProxyResponse handleDigest(ContactUsRequest contactUsRequest, Tenant tenant) {
+        String submissionId = UUID.randomUUID().toString();
+        dbService.putDigestContactUsRequest(submissionId, contactUsRequest, tenant.getId());
+        LOG.info("ContactUsRequest has been written to DB for a digest.");
+        return responseService.buildResponse(202,
+                String.format("Message %s has been accepted.", submissionId));
+    }
+
+    /**
+     * Only enqueues a validated request, BatchApp sends and persists requests in bulk.
+     */
+    private ContactUsProxyResponse handleQueued(ContactUsRequest contactUsRequest, ProxyEvent event, Tenant tenant) {
+        // A multipart request is queued as JSON, its files as object keys
+        String body = event.isMultipart() ? requestService.writeContactUsRequest(contactUsRequest) : event.getBody();
+        List<String> attachments = contactUsRequest != null
+                ? contactUsRequest.getAttachments()
+                : Collections.emptyList();
+        String queueMessageId = queueService.enqueue(body, tenant.getId(), attachments);
+        LOG.info("ContactUsRequest has been queued.");
+        return responseService.buildResponse(202,
+                String.format("Message %s has been queued.", queueMessageId));
+    }
+
+    /**
+     * Multipart requests may carry files, see {@link MultipartRequestReader}.
+     */
+    private ContactUsRequest parseContactUsRequest(ProxyEvent event) {
+        return event.isMultipart()
+                ? multipartRequestReader.read(event)
+                : requestService.parseContactUsRequest(event.getBody());
+    }
+
+    private boolean isQueueMode() {
+        return "QUEUE".equals(propertyStorage.getValue("EXECUTION_MODE"));
+    }
+
+    private boolean isOutboxMode() {
+        return "OUTBOX".equals(propertyStorage.getValue("EXECUTION_MODE"));
+    }
+
+    private boolean isDegraded(String... clients) {
+        return !propertyStorage.getValue("CONTACT_US_QUEUE_URL").isEmpty()
+                && Stream.of(clients)
+                         .map(circuitBreakers::get)
+                         .anyMatch(circuitBreaker -> circuitBreaker != null && circuitBreaker.isOpen());
+    }
+
+    private boolean isAsyncMode() {
+        return "ASYNC".equals(propertyStorage.getValue("EXECUTION_MODE"));
+    }
+
+    boolean isJsonCodecsEnabled() {
+        return Boolean.parseBoolean(propertyStorage.getValue("JSON_CODECS_ENABLED"));
+    }
+
+    private boolean isQuery(ProxyEvent event) {
+        return "GET".equals(event.getHttpMethod());
+    }
+
+    private ProxyEvent toProxyEvent(APIGatewayProxyRequestEvent request) {
+        ProxyEvent event = new ProxyEvent(request.getHttpMethod(), request.getBody(),
+                TRUE.equals(request.getIsBase64Encoded()), request.getHeaders(), request.getMultiValueHeaders(),
+                getQueryStringParameters(request), request.getPathParameters(), getSourceIp(request));
+        // Multipart bodies are decoded while being streamed
+        return event.isBase64Encoded() && !event.isMultipart() ? event.withBody(requestService.getBody(request)) : event;
+    }
+
+    private Map<String, String> getQueryStringParameters(APIGatewayProxyRequestEvent request) {
+        Map<String, String> parameters = new HashMap<>();
+        if (request.getMultiValueQueryStringParameters() != null) {
+            for (Map.Entry<String, List<String>> parameter : request.getMultiValueQueryStringParameters().entrySet()) {
+                if (!parameter.getValue().isEmpty()) {
+                    parameters.put(parameter.getKey(), parameter.getValue().get(0));
+                }
+            }
+        }
+        return parameters;
     }
 
-    private Boolean isWarmUpRequest(AwsProxyRequest request) {
-        return Optional.ofNullable(request.getMultiValueHeaders())
-                       .map(headers -> headers.containsKey("X-WARM-UP"))
-                       .orElse(FALSE);
+    private String getSourceIp(APIGatewayProxyRequestEvent request) {
+        return Optional.ofNullable(request.getRequestContext())
+                       .map(APIGatewayProxyRequestEvent.ProxyRequestContext::getIdentity)
+                       .map(APIGatewayProxyRequestEvent.RequestIdentity::getSourceIp)
+                       .orElse(null);
     }
 
     /**
-     * Just to load a classpath and initialize all static fields for next calls.
-     * Skips real AWS connections.
+     * Runs the real hot path on synthetic data and opens AWS connections
+     * without sending an email or writing to DB.
      *
-     * @return Stub response
+     * @return Response with primed components and their durations
      */
     private ContactUsProxyResponse handleWarmUpRequest() {
-        LOG.info("Lambda was warmed up.");
-        return responseService.buildWarmUpResponse();
+        Metrics.markWarmUp();
+        String report = Metrics.withoutRecording(warmUpService::warmUp);
+        LOG.info("Lambda was warmed up: {}", report);
+        return responseService.buildWarmUpResponse(report);
     }
 
 }
\ No newline at end of file
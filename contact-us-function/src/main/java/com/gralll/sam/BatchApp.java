@@ -0,0 +1,187 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.attachment.AttachmentService;
+import com.gralll.sam.exception.ContactUsLambdaClientException;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.ratelimit.SendPacer;
+import com.gralll.sam.service.AwsClientFactory;
+import com.gralll.sam.service.DbService;
+import com.gralll.sam.service.EmailService;
+import com.gralll.sam.service.PropertyStorage;
+import com.gralll.sam.service.QueueService;
+import com.gralll.sam.service.RequestService;
+import com.gralll.sam.startup.Startup;
+import com.gralll.sam.startup.StartupTimer;
+import com.gralll.sam.tenant.Tenant;
+import com.gralll.sam.tenant.TenantRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQS batch entry point: persists and sends all queued ContactUs requests of a batch.
+ * Reports failed messages only, so SQS redelivers just them.
+ * <p>
+ * A request is persisted as QUEUED under its queue message id before its email is sent and linked
+ * to the email after, as OutboxApp does. A message is redelivered only if it was not persisted or
+ * its email was not sent, and a redelivered one is sent only if it is still QUEUED, so an email is not
+ * sent twice by a failed write. A request whose email could not be linked stays QUEUED.
+ * <p>
+ * Emails are paced to RATE_LIMIT_SES_PER_SECOND of the function, requests left when the invocation
+ * runs out of time are redelivered like failed ones, so a batch should fit the rate and the timeout.
+ */
+public class BatchApp implements RequestHandler<SQSEvent, SQSBatchResponse> {
+
+    private static final long LINK_MARGIN_MILLIS = 10_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PropertyStorage propertyStorage = new PropertyStorage();
+    private final EmailService emailService;
+    private final DbService dbService;
+    private final RequestService requestService;
+    private final TenantRegistry tenantRegistry;
+    private final SendPacer sendPacer;
+
+    private static final Logger LOG = LogManager.getLogger(BatchApp.class);
+
+    public BatchApp() {
+        this(new AwsClientFactory());
+    }
+
+    public BatchApp(AwsClientFactory awsClientFactory) {
+        // Preloading classes and serializers while eager sdk clients are being built in background
+        Startup.init(objectMapper);
+
+        emailService = new EmailService(awsClientFactory.getSesClient(),
+                new AttachmentService(awsClientFactory::getS3Client, propertyStorage), propertyStorage);
+        dbService = new DbService(awsClientFactory.getDynamoDBClient(), propertyStorage);
+        requestService = new RequestService(objectMapper);
+        tenantRegistry = TenantRegistry.create(propertyStorage, awsClientFactory::getDynamoDBClient);
+        sendPacer = new SendPacer(Double.parseDouble(propertyStorage.getValue("RATE_LIMIT_SES_PER_SECOND")));
+        LOG.info(StartupTimer.report());
+    }
+
+    /**
+     * @param event   batch of queued ContactUs request bodies
+     * @param context Lambda context
+     * @return identifiers of messages to be redelivered
+     */
+    @Override
+    public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
+        LOG.info("Batch of {} messages received.", event.getRecords().size());
+
+        // Parsing queued requests, malformed ones will never succeed and are dropped
+        Map<String, ContactUsRequest> requests = new LinkedHashMap<>();
+        for (SQSEvent.SQSMessage message : event.getRecords()) {
+            try {
+                ContactUsRequest request = requestService.parseContactUsRequest(message.getBody());
+                request.setTenantId(getAttribute(message, QueueService.TENANT_ID_ATTRIBUTE));
+                String attachments = getAttribute(message, QueueService.ATTACHMENTS_ATTRIBUTE);
+                if (attachments != null) {
+                    request.setAttachments(Arrays.asList(attachments.split(",")));
+                }
+                requests.put(message.getMessageId(), request);
+            } catch (ContactUsLambdaClientException e) {
+                LOG.error("Message {} is malformed and has been dropped.", message.getMessageId(), e);
+            }
+        }
+
+        // Persisting before sending: first deliveries in batches, redelivered ones unless sent meanwhile
+        Map<String, ContactUsRequest> firstDeliveries = new LinkedHashMap<>();
+        Map<String, ContactUsRequest> toSend = new LinkedHashMap<>();
+        Set<String> unwritten = new HashSet<>();
+        for (SQSEvent.SQSMessage message : event.getRecords()) {
+            ContactUsRequest request = requests.get(message.getMessageId());
+            if (request == null) {
+                continue;
+            }
+            if (!isRedelivered(message)) {
+                firstDeliveries.put(message.getMessageId(), request);
+                continue;
+            }
+            try {
+                if (dbService.putQueuedContactUsRequestIfNotSent(message.getMessageId(), request)) {
+                    toSend.put(message.getMessageId(), request);
+                } else {
+                    LOG.info("Message {} has been sent by an earlier delivery.", message.getMessageId());
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Writing redelivered message {} failed.", message.getMessageId(), e);
+                unwritten.add(message.getMessageId());
+            }
+        }
+        unwritten.addAll(dbService.putQueuedContactUsRequests(firstDeliveries));
+        firstDeliveries.forEach((queueMessageId, request) -> {
+            if (!unwritten.contains(queueMessageId)) {
+                toSend.put(queueMessageId, request);
+            }
+        });
+        LOG.info("{} ContactUsRequests have been written to DB.", toSend.size());
+
+        // Sending emails to an agent of each site, leaving time to link them
+        Map<String, String> messageIds = new HashMap<>();
+        long sendDeadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(context.getRemainingTimeInMillis() - LINK_MARGIN_MILLIS);
+        groupByTenant(toSend).forEach((tenant, tenantRequests) -> messageIds.putAll(sendPacer.send(tenantRequests,
+                chunk -> emailService.sendEmails(
+                        tenant.getSenderEmail(),
+                        tenant.getRecipientEmail(),
+                        chunk),
+                sendDeadline - System.nanoTime())));
+        LOG.info("{} of {} ContactUs email messages have been sent.", messageIds.size(), toSend.size());
+
+        // A sent email is never redelivered, a request which is not linked just stays QUEUED
+        messageIds.forEach((queueMessageId, messageId) -> {
+            try {
+                dbService.linkMessageId(queueMessageId, messageId);
+            } catch (RuntimeException e) {
+                LOG.error("Linking message {} to email {} failed.", queueMessageId, messageId, e);
+            }
+        });
+
+        List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
+        requests.keySet().forEach(queueMessageId -> {
+            if (unwritten.contains(queueMessageId)
+                    || toSend.containsKey(queueMessageId) && !messageIds.containsKey(queueMessageId)) {
+                failures.add(new SQSBatchResponse.BatchItemFailure(queueMessageId));
+            }
+        });
+        return new SQSBatchResponse(failures);
+    }
+
+    private Map<Tenant, Map<String, ContactUsRequest>> groupByTenant(Map<String, ContactUsRequest> requests) {
+        Map<Tenant, Map<String, ContactUsRequest>> groups = new LinkedHashMap<>();
+        requests.forEach((queueMessageId, request) -> groups
+                .computeIfAbsent(tenantRegistry.get(request.getTenantId()), tenant -> new LinkedHashMap<>())
+                .put(queueMessageId, request));
+        return groups;
+    }
+
+    private static boolean isRedelivered(SQSEvent.SQSMessage message) {
+        String receiveCount = message.getAttributes() != null
+                ? message.getAttributes().get("ApproximateReceiveCount")
+                : null;
+        return receiveCount != null && Integer.parseInt(receiveCount) > 1;
+    }
+
+    // Messages queued before sites existed have no TenantId, ones without files no Attachments
+    private static String getAttribute(SQSEvent.SQSMessage message, String name) {
+        Map<String, SQSEvent.MessageAttribute> attributes = message.getMessageAttributes();
+        SQSEvent.MessageAttribute attribute = attributes != null ? attributes.get(name) : null;
+        return attribute != null ? attribute.getStringValue() : null;
+    }
+}
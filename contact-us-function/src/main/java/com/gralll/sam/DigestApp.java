@@ -0,0 +1,134 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.attachment.AttachmentService;
+import com.gralll.sam.digest.DigestRenderer;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.service.AwsClientFactory;
+import com.gralll.sam.service.DbService;
+import com.gralll.sam.service.EmailService;
+import com.gralll.sam.service.PropertyStorage;
+import com.gralll.sam.startup.Startup;
+import com.gralll.sam.startup.StartupTimer;
+import com.gralll.sam.tenant.Tenant;
+import com.gralll.sam.tenant.TenantRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Scheduled entry point: sends requests persisted by App for sites in digest mode
+ * as one email per recipient and marks them as sent.
+ * <p>
+ * Requests are read from the sparse DigestIndex up to the invocation time, so later ones wait for
+ * the next run. A digest is sent before its requests are marked, requests which could not be marked
+ * come again in the next digest. A failed digest fails the invocation to be retried; sent ones are
+ * not sent again as their requests have left the index.
+ */
+public class DigestApp implements RequestHandler<ScheduledEvent, String> {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PropertyStorage propertyStorage = new PropertyStorage();
+    private final EmailService emailService;
+    private final DbService dbService;
+    private final TenantRegistry tenantRegistry;
+    private final DigestRenderer digestRenderer;
+    private final int maxSubmissions;
+
+    private static final Logger LOG = LogManager.getLogger(DigestApp.class);
+
+    public DigestApp() {
+        this(new AwsClientFactory());
+    }
+
+    public DigestApp(AwsClientFactory awsClientFactory) {
+        // Preloading classes and serializers while eager sdk clients are being built in background
+        Startup.init(objectMapper);
+
+        emailService = new EmailService(awsClientFactory.getSesClient());
+        dbService = new DbService(awsClientFactory.getDynamoDBClient(), propertyStorage);
+        tenantRegistry = TenantRegistry.create(propertyStorage, awsClientFactory::getDynamoDBClient);
+        digestRenderer = new DigestRenderer(new AttachmentService(awsClientFactory::getS3Client, propertyStorage));
+        maxSubmissions = Integer.parseInt(propertyStorage.getValue("DIGEST_MAX_SUBMISSIONS"));
+        LOG.info(StartupTimer.report());
+    }
+
+    /**
+     * @param event   schedule tick, only its time is of interest
+     * @param context Lambda context
+     * @return a summary of sent digests
+     */
+    @Override
+    public String handleRequest(ScheduledEvent event, Context context) {
+        long until = System.currentTimeMillis();
+        // Sites of the same recipient share a digest
+        Map<String, List<Tenant>> recipients = new LinkedHashMap<>();
+        for (Tenant tenant : tenantRegistry.getTenants()) {
+            if (tenant.isDigest()) {
+                recipients.computeIfAbsent(tenant.getRecipientEmail(), recipient -> new ArrayList<>()).add(tenant);
+            }
+        }
+
+        int digests = 0;
+        int submissions = 0;
+        int failures = 0;
+        for (Map.Entry<String, List<Tenant>> recipient : recipients.entrySet()) {
+            try {
+                int sent = sendDigest(recipient.getKey(), recipient.getValue(), until);
+                if (sent > 0) {
+                    digests++;
+                    submissions += sent;
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Sending digest to {} failed.", recipient.getKey(), e);
+                failures++;
+            }
+        }
+        String summary = String.format("%d digests with %d submissions have been sent.", digests, submissions);
+        LOG.info(summary);
+        if (failures > 0) {
+            throw new ContactUsLambdaServerException(failures + " of " + recipients.size() + " digests failed.", null);
+        }
+        return summary;
+    }
+
+    /**
+     * @return number of digested submissions
+     */
+    private int sendDigest(String recipientEmail, List<Tenant> tenants, long until) {
+        DigestRenderer.Digest digest = digestRenderer.start(maxSubmissions);
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (Tenant tenant : tenants) {
+            if (items.size() == maxSubmissions) {
+                break;
+            }
+            int siteStart = items.size();
+            dbService.queryDigestContactUsRequests(tenant.getId(), until, maxSubmissions - items.size(), item -> {
+                if (items.size() == siteStart) {
+                    digest.addSite(tenant.getId());
+                }
+                digest.addEntry(item);
+                items.add(item);
+            });
+        }
+        if (items.isEmpty()) {
+            return 0;
+        }
+
+        String messageId = emailService.sendHtmlEmail(tenants.get(0).getSenderEmail(), recipientEmail,
+                String.format("Contact Us digest: %d submissions", items.size()), digest.finish(until));
+        Set<String> unmarked = dbService.markDigestSent(items, messageId);
+        LOG.info("Digest {} with {} submissions has been sent to {}, {} submissions were not marked.",
+                messageId, items.size(), recipientEmail, unmarked.size());
+        return items.size();
+    }
+}
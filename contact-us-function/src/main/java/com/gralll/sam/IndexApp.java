@@ -0,0 +1,99 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
+import com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.search.SearchIndex;
+import com.gralll.sam.search.SegmentWriter;
+import com.gralll.sam.search.Tokenizer;
+import com.gralll.sam.service.AwsClientFactory;
+import com.gralll.sam.service.DbService;
+import com.gralll.sam.service.PropertyStorage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ContactUsTable stream entry point: indexes words of new submissions for GET ?q= searches
+ * and drops deleted ones, e.g. expired by TTL, from the index.
+ * <p>
+ * A batch becomes one new segment, then full levels are merged. A batch whose segment could not
+ * be stored fails to be retried; a retried batch indexed before is no duplicate, as hits are distinct by Id.
+ * A failed merge is left to the next batch. Suspect requests are not indexed.
+ */
+public class IndexApp implements RequestHandler<DynamodbEvent, String> {
+
+    private final PropertyStorage propertyStorage = new PropertyStorage();
+    private final SearchIndex searchIndex;
+
+    private static final Logger LOG = LogManager.getLogger(IndexApp.class);
+
+    public IndexApp() {
+        this(new AwsClientFactory());
+    }
+
+    public IndexApp(AwsClientFactory awsClientFactory) {
+        searchIndex = SearchIndex.create(propertyStorage, awsClientFactory::getS3Client);
+    }
+
+    /**
+     * @param event   batch of ContactUsTable changes
+     * @param context Lambda context
+     * @return a summary of the indexed batch
+     */
+    @Override
+    public String handleRequest(DynamodbEvent event, Context context) {
+        if (searchIndex == null) {
+            throw new ContactUsLambdaServerException("SEARCH_INDEX_BUCKET is not set.", null);
+        }
+        // Only inserts and removals, updates of delivery status change no words
+        List<SegmentWriter.Document> documents = new ArrayList<>();
+        Set<String> deletedIds = new HashSet<>();
+        for (DynamodbEvent.DynamodbStreamRecord record : event.getRecords()) {
+            Map<String, AttributeValue> image = record.getDynamodb().getNewImage();
+            if ("REMOVE".equals(record.getEventName())) {
+                // A removal has no new image, its keys carry the Id
+                deletedIds.add(record.getDynamodb().getKeys().get("Id").getS());
+            } else if ("INSERT".equals(record.getEventName()) && image != null && !isSuspect(image)) {
+                documents.add(new SegmentWriter.Document(image.get("Id").getS(),
+                        Long.parseLong(image.get("CreatedAt").getN()),
+                        Tokenizer.terms(getString(image, "Subject"), getString(image, "Question"))));
+            }
+        }
+
+        String segment;
+        try {
+            segment = searchIndex.add(documents, deletedIds);
+        } catch (RuntimeException e) {
+            throw new ContactUsLambdaServerException("Indexing " + documents.size() + " submissions and "
+                    + deletedIds.size() + " deletions failed.", e);
+        }
+        int merges = 0;
+        try {
+            merges = searchIndex.merge();
+        } catch (RuntimeException e) {
+            LOG.warn("Merging segments failed, it is left to the next batch.", e);
+        }
+        String summary = String.format(
+                "%d of %d records have been indexed and %d deletions written into %s, %d merges have been made.",
+                documents.size(), event.getRecords().size(), deletedIds.size(), segment, merges);
+        LOG.info(summary);
+        return summary;
+    }
+
+    private static boolean isSuspect(Map<String, AttributeValue> image) {
+        return DbService.SUSPECT.equals(getString(image, "DeliveryStatus"));
+    }
+
+    private static String getString(Map<String, AttributeValue> image, String name) {
+        AttributeValue value = image.get(name);
+        return value != null ? value.getS() : null;
+    }
+}
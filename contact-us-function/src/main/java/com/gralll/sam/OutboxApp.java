@@ -0,0 +1,216 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
+import com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.attachment.AttachmentService;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.ratelimit.SendPacer;
+import com.gralll.sam.service.AwsClientFactory;
+import com.gralll.sam.service.DbService;
+import com.gralll.sam.service.EmailService;
+import com.gralll.sam.service.PropertyStorage;
+import com.gralll.sam.startup.Startup;
+import com.gralll.sam.startup.StartupTimer;
+import com.gralll.sam.tenant.Tenant;
+import com.gralll.sam.tenant.TenantRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ContactUsTable stream entry point: sends emails of requests persisted as pending
+ * by App in EXECUTION_MODE 'OUTBOX' and links SES message ids to them.
+ * <p>
+ * Each request is claimed by a conditional update from PENDING to SENDING before its email is sent,
+ * so a replayed or an older stream record of a request which is not pending anymore sends nothing.
+ * A failed email is retried by an update of its request back to PENDING with a RetryAt backing off per attempt.
+ * Its stream record is skipped until then, OutboxSweepApp releases the request as a new one once it is due.
+ * If that update fails too, the request stays SENDING until OutboxSweepApp reclaims it after the claim has gone stale.
+ * <p>
+ * Emails are paced to RATE_LIMIT_SES_PER_SECOND of the function, requests left when the invocation runs out
+ * of time are deferred as pending again without counting an attempt.
+ */
+public class OutboxApp implements RequestHandler<DynamodbEvent, StreamsEventResponse> {
+
+    static final int MAX_DELIVERY_ATTEMPTS = 3;
+    // Doubled with every failed attempt
+    private static final long RETRY_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // A claim outlives the invocation by this much before it is reclaimed
+    private static final long STALE_CLAIM_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long UPDATE_MARGIN_MILLIS = 10_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PropertyStorage propertyStorage = new PropertyStorage();
+    private final EmailService emailService;
+    private final DbService dbService;
+    private final TenantRegistry tenantRegistry;
+    private final SendPacer sendPacer;
+
+    private static final Logger LOG = LogManager.getLogger(OutboxApp.class);
+
+    public OutboxApp() {
+        this(new AwsClientFactory());
+    }
+
+    public OutboxApp(AwsClientFactory awsClientFactory) {
+        // Preloading classes and serializers while eager sdk clients are being built in background
+        Startup.init(objectMapper);
+
+        emailService = new EmailService(awsClientFactory.getSesClient(),
+                new AttachmentService(awsClientFactory::getS3Client, propertyStorage), propertyStorage);
+        dbService = new DbService(awsClientFactory.getDynamoDBClient(), propertyStorage);
+        tenantRegistry = TenantRegistry.create(propertyStorage, awsClientFactory::getDynamoDBClient);
+        sendPacer = new SendPacer(Double.parseDouble(propertyStorage.getValue("RATE_LIMIT_SES_PER_SECOND")));
+        LOG.info(StartupTimer.report());
+    }
+
+    /**
+     * @param event   batch of ContactUsTable changes
+     * @param context Lambda context
+     * @return the first record to be replayed from, only if a request could not be claimed
+     */
+    @Override
+    public StreamsEventResponse handleRequest(DynamodbEvent event, Context context) {
+        long now = System.currentTimeMillis();
+        // Due pending requests by submission id, other changes incl. our own status updates are skipped
+        Map<String, ContactUsRequest> requests = new LinkedHashMap<>();
+        Map<String, DynamodbEvent.DynamodbStreamRecord> records = new HashMap<>();
+        for (DynamodbEvent.DynamodbStreamRecord record : event.getRecords()) {
+            Map<String, AttributeValue> image = record.getDynamodb().getNewImage();
+            if (image != null && isPending(image) && getRetryAt(image) <= now) {
+                String submissionId = image.get("Id").getS();
+                ContactUsRequest request = DbService.toContactUsRequest(toStrings(image));
+                AttributeValue attachments = image.get("Attachments");
+                if (attachments != null) {
+                    request.setAttachments(attachments.getSS());
+                }
+                requests.put(submissionId, request);
+                records.put(submissionId, record);
+            }
+        }
+        LOG.info("{} of {} records are due pending requests.", requests.size(), event.getRecords().size());
+
+        long staleAt = now + context.getRemainingTimeInMillis() + STALE_CLAIM_MARGIN_MILLIS;
+        String replayFrom = null;
+        for (Iterator<String> submissionIds = requests.keySet().iterator(); submissionIds.hasNext(); ) {
+            String submissionId = submissionIds.next();
+            try {
+                if (!dbService.claimDelivery(submissionId, staleAt)) {
+                    LOG.info("Submission {} is not pending anymore, it is skipped.", submissionId);
+                    submissionIds.remove();
+                }
+            } catch (RuntimeException e) {
+                // Still pending, so a replay sends it
+                LOG.error("Claiming submission {} failed.", submissionId, e);
+                submissionIds.remove();
+                if (replayFrom == null) {
+                    replayFrom = records.get(submissionId).getDynamodb().getSequenceNumber();
+                }
+            }
+        }
+        if (requests.isEmpty()) {
+            return response(replayFrom);
+        }
+
+        // Leaving time to update the requests
+        Set<String> attempted = new HashSet<>();
+        Map<String, String> messageIds = sendEmails(requests, attempted, System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(context.getRemainingTimeInMillis() - UPDATE_MARGIN_MILLIS));
+        LOG.info("{} of {} ContactUs email messages have been sent, {} deferred.",
+                messageIds.size(), requests.size(), requests.size() - attempted.size());
+
+        for (String submissionId : requests.keySet()) {
+            String messageId = messageIds.get(submissionId);
+            int attempts = getAttempts(records.get(submissionId));
+            try {
+                if (messageId != null) {
+                    dbService.linkMessageId(submissionId, messageId);
+                } else if (!attempted.contains(submissionId)) {
+                    dbService.deferDelivery(submissionId, System.currentTimeMillis());
+                } else if (attempts + 1 < MAX_DELIVERY_ATTEMPTS) {
+                    dbService.retryDelivery(submissionId,
+                            System.currentTimeMillis() + (RETRY_BACKOFF_MILLIS << attempts));
+                } else {
+                    LOG.error("Delivery of submission {} has failed {} times.", submissionId, MAX_DELIVERY_ATTEMPTS);
+                    dbService.markDeliveryFailed(submissionId);
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Updating delivery status of submission {} failed, it stays {} until reclaimed.",
+                        submissionId, DbService.SENDING, e);
+            }
+        }
+        return response(replayFrom);
+    }
+
+    private static StreamsEventResponse response(String replayFrom) {
+        return new StreamsEventResponse(replayFrom == null
+                ? Collections.emptyList()
+                : Collections.singletonList(new StreamsEventResponse.BatchItemFailure(replayFrom)));
+    }
+
+    /**
+     * Emails of each site go with its own sender, recipient and template.
+     *
+     * @param attempted gets ids of requests which have been handed to SES, the rest has not been sent for the rate
+     */
+    private Map<String, String> sendEmails(Map<String, ContactUsRequest> requests, Set<String> attempted,
+                                           long sendDeadline) {
+        Map<Tenant, Map<String, ContactUsRequest>> groups = new LinkedHashMap<>();
+        requests.forEach((submissionId, request) -> groups
+                .computeIfAbsent(tenantRegistry.get(request.getTenantId()), tenant -> new LinkedHashMap<>())
+                .put(submissionId, request));
+        Map<String, String> messageIds = new HashMap<>();
+        groups.forEach((tenant, tenantRequests) -> messageIds.putAll(sendPacer.send(tenantRequests, chunk -> {
+            attempted.addAll(chunk.keySet());
+            return tenant.getSesTemplateName().isEmpty()
+                    ? emailService.sendEmails(
+                            tenant.getSenderEmail(),
+                            tenant.getRecipientEmail(),
+                            chunk)
+                    : emailService.sendBulkTemplatedEmails(
+                            tenant.getSenderEmail(),
+                            tenant.getRecipientEmail(),
+                            tenant.getSesTemplateName(),
+                            chunk);
+        }, sendDeadline - System.nanoTime())));
+        return messageIds;
+    }
+
+    private static boolean isPending(Map<String, AttributeValue> image) {
+        AttributeValue status = image.get("DeliveryStatus");
+        return status != null && DbService.PENDING.equals(status.getS());
+    }
+
+    // Requests written before OutboxIndex have no RetryAt and are due
+    private static long getRetryAt(Map<String, AttributeValue> image) {
+        AttributeValue retryAt = image.get("RetryAt");
+        return retryAt != null && retryAt.getN() != null ? Long.parseLong(retryAt.getN()) : 0;
+    }
+
+    private static int getAttempts(DynamodbEvent.DynamodbStreamRecord record) {
+        AttributeValue attempts = record.getDynamodb().getNewImage().get("DeliveryAttempts");
+        return attempts != null && attempts.getN() != null ? Integer.parseInt(attempts.getN()) : 0;
+    }
+
+    private static Map<String, String> toStrings(Map<String, AttributeValue> image) {
+        Map<String, String> attributes = new HashMap<>();
+        image.forEach((name, value) -> {
+            if (value.getS() != null) {
+                attributes.put(name, value.getS());
+            }
+        });
+        return attributes;
+    }
+}
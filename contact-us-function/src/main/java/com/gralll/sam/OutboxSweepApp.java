@@ -0,0 +1,109 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.service.AwsClientFactory;
+import com.gralll.sam.service.DbService;
+import com.gralll.sam.service.PropertyStorage;
+import com.gralll.sam.startup.StartupTimer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduled entry point: keeps requests of EXECUTION_MODE 'OUTBOX' moving when their stream records
+ * do not send them, reading OutboxIndex for requests whose RetryAt has passed.
+ * <p>
+ * A due pending request, i.e. one backing off after a failed email or one whose stream record was lost,
+ * is released by an update which is a new stream record for OutboxApp. A stale SENDING request, claimed by an
+ * invocation which has not updated it by its timeout, is reclaimed as pending with one more attempt, or failed
+ * without attempts left. Its email may have been sent, so every reclaim is logged as an error and alarmed on.
+ */
+public class OutboxSweepApp implements RequestHandler<ScheduledEvent, String> {
+
+    // Stream records of new requests are handled within seconds, so the sweep does not race them
+    private static final long STREAM_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int MAX_REQUESTS = 100;
+
+    private final PropertyStorage propertyStorage = new PropertyStorage();
+    private final DbService dbService;
+
+    private static final Logger LOG = LogManager.getLogger(OutboxSweepApp.class);
+
+    public OutboxSweepApp() {
+        this(new AwsClientFactory());
+    }
+
+    public OutboxSweepApp(AwsClientFactory awsClientFactory) {
+        dbService = new DbService(awsClientFactory.getDynamoDBClient(), propertyStorage);
+        LOG.info(StartupTimer.report());
+    }
+
+    /**
+     * @param event   schedule tick, only its time is of interest
+     * @param context Lambda context
+     * @return a summary of released and reclaimed requests
+     */
+    @Override
+    public String handleRequest(ScheduledEvent event, Context context) {
+        long now = System.currentTimeMillis();
+        int failures = 0;
+
+        List<Map<String, AttributeValue>> due = new ArrayList<>();
+        dbService.queryDueDeliveries(DbService.PENDING, now - STREAM_GRACE_MILLIS, MAX_REQUESTS, due::add);
+        int released = 0;
+        for (Map<String, AttributeValue> item : due) {
+            String submissionId = item.get("Id").getS();
+            try {
+                if (dbService.releaseDelivery(submissionId, getRetryAt(item), now)) {
+                    released++;
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Releasing submission {} failed.", submissionId, e);
+                failures++;
+            }
+        }
+
+        List<Map<String, AttributeValue>> stale = new ArrayList<>();
+        dbService.queryDueDeliveries(DbService.SENDING, now, MAX_REQUESTS, stale::add);
+        int reclaimed = 0;
+        for (Map<String, AttributeValue> item : stale) {
+            String submissionId = item.get("Id").getS();
+            boolean retry = getAttempts(item) + 1 < OutboxApp.MAX_DELIVERY_ATTEMPTS;
+            try {
+                if (dbService.reclaimDelivery(submissionId, getRetryAt(item), retry, now)) {
+                    LOG.error("Reclaimed stale claim of submission {} as {}, its email may have been sent.",
+                            submissionId, retry ? DbService.PENDING : DbService.FAILED);
+                    reclaimed++;
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Reclaiming submission {} failed.", submissionId, e);
+                failures++;
+            }
+        }
+
+        String summary = String.format("%d of %d due requests have been released, %d of %d stale claims reclaimed.",
+                released, due.size(), reclaimed, stale.size());
+        LOG.info(summary);
+        if (failures > 0) {
+            throw new ContactUsLambdaServerException(failures + " requests could not be released or reclaimed.", null);
+        }
+        return summary;
+    }
+
+    private static long getRetryAt(Map<String, AttributeValue> item) {
+        return Long.parseLong(item.get("RetryAt").getN());
+    }
+
+    private static int getAttempts(Map<String, AttributeValue> item) {
+        AttributeValue attempts = item.get("DeliveryAttempts");
+        return attempts != null && attempts.getN() != null ? Integer.parseInt(attempts.getN()) : 0;
+    }
+}
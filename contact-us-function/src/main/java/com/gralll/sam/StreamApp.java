@@ -0,0 +1,47 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.gralll.sam.json.JsonCodec;
+import com.gralll.sam.metrics.Metrics;
+import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.service.ProxyEventReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Stream entry point with the same behaviour as {@link App}.
+ * Skips reflective binding of the whole API Gateway event: a streaming parser picks
+ * only needed fields and a response is written straight to the output stream.
+ */
+public class StreamApp implements RequestStreamHandler {
+
+    private final App app = new App();
+    private final ProxyEventReader eventReader = new ProxyEventReader(new JsonFactory());
+    private final ObjectWriter responseWriter = new ObjectMapper().writerFor(ContactUsProxyResponse.class);
+    private final JsonCodec jsonCodec = new JsonCodec(new JsonFactory());
+
+    /**
+     * @param input   API Gateway event
+     * @param output  Proxy response to API Gateway
+     * @param context Lambda context
+     */
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        ContactUsProxyResponse response = app.handleProxyEvent(
+                () -> Metrics.time(Metrics.EVENT_DECODE, () -> eventReader.read(input)), context);
+        long start = System.nanoTime();
+        if (app.isJsonCodecsEnabled()) {
+            jsonCodec.writeProxyResponse(response, output);
+        } else {
+            responseWriter.writeValue(output, response);
+        }
+        Metrics.record(Metrics.RESPONSE_SERIALIZE, start);
+        Metrics.flush(response.getStatusCode());
+    }
+}
@@ -0,0 +1,219 @@
+package com.gralll.sam.attachment;
+
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.gralll.sam.exception.ContactUsLambdaValidationException;
+import com.gralll.sam.service.PropertyStorage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Stores attachments in an S3-compatible bucket and reads them back for emails.
+ * <p>
+ * An upload goes through a buffer of one S3 part: a file fitting it is a single PutObject,
+ * a larger one a multipart upload reusing the buffer, so memory does not grow with the file.
+ * Behind API Gateway a whole request is at most 6 MB of base64, so files stay below one part there
+ * and the multipart upload only serves other runtimes, e.g. a local one with a larger ATTACHMENTS_MAX_BYTES.
+ * Only object keys travel further, e.g. to ContactUsTable.
+ */
+public class AttachmentService {
+
+    // The smallest S3 part but the last one
+    static final int PART_SIZE = 5 * 1024 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final String KEY_PREFIX = "attachments/";
+
+    private static final Logger LOG = LogManager.getLogger(AttachmentService.class);
+
+    private final Supplier<AmazonS3> s3Client;
+    private final String bucket;
+    private final int maxCount;
+    private final long maxBytes;
+    private final Set<String> contentTypes;
+    private final long linkTtlMillis;
+
+    /**
+     * @param s3Client client supplier, the client is only needed if ATTACHMENTS_BUCKET is set
+     */
+    public AttachmentService(Supplier<AmazonS3> s3Client, PropertyStorage propertyStorage) {
+        this.s3Client = s3Client;
+        this.bucket = propertyStorage.getValue("ATTACHMENTS_BUCKET");
+        this.maxCount = Integer.parseInt(propertyStorage.getValue("ATTACHMENTS_MAX_COUNT"));
+        this.maxBytes = Long.parseLong(propertyStorage.getValue("ATTACHMENTS_MAX_BYTES"));
+        this.contentTypes = new HashSet<>(Arrays.asList(
+                propertyStorage.getValue("ATTACHMENTS_CONTENT_TYPES").toLowerCase(Locale.ROOT).split(",")));
+        this.linkTtlMillis = TimeUnit.HOURS.toMillis(Long.parseLong(propertyStorage.getValue("ATTACHMENTS_LINK_TTL_HOURS")));
+    }
+
+    public boolean isEnabled() {
+        return !bucket.isEmpty();
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public boolean isAllowed(String contentType) {
+        return contentType != null && contentTypes.contains(contentType.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return object key, its last segment is the sanitized file name
+     * @throws ContactUsLambdaValidationException if the file is larger than ATTACHMENTS_MAX_BYTES,
+     *                                            nothing is stored then
+     */
+    public String store(String fileName, String contentType, InputStream body) throws IOException {
+        String key = KEY_PREFIX + LocalDate.now(ZoneOffset.UTC) + "/" + UUID.randomUUID() + "/" + sanitize(fileName);
+        // Small files keep a small buffer, it grows up to a part
+        byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+        int length = 0;
+        for (int read = body.read(buffer); read >= 0; read = body.read(buffer, length, buffer.length - length)) {
+            length += read;
+            if (length > maxBytes) {
+                throw tooLarge(fileName);
+            }
+            if (length == buffer.length) {
+                if (length == PART_SIZE) {
+                    uploadInParts(key, contentType, body, buffer, fileName);
+                    return key;
+                }
+                buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, PART_SIZE));
+            }
+        }
+        ObjectMetadata metadata = metadata(contentType);
+        metadata.setContentLength(length);
+        s3Client.get().putObject(new PutObjectRequest(bucket, key, new ByteArrayInputStream(buffer, 0, length),
+                metadata));
+        return key;
+    }
+
+    /**
+     * @return the object with an open content stream, to be closed by a caller
+     */
+    public S3Object open(String key) {
+        return s3Client.get().getObject(bucket, key);
+    }
+
+    /**
+     * @return a link to download an attachment which is too large to be attached to an email.
+     * A link signed by a role session expires with the session at the latest.
+     */
+    public URL getLink(String key) {
+        return s3Client.get().generatePresignedUrl(bucket, key,
+                new Date(System.currentTimeMillis() + linkTtlMillis), HttpMethod.GET);
+    }
+
+    /**
+     * Best effort cleanup of attachments of a rejected request.
+     */
+    public void delete(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            s3Client.get().deleteObjects(new DeleteObjectsRequest(bucket).withKeys(keys.toArray(new String[0])));
+        } catch (RuntimeException e) {
+            LOG.warn("Deleting {} attachments failed, the bucket lifecycle removes them.", keys.size(), e);
+        }
+    }
+
+    /**
+     * @return file name of an attachment key
+     */
+    public static String getFileName(String key) {
+        return key.substring(key.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @param buffer the first part, it is reused for the next ones
+     */
+    private void uploadInParts(String key, String contentType, InputStream body, byte[] buffer, String fileName)
+            throws IOException {
+        AmazonS3 s3 = s3Client.get();
+        String uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key,
+                metadata(contentType))).getUploadId();
+        try {
+            List<PartETag> partETags = new ArrayList<>();
+            long total = 0;
+            for (int length = buffer.length; length > 0; length = readFully(body, buffer)) {
+                total += length;
+                if (total > maxBytes) {
+                    throw tooLarge(fileName);
+                }
+                partETags.add(s3.uploadPart(new UploadPartRequest()
+                        .withBucketName(bucket)
+                        .withKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partETags.size() + 1)
+                        .withInputStream(new ByteArrayInputStream(buffer, 0, length))
+                        .withPartSize(length)).getPartETag());
+            }
+            s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+        } catch (IOException | RuntimeException e) {
+            s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+            throw e;
+        }
+    }
+
+    private static int readFully(InputStream body, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = body.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private static ObjectMetadata metadata(String contentType) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        return metadata;
+    }
+
+    // Keys and MIME headers get plain ASCII names
+    static String sanitize(String fileName) {
+        String name = fileName != null ? fileName.substring(Math.max(fileName.lastIndexOf('/'),
+                fileName.lastIndexOf('\\')) + 1) : "";
+        StringBuilder sanitized = new StringBuilder(Math.min(name.length(), 100));
+        for (int i = 0; i < name.length() && sanitized.length() < 100; i++) {
+            char c = name.charAt(i);
+            sanitized.append(c < 128 && (Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_') ? c : '_');
+        }
+        return sanitized.length() > 0 && sanitized.charAt(0) != '.' ? sanitized.toString() : "attachment";
+    }
+
+    private ContactUsLambdaValidationException tooLarge(String fileName) {
+        return new ContactUsLambdaValidationException(Collections.singletonMap("attachments",
+                sanitize(fileName) + " must be at most " + maxBytes + " bytes"));
+    }
+}
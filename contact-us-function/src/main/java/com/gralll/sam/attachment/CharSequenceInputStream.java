@@ -0,0 +1,68 @@
+package com.gralll.sam.attachment;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Bytes of a string encoded through a fixed buffer as they are read, so an event body is not copied.
+ * Malformed characters are replaced.
+ */
+final class CharSequenceInputStream extends InputStream {
+
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars;
+    private final ByteBuffer bytes;
+    private boolean encoded;
+
+    CharSequenceInputStream(CharSequence text, Charset charset, int bufferSize) {
+        this.encoder = charset.newEncoder()
+                              .onMalformedInput(CodingErrorAction.REPLACE)
+                              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = CharBuffer.wrap(text);
+        this.bytes = ByteBuffer.allocate(bufferSize);
+        bytes.flip();
+    }
+
+    @Override
+    public int read() {
+        return fill() ? bytes.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, bytes.remaining());
+        bytes.get(buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return bytes.remaining();
+    }
+
+    private boolean fill() {
+        while (!bytes.hasRemaining()) {
+            if (encoded) {
+                return false;
+            }
+            bytes.clear();
+            // The whole input is there, so every call is the last one until it is consumed
+            if (encoder.encode(chars, bytes, true).isUnderflow()) {
+                encoder.flush(bytes);
+                encoded = true;
+            }
+            bytes.flip();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,309 @@
+package com.gralll.sam.attachment;
+
+import com.gralll.sam.exception.ContactUsLambdaClientException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Streaming multipart/form-data parser: a part body is handed over as a stream ending at the next
+ * boundary, so a file passes through a fixed buffer and is never held as a whole.
+ */
+public final class MultipartParser {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_HEADERS_LENGTH = 8192;
+
+    private final InputStream input;
+    // CRLF--boundary, the first delimiter comes without CRLF
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean eof;
+
+    private MultipartParser(InputStream input, String boundary) {
+        this.input = input;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        this.buffer = new byte[Math.max(BUFFER_SIZE, delimiter.length * 2)];
+    }
+
+    /**
+     * A part of a form. The body must be read by the handler before it returns, otherwise it is skipped.
+     */
+    public interface Part {
+
+        String getName();
+
+        /**
+         * @return file name as sent by a browser, null for a plain field
+         */
+        String getFileName();
+
+        String getContentType();
+
+        InputStream getBody();
+    }
+
+    @FunctionalInterface
+    public interface PartHandler {
+        void handle(Part part) throws IOException;
+    }
+
+    /**
+     * @param contentType Content-Type header with a boundary parameter
+     * @throws ContactUsLambdaClientException if the body is not valid multipart/form-data
+     */
+    public static void parse(InputStream input, String contentType, PartHandler handler) throws IOException {
+        new MultipartParser(input, getBoundary(contentType)).parse(handler);
+    }
+
+    static String getBoundary(String contentType) {
+        for (String parameter : contentType.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.regionMatches(true, 0, "boundary=", 0, 9)) {
+                String boundary = unquote(trimmed.substring(9));
+                if (!boundary.isEmpty() && boundary.length() <= 70) {
+                    return boundary;
+                }
+            }
+        }
+        throw new ContactUsLambdaClientException("Multipart boundary is missing.", null);
+    }
+
+    private void parse(PartHandler handler) throws IOException {
+        // Preamble, the first delimiter may start the body right away
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        position = 0;
+        limit = 2;
+        PartStream preamble = new PartStream();
+        preamble.skip(Long.MAX_VALUE);
+        while (!isCloseDelimiter()) {
+            skipLineEnd();
+            PartHeaders headers = readHeaders();
+            PartStream body = new PartStream();
+            handler.handle(new Part() {
+                @Override
+                public String getName() {
+                    return headers.name;
+                }
+
+                @Override
+                public String getFileName() {
+                    return headers.fileName;
+                }
+
+                @Override
+                public String getContentType() {
+                    return headers.contentType;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return body;
+                }
+            });
+            body.skip(Long.MAX_VALUE);
+        }
+    }
+
+    // "--" after a delimiter ends the body
+    private boolean isCloseDelimiter() throws IOException {
+        if (!fill(2)) {
+            throw malformed();
+        }
+        return buffer[position] == '-' && buffer[position + 1] == '-';
+    }
+
+    private void skipLineEnd() throws IOException {
+        // Transport padding is allowed before CRLF
+        while (fill(1) && (buffer[position] == ' ' || buffer[position] == '\t')) {
+            position++;
+        }
+        if (!fill(2) || buffer[position] != '\r' || buffer[position + 1] != '\n') {
+            throw malformed();
+        }
+        position += 2;
+    }
+
+    private PartHeaders readHeaders() throws IOException {
+        PartHeaders headers = new PartHeaders();
+        int length = 0;
+        for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+            length += line.length();
+            if (length > MAX_HEADERS_LENGTH) {
+                throw new ContactUsLambdaClientException("Multipart headers are too long.", null);
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw malformed();
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if ("content-disposition".equals(name)) {
+                headers.name = getParameter(value, "name");
+                headers.fileName = getParameter(value, "filename");
+            } else if ("content-type".equals(name)) {
+                headers.contentType = value;
+            }
+        }
+        if (headers.name == null) {
+            throw new ContactUsLambdaClientException("Multipart part has no name.", null);
+        }
+        return headers;
+    }
+
+    // Header lines are UTF-8 as browsers send them, file names included
+    private String readLine() throws IOException {
+        int start = position;
+        while (true) {
+            for (int i = start; i + 1 < limit; i++) {
+                if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+                    String line = new String(buffer, position, i - position, StandardCharsets.UTF_8);
+                    position = i + 2;
+                    return line;
+                }
+            }
+            if (limit - position >= MAX_HEADERS_LENGTH) {
+                throw new ContactUsLambdaClientException("Multipart headers are too long.", null);
+            }
+            int scanned = limit - position;
+            if (!fill(scanned + 1)) {
+                throw malformed();
+            }
+            start = position + Math.max(0, scanned - 1);
+        }
+    }
+
+    /**
+     * @return true if at least count bytes are buffered, compacting the buffer if needed
+     */
+    private boolean fill(int count) throws IOException {
+        if (limit - position >= count) {
+            return true;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        while (limit - position < count && !eof) {
+            int read = input.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+        return limit - position >= count;
+    }
+
+    private int indexOfDelimiter() {
+        byte first = delimiter[0];
+        for (int i = position; i <= limit - delimiter.length; i++) {
+            if (buffer[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < delimiter.length && buffer[i + j] == delimiter[j]) {
+                j++;
+            }
+            if (j == delimiter.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String getParameter(String header, String name) {
+        for (String parameter : header.split(";")) {
+            String trimmed = parameter.trim();
+            int equals = trimmed.indexOf('=');
+            if (equals > 0 && trimmed.substring(0, equals).trim().equalsIgnoreCase(name)) {
+                return unquote(trimmed.substring(equals + 1).trim());
+            }
+        }
+        return null;
+    }
+
+    private static String unquote(String value) {
+        return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")
+                ? value.substring(1, value.length() - 1)
+                : value;
+    }
+
+    private static ContactUsLambdaClientException malformed() {
+        return new ContactUsLambdaClientException("Multipart body is malformed.", null);
+    }
+
+    private static final class PartHeaders {
+        private String name;
+        private String fileName;
+        private String contentType;
+    }
+
+    /**
+     * Bytes up to the next delimiter. Only bytes which can not be a start of a delimiter are returned,
+     * the rest stays buffered until more input arrives.
+     */
+    private final class PartStream extends InputStream {
+
+        private boolean ended;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (ended) {
+                return -1;
+            }
+            if (length == 0) {
+                return 0;
+            }
+            fill(delimiter.length);
+            int found = indexOfDelimiter();
+            int available;
+            if (found == position) {
+                position += delimiter.length;
+                ended = true;
+                return -1;
+            } else if (found > position) {
+                available = found - position;
+            } else if (eof) {
+                throw malformed();
+            } else {
+                available = limit - position - (delimiter.length - 1);
+                if (available <= 0) {
+                    // Less than a delimiter is buffered, compact and read more
+                    fill(limit - position + 1);
+                    return read(target, offset, length);
+                }
+            }
+            int count = Math.min(length, available);
+            System.arraycopy(buffer, position, target, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            byte[] discard = new byte[BUFFER_SIZE];
+            long skipped = 0;
+            while (skipped < count) {
+                int read = read(discard, 0, (int) Math.min(discard.length, count - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.gralll.sam.attachment;
+
+import com.gralll.sam.exception.ContactUsLambdaClientException;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.exception.ContactUsLambdaValidationException;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.model.ProxyEvent;
+import com.gralll.sam.validation.ContactUsRequestValidator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads a multipart/form-data ContactUs request: text parts are the form fields,
+ * file parts are streamed to {@link AttachmentService} as they are decoded.
+ * <p>
+ * The event body is a string anyway, so it is not copied once more: a base64 body is decoded
+ * through a fixed buffer while the parts are parsed.
+ */
+public class MultipartRequestReader {
+
+    public static final String ATTACHMENTS_FIELD = "attachments";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final AttachmentService attachmentService;
+
+    public MultipartRequestReader(AttachmentService attachmentService) {
+        this.attachmentService = attachmentService;
+    }
+
+    /**
+     * @return a validated and normalized request with keys and a digest of stored attachments
+     * @throws ContactUsLambdaValidationException if a field or a file is rejected,
+     *                                            files stored by then are deleted
+     */
+    public ContactUsRequest read(ProxyEvent event) {
+        if (event.getBody() == null) {
+            throw new ContactUsLambdaValidationException(Collections.singletonMap("body", "is required"));
+        }
+        ContactUsRequest request = new ContactUsRequest();
+        List<String> keys = new ArrayList<>();
+        MessageDigest digest = sha256();
+        try (InputStream body = open(event)) {
+            MultipartParser.parse(body, event.getHeader("Content-Type"), part -> {
+                if (part.getFileName() == null) {
+                    setField(request, part.getName(), readField(part));
+                } else if (!part.getFileName().isEmpty()) {
+                    // An empty file input is sent without a name
+                    keys.add(storeFile(part, keys.size(), digest));
+                }
+            });
+            ContactUsRequest validated = ContactUsRequestValidator.validate(request);
+            validated.setAttachments(keys);
+            if (!keys.isEmpty()) {
+                validated.setAttachmentsDigest(Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest()));
+            }
+            return validated;
+        } catch (IOException | IllegalArgumentException e) {
+            attachmentService.delete(keys);
+            throw new ContactUsLambdaClientException("Multipart ContactUs request reading failed.", e);
+        } catch (RuntimeException e) {
+            attachmentService.delete(keys);
+            throw e;
+        }
+    }
+
+    private static InputStream open(ProxyEvent event) {
+        return event.isBase64Encoded()
+                ? Base64.getDecoder().wrap(new CharSequenceInputStream(event.getBody(), US_ASCII, BUFFER_SIZE))
+                : new CharSequenceInputStream(event.getBody(), UTF_8, BUFFER_SIZE);
+    }
+
+    private String storeFile(MultipartParser.Part part, int stored, MessageDigest digest) throws IOException {
+        if (!attachmentService.isEnabled()) {
+            throw new ContactUsLambdaClientException("Attachments are not supported.", null);
+        }
+        if (stored == attachmentService.getMaxCount()) {
+            throw new ContactUsLambdaValidationException(Collections.singletonMap(ATTACHMENTS_FIELD,
+                    "must be at most " + attachmentService.getMaxCount() + " files"));
+        }
+        if (!attachmentService.isAllowed(part.getContentType())) {
+            throw new ContactUsLambdaValidationException(Collections.singletonMap(ATTACHMENTS_FIELD,
+                    AttachmentService.sanitize(part.getFileName()) + " has a type which is not allowed"));
+        }
+        digest.update(part.getFileName().getBytes(UTF_8));
+        digest.update((byte) 0);
+        return attachmentService.store(part.getFileName(), part.getContentType(),
+                new DigestInputStream(part.getBody(), digest));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new ContactUsLambdaServerException("SHA-256 is not available.", e);
+        }
+    }
+
+    // Reads at most one byte more than a field may have, the validator reports a longer one
+    private static String readField(MultipartParser.Part part) throws IOException {
+        int maxLength = ContactUsRequestValidator.maxLength(part.getName());
+        if (maxLength == 0) {
+            throw new ContactUsLambdaClientException("Unknown multipart field " + part.getName() + ".", null);
+        }
+        // UTF-8 takes up to 4 bytes per character
+        int maxBytes = maxLength * 4 + 1;
+        ByteArrayOutputStream field = new ByteArrayOutputStream(Math.min(maxBytes, 256));
+        byte[] buffer = new byte[Math.min(maxBytes, BUFFER_SIZE)];
+        InputStream body = part.getBody();
+        for (int read = body.read(buffer); read >= 0 && field.size() < maxBytes; read = body.read(buffer)) {
+            field.write(buffer, 0, Math.min(read, maxBytes - field.size()));
+        }
+        return field.toString(UTF_8.name());
+    }
+
+    private static void setField(ContactUsRequest request, String name, String value) {
+        switch (name) {
+            case "subject":
+                request.setSubject(value);
+                break;
+            case "username":
+                request.setUsername(value);
+                break;
+            case "phone":
+                request.setPhone(value);
+                break;
+            case "email":
+                request.setEmail(value);
+                break;
+            case "question":
+                request.setQuestion(value);
+                break;
+            case "website":
+                request.setWebsite(value);
+                break;
+            default:
+                throw new ContactUsLambdaClientException("Unknown multipart field " + name + ".", null);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.gralll.sam.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * An immutable snapshot of reference data: loaded once at init, then reloaded in background
+ * once it is older than a refresh interval. Readers keep getting the previous snapshot meanwhile
+ * and on a failed reload, so a read never waits for a load.
+ * <p>
+ * A reload is triggered by a read rather than a timer, as a container is frozen between invocations.
+ */
+public class SnapshotHolder<T> implements Supplier<T> {
+
+    private static final Logger LOG = LogManager.getLogger(SnapshotHolder.class);
+
+    private final String name;
+    private final UnaryOperator<T> loader;
+    private final long refreshNanos;
+    private final Executor executor;
+    private final LongSupplier nanoClock;
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private volatile T snapshot;
+    private volatile long loadedAt;
+
+    public SnapshotHolder(String name, UnaryOperator<T> loader, long refreshMillis, Executor executor) {
+        this(name, loader, refreshMillis, executor, System::nanoTime);
+    }
+
+    /**
+     * @param loader gets the previous snapshot, null at first, so unchanged parts can be reused
+     */
+    public SnapshotHolder(String name, UnaryOperator<T> loader, long refreshMillis, Executor executor,
+                          LongSupplier nanoClock) {
+        this.name = name;
+        this.loader = loader;
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMillis);
+        this.executor = executor;
+        this.nanoClock = nanoClock;
+        this.snapshot = loader.apply(null);
+        this.loadedAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * @return a single daemon thread for reloads, it never keeps a container from freezing
+     */
+    public static ExecutorService newReloadExecutor(String threadName) {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public T get() {
+        if (nanoClock.getAsLong() - loadedAt > refreshNanos && reloading.compareAndSet(false, true)) {
+            executor.execute(this::reload);
+        }
+        return snapshot;
+    }
+
+    private void reload() {
+        try {
+            snapshot = loader.apply(snapshot);
+            LOG.info("{} has been reloaded.", name);
+        } catch (RuntimeException e) {
+            LOG.warn("{} reload failed, the previous snapshot is kept.", name, e);
+        } finally {
+            loadedAt = nanoClock.getAsLong();
+            reloading.set(false);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.gralll.sam.digest;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.gralll.sam.attachment.AttachmentService;
+import com.gralll.sam.template.HtmlEscaper;
+import com.gralll.sam.template.Template;
+import com.gralll.sam.template.TemplateLoader;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Renders a digest email straight from ContactUsTable items: every item is appended to one builder
+ * as soon as its page is read, no request objects or per-submission strings are built.
+ * <p>
+ * Templates are digest/header.html, digest/site.html, digest/entry.html and digest/footer.html.
+ */
+public class DigestRenderer {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+                                                                         .withZone(ZoneOffset.UTC);
+    // Slots of an entry, the rest of an email is about a quarter of it
+    private static final int ENTRY_SIZE_ESTIMATE = 2048;
+
+    private final AttachmentService attachmentService;
+    private final String header;
+    private final Template<String> siteTemplate;
+    private final Template<Map<String, AttributeValue>> entryTemplate;
+    private final Template<Digest> footerTemplate;
+
+    /**
+     * @param attachmentService makes links to attachments, which digests can not carry
+     */
+    public DigestRenderer(AttachmentService attachmentService) {
+        this.attachmentService = attachmentService;
+        this.header = TemplateLoader.readResource("digest/header.html");
+        this.siteTemplate = TemplateLoader.load("digest/site.html",
+                Collections.<String, Function<String, String>>singletonMap("site", site -> site));
+        this.entryTemplate = TemplateLoader.load("digest/entry.html", entryBindings());
+        this.footerTemplate = TemplateLoader.load("digest/footer.html", footerBindings());
+    }
+
+    /**
+     * @param expectedEntries capacity hint
+     */
+    public Digest start(int expectedEntries) {
+        return new Digest(expectedEntries);
+    }
+
+    /**
+     * One digest being rendered, not thread-safe.
+     */
+    public final class Digest {
+
+        private final StringBuilder html;
+        private int count;
+        private long until;
+
+        private Digest(int expectedEntries) {
+            html = new StringBuilder(header.length() + Math.min(expectedEntries, 64) * ENTRY_SIZE_ESTIMATE);
+            html.append(header);
+        }
+
+        public void addSite(String tenantId) {
+            siteTemplate.renderTo(tenantId, html);
+        }
+
+        public void addEntry(Map<String, AttributeValue> item) {
+            entryTemplate.renderTo(item, html);
+            count++;
+        }
+
+        /**
+         * @param untilMillis end of the digest window
+         * @return the email body
+         */
+        public String finish(long untilMillis) {
+            until = untilMillis;
+            footerTemplate.renderTo(this, html);
+            return html.toString();
+        }
+    }
+
+    private Map<String, Function<Map<String, AttributeValue>, String>> entryBindings() {
+        Map<String, Function<Map<String, AttributeValue>, String>> bindings = new HashMap<>();
+        bindings.put("subject", item -> getString(item, "Subject"));
+        bindings.put("username", item -> getString(item, "Username"));
+        bindings.put("email", item -> getString(item, "Email"));
+        bindings.put("phone", item -> getString(item, "Phone"));
+        bindings.put("question", item -> getString(item, "Question"));
+        bindings.put("submittedAt", item -> {
+            AttributeValue createdAt = item.get("CreatedAt");
+            return createdAt != null
+                    ? TIME_FORMAT.format(Instant.ofEpochMilli(Long.parseLong(createdAt.getN())))
+                    : null;
+        });
+        bindings.put("attachments", this::renderAttachments);
+        return Collections.unmodifiableMap(bindings);
+    }
+
+    private static Map<String, Function<Digest, String>> footerBindings() {
+        Map<String, Function<Digest, String>> bindings = new HashMap<>();
+        bindings.put("count", digest -> Integer.toString(digest.count));
+        bindings.put("until", digest -> TIME_FORMAT.format(Instant.ofEpochMilli(digest.until)));
+        return Collections.unmodifiableMap(bindings);
+    }
+
+    // Raw slot, names are escaped here
+    private String renderAttachments(Map<String, AttributeValue> item) {
+        AttributeValue attachments = item.get("Attachments");
+        if (attachments == null || attachments.getSS() == null || attachments.getSS().isEmpty()) {
+            return null;
+        }
+        StringBuilder links = new StringBuilder("        <p>Attachments:");
+        for (String key : attachments.getSS()) {
+            links.append(" <a href=\"");
+            HtmlEscaper.escape(attachmentService.getLink(key).toString(), links);
+            links.append("\">");
+            HtmlEscaper.escape(AttachmentService.getFileName(key), links);
+            links.append("</a>");
+        }
+        return links.append("</p>\n").toString();
+    }
+
+    private static String getString(Map<String, AttributeValue> item, String name) {
+        AttributeValue value = item.get(name);
+        return value != null ? value.getS() : null;
+    }
+}
@@ -0,0 +1,11 @@
+package com.gralll.sam.exception;
+
+/**
+ * The same request is being handled by another invocation right now.
+ */
+public class ContactUsLambdaConflictException extends ContactUsLambdaClientException {
+
+    public ContactUsLambdaConflictException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,32 @@
+package com.gralll.sam.exception;
+
+/**
+ * Thrown when only one of email delivery and persistence has succeeded.
+ * Keeps enough state to find and repair the affected submission.
+ */
+public class ContactUsLambdaPartialFailureException extends ContactUsLambdaServerException {
+
+    private final String submissionId;
+    private final boolean emailSent;
+    private final boolean persisted;
+
+    public ContactUsLambdaPartialFailureException(String message, Throwable cause,
+                                                  String submissionId, boolean emailSent, boolean persisted) {
+        super(message, cause);
+        this.submissionId = submissionId;
+        this.emailSent = emailSent;
+        this.persisted = persisted;
+    }
+
+    public String getSubmissionId() {
+        return submissionId;
+    }
+
+    public boolean isEmailSent() {
+        return emailSent;
+    }
+
+    public boolean isPersisted() {
+        return persisted;
+    }
+}
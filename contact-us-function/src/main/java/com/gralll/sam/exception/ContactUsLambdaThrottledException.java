@@ -0,0 +1,18 @@
+package com.gralll.sam.exception;
+
+/**
+ * A request has been shed by admission control or throttled by AWS, it can be retried later.
+ */
+public class ContactUsLambdaThrottledException extends ContactUsLambdaClientException {
+
+    private final long retryAfterSeconds;
+
+    public ContactUsLambdaThrottledException(String message, Throwable cause, long retryAfterSeconds) {
+        super(message, cause);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
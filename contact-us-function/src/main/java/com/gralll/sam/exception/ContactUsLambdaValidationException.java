@@ -0,0 +1,21 @@
+package com.gralll.sam.exception;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A request has been rejected before reaching SES and DynamoDB, errors are keyed by field.
+ */
+public class ContactUsLambdaValidationException extends ContactUsLambdaClientException {
+
+    private final Map<String, String> fieldErrors;
+
+    public ContactUsLambdaValidationException(Map<String, String> fieldErrors) {
+        super("ContactUs request is not valid: " + fieldErrors, null);
+        this.fieldErrors = Collections.unmodifiableMap(fieldErrors);
+    }
+
+    public Map<String, String> getFieldErrors() {
+        return fieldErrors;
+    }
+}
@@ -0,0 +1,169 @@
+package com.gralll.sam.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SegmentedStringWriter;
+import com.gralll.sam.exception.ContactUsLambdaClientException;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.exception.ContactUsLambdaValidationException;
+import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.model.SubmissionPage;
+import com.gralll.sam.validation.ContactUsRequestValidator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Hand-written streaming (de)serialization of the models, the same JSON as Jackson databind
+ * produces and accepts, but without bean introspection on the first call of a container
+ * and without per-call reflective property access.
+ */
+public class JsonCodec {
+
+    private final JsonFactory jsonFactory;
+
+    public JsonCodec(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Like databind defaults: unknown properties are rejected, scalars are taken as strings,
+     * a JSON null gives a null request. A value over its field limit is rejected
+     * before a string of it is created.
+     */
+    public ContactUsRequest readContactUsRequest(String json) {
+        if (json == null) {
+            throw new ContactUsLambdaClientException("ContactUs request body is absent.", null);
+        }
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new ContactUsLambdaClientException("ContactUs request is not a JSON object.", null);
+            }
+            ContactUsRequest request = new ContactUsRequest();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (ContactUsRequestValidator.maxLength(field) == 0) {
+                    throw new ContactUsLambdaClientException("Unknown ContactUs request field " + field + ".", null);
+                }
+                String value = readString(parser, field);
+                switch (field) {
+                    case "subject":
+                        request.setSubject(value);
+                        break;
+                    case "username":
+                        request.setUsername(value);
+                        break;
+                    case "phone":
+                        request.setPhone(value);
+                        break;
+                    case "email":
+                        request.setEmail(value);
+                        break;
+                    case "question":
+                        request.setQuestion(value);
+                        break;
+                    case "website":
+                        request.setWebsite(value);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return request;
+        } catch (IOException e) {
+            throw new ContactUsLambdaClientException("ContactUs request deserialization failed.", e);
+        }
+    }
+
+    /**
+     * @return {"response": message}
+     */
+    public String writeResponseBody(String message) {
+        return writeResponseBody(message, Collections.emptyMap());
+    }
+
+    /**
+     * @return {"response": message, "errors": {field: error}}, errors are omitted if empty
+     */
+    public String writeResponseBody(String message, Map<String, String> errors) {
+        SegmentedStringWriter writer = new SegmentedStringWriter(jsonFactory._getBufferRecycler());
+        try (JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeStringField("response", message);
+            if (!errors.isEmpty()) {
+                generator.writeFieldName("errors");
+                writeStringMap(generator, errors);
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new ContactUsLambdaServerException("Writing ContactUsResponseBody as string failed.", e);
+        }
+        return writer.getAndClear();
+    }
+
+    public String writeSubmissionPage(SubmissionPage page) {
+        SegmentedStringWriter writer = new SegmentedStringWriter(jsonFactory._getBufferRecycler());
+        try (JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("items");
+            for (Map<String, String> item : page.getItems()) {
+                writeStringMap(generator, item);
+            }
+            generator.writeEndArray();
+            generator.writeStringField("nextCursor", page.getNextCursor());
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new ContactUsLambdaServerException("Writing SubmissionPage as string failed.", e);
+        }
+        return writer.getAndClear();
+    }
+
+    /**
+     * Writes a proxy response straight to a Lambda output stream, the stream is left open.
+     */
+    public void writeProxyResponse(ContactUsProxyResponse response, OutputStream output) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(output)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeNumberField("statusCode", response.getStatusCode());
+            generator.writeFieldName("headers");
+            if (response.getHeaders() == null) {
+                generator.writeNull();
+            } else {
+                writeStringMap(generator, response.getHeaders());
+            }
+            generator.writeStringField("body", response.getBody());
+            generator.writeBooleanField("isBase64Encoded", response.getIsBase64Encoded());
+            generator.writeEndObject();
+        }
+    }
+
+    private static String readString(JsonParser parser, String field) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null || !token.isScalarValue()) {
+            throw new ContactUsLambdaClientException("ContactUs request field " + field + " is not a string.", null);
+        }
+        if (token == JsonToken.VALUE_STRING && parser.getTextLength() > ContactUsRequestValidator.maxLength(field)) {
+            throw new ContactUsLambdaValidationException(
+                    Collections.singletonMap(field, ContactUsRequestValidator.tooLong(field)));
+        }
+        return parser.getValueAsString();
+    }
+
+    private static void writeStringMap(JsonGenerator generator, Map<String, String> values) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            generator.writeStringField(value.getKey(), value.getValue());
+        }
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,49 @@
+package com.gralll.sam.logging;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.gralll.sam.model.ProxyEvent;
+import com.gralll.sam.service.RequestService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Dumps whole API Gateway requests. Serialization only happens if the dump is written:
+ * every request on debug level, otherwise a sampled share of requests as a single line on info.
+ * Multipart requests are not dumped, they may carry whole files.
+ */
+public class RequestLogger {
+
+    private static final Logger LOG = LogManager.getLogger(RequestLogger.class);
+
+    private final RequestService requestService;
+    private final double sampleRate;
+
+    /**
+     * @param sampleRate share of requests dumped on info level, from 0 to 1
+     */
+    public RequestLogger(RequestService requestService, double sampleRate) {
+        this.requestService = requestService;
+        this.sampleRate = sampleRate;
+    }
+
+    public void log(APIGatewayProxyRequestEvent request) {
+        if (isMultipart(request)) {
+            LOG.debug("Multipart request of {} characters is not dumped.",
+                    request.getBody() != null ? request.getBody().length() : 0);
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug(requestService.getAsPrettyString(request));
+        } else if (isSampled() && LOG.isInfoEnabled()) {
+            LOG.info("Sampled request: {}", requestService.getAsString(request));
+        }
+    }
+
+    private static boolean isMultipart(APIGatewayProxyRequestEvent request) {
+        return new ProxyEvent(null, request.getHeaders(), request.getMultiValueHeaders(), null).isMultipart();
+    }
+
+    private boolean isSampled() {
+        return sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+}
@@ -0,0 +1,68 @@
+package com.gralll.sam.metrics;
+
+/**
+ * Fixed-size log-linear histogram in the spirit of HdrHistogram: exact below 32,
+ * then 16 linear buckets per power of two, i.e. about 6% precision up to 2^36.
+ * Recording is a few shifts and an increment, nothing is allocated.
+ */
+public class Histogram {
+
+    private static final int LINEAR_LIMIT = 32;
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_SHIFT = 32;
+    private static final long MAX_VALUE = (2L * SUB_BUCKETS << MAX_SHIFT) - 1;
+
+    private final long[] counts = new long[LINEAR_LIMIT + MAX_SHIFT * SUB_BUCKETS];
+    private long totalCount;
+    private long max;
+
+    public synchronized void record(long value) {
+        long clamped = Math.min(Math.max(value, 0), MAX_VALUE);
+        counts[indexOf(clamped)]++;
+        totalCount++;
+        max = Math.max(max, clamped);
+    }
+
+    /**
+     * @param quantile from 0 to 1
+     * @return the highest value equivalent to the quantile, 0 if nothing is recorded
+     */
+    public synchronized long getValueAtQuantile(double quantile) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * totalCount));
+        long seen = 0;
+        for (int index = 0; index < counts.length; index++) {
+            seen += counts[index];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(index), max);
+            }
+        }
+        return 0;
+    }
+
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
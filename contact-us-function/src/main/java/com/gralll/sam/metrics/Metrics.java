@@ -0,0 +1,167 @@
+package com.gralll.sam.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Per-stage latencies of a container, flushed once per invocation as a CloudWatch
+ * Embedded Metric Format line on stdout, which Lambda ships to CloudWatch Logs.
+ * <p>
+ * Samples of the invocation become EMF metrics, so CloudWatch computes percentiles
+ * across containers. Histograms of the whole container life go along as properties.
+ * Recording is a clock read and a synchronized increment; everything is skipped if disabled.
+ */
+public final class Metrics {
+
+    public static final String EVENT_DECODE = "EventDecode";
+    public static final String BODY_PARSE = "BodyParse";
+    public static final String SPAM_FILTER = "SpamFilter";
+    public static final String TEMPLATE_RENDER = "TemplateRender";
+    public static final String SES_SEND = "SesSend";
+    public static final String DB_PUT = "DbPut";
+    public static final String DB_QUERY = "DbQuery";
+    public static final String RESPONSE_SERIALIZE = "ResponseSerialize";
+    public static final String HANDLER = "Handler";
+
+    // EMF limit of values per metric
+    private static final int MAX_SAMPLES = 100;
+    private static final String FUNCTION_NAME = System.getenv().getOrDefault("AWS_LAMBDA_FUNCTION_NAME", "local");
+
+    private static final Map<String, Stage> STAGES = new ConcurrentHashMap<>();
+    private static volatile boolean enabled;
+    private static volatile boolean paused;
+    private static volatile boolean warmUp;
+    private static volatile boolean coldStart = true;
+    private static volatile String namespace = "ContactUs";
+
+    private Metrics() {
+    }
+
+    public static void configure(boolean enabled, String namespace) {
+        Metrics.enabled = enabled;
+        Metrics.namespace = namespace;
+    }
+
+    public static <T> T time(String stage, Supplier<T> action) {
+        if (!enabled) {
+            return action.get();
+        }
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            record(stage, start);
+        }
+    }
+
+    public static void time(String stage, Runnable action) {
+        time(stage, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public static void record(String stage, long startNanos) {
+        if (enabled && !paused) {
+            STAGES.computeIfAbsent(stage, ignored -> new Stage())
+                  .record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        }
+    }
+
+    /**
+     * Synthetic warm-up traffic must not skew the latencies of real requests.
+     */
+    public static <T> T withoutRecording(Supplier<T> action) {
+        paused = true;
+        try {
+            return action.get();
+        } finally {
+            paused = false;
+        }
+    }
+
+    /**
+     * Marks the current invocation as a warm-up one in its dimensions.
+     */
+    public static void markWarmUp() {
+        warmUp = true;
+    }
+
+    /**
+     * Writes an EMF line of the current invocation and starts a new one.
+     *
+     * @param statusCode response status, defines the Outcome dimension
+     * @return the written line, null if metrics are disabled
+     */
+    public static String flush(int statusCode) {
+        if (!enabled) {
+            return null;
+        }
+        StringBuilder metrics = new StringBuilder("{\"Name\":\"Requests\",\"Unit\":\"Count\"}");
+        StringBuilder values = new StringBuilder();
+        StringBuilder container = new StringBuilder();
+        for (Map.Entry<String, Stage> entry : new TreeMap<>(STAGES).entrySet()) {
+            entry.getValue().flush(entry.getKey(), metrics, values, container);
+        }
+
+        String line = "{\"_aws\":{\"Timestamp\":" + System.currentTimeMillis()
+                + ",\"CloudWatchMetrics\":[{\"Namespace\":\"" + namespace
+                + "\",\"Dimensions\":[[\"Function\",\"Start\",\"RequestType\",\"Outcome\"]],\"Metrics\":["
+                + metrics + "]}]}"
+                + ",\"Function\":\"" + FUNCTION_NAME
+                + "\",\"Start\":\"" + (coldStart ? "Cold" : "Warm")
+                + "\",\"RequestType\":\"" + (warmUp ? "WarmUp" : "Real")
+                + "\",\"Outcome\":\"" + outcomeOf(statusCode)
+                + "\",\"Requests\":1" + values
+                + ",\"Container\":{" + container + "}}";
+        coldStart = false;
+        warmUp = false;
+        System.out.println(line);
+        return line;
+    }
+
+    private static String outcomeOf(int statusCode) {
+        if (statusCode == 429) {
+            return "Throttled";
+        }
+        if (statusCode >= 500) {
+            return "ServerError";
+        }
+        return statusCode >= 400 ? "ClientError" : "Success";
+    }
+
+    private static final class Stage {
+        private final Histogram histogram = new Histogram();
+        private final long[] samples = new long[MAX_SAMPLES];
+        private int sampleCount;
+
+        private synchronized void record(long micros) {
+            histogram.record(micros);
+            if (sampleCount < MAX_SAMPLES) {
+                samples[sampleCount++] = micros;
+            }
+        }
+
+        private synchronized void flush(String name, StringBuilder metrics, StringBuilder values,
+                                        StringBuilder container) {
+            if (sampleCount > 0) {
+                metrics.append(",{\"Name\":\"").append(name).append("\",\"Unit\":\"Milliseconds\"}");
+                values.append(",\"").append(name).append("\":[");
+                for (int i = 0; i < sampleCount; i++) {
+                    values.append(i == 0 ? "" : ",").append(samples[i] / 1000.0);
+                }
+                values.append(']');
+                sampleCount = 0;
+            }
+            container.append(container.length() == 0 ? "\"" : ",\"").append(name)
+                     .append("\":{\"count\":").append(histogram.getTotalCount())
+                     .append(",\"p50\":").append(histogram.getValueAtQuantile(0.5) / 1000.0)
+                     .append(",\"p99\":").append(histogram.getValueAtQuantile(0.99) / 1000.0)
+                     .append(",\"max\":").append(histogram.getMax() / 1000.0)
+                     .append('}');
+        }
+    }
+}
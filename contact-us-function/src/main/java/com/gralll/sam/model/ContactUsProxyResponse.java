@@ -16,10 +16,14 @@ public class ContactUsProxyResponse {
     private final boolean isBase64Encoded;
 
     public ContactUsProxyResponse(int statusCode, Map<String, String> headers, String body) {
+        this(statusCode, headers, body, false);
+    }
+
+    public ContactUsProxyResponse(int statusCode, Map<String, String> headers, String body, boolean isBase64Encoded) {
         this.statusCode = statusCode;
         this.headers = headers;
         this.body = body;
-        this.isBase64Encoded = false;
+        this.isBase64Encoded = isBase64Encoded;
     }
 
     public int getStatusCode() {
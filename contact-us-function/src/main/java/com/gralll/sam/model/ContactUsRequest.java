@@ -1,11 +1,24 @@
 package com.gralll.sam.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Collections;
+import java.util.List;
+
 public class ContactUsRequest {
     private String subject;
     private String username;
     private String phone;
     private String email;
     private String question;
+    // Honeypot, a hidden form field left empty by people
+    private String website;
+    // Site of the request, set by the function and never read from a body
+    private String tenantId;
+    // Object keys of uploaded files, set by the function as well
+    private List<String> attachments = Collections.emptyList();
+    // SHA-256 of names and contents of uploaded files, so retries of the same files are recognized
+    private String attachmentsDigest;
 
     public ContactUsRequest() {
     }
@@ -57,4 +70,42 @@ public class ContactUsRequest {
     public void setQuestion(String question) {
         this.question = question;
     }
-}
\ No newline at end of file
+
+    public String getWebsite() {
+        return website;
+    }
+
+    public void setWebsite(String website) {
+        this.website = website;
+    }
+
+    @JsonIgnore
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    @JsonIgnore
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    @JsonIgnore
+    public List<String> getAttachments() {
+        return attachments;
+    }
+
+    @JsonIgnore
+    public void setAttachments(List<String> attachments) {
+        this.attachments = attachments != null ? attachments : Collections.emptyList();
+    }
+
+    @JsonIgnore
+    public String getAttachmentsDigest() {
+        return attachmentsDigest;
+    }
+
+    @JsonIgnore
+    public void setAttachmentsDigest(String attachmentsDigest) {
+        this.attachmentsDigest = attachmentsDigest;
+    }
+}
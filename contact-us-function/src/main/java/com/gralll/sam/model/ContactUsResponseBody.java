@@ -1,13 +1,32 @@
 package com.gralll.sam.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Collections;
+import java.util.Map;
+
 public class ContactUsResponseBody {
     private final String response;
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private final Map<String, String> errors;
 
     public ContactUsResponseBody(String response) {
+        this(response, Collections.emptyMap());
+    }
+
+    /**
+     * @param errors messages by request field, omitted if empty
+     */
+    public ContactUsResponseBody(String response, Map<String, String> errors) {
         this.response = response;
+        this.errors = errors;
     }
 
     public String getResponse() {
         return response;
     }
+
+    public Map<String, String> getErrors() {
+        return errors;
+    }
 }
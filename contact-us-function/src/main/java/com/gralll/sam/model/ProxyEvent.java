@@ -0,0 +1,118 @@
+package com.gralll.sam.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The only API Gateway event fields the function needs.
+ * Body is already decoded if the event was base64 encoded, apart from multipart bodies,
+ * which may be binary and are decoded while being streamed.
+ */
+public class ProxyEvent {
+
+    private final String httpMethod;
+    private final String body;
+    private final boolean base64Encoded;
+    private final Map<String, String> headers;
+    private final Map<String, List<String>> multiValueHeaders;
+    private final Map<String, String> queryStringParameters;
+    private final Map<String, String> pathParameters;
+    private final String sourceIp;
+
+    public ProxyEvent(String body, Map<String, String> headers, Map<String, List<String>> multiValueHeaders,
+                      String sourceIp) {
+        this(null, body, false, headers, multiValueHeaders, null, null, sourceIp);
+    }
+
+    public ProxyEvent(String httpMethod, String body, boolean base64Encoded, Map<String, String> headers,
+                      Map<String, List<String>> multiValueHeaders, Map<String, String> queryStringParameters,
+                      Map<String, String> pathParameters, String sourceIp) {
+        this.httpMethod = httpMethod;
+        this.body = body;
+        this.base64Encoded = base64Encoded;
+        this.sourceIp = sourceIp;
+        this.headers = headers != null ? headers : Collections.emptyMap();
+        this.multiValueHeaders = multiValueHeaders != null ? multiValueHeaders : Collections.emptyMap();
+        this.queryStringParameters = queryStringParameters != null ? queryStringParameters : Collections.emptyMap();
+        this.pathParameters = pathParameters != null ? pathParameters : Collections.emptyMap();
+    }
+
+    /**
+     * @return HTTP method, null for local invocations without one
+     */
+    public String getHttpMethod() {
+        return httpMethod;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @return true if the body is still base64 encoded
+     */
+    public boolean isBase64Encoded() {
+        return base64Encoded;
+    }
+
+    /**
+     * @return a copy with a decoded body
+     */
+    public ProxyEvent withBody(String decodedBody) {
+        return new ProxyEvent(httpMethod, decodedBody, false, headers, multiValueHeaders, queryStringParameters,
+                pathParameters, sourceIp);
+    }
+
+    public boolean isMultipart() {
+        return isMultipart(getHeader("Content-Type"));
+    }
+
+    public static boolean isMultipart(String contentType) {
+        return contentType != null && contentType.regionMatches(true, 0, "multipart/form-data", 0, 19);
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public Map<String, List<String>> getMultiValueHeaders() {
+        return multiValueHeaders;
+    }
+
+    public Map<String, String> getQueryStringParameters() {
+        return queryStringParameters;
+    }
+
+    public Map<String, String> getPathParameters() {
+        return pathParameters;
+    }
+
+    /**
+     * @return requestContext.identity.sourceIp, null for local invocations
+     */
+    public String getSourceIp() {
+        return sourceIp;
+    }
+
+    public boolean hasHeader(String name) {
+        return headers.containsKey(name) || multiValueHeaders.containsKey(name);
+    }
+
+    /**
+     * @return the first value of a header, names are matched case-insensitively as HTTP requires
+     */
+    public String getHeader(String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        for (Map.Entry<String, List<String>> header : multiValueHeaders.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,27 @@
+package com.gralll.sam.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A page of persisted submissions, newest first.
+ * Next cursor is null on the last page.
+ */
+public class SubmissionPage {
+
+    private final List<Map<String, String>> items;
+    private final String nextCursor;
+
+    public SubmissionPage(List<Map<String, String>> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Map<String, String>> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
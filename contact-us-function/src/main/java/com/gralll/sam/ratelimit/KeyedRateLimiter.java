@@ -0,0 +1,43 @@
+package com.gralll.sam.ratelimit;
+
+import com.gralll.sam.cache.LruTtlCache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket per key, e.g. per source IP.
+ * Buckets are dropped once they have not been used for as long as a refill takes, i.e. only full ones,
+ * so memory is bounded by active keys and a dropped key gets no more than it would have anyway.
+ */
+public class KeyedRateLimiter {
+
+    private final double capacity;
+    private final double refillPerSecond;
+    private final LongSupplier nanoClock;
+    private final LruTtlCache<String, TokenBucket> buckets;
+
+    public KeyedRateLimiter(double capacity, double refillPerSecond, int maxKeys) {
+        this(capacity, refillPerSecond, maxKeys, System::nanoTime);
+    }
+
+    public KeyedRateLimiter(double capacity, double refillPerSecond, int maxKeys, LongSupplier nanoClock) {
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.nanoClock = nanoClock;
+        long refillNanos = new TokenBucket(capacity, refillPerSecond, nanoClock).getRefillNanos();
+        this.buckets = new LruTtlCache<>(maxKeys, refillNanos, TimeUnit.NANOSECONDS, nanoClock);
+    }
+
+    /**
+     * @return 0 if a request with the key is admitted, otherwise nanos until it would be
+     */
+    public long tryAcquire(String key) {
+        TokenBucket bucket = buckets.computeIfAbsent(key,
+                ignored -> new TokenBucket(capacity, refillPerSecond, nanoClock));
+        long waitNanos = bucket.tryAcquire();
+        // The cache expires entries after creation, putting a bucket again counts its ttl from the last use
+        buckets.put(key, bucket);
+        return waitNanos;
+    }
+}
@@ -0,0 +1,75 @@
+package com.gralll.sam.ratelimit;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Paces sends of a background consumer to a rate: unlike admission of API requests, which are shed,
+ * a consumer waits for tokens as long as its invocation allows and leaves the rest for a later one.
+ * <p>
+ * Items are handed to the sender in chunks of as many as the bucket admits at once, so a bulk call
+ * sends no more than the bucket capacity at a time. A non-positive rate sends everything at once.
+ */
+public class SendPacer {
+
+    private final TokenBucket bucket;
+    private final LongSupplier nanoClock;
+    private final LongConsumer sleeper;
+
+    public SendPacer(double perSecond) {
+        this(perSecond > 0 ? new TokenBucket(Math.max(1, perSecond), perSecond) : null,
+                System::nanoTime, SendPacer::sleep);
+    }
+
+    public SendPacer(TokenBucket bucket, LongSupplier nanoClock, LongConsumer sleeper) {
+        this.bucket = bucket;
+        this.nanoClock = nanoClock;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * @param items        items by a caller key, in sending order
+     * @param sender       sends a chunk of items and returns ids of the sent ones by their keys
+     * @param timeoutNanos longest time to wait for tokens in total
+     * @return ids of sent items by their keys; items not handed to the sender before the timeout are absent,
+     * like failed ones, and the sender's own result tells them apart
+     */
+    public <T> Map<String, String> send(Map<String, T> items, Function<Map<String, T>, Map<String, String>> sender,
+                                        long timeoutNanos) {
+        if (bucket == null) {
+            return sender.apply(items);
+        }
+        long deadline = nanoClock.getAsLong() + timeoutNanos;
+        Map<String, String> sent = new LinkedHashMap<>();
+        Map<String, T> chunk = new LinkedHashMap<>();
+        for (Map.Entry<String, T> item : items.entrySet()) {
+            for (long waitNanos = bucket.tryAcquire(); waitNanos > 0; waitNanos = bucket.tryAcquire()) {
+                if (!chunk.isEmpty()) {
+                    sent.putAll(sender.apply(chunk));
+                    chunk = new LinkedHashMap<>();
+                } else if (nanoClock.getAsLong() + waitNanos > deadline || Thread.currentThread().isInterrupted()) {
+                    return sent;
+                } else {
+                    sleeper.accept(waitNanos);
+                }
+            }
+            chunk.put(item.getKey(), item.getValue());
+        }
+        if (!chunk.isEmpty()) {
+            sent.putAll(sender.apply(chunk));
+        }
+        return sent;
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.gralll.sam.ratelimit;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Classic token bucket: up to capacity requests at once, then refillPerSecond requests per second.
+ * Tokens are refilled lazily on acquisition, no timer threads are involved.
+ */
+public class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final double capacity;
+    private final double refillPerNano;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(double capacity, double refillPerSecond) {
+        this(capacity, refillPerSecond, System::nanoTime);
+    }
+
+    public TokenBucket(double capacity, double refillPerSecond, LongSupplier nanoClock) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / NANOS_PER_SECOND;
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * @return 0 if a token has been taken, otherwise nanos until the next token is available
+     */
+    public synchronized long tryAcquire() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * refillPerNano);
+        refilledAt = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / refillPerNano);
+    }
+
+    /**
+     * @return nanos after which an untouched bucket is full again
+     */
+    public long getRefillNanos() {
+        return (long) Math.ceil(capacity / refillPerNano);
+    }
+}
@@ -0,0 +1,38 @@
+package com.gralll.sam.resilience;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * A call has been rejected without reaching the service.
+ * It is an sdk exception, so callers treat it as any other client failure.
+ */
+public class CircuitBreakerOpenException extends AmazonClientException {
+
+    private final long retryAfterSeconds;
+
+    public CircuitBreakerOpenException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * @return the exception if it is a cause of an error, e.g. of a failed async submission, otherwise null
+     */
+    public static CircuitBreakerOpenException findIn(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CircuitBreakerOpenException) {
+                return (CircuitBreakerOpenException) cause;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isRetryable() {
+        return false;
+    }
+}
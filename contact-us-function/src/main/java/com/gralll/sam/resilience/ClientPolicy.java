@@ -0,0 +1,68 @@
+package com.gralll.sam.resilience;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.retry.PredefinedBackoffStrategies;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryMode;
+import com.amazonaws.retry.RetryPolicy;
+import com.gralll.sam.service.PropertyStorage;
+
+/**
+ * Timeouts, retries and circuit breaking of sdk clients, sized for a 15 s function
+ * instead of sdk defaults (no request timeout, 50 connections, 3 retries with a fixed backoff).
+ * <p>
+ * Retries use full jitter and a retry quota (throttled retries), so a failing service
+ * quickly stops getting retries on top of regular traffic.
+ */
+public class ClientPolicy {
+
+    private static final int BASE_BACKOFF_MILLIS = 50;
+    private static final int MAX_BACKOFF_MILLIS = 1000;
+
+    private final int connectTimeoutMillis;
+    private final int requestTimeoutMillis;
+    private final int maxExecutionMillis;
+    private final int maxRetries;
+    private final int maxConnections;
+    private final long deadlineMarginMillis;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    public ClientPolicy(PropertyStorage propertyStorage) {
+        this.connectTimeoutMillis = Integer.parseInt(propertyStorage.getValue("SDK_CONNECT_TIMEOUT_MS"));
+        this.requestTimeoutMillis = Integer.parseInt(propertyStorage.getValue("SDK_REQUEST_TIMEOUT_MS"));
+        this.maxExecutionMillis = Integer.parseInt(propertyStorage.getValue("SDK_EXECUTION_TIMEOUT_MS"));
+        this.maxRetries = Integer.parseInt(propertyStorage.getValue("SDK_MAX_RETRIES"));
+        this.maxConnections = Integer.parseInt(propertyStorage.getValue("SDK_MAX_CONNECTIONS"));
+        this.deadlineMarginMillis = Long.parseLong(propertyStorage.getValue("DEADLINE_MARGIN_MS"));
+        this.failureThreshold = Integer.parseInt(propertyStorage.getValue("CIRCUIT_FAILURE_THRESHOLD"));
+        this.openMillis = Long.parseLong(propertyStorage.getValue("CIRCUIT_OPEN_MS"));
+    }
+
+    public ClientConfiguration clientConfiguration() {
+        return new ClientConfiguration()
+                .withConnectionTimeout(connectTimeoutMillis)
+                .withRequestTimeout(requestTimeoutMillis)
+                .withSocketTimeout(requestTimeoutMillis)
+                .withClientExecutionTimeout(maxExecutionMillis)
+                .withMaxConnections(maxConnections)
+                .withThrottledRetries(true)
+                // Per-request metadata is never read back, clients keep no cache of it
+                .withCacheResponseMetadata(false)
+                .withRetryPolicy(new RetryPolicy(
+                        PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION,
+                        new PredefinedBackoffStrategies.FullJitterBackoffStrategy(
+                                BASE_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS),
+                        maxRetries,
+                        false,
+                        RetryMode.STANDARD));
+    }
+
+    public CircuitBreaker circuitBreaker(String name) {
+        return new CircuitBreaker(name, failureThreshold, openMillis);
+    }
+
+    public ResilienceHandler requestHandler(CircuitBreaker circuitBreaker) {
+        return new ResilienceHandler(circuitBreaker, maxExecutionMillis, deadlineMarginMillis);
+    }
+}
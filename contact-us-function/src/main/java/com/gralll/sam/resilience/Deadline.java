@@ -0,0 +1,38 @@
+package com.gralll.sam.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadline of the current invocation. A container handles one invocation at a time,
+ * so it is shared with the threads of async submission.
+ */
+public final class Deadline {
+
+    private static volatile long deadlineNanos = Long.MAX_VALUE;
+
+    private Deadline() {
+    }
+
+    /**
+     * @param remainingMillis Context.getRemainingTimeInMillis(), time left before Lambda kills the invocation
+     */
+    public static void start(long remainingMillis) {
+        deadlineNanos = remainingMillis > 0
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(remainingMillis)
+                : Long.MAX_VALUE;
+    }
+
+    public static void clear() {
+        deadlineNanos = Long.MAX_VALUE;
+    }
+
+    /**
+     * @return millis left, Long.MAX_VALUE if no deadline is set
+     */
+    public static long remainingMillis() {
+        long deadline = deadlineNanos;
+        return deadline == Long.MAX_VALUE
+                ? Long.MAX_VALUE
+                : TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+}
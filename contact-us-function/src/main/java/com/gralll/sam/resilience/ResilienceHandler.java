@@ -0,0 +1,67 @@
+package com.gralll.sam.resilience;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.retry.RetryUtils;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+
+/**
+ * Applies the invocation deadline to every call of a client and feeds its circuit breaker.
+ * Client errors like a failed condition are answers of a healthy service and are not failures.
+ */
+public class ResilienceHandler extends RequestHandler2 {
+
+    private final CircuitBreaker circuitBreaker;
+    private final int maxExecutionMillis;
+    private final long deadlineMarginMillis;
+
+    /**
+     * @param maxExecutionMillis   upper bound of a call including retries
+     * @param deadlineMarginMillis time kept to build a response once a call is cut by the deadline
+     */
+    public ResilienceHandler(CircuitBreaker circuitBreaker, int maxExecutionMillis, long deadlineMarginMillis) {
+        this.circuitBreaker = circuitBreaker;
+        this.maxExecutionMillis = maxExecutionMillis;
+        this.deadlineMarginMillis = deadlineMarginMillis;
+    }
+
+    @Override
+    public AmazonWebServiceRequest beforeExecution(AmazonWebServiceRequest request) {
+        long remaining = Deadline.remainingMillis() - deadlineMarginMillis;
+        if (remaining <= 0) {
+            throw new ContactUsLambdaServerException(
+                    "No time is left for a " + circuitBreaker.getName() + " call.", null);
+        }
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new CircuitBreakerOpenException(
+                    "Circuit " + circuitBreaker.getName() + " is open.", circuitBreaker.getRetryAfterSeconds());
+        }
+        request.setSdkClientExecutionTimeout((int) Math.min(maxExecutionMillis, remaining));
+        return request;
+    }
+
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        circuitBreaker.onSuccess();
+    }
+
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        if (isServiceHealthy(e)) {
+            circuitBreaker.onSuccess();
+        } else {
+            circuitBreaker.onFailure();
+        }
+    }
+
+    private static boolean isServiceHealthy(Exception e) {
+        if (!(e instanceof AmazonServiceException)) {
+            return false;
+        }
+        AmazonServiceException serviceException = (AmazonServiceException) e;
+        return serviceException.getStatusCode() < 500 && !RetryUtils.isThrottlingException(serviceException);
+    }
+}
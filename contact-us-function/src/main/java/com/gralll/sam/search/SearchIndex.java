@@ -0,0 +1,223 @@
+package com.gralll.sam.search;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.gralll.sam.service.PropertyStorage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Full-text index of submissions as a log-structured set of segments.
+ * <p>
+ * New submissions go into a small level 0 segment per batch, so indexing cost does not grow with history.
+ * When a level holds merge factor segments, the oldest ones are merged into one of the next level,
+ * so a query reads a logarithmic number of segments. A query intersects postings of all its terms
+ * per segment and pages newest first by a (CreatedAt, Id) cursor.
+ * <p>
+ * Segments are immutable and a submission may be in two of them for a while (a replayed batch,
+ * a merge not yet cleaned up), hits are distinct by Id.
+ * <p>
+ * A deleted submission is written as its Id into a new segment and hidden from queries in all segments.
+ * Merges drop deleted submissions, and the Ids themselves once a merge leaves no older segment,
+ * as segments of a higher level are older than those of a lower one.
+ */
+public class SearchIndex {
+
+    // Lambda has only /tmp to write
+    private static final String CACHE_DIRECTORY = "search-segments";
+    // A prefix matching more terms than that is cut, rather than reading most of a dictionary
+    static final int MAX_PREFIX_TERMS = 256;
+
+    private static final Comparator<Hit> RECENCY = Comparator.comparingLong((Hit hit) -> -hit.createdAt)
+                                                             .thenComparing(hit -> hit.id);
+
+    private static final Logger LOG = LogManager.getLogger(SearchIndex.class);
+
+    private final SegmentStore segmentStore;
+    private final int mergeFactor;
+
+    public SearchIndex(SegmentStore segmentStore, int mergeFactor) {
+        this.segmentStore = segmentStore;
+        this.mergeFactor = mergeFactor;
+    }
+
+    /**
+     * @return an index in SEARCH_INDEX_BUCKET, null if the bucket is not set
+     */
+    public static SearchIndex create(PropertyStorage propertyStorage, Supplier<AmazonS3> s3Client) {
+        String bucket = propertyStorage.getValue("SEARCH_INDEX_BUCKET");
+        if (bucket.isEmpty()) {
+            return null;
+        }
+        return new SearchIndex(new SegmentStore(s3Client, bucket,
+                Paths.get(System.getProperty("java.io.tmpdir"), CACHE_DIRECTORY),
+                Long.parseLong(propertyStorage.getValue("SEARCH_CACHE_MB")) * 1024 * 1024,
+                Long.parseLong(propertyStorage.getValue("SEARCH_REFRESH_SECONDS"))),
+                Integer.parseInt(propertyStorage.getValue("SEARCH_MERGE_FACTOR")));
+    }
+
+    /**
+     * A submission found, also a position to go on from.
+     */
+    public static final class Hit {
+
+        private final String id;
+        private final long createdAt;
+
+        public Hit(String id, long createdAt) {
+            this.id = id;
+            this.createdAt = createdAt;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+    }
+
+    /**
+     * @param deletedIds submissions deleted from the table since
+     * @return key of the new segment, null if there is nothing to index
+     */
+    public String add(Collection<SegmentWriter.Document> documents, Set<String> deletedIds) {
+        if (documents.isEmpty() && deletedIds.isEmpty()) {
+            return null;
+        }
+        return segmentStore.put(0, SegmentWriter.write(documents, deletedIds));
+    }
+
+    /**
+     * Merges full levels, a merge may fill the next level in turn.
+     *
+     * @return number of merges made
+     */
+    public int merge() {
+        int merges = 0;
+        for (int level = 0; ; level++) {
+            List<String> keys = segmentStore.list(level);
+            if (keys.size() < mergeFactor) {
+                return merges;
+            }
+            for (; keys.size() >= mergeFactor; keys = keys.subList(mergeFactor, keys.size())) {
+                List<String> sources = keys.subList(0, mergeFactor);
+                List<Segment> segments = new ArrayList<>(sources.size());
+                for (String key : sources) {
+                    Segment segment = segmentStore.open(key);
+                    if (segment == null) {
+                        LOG.info("Segment {} is gone, level {} is being merged elsewhere.", key, level);
+                        return merges;
+                    }
+                    segments.add(segment);
+                }
+                boolean older = segmentStore.hasLevelAbove(level);
+                String merged = segmentStore.put(level + 1, file -> SegmentWriter.merge(segments, older, file));
+                segmentStore.delete(sources);
+                LOG.info("{} segments of level {} have been merged into {}.", sources.size(), level, merged);
+                merges++;
+            }
+        }
+    }
+
+    /**
+     * @param query words, all of which a submission has; a word ending with * matches words starting with it
+     * @param after the last hit of the previous page, null for the first page
+     * @param limit hits at most
+     * @return hits newest first, limit + 1 at most, so a caller knows if there is a next page
+     */
+    public List<Hit> search(String query, Hit after, int limit) {
+        List<String> terms = query != null ? Tokenizer.queryTerms(query) : Collections.emptyList();
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Hit> hits = search(terms, after, limit);
+        if (hits == null) {
+            // A segment has been merged away since the listing
+            segmentStore.invalidate();
+            hits = search(terms, after, limit);
+        }
+        return hits != null ? hits : Collections.emptyList();
+    }
+
+    /**
+     * @return null if a listed segment is gone
+     */
+    private List<Hit> search(List<String> terms, Hit after, int limit) {
+        List<Segment> segments = new ArrayList<>();
+        for (List<String> keys : segmentStore.listAll().values()) {
+            for (String key : keys) {
+                Segment segment = segmentStore.open(key);
+                if (segment == null) {
+                    return null;
+                }
+                segments.add(segment);
+            }
+        }
+        // Few segments have deleted Ids, mostly recent ones
+        List<Segment> deletions = segments.stream()
+                                          .filter(segment -> segment.getDeletedCount() > 0)
+                                          .collect(Collectors.toList());
+        Predicate<String> deleted = id -> deletions.stream().anyMatch(segment -> segment.isDeleted(id));
+        List<Hit> hits = new ArrayList<>();
+        for (Segment segment : segments) {
+            collect(segment, terms, after, limit + 1, deleted, hits);
+        }
+        hits.sort(RECENCY);
+        List<Hit> distinct = new ArrayList<>(Math.min(hits.size(), limit + 1));
+        Set<String> ids = new HashSet<>();
+        for (Hit hit : hits) {
+            if (distinct.size() > limit) {
+                break;
+            }
+            if (ids.add(hit.id)) {
+                distinct.add(hit);
+            }
+        }
+        return distinct;
+    }
+
+    private static void collect(Segment segment, List<String> terms, Hit after, int limit,
+                                Predicate<String> deleted, List<Hit> hits) {
+        BitSet matches = null;
+        for (String term : terms) {
+            boolean prefix = term.charAt(term.length() - 1) == Tokenizer.PREFIX_MARK;
+            byte[] key = (prefix ? term.substring(0, term.length() - 1) : term).getBytes(UTF_8);
+            BitSet docs = new BitSet(segment.getDocCount());
+            segment.collect(key, prefix, MAX_PREFIX_TERMS, docs);
+            if (matches == null) {
+                matches = docs;
+            } else {
+                matches.and(docs);
+            }
+            if (matches.isEmpty()) {
+                return;
+            }
+        }
+        // Document numbers order by recency, so the first matches after the cursor are the page
+        int start = after != null ? segment.firstAfter(after.createdAt, after.id) : 0;
+        int found = 0;
+        for (int doc = matches.nextSetBit(start); doc >= 0 && found < limit; doc = matches.nextSetBit(doc + 1)) {
+            String id = segment.getId(doc);
+            if (!deleted.test(id)) {
+                hits.add(new Hit(id, segment.getCreatedAt(doc)));
+                found++;
+            }
+        }
+    }
+}
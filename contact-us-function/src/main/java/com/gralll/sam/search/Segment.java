@@ -0,0 +1,223 @@
+package com.gralll.sam.search;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Immutable inverted index over a set of submissions, read in place from a heap or memory-mapped buffer.
+ * <p>
+ * Layout, big-endian: magic, version, document count, term count, deleted Id count; offsets of documents,
+ * of terms and of deleted Ids; documents as CreatedAt and a length-prefixed UTF-8 Id, newest first,
+ * so a document number orders by recency; terms in unsigned UTF-8 byte order, each as a varint length,
+ * its bytes, a varint posting count and varint gaps between ascending document numbers;
+ * Ids of submissions deleted from the table, e.g. expired by TTL, as length-prefixed UTF-8 in String order.
+ * A deleted Id hides its submission in any segment, so a deletion needs no rewrite of older segments.
+ * <p>
+ * Only absolute reads are made, so a segment is shared between threads.
+ */
+public final class Segment {
+
+    // "CUSI"
+    static final int MAGIC = 0x43555349;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 20;
+
+    private final ByteBuffer buffer;
+    private final int docCount;
+    private final int termCount;
+    private final int deletedCount;
+
+    private Segment(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.docCount = buffer.getInt(8);
+        this.termCount = buffer.getInt(12);
+        this.deletedCount = buffer.getInt(16);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the buffer holds no segment of this version
+     */
+    public static Segment of(ByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a search segment of version " + VERSION + ".");
+        }
+        return new Segment(buffer);
+    }
+
+    public int getDocCount() {
+        return docCount;
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    public int getDeletedCount() {
+        return deletedCount;
+    }
+
+    public long getCreatedAt(int doc) {
+        return buffer.getLong(docOffset(doc));
+    }
+
+    public String getId(int doc) {
+        return readString(docOffset(doc) + Long.BYTES);
+    }
+
+    public String getDeletedId(int index) {
+        return readString(deletedOffset(index));
+    }
+
+    /**
+     * @return true if the segment has a deleted Id, binary searched
+     */
+    public boolean isDeleted(String id) {
+        int low = 0;
+        int high = deletedCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = getDeletedId(middle).compareTo(id);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public byte[] getTerm(int term) {
+        int[] position = {termOffset(term)};
+        int length = readVarint(position);
+        return readBytes(position[0], length);
+    }
+
+    /**
+     * @return ascending document numbers of a term
+     */
+    public int[] getPostings(int term) {
+        int[] position = {termOffset(term)};
+        int length = readVarint(position);
+        position[0] += length;
+        int[] postings = new int[readVarint(position)];
+        int doc = 0;
+        for (int i = 0; i < postings.length; i++) {
+            doc += readVarint(position);
+            postings[i] = doc;
+        }
+        return postings;
+    }
+
+    /**
+     * Adds documents of a term, or of all terms starting with it, to a set.
+     *
+     * @param maxTerms terms a prefix is expanded to at most, further ones in byte order are left out
+     */
+    public void collect(byte[] term, boolean prefix, int maxTerms, BitSet docs) {
+        int from = lowerBound(term);
+        if (!prefix) {
+            if (from < termCount && compareTerm(from, term, false) == 0) {
+                addAll(from, docs);
+            }
+            return;
+        }
+        for (int i = from; i < termCount && i - from < maxTerms && compareTerm(i, term, true) == 0; i++) {
+            addAll(i, docs);
+        }
+    }
+
+    /**
+     * @return the first document after a CreatedAt and Id, i.e. older or of the same time with a greater Id
+     */
+    public int firstAfter(long createdAt, String id) {
+        int low = 0;
+        int high = docCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            long docCreatedAt = getCreatedAt(middle);
+            boolean after = docCreatedAt < createdAt || docCreatedAt == createdAt && getId(middle).compareTo(id) > 0;
+            if (after) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private void addAll(int term, BitSet docs) {
+        for (int doc : getPostings(term)) {
+            docs.set(doc);
+        }
+    }
+
+    private int lowerBound(byte[] term) {
+        int low = 0;
+        int high = termCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareTerm(middle, term, false) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param prefix compares only as many bytes as the key has
+     */
+    private int compareTerm(int term, byte[] key, boolean prefix) {
+        int[] position = {termOffset(term)};
+        int length = readVarint(position);
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (buffer.get(position[0] + i) & 0xFF) - (key[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return prefix && length >= key.length ? 0 : length - key.length;
+    }
+
+    private int docOffset(int doc) {
+        return buffer.getInt(HEADER_SIZE + doc * Integer.BYTES);
+    }
+
+    private int termOffset(int term) {
+        return buffer.getInt(HEADER_SIZE + (docCount + term) * Integer.BYTES);
+    }
+
+    private int deletedOffset(int index) {
+        return buffer.getInt(HEADER_SIZE + (docCount + termCount + index) * Integer.BYTES);
+    }
+
+    private String readString(int offset) {
+        return new String(readBytes(offset + Short.BYTES, buffer.getShort(offset) & 0xFFFF), UTF_8);
+    }
+
+    private byte[] readBytes(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return bytes;
+    }
+
+    private int readVarint(int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = buffer.get(position[0]++);
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        return value;
+    }
+}
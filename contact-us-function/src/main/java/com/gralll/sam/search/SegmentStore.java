@@ -0,0 +1,254 @@
+package com.gralll.sam.search;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.gralll.sam.cache.LruTtlCache;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps segments as immutable objects in an S3-compatible bucket, under a prefix per merge level.
+ * <p>
+ * An opened segment is downloaded once to a local directory (/tmp in Lambda) and memory-mapped,
+ * so a warm container reads postings without copies or heap growth. Least recently used segments
+ * are dropped above a byte budget. As objects are never rewritten, only the key listing is refreshed,
+ * at most every refresh interval.
+ */
+public class SegmentStore {
+
+    private static final String KEY_PREFIX = "segments/";
+    private static final String LISTING = "listing";
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    private static final Logger LOG = LogManager.getLogger(SegmentStore.class);
+
+    private final Supplier<AmazonS3> s3Client;
+    private final String bucket;
+    private final Path cacheDirectory;
+    private final long cacheBytes;
+    private final LruTtlCache<String, Map<Integer, List<String>>> listing;
+    private final Map<String, Segment> segments = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> sizes = new HashMap<>();
+    private long openedBytes;
+
+    public SegmentStore(Supplier<AmazonS3> s3Client, String bucket, Path cacheDirectory, long cacheBytes,
+                        long refreshSeconds) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.cacheDirectory = cacheDirectory;
+        this.cacheBytes = cacheBytes;
+        this.listing = new LruTtlCache<>(1, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return keys of all segments by level, oldest first in a level, as of the last refresh
+     */
+    public Map<Integer, List<String>> listAll() {
+        return listing.computeIfAbsent(LISTING, key -> list(KEY_PREFIX));
+    }
+
+    /**
+     * @return keys of the segments of a level, oldest first, read from the bucket
+     */
+    public List<String> list(int level) {
+        return list(prefix(level)).getOrDefault(level, Collections.emptyList());
+    }
+
+    /**
+     * @return true if the bucket has segments of a level above the given one, i.e. older ones
+     */
+    public boolean hasLevelAbove(int level) {
+        return list(KEY_PREFIX).keySet().stream().anyMatch(listed -> listed > level);
+    }
+
+    /**
+     * Makes the next {@link #listAll()} read the bucket.
+     */
+    public void invalidate() {
+        listing.clear();
+    }
+
+    /**
+     * @return the segment, null if it is not in the bucket anymore, e.g. merged meanwhile
+     */
+    public synchronized Segment open(String key) {
+        Segment segment = segments.get(key);
+        if (segment != null) {
+            return segment;
+        }
+        Path file = cacheDirectory.resolve(key.replace('/', '_'));
+        try {
+            if (!Files.exists(file)) {
+                download(key, file);
+            }
+            try (FileChannel channel = FileChannel.open(file)) {
+                segment = Segment.of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+            segments.put(key, segment);
+            sizes.put(key, Files.size(file));
+            openedBytes += Files.size(file);
+            evict(key);
+            return segment;
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Opening segment " + key + " failed.", e);
+        }
+    }
+
+    /**
+     * @return key of the stored segment
+     */
+    public String put(int level, byte[] segment) {
+        String key = newKey(level);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(CONTENT_TYPE);
+        metadata.setContentLength(segment.length);
+        s3Client.get().putObject(new PutObjectRequest(bucket, key, new ByteArrayInputStream(segment), metadata));
+        invalidate();
+        return key;
+    }
+
+    /**
+     * Writes a segment to a temporary file in the local directory and uploads it from there,
+     * so a large one, e.g. a merge of an upper level, is not held in memory.
+     *
+     * @return key of the stored segment
+     */
+    public String put(int level, SegmentFile segment) {
+        String key = newKey(level);
+        try {
+            Files.createDirectories(cacheDirectory);
+            Path file = Files.createTempFile(cacheDirectory, "segment", ".part");
+            try {
+                segment.writeTo(file);
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentType(CONTENT_TYPE);
+                s3Client.get().putObject(new PutObjectRequest(bucket, key, file.toFile()).withMetadata(metadata));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Writing segment " + key + " failed.", e);
+        }
+        invalidate();
+        return key;
+    }
+
+    /**
+     * Writes a segment into a file.
+     */
+    @FunctionalInterface
+    public interface SegmentFile {
+        void writeTo(Path file) throws IOException;
+    }
+
+    public void delete(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        s3Client.get().deleteObjects(new DeleteObjectsRequest(bucket)
+                .withKeys(keys.toArray(new String[0]))
+                .withQuiet(true));
+        invalidate();
+    }
+
+    private Map<Integer, List<String>> list(String prefix) {
+        Map<Integer, List<String>> keys = new LinkedHashMap<>();
+        ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(bucket).withPrefix(prefix);
+        ListObjectsV2Result result;
+        do {
+            result = s3Client.get().listObjectsV2(request);
+            for (S3ObjectSummary summary : result.getObjectSummaries()) {
+                int level = parseLevel(summary.getKey());
+                if (level >= 0) {
+                    keys.computeIfAbsent(level, l -> new ArrayList<>()).add(summary.getKey());
+                }
+            }
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+        // Keys start with a creation time, listings are in key order
+        keys.values().forEach(Collections::sort);
+        return keys;
+    }
+
+    private void download(String key, Path file) throws IOException {
+        Files.createDirectories(cacheDirectory);
+        Path partial = Files.createTempFile(cacheDirectory, "segment", ".part");
+        try (S3Object object = s3Client.get().getObject(bucket, key);
+             InputStream content = object.getObjectContent()) {
+            Files.copy(content, partial, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    // A mapping stays valid after its file is deleted, until the segment is collected
+    private void evict(String opened) {
+        Iterator<Map.Entry<String, Segment>> eldest = segments.entrySet().iterator();
+        while (openedBytes > cacheBytes && eldest.hasNext()) {
+            String key = eldest.next().getKey();
+            if (key.equals(opened)) {
+                continue;
+            }
+            eldest.remove();
+            openedBytes -= sizes.remove(key);
+            try {
+                Files.deleteIfExists(cacheDirectory.resolve(key.replace('/', '_')));
+            } catch (IOException e) {
+                LOG.warn("Deleting cached segment {} failed.", key, e);
+            }
+        }
+    }
+
+    private static String newKey(int level) {
+        return prefix(level) + System.currentTimeMillis() + "-" + UUID.randomUUID() + ".seg";
+    }
+
+    private static String prefix(int level) {
+        return KEY_PREFIX + "L" + level + "/";
+    }
+
+    private static int parseLevel(String key) {
+        int end = key.indexOf('/', KEY_PREFIX.length());
+        if (end < 0 || key.charAt(KEY_PREFIX.length()) != 'L') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(key.substring(KEY_PREFIX.length() + 1, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
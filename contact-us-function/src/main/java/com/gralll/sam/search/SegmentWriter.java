@@ -0,0 +1,370 @@
+package com.gralll.sam.search;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes {@link Segment}s: a new one from indexed and deleted submissions, or one merged from several segments.
+ * A submission is kept once by Id, so a replayed stream batch or an overlapping merge leaves no duplicates.
+ * A merge drops submissions deleted in any of its segments.
+ * <p>
+ * A merged segment is written to a file with its postings streamed through a temporary one, so a merge
+ * holds documents and offsets in memory but not the bulk of the segment, however high its level.
+ */
+public final class SegmentWriter {
+
+    private static final Comparator<Doc> RECENCY = Comparator.comparingLong((Doc doc) -> -doc.createdAt)
+                                                             .thenComparing(doc -> doc.id);
+
+    private SegmentWriter() {
+    }
+
+    /**
+     * A submission to be indexed.
+     */
+    public static final class Document {
+
+        private final String id;
+        private final long createdAt;
+        private final Set<String> terms;
+
+        public Document(String id, long createdAt, Set<String> terms) {
+            this.id = id;
+            this.createdAt = createdAt;
+            this.terms = terms;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+
+    /**
+     * @param deletedIds submissions deleted from the table, they are left out of the documents as well
+     */
+    public static byte[] write(Collection<Document> documents, Collection<String> deletedIds) {
+        List<Doc> docs = new ArrayList<>(documents.size());
+        List<Set<String>> docTerms = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            if (!deletedIds.contains(document.id)) {
+                docs.add(new Doc(document.createdAt, document.id, 0, docTerms.size()));
+            }
+            docTerms.add(document.terms);
+        }
+        docs = order(docs);
+
+        Map<byte[], IntList> postings = new TreeMap<>(Arrays::compareUnsigned);
+        for (int doc = 0; doc < docs.size(); doc++) {
+            for (String term : docTerms.get(docs.get(doc).source)) {
+                postings.computeIfAbsent(term.getBytes(UTF_8), key -> new IntList()).add(doc);
+            }
+        }
+        Output terms = new Output();
+        IntList termOffsets = new IntList();
+        postings.forEach((term, docNumbers) -> {
+            termOffsets.add(terms.size());
+            writeTerm(terms, term, docNumbers);
+        });
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        try {
+            assemble(docs, termOffsets, terms.size(), target -> target.write(terms.bytes, 0, terms.size()),
+                    new TreeSet<>(deletedIds), segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return segment.toByteArray();
+    }
+
+    /**
+     * @param keepDeletedIds false if no older segment is left, so deleted Ids have nothing more to hide
+     * @param file           gets the merged segment, postings are collected in a temporary file next to it
+     */
+    public static void merge(List<Segment> segments, boolean keepDeletedIds, Path file) throws IOException {
+        Set<String> deletedIds = new TreeSet<>();
+        for (Segment segment : segments) {
+            for (int index = 0; index < segment.getDeletedCount(); index++) {
+                deletedIds.add(segment.getDeletedId(index));
+            }
+        }
+        List<Doc> docs = new ArrayList<>();
+        for (int segment = 0; segment < segments.size(); segment++) {
+            for (int doc = 0; doc < segments.get(segment).getDocCount(); doc++) {
+                String id = segments.get(segment).getId(doc);
+                if (!deletedIds.contains(id)) {
+                    docs.add(new Doc(segments.get(segment).getCreatedAt(doc), id, segment, doc));
+                }
+            }
+        }
+        docs = order(docs);
+        // New numbers of documents by segment, -1 for a duplicate or a deleted one
+        int[][] numbers = new int[segments.size()][];
+        for (int segment = 0; segment < segments.size(); segment++) {
+            numbers[segment] = new int[segments.get(segment).getDocCount()];
+            Arrays.fill(numbers[segment], -1);
+        }
+        for (int doc = 0; doc < docs.size(); doc++) {
+            numbers[docs.get(doc).segment][docs.get(doc).source] = doc;
+        }
+
+        // Terms of all segments in one pass over their sorted dictionaries
+        PriorityQueue<TermCursor> cursors = new PriorityQueue<>();
+        for (int segment = 0; segment < segments.size(); segment++) {
+            TermCursor cursor = new TermCursor(segments.get(segment), segment);
+            if (cursor.next()) {
+                cursors.add(cursor);
+            }
+        }
+        Path terms = Files.createTempFile(file.getParent(), "terms", ".part");
+        try {
+            IntList termOffsets = new IntList();
+            int termsSize = 0;
+            try (OutputStream termsOutput = new BufferedOutputStream(Files.newOutputStream(terms))) {
+                Output term = new Output();
+                IntList docNumbers = new IntList();
+                while (!cursors.isEmpty()) {
+                    byte[] termBytes = cursors.peek().term;
+                    docNumbers.clear();
+                    while (!cursors.isEmpty() && Arrays.equals(cursors.peek().term, termBytes)) {
+                        TermCursor cursor = cursors.poll();
+                        for (int doc : cursor.segment.getPostings(cursor.index)) {
+                            int number = numbers[cursor.segmentNumber][doc];
+                            if (number >= 0) {
+                                docNumbers.add(number);
+                            }
+                        }
+                        if (cursor.next()) {
+                            cursors.add(cursor);
+                        }
+                    }
+                    docNumbers.sortDistinct();
+                    if (docNumbers.size > 0) {
+                        termOffsets.add(termsSize);
+                        term.clear();
+                        writeTerm(term, termBytes, docNumbers);
+                        termsOutput.write(term.bytes, 0, term.size());
+                        termsSize += term.size();
+                    }
+                }
+            }
+            try (OutputStream segment = new BufferedOutputStream(Files.newOutputStream(file))) {
+                assemble(docs, termOffsets, termsSize, target -> Files.copy(terms, target),
+                        keepDeletedIds ? deletedIds : Collections.emptySet(), segment);
+            }
+        } finally {
+            Files.deleteIfExists(terms);
+        }
+    }
+
+    private static List<Doc> order(List<Doc> docs) {
+        docs.sort(RECENCY);
+        List<Doc> distinct = new ArrayList<>(docs.size());
+        Set<String> ids = new HashSet<>();
+        for (Doc doc : docs) {
+            if (ids.add(doc.id)) {
+                distinct.add(doc);
+            }
+        }
+        return distinct;
+    }
+
+    private static void writeTerm(Output output, byte[] term, IntList docNumbers) {
+        output.writeVarint(term.length);
+        output.write(term);
+        output.writeVarint(docNumbers.size);
+        int previous = 0;
+        for (int i = 0; i < docNumbers.size; i++) {
+            output.writeVarint(docNumbers.values[i] - previous);
+            previous = docNumbers.values[i];
+        }
+    }
+
+    /**
+     * @param terms      writes termsSize bytes of the terms section
+     * @param deletedIds in String order
+     */
+    private static void assemble(List<Doc> docs, IntList termOffsets, int termsSize, Section terms,
+                                 Set<String> deletedIds, OutputStream target) throws IOException {
+        Output documents = new Output();
+        int[] docOffsets = new int[docs.size()];
+        for (int doc = 0; doc < docs.size(); doc++) {
+            docOffsets[doc] = documents.size();
+            documents.writeLong(docs.get(doc).createdAt);
+            documents.writeString(docs.get(doc).id);
+        }
+        Output deleted = new Output();
+        int[] deletedOffsets = new int[deletedIds.size()];
+        int index = 0;
+        for (String id : deletedIds) {
+            deletedOffsets[index++] = deleted.size();
+            deleted.writeString(id);
+        }
+        int documentsStart = Segment.HEADER_SIZE
+                + (docs.size() + termOffsets.size + deletedIds.size()) * Integer.BYTES;
+        int termsStart = documentsStart + documents.size();
+        int deletedStart = termsStart + termsSize;
+        DataOutputStream segment = new DataOutputStream(target);
+        segment.writeInt(Segment.MAGIC);
+        segment.writeInt(Segment.VERSION);
+        segment.writeInt(docs.size());
+        segment.writeInt(termOffsets.size);
+        segment.writeInt(deletedIds.size());
+        for (int offset : docOffsets) {
+            segment.writeInt(documentsStart + offset);
+        }
+        for (int i = 0; i < termOffsets.size; i++) {
+            segment.writeInt(termsStart + termOffsets.values[i]);
+        }
+        for (int offset : deletedOffsets) {
+            segment.writeInt(deletedStart + offset);
+        }
+        segment.write(documents.bytes, 0, documents.size());
+        segment.flush();
+        terms.writeTo(target);
+        segment.write(deleted.bytes, 0, deleted.size());
+        segment.flush();
+    }
+
+    private interface Section {
+        void writeTo(OutputStream target) throws IOException;
+    }
+
+    private static final class Doc {
+        private final long createdAt;
+        private final String id;
+        private final int segment;
+        // Index of a document, or its number in the source segment
+        private final int source;
+
+        private Doc(long createdAt, String id, int segment, int source) {
+            this.createdAt = createdAt;
+            this.id = id;
+            this.segment = segment;
+            this.source = source;
+        }
+    }
+
+    private static final class TermCursor implements Comparable<TermCursor> {
+        private final Segment segment;
+        private final int segmentNumber;
+        private int index = -1;
+        private byte[] term;
+
+        private TermCursor(Segment segment, int segmentNumber) {
+            this.segment = segment;
+            this.segmentNumber = segmentNumber;
+        }
+
+        private boolean next() {
+            if (++index >= segment.getTermCount()) {
+                return false;
+            }
+            term = segment.getTerm(index);
+            return true;
+        }
+
+        @Override
+        public int compareTo(TermCursor other) {
+            return Arrays.compareUnsigned(term, other.term);
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        private void sortDistinct() {
+            Arrays.sort(values, 0, size);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (distinct == 0 || values[i] != values[distinct - 1]) {
+                    values[distinct++] = values[i];
+                }
+            }
+            size = distinct;
+        }
+    }
+
+    private static final class Output {
+        private byte[] bytes = new byte[1024];
+        private int size;
+
+        private int size() {
+            return size;
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        private void write(byte[] source) {
+            ensure(source.length);
+            System.arraycopy(source, 0, bytes, size, source.length);
+            size += source.length;
+        }
+
+        private void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(UTF_8);
+            writeShort(bytes.length);
+            write(bytes);
+        }
+
+        private void writeShort(int value) {
+            ensure(Short.BYTES);
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeLong(long value) {
+            ensure(Long.BYTES);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void ensure(int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.gralll.sam.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits texts into search terms: runs of letters and digits, as spam tokens are, in lower case.
+ * Single characters and overlong runs (e.g. encoded blobs) are not terms.
+ */
+public final class Tokenizer {
+
+    public static final int MAX_TERM_LENGTH = 64;
+    // Marks a prefix term in queries
+    public static final char PREFIX_MARK = '*';
+
+    private Tokenizer() {
+    }
+
+    /**
+     * @return distinct terms of all texts, null texts are skipped
+     */
+    public static Set<String> terms(CharSequence... texts) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (CharSequence text : texts) {
+            if (text != null) {
+                split(text, false, terms);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * @return terms of a query in order, a term directly followed by * keeps it as a prefix mark
+     */
+    public static List<String> queryTerms(CharSequence query) {
+        List<String> terms = new ArrayList<>();
+        split(query, true, terms);
+        return terms;
+    }
+
+    private static void split(CharSequence text, boolean prefixMarks, Collection<String> terms) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start > 1 && i - start <= MAX_TERM_LENGTH) {
+                    String term = text.subSequence(start, i).toString().toLowerCase(Locale.ROOT);
+                    terms.add(prefixMarks && i < text.length() && text.charAt(i) == PREFIX_MARK
+                            ? term + PREFIX_MARK
+                            : term);
+                }
+                start = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.gralll.sam.service;
+
+import com.amazonaws.SdkBaseException;
+import com.amazonaws.retry.RetryUtils;
+import com.gralll.sam.exception.ContactUsLambdaThrottledException;
+import com.gralll.sam.ratelimit.KeyedRateLimiter;
+import com.gralll.sam.ratelimit.TokenBucket;
+import com.gralll.sam.tenant.Tenant;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sheds load before it reaches SES and DynamoDB, so a burst gets fast 429 responses
+ * instead of throttling errors of every request and client retries on top.
+ * <p>
+ * Sites are limited by their own submission rate, senders per source IP and per email,
+ * the downstream calls by SES send rate
+ * and ContactUsTable write capacity. Buckets are per container, downstream rates
+ * should be divided by expected concurrency. A non-positive rate disables a bucket.
+ */
+public class AdmissionService {
+
+    private static final Logger LOG = LogManager.getLogger(AdmissionService.class);
+
+    private static final int MAX_SENDERS = 10_000;
+    // Retry-After for throttling reported by AWS itself
+    private static final long DEFAULT_RETRY_AFTER_SECONDS = 1;
+
+    private final KeyedRateLimiter ipLimiter;
+    private final KeyedRateLimiter emailLimiter;
+    private final TokenBucket sesBucket;
+    private final TokenBucket dbBucket;
+
+    public AdmissionService(PropertyStorage propertyStorage) {
+        this.ipLimiter = perMinute(propertyStorage.getValue("RATE_LIMIT_PER_IP_PER_MINUTE"));
+        this.emailLimiter = perMinute(propertyStorage.getValue("RATE_LIMIT_PER_EMAIL_PER_MINUTE"));
+        this.sesBucket = perSecond(propertyStorage.getValue("RATE_LIMIT_SES_PER_SECOND"));
+        this.dbBucket = perSecond(propertyStorage.getValue("RATE_LIMIT_DB_PER_SECOND"));
+    }
+
+    /**
+     * @throws ContactUsLambdaThrottledException if the site is over its submission limit
+     */
+    public void admitTenant(Tenant tenant) {
+        check(tenant.tryAcquire(), "site " + tenant.getId());
+    }
+
+    /**
+     * @param sourceIp may be null for local invocations
+     * @param email    may be null, then validation fails later
+     * @throws ContactUsLambdaThrottledException if the sender is over its limit
+     */
+    public void admitSender(String sourceIp, String email) {
+        if (ipLimiter != null && sourceIp != null) {
+            check(ipLimiter.tryAcquire(sourceIp), "source IP");
+        }
+        if (emailLimiter != null && email != null) {
+            check(emailLimiter.tryAcquire(email.toLowerCase()), "email");
+        }
+    }
+
+    /**
+     * @throws ContactUsLambdaThrottledException if SES or DynamoDB quota of the container is exhausted
+     */
+    public void admitDelivery() {
+        if (sesBucket != null) {
+            check(sesBucket.tryAcquire(), "SES send rate");
+        }
+        if (dbBucket != null) {
+            check(dbBucket.tryAcquire(), "DynamoDB write capacity");
+        }
+    }
+
+    /**
+     * @throws ContactUsLambdaThrottledException if DynamoDB quota of the container is exhausted
+     */
+    public void admitWrite() {
+        if (dbBucket != null) {
+            check(dbBucket.tryAcquire(), "DynamoDB write capacity");
+        }
+    }
+
+    /**
+     * @return exception to respond with 429 if an AWS call of a failed request was throttled, otherwise null
+     */
+    public static ContactUsLambdaThrottledException asThrottled(Throwable error) {
+        return isThrottled(error)
+                ? new ContactUsLambdaThrottledException("Request was throttled by AWS.", error, DEFAULT_RETRY_AFTER_SECONDS)
+                : null;
+    }
+
+    // Async submission reports the second failure as a suppressed one
+    private static boolean isThrottled(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SdkBaseException && RetryUtils.isThrottlingException((SdkBaseException) cause)) {
+                return true;
+            }
+            for (Throwable suppressed : cause.getSuppressed()) {
+                if (isThrottled(suppressed)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void check(long waitNanos, String limit) {
+        if (waitNanos > 0) {
+            long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+            LOG.warn("Request was shed by {} limit, retry after {} s.", limit, retryAfterSeconds);
+            throw new ContactUsLambdaThrottledException(
+                    "Request was shed by " + limit + " limit.", null, retryAfterSeconds);
+        }
+    }
+
+    private static KeyedRateLimiter perMinute(String rate) {
+        double perMinute = Double.parseDouble(rate);
+        return perMinute > 0 ? new KeyedRateLimiter(perMinute, perMinute / 60, MAX_SENDERS) : null;
+    }
+
+    private static TokenBucket perSecond(String rate) {
+        double perSecond = Double.parseDouble(rate);
+        return perSecond > 0 ? new TokenBucket(Math.max(1, perSecond), perSecond) : null;
+    }
+}
@@ -0,0 +1,115 @@
+package com.gralll.sam.service;
+
+import com.gralll.sam.exception.ContactUsLambdaPartialFailureException;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.model.ContactUsRequest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends an email and persists a request in parallel.
+ * <p>
+ * The request is stored under a locally generated submission id,
+ * SES message id is linked to the record by a follow-up update. A failed link only leaves the record
+ * without its message id, the submission is complete and a client retry would send the email again.
+ * Both calls are always awaited, Lambda freezes a container right after a response.
+ */
+public class AsyncSubmissionService {
+
+    private static final Logger LOG = LogManager.getLogger(AsyncSubmissionService.class);
+
+    private static final int POOL_SIZE = 2;
+    private static final int QUEUE_SIZE = 16;
+
+    private final EmailService emailService;
+    private final DbService dbService;
+    private final ExecutorService executor;
+
+    public AsyncSubmissionService(EmailService emailService, DbService dbService) {
+        this(emailService, dbService, newBoundedExecutor());
+    }
+
+    public AsyncSubmissionService(EmailService emailService, DbService dbService, ExecutorService executor) {
+        this.emailService = emailService;
+        this.dbService = dbService;
+        this.executor = executor;
+    }
+
+    /**
+     * @return SES message id
+     * @throws ContactUsLambdaPartialFailureException if only one side has succeeded
+     * @throws ContactUsLambdaServerException         if both sides have failed
+     */
+    public String submit(String sourceEmail, String recipientEmail, ContactUsRequest contactUsRequest) {
+        String submissionId = UUID.randomUUID().toString();
+
+        CompletableFuture<String> email = CompletableFuture.supplyAsync(
+                () -> emailService.sendEmail(sourceEmail, recipientEmail, contactUsRequest), executor);
+        CompletableFuture<Void> persistence = CompletableFuture.runAsync(
+                () -> dbService.putContactUsRequest(submissionId, contactUsRequest), executor);
+
+        Throwable emailError = awaitError(email);
+        Throwable persistenceError = awaitError(persistence);
+
+        if (emailError != null && persistenceError != null) {
+            emailError.addSuppressed(persistenceError);
+            throw new ContactUsLambdaServerException("Email sending and persisting both failed.", emailError);
+        }
+        if (persistenceError != null) {
+            throw new ContactUsLambdaPartialFailureException(
+                    "Email has been sent, but persisting failed.", persistenceError, submissionId, true, false);
+        }
+        if (emailError != null) {
+            markDeliveryFailed(submissionId);
+            throw new ContactUsLambdaPartialFailureException(
+                    "Request has been persisted, but email sending failed.", emailError, submissionId, false, true);
+        }
+
+        String messageId = email.join();
+        try {
+            dbService.linkMessageId(submissionId, messageId);
+            LOG.info("Submission {} has been linked to message {}.", submissionId, messageId);
+        } catch (RuntimeException e) {
+            LOG.error("Email {} has been sent and submission {} persisted, but linking them failed.",
+                    messageId, submissionId, e);
+        }
+        return messageId;
+    }
+
+    private void markDeliveryFailed(String submissionId) {
+        try {
+            dbService.markDeliveryFailed(submissionId);
+        } catch (RuntimeException e) {
+            LOG.error("Marking submission {} as failed is not possible.", submissionId, e);
+        }
+    }
+
+    private static Throwable awaitError(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause() != null ? e.getCause() : e;
+        }
+    }
+
+    private static ExecutorService newBoundedExecutor() {
+        return new ThreadPoolExecutor(
+                POOL_SIZE, POOL_SIZE, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "contact-us-submission");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
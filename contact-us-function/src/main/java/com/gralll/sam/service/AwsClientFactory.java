@@ -1,40 +1,187 @@
 package com.gralll.sam.service;
 
-import com.amazonaws.regions.Regions;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.simpleemail.AmazonSimpleEmailService;
 import com.amazonaws.services.simpleemail.AmazonSimpleEmailServiceClient;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.resilience.CircuitBreaker;
+import com.gralll.sam.resilience.ClientPolicy;
+import com.gralll.sam.startup.StartupTimer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
 /**
- * Just an util class for an eager initialization of sdk clients.
+ * Initialization of sdk clients.
+ * <p>
+ * Clients listed in EAGER_CLIENTS are built in parallel in background threads
+ * right away, so the init phase overlaps with the rest of handler initialization.
+ * Other clients are built on the first access.
+ * <p>
+ * SES and DynamoDB calls go through circuit breakers, see {@link ClientPolicy}.
  */
 public class AwsClientFactory {
 
     private static final Logger LOG = LogManager.getLogger(AwsClientFactory.class);
 
-    private final AmazonSimpleEmailService sesClient;
-    private final DynamoDB dynamoDB;
+    private final Client<AmazonSimpleEmailService> sesClient;
+    private final Client<AmazonDynamoDB> dynamoDBClient;
+    private final Client<AmazonSQS> sqsClient;
+    private final Client<AmazonS3> s3Client;
+    private final Map<String, CircuitBreaker> circuitBreakers;
 
-    /**
-     * AWS regions should be env variables if you want to generalize the solution.
-     */
     public AwsClientFactory() {
+        this(new PropertyStorage());
+    }
+
+    public AwsClientFactory(PropertyStorage propertyStorage) {
         LOG.debug("AWS clients factory initialization.");
-        sesClient = AmazonSimpleEmailServiceClient.builder().withRegion(Regions.EU_WEST_1).build();
-        AmazonDynamoDB dynamoDBClient = AmazonDynamoDBClientBuilder.standard().withRegion(Regions.EU_WEST_1).build();
-        dynamoDB = new DynamoDB(dynamoDBClient);
+        String region = propertyStorage.getValue("AWS_REGION");
+        Set<String> eagerClients = new HashSet<>(Arrays.asList(propertyStorage.getValue("EAGER_CLIENTS").split(",")));
+        ClientPolicy clientPolicy = new ClientPolicy(propertyStorage);
+        ClientConfiguration clientConfiguration = clientPolicy.clientConfiguration();
+        CircuitBreaker sesBreaker = clientPolicy.circuitBreaker("ses");
+        CircuitBreaker dynamoDBBreaker = clientPolicy.circuitBreaker("dynamodb");
+        circuitBreakers = new LinkedHashMap<>();
+        circuitBreakers.put(sesBreaker.getName(), sesBreaker);
+        circuitBreakers.put(dynamoDBBreaker.getName(), dynamoDBBreaker);
+
+        sesClient = new Client<>("ses", () -> AmazonSimpleEmailServiceClient.builder()
+                .withRegion(region)
+                .withClientConfiguration(clientConfiguration)
+                .withRequestHandlers(clientPolicy.requestHandler(sesBreaker))
+                .build());
+        dynamoDBClient = new Client<>("dynamodb", () -> AmazonDynamoDBClientBuilder.standard()
+                .withRegion(region)
+                .withClientConfiguration(clientConfiguration)
+                .withRequestHandlers(clientPolicy.requestHandler(dynamoDBBreaker))
+                .build());
+        sqsClient = new Client<>("sqs", () -> AmazonSQSClientBuilder.standard()
+                .withRegion(region)
+                .withClientConfiguration(clientConfiguration)
+                .build());
+        String s3Endpoint = propertyStorage.getValue("ATTACHMENTS_S3_ENDPOINT");
+        s3Client = new Client<>("s3", () -> {
+            AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard()
+                    .withClientConfiguration(clientConfiguration);
+            // S3-compatible stores mostly have no bucket subdomains
+            return s3Endpoint.isEmpty()
+                    ? builder.withRegion(region).build()
+                    : builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(s3Endpoint, region))
+                             .withPathStyleAccessEnabled(true)
+                             .build();
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, eagerClients.size()), runnable -> {
+            Thread thread = new Thread(runnable, "aws-client-init");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Client<?> client : Arrays.asList(sesClient, dynamoDBClient, sqsClient, s3Client)) {
+            if (eagerClients.contains(client.name)) {
+                client.buildAsync(executor);
+            }
+        }
+        // Already submitted builds are completed, threads are released afterwards
+        executor.shutdown();
+    }
+
+    /**
+     * Uses already built clients, e.g. local or in-memory ones.
+     */
+    public AwsClientFactory(AmazonSimpleEmailService sesClient, AmazonDynamoDB dynamoDBClient, AmazonSQS sqsClient) {
+        this(sesClient, dynamoDBClient, sqsClient, null);
+    }
+
+    /**
+     * Uses already built clients, e.g. local or in-memory ones.
+     */
+    public AwsClientFactory(AmazonSimpleEmailService sesClient, AmazonDynamoDB dynamoDBClient, AmazonSQS sqsClient,
+                            AmazonS3 s3Client) {
+        this.sesClient = new Client<>("ses", () -> sesClient);
+        this.dynamoDBClient = new Client<>("dynamodb", () -> dynamoDBClient);
+        this.sqsClient = new Client<>("sqs", () -> sqsClient);
+        this.s3Client = new Client<>("s3", () -> s3Client);
+        this.circuitBreakers = Collections.emptyMap();
+    }
+
+    public AmazonDynamoDB getDynamoDBClient() {
+        return dynamoDBClient.get();
     }
 
+    /**
+     * @return Document API over the shared low-level client
+     */
     public DynamoDB getDynamoDB() {
-        return dynamoDB;
+        return new DynamoDB(getDynamoDBClient());
     }
 
     public AmazonSimpleEmailService getSesClient() {
-        return sesClient;
+        return sesClient.get();
+    }
+
+    public AmazonSQS getSqsClient() {
+        return sqsClient.get();
+    }
+
+    public AmazonS3 getS3Client() {
+        return s3Client.get();
+    }
+
+    /**
+     * @return circuit breakers by client name, empty for already built clients
+     */
+    public Map<String, CircuitBreaker> getCircuitBreakers() {
+        return circuitBreakers;
     }
 
-}
\ No newline at end of file
+    private static final class Client<T> {
+
+        private final String name;
+        private final Supplier<T> builder;
+        private volatile CompletableFuture<T> instance;
+
+        private Client(String name, Supplier<T> builder) {
+            this.name = name;
+            this.builder = () -> StartupTimer.time(name + "-client", builder);
+        }
+
+        private void buildAsync(ExecutorService executor) {
+            instance = CompletableFuture.supplyAsync(builder, executor);
+        }
+
+        private T get() {
+            if (instance == null) {
+                synchronized (this) {
+                    if (instance == null) {
+                        instance = CompletableFuture.completedFuture(builder.get());
+                    }
+                }
+            }
+            try {
+                return instance.join();
+            } catch (CompletionException e) {
+                throw new ContactUsLambdaServerException("Building " + name + " client failed.", e.getCause());
+            }
+        }
+    }
+}
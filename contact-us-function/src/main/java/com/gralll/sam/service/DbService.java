@@ -1,26 +1,463 @@
 package com.gralll.sam.service;
 
-import com.amazonaws.services.dynamodbv2.document.DynamoDB;
-import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.gralll.sam.metrics.Metrics;
 import com.gralll.sam.model.ContactUsRequest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ContactUsTable access. Requests are written as low-level PutItem/BatchWriteItem calls
+ * with attribute maps built directly, null fields are skipped, and updated by low-level UpdateItem calls,
+ * without the Document API and its per-call conversions. Every item gets
+ * CreatedAt epoch millis and CreatedDay UTC date attributes for {@link QueryService} indexes
+ * and, with CONTACT_US_TTL_DAYS set, an ExpiresAt epoch seconds attribute for DynamoDB TTL.
+ */
 public class DbService {
 
+    private static final Logger LOG = LogManager.getLogger(DbService.class);
+
+    public static final String PENDING = "PENDING";
+    // Claimed by OutboxApp before an email is sent, so a replayed stream record does not send it again
+    public static final String SENDING = "SENDING";
+    // Written by BatchApp before an email is sent, SENT once it is linked to the email
+    public static final String QUEUED = "QUEUED";
+    public static final String SUSPECT = "SUSPECT";
+    public static final String DIGEST = "DIGEST";
+    public static final String SENT = "SENT";
+    public static final String FAILED = "FAILED";
+    // Sparse index of requests waiting for a digest, keyed by DigestTenant which is removed once sent
+    public static final String DIGEST_INDEX = "DigestIndex";
+    // Sparse index of PENDING and SENDING requests by RetryAt, which is removed once sent or failed
+    public static final String OUTBOX_INDEX = "OutboxIndex";
+
     private static final String CONTACT_US_TABLE = "ContactUsTable";
-    private final DynamoDB dynamoDB;
+    // DynamoDB BatchWriteItem limit
+    private static final int MAX_BATCH_SIZE = 25;
+    private static final int MAX_UNPROCESSED_RETRIES = 3;
+    private static final long RETRY_BASE_DELAY_MS = 50;
+
+    // Id, 5 request fields, TenantId, Attachments, CreatedAt, CreatedDay, ExpiresAt, DeliveryStatus,
+    // SpamScore, DigestTenant or RetryAt
+    private static final int MAX_ATTRIBUTES = 13;
 
-    public DbService(DynamoDB dynamoDB) {
-        this.dynamoDB = dynamoDB;
+    private final AmazonDynamoDB dynamoDBClient;
+    private final long ttlSeconds;
+
+    public DbService(AmazonDynamoDB dynamoDBClient, PropertyStorage propertyStorage) {
+        this.dynamoDBClient = dynamoDBClient;
+        this.ttlSeconds = TimeUnit.DAYS.toSeconds(Long.parseLong(propertyStorage.getValue("CONTACT_US_TTL_DAYS")));
     }
 
     public void putContactUsRequest(String messageId, ContactUsRequest contactUsRequest) {
-        dynamoDB.getTable(CONTACT_US_TABLE)
-                          .putItem(new Item()
-                                  .withPrimaryKey("Id", messageId)
-                                  .withString("Subject", contactUsRequest.getSubject())
-                                  .withString("Username", contactUsRequest.getUsername())
-                                  .withString("Phone", contactUsRequest.getPhone())
-                                  .withString("Email", contactUsRequest.getEmail())
-                                  .withString("Question", contactUsRequest.getQuestion()));
+        Map<String, AttributeValue> item = toItem(messageId, contactUsRequest);
+        Metrics.time(Metrics.DB_PUT, () -> dynamoDBClient.putItem(new PutItemRequest(CONTACT_US_TABLE, item)));
+    }
+
+    /**
+     * Writes requests to be sent as QUEUED with BatchWriteItem, 25 items per call.
+     * Unprocessed items are retried with an exponential backoff.
+     *
+     * @param contactUsRequests requests by primary key
+     * @return primary keys of requests which have not been written
+     */
+    public Set<String> putQueuedContactUsRequests(Map<String, ContactUsRequest> contactUsRequests) {
+        Set<String> failedIds = new HashSet<>();
+        List<WriteRequest> chunk = new ArrayList<>(MAX_BATCH_SIZE);
+        for (Map.Entry<String, ContactUsRequest> entry : contactUsRequests.entrySet()) {
+            Map<String, AttributeValue> item = toItem(entry.getKey(), entry.getValue());
+            item.put("DeliveryStatus", new AttributeValue(QUEUED));
+            chunk.add(new WriteRequest(new PutRequest(item)));
+            if (chunk.size() == MAX_BATCH_SIZE) {
+                failedIds.addAll(writeChunk(chunk));
+                chunk = new ArrayList<>(MAX_BATCH_SIZE);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            failedIds.addAll(writeChunk(chunk));
+        }
+        return failedIds;
+    }
+
+    /**
+     * Writes a request to be sent as QUEUED again, unless it has been sent by an earlier delivery,
+     * e.g. one whose invocation failed after sending.
+     *
+     * @return false if the request has been sent already
+     */
+    public boolean putQueuedContactUsRequestIfNotSent(String submissionId, ContactUsRequest contactUsRequest) {
+        Map<String, AttributeValue> item = toItem(submissionId, contactUsRequest);
+        item.put("DeliveryStatus", new AttributeValue(QUEUED));
+        Map<String, AttributeValue> values = Collections.singletonMap(":queued", new AttributeValue(QUEUED));
+        try {
+            Metrics.time(Metrics.DB_PUT, () -> dynamoDBClient.putItem(new PutItemRequest(CONTACT_US_TABLE, item)
+                    .withConditionExpression("attribute_not_exists(Id) OR DeliveryStatus = :queued")
+                    .withExpressionAttributeValues(values)));
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens a pooled connection, resolves credentials and signs a request
+     * with a read-only call. Nothing is written.
+     */
+    public void primeConnection() {
+        dynamoDBClient.describeTable(CONTACT_US_TABLE);
+    }
+
+    /**
+     * Persists a request to be sent by OutboxApp from the table stream. It is due at once,
+     * OutboxSweepApp releases it again if its stream record is lost.
+     */
+    public void putPendingContactUsRequest(String submissionId, ContactUsRequest contactUsRequest) {
+        Map<String, AttributeValue> item = toItem(submissionId, contactUsRequest);
+        item.put("DeliveryStatus", new AttributeValue(PENDING));
+        item.put("RetryAt", item.get("CreatedAt"));
+        Metrics.time(Metrics.DB_PUT, () -> dynamoDBClient.putItem(new PutItemRequest(CONTACT_US_TABLE, item)));
+    }
+
+    /**
+     * Persists a request to be sent with others of its site in a digest by DigestApp.
+     */
+    public void putDigestContactUsRequest(String submissionId, ContactUsRequest contactUsRequest, String tenantId) {
+        Map<String, AttributeValue> item = toItem(submissionId, contactUsRequest);
+        item.put("DeliveryStatus", new AttributeValue(DIGEST));
+        item.put("DigestTenant", new AttributeValue(tenantId));
+        Metrics.time(Metrics.DB_PUT, () -> dynamoDBClient.putItem(new PutItemRequest(CONTACT_US_TABLE, item)));
+    }
+
+    /**
+     * Reads requests of a site waiting for a digest, oldest first, page by page.
+     *
+     * @param untilMillis CreatedAt of the newest request, later ones wait for the next digest
+     * @param limit       max number of requests, the rest wait for the next digest
+     * @param consumer    gets every item as soon as its page is read
+     * @return number of read requests
+     */
+    public int queryDigestContactUsRequests(String tenantId, long untilMillis, int limit,
+                                            Consumer<Map<String, AttributeValue>> consumer) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":tenant", new AttributeValue(tenantId));
+        values.put(":until", new AttributeValue().withN(Long.toString(untilMillis)));
+        int count = 0;
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryResult result = dynamoDBClient.query(new QueryRequest(CONTACT_US_TABLE)
+                    .withIndexName(DIGEST_INDEX)
+                    .withKeyConditionExpression("DigestTenant = :tenant AND CreatedAt <= :until")
+                    .withExpressionAttributeValues(values)
+                    .withLimit(limit - count)
+                    .withExclusiveStartKey(startKey));
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                consumer.accept(item);
+            }
+            count += result.getItems().size();
+            startKey = result.getLastEvaluatedKey();
+        } while (startKey != null && !startKey.isEmpty() && count < limit);
+        return count;
+    }
+
+    /**
+     * Marks digested requests as SENT with the digest's SES message id and removes DigestTenant,
+     * so they leave DigestIndex. DynamoDB has no batch update, each request is one conditional UpdateItem,
+     * so a request deleted by TTL meanwhile is not brought back and later attributes are kept.
+     *
+     * @param items items as read by {@link #queryDigestContactUsRequests}
+     * @return ids of requests which have not been updated and will be in the next digest again
+     */
+    public Set<String> markDigestSent(List<Map<String, AttributeValue>> items, String messageId) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":sent", new AttributeValue(SENT));
+        values.put(":messageId", new AttributeValue(messageId));
+        values.put(":digest", new AttributeValue(DIGEST));
+        Set<String> failedIds = new HashSet<>();
+        for (Map<String, AttributeValue> item : items) {
+            String submissionId = item.get("Id").getS();
+            try {
+                dynamoDBClient.updateItem(new UpdateItemRequest()
+                        .withTableName(CONTACT_US_TABLE)
+                        .withKey(Collections.singletonMap("Id", new AttributeValue(submissionId)))
+                        .withUpdateExpression("REMOVE DigestTenant SET DeliveryStatus = :sent, MessageId = :messageId")
+                        .withConditionExpression("attribute_exists(Id) AND DeliveryStatus = :digest")
+                        .withExpressionAttributeValues(values));
+            } catch (ConditionalCheckFailedException e) {
+                LOG.info("Digested request {} has been deleted or updated meanwhile, it is left as is.",
+                        submissionId);
+            } catch (RuntimeException e) {
+                LOG.error("Marking digested request {} as sent failed.", submissionId, e);
+                failedIds.add(submissionId);
+            }
+        }
+        return failedIds;
+    }
+
+    /**
+     * Persists a request flagged by the spam filter, it is never emailed.
+     */
+    public void putSuspectContactUsRequest(String submissionId, ContactUsRequest contactUsRequest, double spamScore) {
+        Map<String, AttributeValue> item = toItem(submissionId, contactUsRequest);
+        item.put("DeliveryStatus", new AttributeValue(SUSPECT));
+        item.put("SpamScore", new AttributeValue().withN(Double.toString(spamScore)));
+        Metrics.time(Metrics.DB_PUT, () -> dynamoDBClient.putItem(new PutItemRequest(CONTACT_US_TABLE, item)));
+    }
+
+    /**
+     * Marks a pending request as being sent.
+     *
+     * @param staleAtMillis when the claim is considered lost and the request is reclaimed by OutboxSweepApp
+     * @return false if the request is not pending anymore, e.g. sent by an earlier stream record
+     */
+    public boolean claimDelivery(String submissionId, long staleAtMillis) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":sending", new AttributeValue(SENDING));
+        values.put(":pending", new AttributeValue(PENDING));
+        values.put(":staleAt", number(staleAtMillis));
+        try {
+            updateItem(submissionId, "SET DeliveryStatus = :sending, RetryAt = :staleAt",
+                    "DeliveryStatus = :pending", values);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Keeps a request pending with one more attempt. The update is a new stream record
+     * which OutboxApp skips until RetryAt, then OutboxSweepApp releases the request.
+     */
+    public void retryDelivery(String submissionId, long retryAtMillis) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":status", new AttributeValue(PENDING));
+        values.put(":retryAt", number(retryAtMillis));
+        values.put(":one", number(1));
+        updateItem(submissionId, "SET DeliveryStatus = :status, RetryAt = :retryAt ADD DeliveryAttempts :one",
+                null, values);
+    }
+
+    /**
+     * Puts a claimed request back to pending without counting an attempt, e.g. if its email
+     * has not been sent for the SES rate. The update is a new stream record due at RetryAt.
+     */
+    public void deferDelivery(String submissionId, long retryAtMillis) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":status", new AttributeValue(PENDING));
+        values.put(":retryAt", number(retryAtMillis));
+        updateItem(submissionId, "SET DeliveryStatus = :status, RetryAt = :retryAt", null, values);
+    }
+
+    /**
+     * Reads requests of a delivery status whose RetryAt has passed, oldest first, page by page.
+     *
+     * @param status      {@link #PENDING} for requests due to be sent, {@link #SENDING} for stale claims
+     * @param untilMillis RetryAt of the newest request
+     * @param limit       max number of requests, the rest wait for the next sweep
+     * @param consumer    gets Id, DeliveryStatus, RetryAt and DeliveryAttempts of every item
+     * @return number of read requests
+     */
+    public int queryDueDeliveries(String status, long untilMillis, int limit,
+                                  Consumer<Map<String, AttributeValue>> consumer) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":status", new AttributeValue(status));
+        values.put(":until", number(untilMillis));
+        int count = 0;
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryResult result = dynamoDBClient.query(new QueryRequest(CONTACT_US_TABLE)
+                    .withIndexName(OUTBOX_INDEX)
+                    .withKeyConditionExpression("DeliveryStatus = :status AND RetryAt <= :until")
+                    .withExpressionAttributeValues(values)
+                    .withLimit(limit - count)
+                    .withExclusiveStartKey(startKey));
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                consumer.accept(item);
+            }
+            count += result.getItems().size();
+            startKey = result.getLastEvaluatedKey();
+        } while (startKey != null && !startKey.isEmpty() && count < limit);
+        return count;
+    }
+
+    /**
+     * Makes a due pending request a new stream record for OutboxApp.
+     *
+     * @param retryAtMillis RetryAt as read, the request is left alone if it has changed meanwhile
+     * @return false if the request has been claimed, retried or deleted meanwhile
+     */
+    public boolean releaseDelivery(String submissionId, long retryAtMillis, long nowMillis) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":pending", new AttributeValue(PENDING));
+        values.put(":retryAt", number(retryAtMillis));
+        values.put(":now", number(nowMillis));
+        try {
+            updateItem(submissionId, "SET RetryAt = :now", "DeliveryStatus = :pending AND RetryAt = :retryAt", values);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Takes a stale claim back: the request is pending again with one more attempt, or failed
+     * if it has no attempts left. Whether its email has been sent is unknown.
+     *
+     * @param staleAtMillis RetryAt as read, the request is left alone if it has changed meanwhile
+     * @return false if the request has been sent, retried or deleted meanwhile
+     */
+    public boolean reclaimDelivery(String submissionId, long staleAtMillis, boolean retry, long nowMillis) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":sending", new AttributeValue(SENDING));
+        values.put(":staleAt", number(staleAtMillis));
+        String expression;
+        if (retry) {
+            values.put(":status", new AttributeValue(PENDING));
+            values.put(":now", number(nowMillis));
+            values.put(":one", number(1));
+            expression = "SET DeliveryStatus = :status, RetryAt = :now ADD DeliveryAttempts :one";
+        } else {
+            values.put(":status", new AttributeValue(FAILED));
+            expression = "SET DeliveryStatus = :status REMOVE RetryAt";
+        }
+        try {
+            updateItem(submissionId, expression, "DeliveryStatus = :sending AND RetryAt = :staleAt", values);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param attributes string attributes of a persisted item, e.g. of a stream image
+     */
+    public static ContactUsRequest toContactUsRequest(Map<String, String> attributes) {
+        ContactUsRequest contactUsRequest = new ContactUsRequest(attributes.get("Subject"), attributes.get("Username"),
+                attributes.get("Phone"), attributes.get("Email"), attributes.get("Question"));
+        contactUsRequest.setTenantId(attributes.get("TenantId"));
+        return contactUsRequest;
+    }
+
+    /**
+     * Links SES message id to a request persisted under a submission id.
+     */
+    public void linkMessageId(String submissionId, String messageId) {
+        updateDeliveryStatus(submissionId, SENT, messageId);
+    }
+
+    public void markDeliveryFailed(String submissionId) {
+        updateDeliveryStatus(submissionId, FAILED, null);
+    }
+
+    private Set<String> writeChunk(List<WriteRequest> writeRequests) {
+        try {
+            Map<String, List<WriteRequest>> unprocessed = dynamoDBClient.batchWriteItem(new BatchWriteItemRequest(
+                    Collections.singletonMap(CONTACT_US_TABLE, writeRequests))).getUnprocessedItems();
+            for (int attempt = 0; !unprocessed.isEmpty() && attempt < MAX_UNPROCESSED_RETRIES; attempt++) {
+                Thread.sleep(RETRY_BASE_DELAY_MS << attempt);
+                unprocessed = dynamoDBClient.batchWriteItem(new BatchWriteItemRequest(unprocessed))
+                        .getUnprocessedItems();
+            }
+            return idsOf(unprocessed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return idsOf(writeRequests);
+        } catch (RuntimeException e) {
+            LOG.error("Writing a batch of {} items failed.", writeRequests.size(), e);
+            return idsOf(writeRequests);
+        }
+    }
+
+    private void updateDeliveryStatus(String submissionId, String status, String messageId) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":status", new AttributeValue(status));
+        String expression = "SET DeliveryStatus = :status";
+        if (messageId != null) {
+            values.put(":messageId", new AttributeValue(messageId));
+            expression += ", MessageId = :messageId";
+        }
+        // Leaves OutboxIndex
+        expression += " REMOVE RetryAt";
+        updateItem(submissionId, expression, null, values);
+    }
+
+    /**
+     * @param condition null for an unconditional update
+     */
+    private void updateItem(String submissionId, String expression, String condition,
+                            Map<String, AttributeValue> values) {
+        dynamoDBClient.updateItem(new UpdateItemRequest()
+                .withTableName(CONTACT_US_TABLE)
+                .withKey(Collections.singletonMap("Id", new AttributeValue(submissionId)))
+                .withUpdateExpression(expression)
+                .withConditionExpression(condition)
+                .withExpressionAttributeValues(values));
+    }
+
+    private static AttributeValue number(long value) {
+        return new AttributeValue().withN(Long.toString(value));
+    }
+
+    private Map<String, AttributeValue> toItem(String id, ContactUsRequest contactUsRequest) {
+        Map<String, AttributeValue> item = new HashMap<>(MAX_ATTRIBUTES * 4 / 3 + 1);
+        item.put("Id", new AttributeValue(id));
+        putString(item, "Subject", contactUsRequest.getSubject());
+        putString(item, "Username", contactUsRequest.getUsername());
+        putString(item, "Phone", contactUsRequest.getPhone());
+        putString(item, "Email", contactUsRequest.getEmail());
+        putString(item, "Question", contactUsRequest.getQuestion());
+        putString(item, "TenantId", contactUsRequest.getTenantId());
+        // Only object keys, files stay in the attachments bucket
+        if (!contactUsRequest.getAttachments().isEmpty()) {
+            item.put("Attachments", new AttributeValue().withSS(contactUsRequest.getAttachments()));
+        }
+        long now = System.currentTimeMillis();
+        item.put("CreatedAt", new AttributeValue().withN(Long.toString(now)));
+        // Partition key of DayIndex
+        item.put("CreatedDay", new AttributeValue(
+                LocalDate.ofEpochDay(TimeUnit.MILLISECONDS.toDays(now)).toString()));
+        if (ttlSeconds > 0) {
+            item.put("ExpiresAt", new AttributeValue().withN(
+                    Long.toString(TimeUnit.MILLISECONDS.toSeconds(now) + ttlSeconds)));
+        }
+        return item;
+    }
+
+    // Absent and empty fields are not written
+    private static void putString(Map<String, AttributeValue> item, String name, String value) {
+        if (value != null && !value.isEmpty()) {
+            item.put(name, new AttributeValue(value));
+        }
+    }
+
+    private static Set<String> idsOf(List<WriteRequest> writeRequests) {
+        Set<String> ids = new HashSet<>();
+        writeRequests.forEach(request -> ids.add(request.getPutRequest().getItem().get("Id").getS()));
+        return ids;
+    }
+
+    private static Set<String> idsOf(Map<String, List<WriteRequest>> unprocessed) {
+        Set<String> ids = new HashSet<>();
+        unprocessed.values().forEach(requests -> ids.addAll(idsOf(requests)));
+        return ids;
     }
 }
@@ -1,20 +1,46 @@
 package com.gralll.sam.service;
 
+import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.simpleemail.AmazonSimpleEmailService;
 import com.amazonaws.services.simpleemail.model.Body;
+import com.amazonaws.services.simpleemail.model.BulkEmailDestination;
+import com.amazonaws.services.simpleemail.model.BulkEmailDestinationStatus;
+import com.amazonaws.services.simpleemail.model.BulkEmailStatus;
 import com.amazonaws.services.simpleemail.model.Content;
 import com.amazonaws.services.simpleemail.model.Destination;
+import com.amazonaws.services.simpleemail.model.GetSendQuotaRequest;
 import com.amazonaws.services.simpleemail.model.Message;
+import com.amazonaws.services.simpleemail.model.RawMessage;
+import com.amazonaws.services.simpleemail.model.SendBulkTemplatedEmailRequest;
 import com.amazonaws.services.simpleemail.model.SendEmailRequest;
+import com.amazonaws.services.simpleemail.model.SendRawEmailRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.gralll.sam.attachment.AttachmentService;
 import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.metrics.Metrics;
 import com.gralll.sam.model.ContactUsRequest;
-import org.apache.commons.io.IOUtils;
+import com.gralll.sam.template.Template;
+import com.gralll.sam.template.TemplateLoader;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
-import java.util.Objects;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -22,50 +48,283 @@ public class EmailService {
 
     private static final Logger LOG = LogManager.getLogger(EmailService.class);
 
+    public static final String EMAIL_TEMPLATE = "email_template.html";
+    public static final Map<String, Function<ContactUsRequest, String>> EMAIL_TEMPLATE_BINDINGS = emailBindings();
+
+    // SendBulkTemplatedEmail limit
+    private static final int MAX_BULK_DESTINATIONS = 50;
+    private static final ObjectWriter TEMPLATE_DATA_WRITER = new ObjectMapper().writerFor(Map.class);
+    private static final int COPY_BUFFER_SIZE = 8192;
+    private static final byte[] CRLF = {'\r', '\n'};
+
     private final AmazonSimpleEmailService simpleEmailService;
+    private final Template<ContactUsRequest> emailTemplate;
+    private final AttachmentService attachmentService;
+    private final long attachmentsMaxBytes;
 
     public EmailService(AmazonSimpleEmailService simpleEmailService) {
+        this(simpleEmailService, TemplateLoader.load(EMAIL_TEMPLATE, EMAIL_TEMPLATE_BINDINGS));
+    }
+
+    public EmailService(AmazonSimpleEmailService simpleEmailService, Template<ContactUsRequest> emailTemplate) {
+        this(simpleEmailService, emailTemplate, null, 0);
+    }
+
+    /**
+     * @param attachmentService reads attachments of requests which have them
+     */
+    public EmailService(AmazonSimpleEmailService simpleEmailService, AttachmentService attachmentService,
+                        PropertyStorage propertyStorage) {
+        this(simpleEmailService, TemplateLoader.load(EMAIL_TEMPLATE, EMAIL_TEMPLATE_BINDINGS), attachmentService,
+                Long.parseLong(propertyStorage.getValue("ATTACHMENTS_EMAIL_MAX_BYTES")));
+    }
+
+    /**
+     * @param attachmentsMaxBytes total size of files attached to an email, further files are linked
+     */
+    public EmailService(AmazonSimpleEmailService simpleEmailService, Template<ContactUsRequest> emailTemplate,
+                        AttachmentService attachmentService, long attachmentsMaxBytes) {
         this.simpleEmailService = simpleEmailService;
+        this.emailTemplate = emailTemplate;
+        this.attachmentService = attachmentService;
+        this.attachmentsMaxBytes = attachmentsMaxBytes;
     }
 
-    public String sendEmail(String sourceEmail, String recipientEmail, ContactUsRequest contactUsRequest) {
-        String emailTemplate = getEmailTemplate();
-        String email = fillTemplate(emailTemplate, contactUsRequest);
+    /**
+     * SES has no batch call for raw html emails, so requests are sent one by one
+     * and a failure of one email does not stop the rest.
+     *
+     * @param contactUsRequests requests by a caller key
+     * @return SES message ids by a caller key, failed requests are absent
+     */
+    public Map<String, String> sendEmails(String sourceEmail, String recipientEmail,
+                                          Map<String, ContactUsRequest> contactUsRequests) {
+        Map<String, String> messageIds = new LinkedHashMap<>();
+        contactUsRequests.forEach((key, contactUsRequest) -> {
+            try {
+                messageIds.put(key, sendEmail(sourceEmail, recipientEmail, contactUsRequest));
+            } catch (RuntimeException e) {
+                LOG.error("Sending email for {} failed.", key, e);
+            }
+        });
+        return messageIds;
+    }
 
-        SendEmailRequest sendEmailRequest =
-                new SendEmailRequest()
-                        .withSource(sourceEmail)
+    /**
+     * Sends up to 50 emails per call with a template stored in SES, which is rendered by SES
+     * from the same bindings as the local template.
+     *
+     * @param contactUsRequests requests by a caller key
+     * @return SES message ids by a caller key, failed requests are absent
+     */
+    public Map<String, String> sendBulkTemplatedEmails(String sourceEmail, String recipientEmail, String templateName,
+                                                       Map<String, ContactUsRequest> contactUsRequests) {
+        // Templated emails have no attachments, such requests are sent one by one
+        Map<String, ContactUsRequest> withAttachments = new LinkedHashMap<>();
+        contactUsRequests.forEach((key, contactUsRequest) -> {
+            if (!contactUsRequest.getAttachments().isEmpty()) {
+                withAttachments.put(key, contactUsRequest);
+            }
+        });
+        Map<String, String> messageIds = new LinkedHashMap<>(sendEmails(sourceEmail, recipientEmail, withAttachments));
+        List<String> keys = new ArrayList<>(contactUsRequests.keySet());
+        keys.removeAll(withAttachments.keySet());
+        for (int from = 0; from < keys.size(); from += MAX_BULK_DESTINATIONS) {
+            List<String> chunk = keys.subList(from, Math.min(from + MAX_BULK_DESTINATIONS, keys.size()));
+            List<BulkEmailDestination> destinations = new ArrayList<>(chunk.size());
+            for (String key : chunk) {
+                destinations.add(new BulkEmailDestination()
                         .withDestination(new Destination(Collections.singletonList(recipientEmail)))
-                        .withMessage(new Message()
-                                .withSubject(
-                                        new Content()
-                                                .withCharset(UTF_8.name())
-                                                .withData(contactUsRequest.getSubject()))
-                                .withBody(new Body()
-                                        .withHtml(new Content()
-                                                .withCharset(UTF_8.name())
-                                                .withData(email))));
+                        .withReplacementTemplateData(getTemplateData(contactUsRequests.get(key))));
+            }
+            try {
+                List<BulkEmailDestinationStatus> statuses = Metrics.time(Metrics.SES_SEND,
+                        () -> simpleEmailService.sendBulkTemplatedEmail(new SendBulkTemplatedEmailRequest()
+                                .withSource(sourceEmail)
+                                .withTemplate(templateName)
+                                .withDefaultTemplateData("{}")
+                                .withDestinations(destinations)).getStatus());
+                // Statuses follow the order of destinations
+                for (int i = 0; i < chunk.size(); i++) {
+                    BulkEmailDestinationStatus status = statuses.get(i);
+                    if (BulkEmailStatus.Success.toString().equals(status.getStatus())) {
+                        messageIds.put(chunk.get(i), status.getMessageId());
+                    } else {
+                        LOG.error("Sending email for {} failed: {} {}.", chunk.get(i), status.getStatus(),
+                                status.getError());
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Sending a bulk of {} emails failed.", chunk.size(), e);
+            }
+        }
+        return messageIds;
+    }
+
+    public String sendEmail(String sourceEmail, String recipientEmail, ContactUsRequest contactUsRequest) {
+        if (attachmentService != null && !contactUsRequest.getAttachments().isEmpty()) {
+            SendRawEmailRequest sendRawEmailRequest = buildSendRawEmailRequest(sourceEmail, recipientEmail,
+                    contactUsRequest);
+            LOG.info("Raw email request with {} attachments is ready.", contactUsRequest.getAttachments().size());
+            return Metrics.time(Metrics.SES_SEND, () -> simpleEmailService.sendRawEmail(sendRawEmailRequest))
+                          .getMessageId();
+        }
+        SendEmailRequest sendEmailRequest = buildSendEmailRequest(sourceEmail, recipientEmail, contactUsRequest);
         LOG.info("Email request is ready.");
-        return simpleEmailService.sendEmail(sendEmailRequest).getMessageId();
+        return Metrics.time(Metrics.SES_SEND, () -> simpleEmailService.sendEmail(sendEmailRequest)).getMessageId();
+    }
+
+    /**
+     * Sends an already rendered html email, e.g. a digest of many requests.
+     */
+    public String sendHtmlEmail(String sourceEmail, String recipientEmail, String subject, String html) {
+        SendEmailRequest sendEmailRequest = buildSendEmailRequest(sourceEmail, recipientEmail, subject, html);
+        return Metrics.time(Metrics.SES_SEND, () -> simpleEmailService.sendEmail(sendEmailRequest)).getMessageId();
+    }
+
+    public SendEmailRequest buildSendEmailRequest(String sourceEmail, String recipientEmail,
+                                                  ContactUsRequest contactUsRequest) {
+        String email = Metrics.time(Metrics.TEMPLATE_RENDER, () -> emailTemplate.render(contactUsRequest));
+        return buildSendEmailRequest(sourceEmail, recipientEmail, contactUsRequest.getSubject(), email);
     }
 
-    private String fillTemplate(String emailTemplate, ContactUsRequest contactUsRequest) {
-        return String.format(
-                emailTemplate,
-                contactUsRequest.getUsername(),
-                contactUsRequest.getEmail(),
-                contactUsRequest.getPhone(),
-                contactUsRequest.getQuestion());
+    private static SendEmailRequest buildSendEmailRequest(String sourceEmail, String recipientEmail, String subject,
+                                                          String email) {
+        return new SendEmailRequest()
+                .withSource(sourceEmail)
+                .withDestination(new Destination(Collections.singletonList(recipientEmail)))
+                .withMessage(new Message()
+                        .withSubject(
+                                new Content()
+                                        .withCharset(UTF_8.name())
+                                        .withData(subject))
+                        .withBody(new Body()
+                                .withHtml(new Content()
+                                        .withCharset(UTF_8.name())
+                                        .withData(email))));
     }
 
-    private String getEmailTemplate() {
+    /**
+     * A MIME multipart/mixed message: the rendered html, links to files over the size budget
+     * and the other files, which are copied from S3 through a base64 encoder with a small buffer.
+     * SES takes a raw message as a whole, so the message buffer is bounded by ATTACHMENTS_EMAIL_MAX_BYTES.
+     */
+    public SendRawEmailRequest buildSendRawEmailRequest(String sourceEmail, String recipientEmail,
+                                                        ContactUsRequest contactUsRequest) {
+        String email = Metrics.time(Metrics.TEMPLATE_RENDER, () -> emailTemplate.render(contactUsRequest));
+        String boundary = "contact-us-" + UUID.randomUUID();
+        MessageBuffer message = new MessageBuffer(email.length() * 2 + 4096);
         try {
-            return IOUtils.toString(
-                    Objects.requireNonNull(this.getClass().getClassLoader()
-                                               .getResourceAsStream("email_template.html")),
-                    UTF_8);
+            writeLine(message, "From: " + sourceEmail);
+            writeLine(message, "To: " + recipientEmail);
+            writeLine(message, "Subject: " + encodeHeader(contactUsRequest.getSubject()));
+            writeLine(message, "MIME-Version: 1.0");
+            writeLine(message, "Content-Type: multipart/mixed; boundary=\"" + boundary + "\"");
+            writeLine(message, "");
+            writePart(message, boundary, "text/html; charset=UTF-8", null,
+                    new ByteArrayInputStream(email.getBytes(UTF_8)));
+
+            long budget = attachmentsMaxBytes;
+            StringBuilder links = new StringBuilder();
+            for (String key : contactUsRequest.getAttachments()) {
+                String fileName = AttachmentService.getFileName(key);
+                try (S3Object object = attachmentService.open(key)) {
+                    long size = object.getObjectMetadata().getContentLength();
+                    if (size > budget) {
+                        object.getObjectContent().abort();
+                        links.append(fileName).append(": ").append(attachmentService.getLink(key)).append("\r\n");
+                        continue;
+                    }
+                    budget -= size;
+                    writePart(message, boundary, object.getObjectMetadata().getContentType(), fileName,
+                            object.getObjectContent());
+                }
+            }
+            if (links.length() > 0) {
+                writePart(message, boundary, "text/plain; charset=UTF-8", null,
+                        new ByteArrayInputStream(("Files too large to be attached:\r\n" + links)
+                                .getBytes(UTF_8)));
+            }
+            writeLine(message, "--" + boundary + "--");
         } catch (IOException e) {
-            throw new ContactUsLambdaServerException("Loading an email template failed.", e);
+            throw new ContactUsLambdaServerException("Building a raw email failed.", e);
+        }
+        return new SendRawEmailRequest()
+                .withSource(sourceEmail)
+                .withDestinations(recipientEmail)
+                .withRawMessage(new RawMessage(message.toByteBuffer()));
+    }
+
+    /**
+     * Opens a pooled connection, resolves credentials and signs a request
+     * with a read-only call. No email is sent.
+     */
+    public void primeConnection() {
+        simpleEmailService.getSendQuota(new GetSendQuotaRequest());
+    }
+
+    private static String getTemplateData(ContactUsRequest contactUsRequest) {
+        Map<String, String> data = new HashMap<>();
+        EMAIL_TEMPLATE_BINDINGS.forEach((name, binding) -> data.put(name, binding.apply(contactUsRequest)));
+        try {
+            return TEMPLATE_DATA_WRITER.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            throw new ContactUsLambdaServerException("Writing template data failed.", e);
         }
     }
+
+    private static void writePart(MessageBuffer message, String boundary, String contentType, String fileName,
+                                  InputStream content) throws IOException {
+        writeLine(message, "--" + boundary);
+        if (fileName != null) {
+            writeLine(message, "Content-Type: " + contentType + "; name=\"" + fileName + "\"");
+            writeLine(message, "Content-Disposition: attachment; filename=\"" + fileName + "\"");
+        } else {
+            writeLine(message, "Content-Type: " + contentType);
+        }
+        writeLine(message, "Content-Transfer-Encoding: base64");
+        writeLine(message, "");
+        // MIME encoder wraps lines at 76 characters, closing it flushes the last bytes
+        OutputStream encoder = Base64.getMimeEncoder().wrap(message);
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        for (int read = content.read(buffer); read >= 0; read = content.read(buffer)) {
+            encoder.write(buffer, 0, read);
+        }
+        encoder.close();
+        message.write(CRLF);
+    }
+
+    private static void writeLine(OutputStream message, String line) throws IOException {
+        message.write(line.getBytes(UTF_8));
+        message.write(CRLF);
+    }
+
+    // RFC 2047 encoded word, subjects may be non-ASCII
+    private static String encodeHeader(String value) {
+        return value == null ? "" : "=?UTF-8?B?" + Base64.getEncoder().encodeToString(value.getBytes(UTF_8)) + "?=";
+    }
+
+    /**
+     * Hands its array over to SES without one more copy.
+     */
+    private static final class MessageBuffer extends ByteArrayOutputStream {
+
+        private MessageBuffer(int size) {
+            super(size);
+        }
+
+        private ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    private static Map<String, Function<ContactUsRequest, String>> emailBindings() {
+        Map<String, Function<ContactUsRequest, String>> bindings = new HashMap<>();
+        bindings.put("subject", ContactUsRequest::getSubject);
+        bindings.put("username", ContactUsRequest::getUsername);
+        bindings.put("email", ContactUsRequest::getEmail);
+        bindings.put("phone", ContactUsRequest::getPhone);
+        bindings.put("question", ContactUsRequest::getQuestion);
+        return Collections.unmodifiableMap(bindings);
+    }
 }
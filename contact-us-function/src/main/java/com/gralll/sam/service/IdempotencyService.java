@@ -0,0 +1,189 @@
+package com.gralll.sam.service;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
+import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.gralll.sam.cache.LruTtlCache;
+import com.gralll.sam.exception.ContactUsLambdaConflictException;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.model.ContactUsRequest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Deduplicates retried and double-clicked submissions, so SES and DynamoDB are touched once.
+ * <p>
+ * The first tier is an in-container LRU cache of successful responses,
+ * the second one is a conditional write into an idempotency table shared by all containers.
+ * The table tier fails open: if it is unavailable, requests are handled without deduplication.
+ */
+public class IdempotencyService {
+
+    private static final Logger LOG = LogManager.getLogger(IdempotencyService.class);
+
+    // Longer than the function timeout, so a crashed invocation does not block retries forever
+    private static final long IN_PROGRESS_SECONDS = 60;
+    private static final String IN_PROGRESS = "IN_PROGRESS";
+    private static final String COMPLETED = "COMPLETED";
+
+    private final Table table;
+    private final LruTtlCache<String, ContactUsProxyResponse> cache;
+    private final long ttlSeconds;
+
+    /**
+     * @param dynamoDB  client of the second tier
+     * @param tableName idempotency table, the second tier is disabled if empty
+     */
+    public IdempotencyService(DynamoDB dynamoDB, String tableName, int cacheSize, long ttlSeconds) {
+        this.table = tableName == null || tableName.isEmpty() ? null : dynamoDB.getTable(tableName);
+        this.cache = new LruTtlCache<>(cacheSize, ttlSeconds, TimeUnit.SECONDS);
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    /**
+     * Keys are scoped by site, so two sites choosing the same Idempotency-Key do not share a response.
+     *
+     * @return a client provided key if any, otherwise a content hash of the request including its attachments
+     */
+    public String getKey(String tenantId, String idempotencyKeyHeader, ContactUsRequest contactUsRequest) {
+        if (idempotencyKeyHeader != null && !idempotencyKeyHeader.isEmpty()) {
+            return "key:" + tenantId + ":" + idempotencyKeyHeader;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, tenantId);
+            if (contactUsRequest != null) {
+                for (String field : new String[]{
+                        contactUsRequest.getSubject(), contactUsRequest.getUsername(), contactUsRequest.getPhone(),
+                        contactUsRequest.getEmail(), contactUsRequest.getQuestion(),
+                        contactUsRequest.getAttachmentsDigest()}) {
+                    update(digest, field);
+                }
+            }
+            return "sha256:" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new ContactUsLambdaServerException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String field) {
+        if (field != null) {
+            digest.update(field.getBytes(UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Runs an action once per key within ttl and returns the original response for duplicates.
+     * Only successful responses are remembered, failed requests can be retried.
+     * Duplicates are answered before the action, so checks made by the action, e.g. rate limits, are not repeated.
+     *
+     * @throws ContactUsLambdaConflictException if the same key is being handled by another invocation
+     */
+    public ContactUsProxyResponse execute(String key, Supplier<ContactUsProxyResponse> action) {
+        ContactUsProxyResponse cached = cache.get(key);
+        if (cached != null) {
+            LOG.info("Duplicate request {} has been served from the local cache.", key);
+            return cached;
+        }
+        boolean claimed = false;
+        if (table != null) {
+            ContactUsProxyResponse stored = claim(key);
+            if (stored != null) {
+                LOG.info("Duplicate request {} has been served from the idempotency table.", key);
+                cache.put(key, stored);
+                return stored;
+            }
+            claimed = true;
+        }
+
+        ContactUsProxyResponse response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            if (claimed) {
+                release(key);
+            }
+            throw e;
+        }
+
+        if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
+            cache.put(key, response);
+            if (claimed) {
+                complete(key, response);
+            }
+        } else if (claimed) {
+            release(key);
+        }
+        return response;
+    }
+
+    /**
+     * @return a stored response of a completed request or null if the key has been claimed
+     */
+    private ContactUsProxyResponse claim(String key) {
+        long now = System.currentTimeMillis() / 1000;
+        try {
+            table.putItem(new PutItemSpec()
+                    .withItem(new Item()
+                            .withPrimaryKey("Id", key)
+                            .withString("Status", IN_PROGRESS)
+                            .withLong("ExpiresAt", now + IN_PROGRESS_SECONDS))
+                    .withConditionExpression("attribute_not_exists(Id) OR ExpiresAt < :now")
+                    .withValueMap(new ValueMap().withLong(":now", now)));
+            return null;
+        } catch (ConditionalCheckFailedException e) {
+            Item item = table.getItem(new GetItemSpec().withPrimaryKey("Id", key).withConsistentRead(true));
+            if (item != null && COMPLETED.equals(item.getString("Status"))) {
+                return new ContactUsProxyResponse(
+                        item.getInt("StatusCode"), item.getMap("Headers"), item.getString("Body"));
+            }
+            throw new ContactUsLambdaConflictException("Request " + key + " is already being processed.", e);
+        } catch (AmazonClientException e) {
+            LOG.warn("Idempotency table is not available, request {} is handled without it.", key, e);
+            return null;
+        }
+    }
+
+    private void complete(String key, ContactUsProxyResponse response) {
+        try {
+            table.putItem(new Item()
+                    .withPrimaryKey("Id", key)
+                    .withString("Status", COMPLETED)
+                    .withInt("StatusCode", response.getStatusCode())
+                    .withMap("Headers", response.getHeaders() != null ? response.getHeaders() : Collections.emptyMap())
+                    .withString("Body", response.getBody())
+                    .withLong("ExpiresAt", System.currentTimeMillis() / 1000 + ttlSeconds));
+        } catch (AmazonClientException e) {
+            LOG.warn("Completing idempotency record {} failed.", key, e);
+        }
+    }
+
+    private void release(String key) {
+        try {
+            table.deleteItem(new DeleteItemSpec()
+                    .withPrimaryKey("Id", key)
+                    .withConditionExpression("#status = :inProgress")
+                    .withNameMap(Collections.singletonMap("#status", "Status"))
+                    .withValueMap(new ValueMap().withString(":inProgress", IN_PROGRESS)));
+        } catch (AmazonClientException e) {
+            LOG.warn("Releasing idempotency record {} failed, it expires in {} s.", key, IN_PROGRESS_SECONDS, e);
+        }
+    }
+}
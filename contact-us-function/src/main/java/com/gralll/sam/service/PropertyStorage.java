@@ -16,6 +16,138 @@ public class PropertyStorage {
                 getOrDefault("SENDER_EMAIL", "someExistingEmail@gmail.com"));
         properties.put("RECIPIENT_EMAIL",
                 getOrDefault("RECIPIENT_EMAIL", "someExistingRecepientEmail@gmail.com"));
+        // SYNC - send an email, then persist; ASYNC - do both in parallel;
+        // QUEUE - only enqueue a request for BatchApp; OUTBOX - only persist as pending for OutboxApp
+        properties.put("EXECUTION_MODE",
+                getOrDefault("EXECUTION_MODE", "SYNC"));
+        properties.put("CONTACT_US_QUEUE_URL",
+                getOrDefault("CONTACT_US_QUEUE_URL", ""));
+        // ContactUsTable items expire by DynamoDB TTL after that many days, 0 keeps them forever
+        properties.put("CONTACT_US_TTL_DAYS",
+                getOrDefault("CONTACT_US_TTL_DAYS", "0"));
+        // Pages of GET requests are cached in the container for repeated dashboard queries
+        properties.put("QUERY_CACHE_SIZE",
+                getOrDefault("QUERY_CACHE_SIZE", "100"));
+        properties.put("QUERY_CACHE_TTL_SECONDS",
+                getOrDefault("QUERY_CACHE_TTL_SECONDS", "30"));
+        // Models are (de)serialized by hand-written streaming codecs, false falls back to Jackson databind
+        properties.put("JSON_CODECS_ENABLED",
+                getOrDefault("JSON_CODECS_ENABLED", "true"));
+        // Suspect requests are stored flagged instead of being emailed; data is reloaded in background
+        properties.put("SPAM_FILTER_ENABLED",
+                getOrDefault("SPAM_FILTER_ENABLED", "true"));
+        properties.put("SPAM_THRESHOLD",
+                getOrDefault("SPAM_THRESHOLD", "5"));
+        properties.put("SPAM_BLOCKLIST_URL",
+                getOrDefault("SPAM_BLOCKLIST_URL", "classpath:spam/blocklist.txt"));
+        properties.put("SPAM_BLOCKLIST_CAPACITY",
+                getOrDefault("SPAM_BLOCKLIST_CAPACITY", "100000"));
+        properties.put("SPAM_TOKENS_URL",
+                getOrDefault("SPAM_TOKENS_URL", "classpath:spam/tokens.txt"));
+        properties.put("SPAM_TOKENS_CAPACITY",
+                getOrDefault("SPAM_TOKENS_CAPACITY", "4096"));
+        properties.put("SPAM_REFRESH_MINUTES",
+                getOrDefault("SPAM_REFRESH_MINUTES", "15"));
+        // Sites by Host header or {tenant} path parameter, only the env-derived default one if not set
+        properties.put("TENANTS_TABLE",
+                getOrDefault("TENANTS_TABLE", ""));
+        properties.put("TENANTS_REFRESH_MINUTES",
+                getOrDefault("TENANTS_REFRESH_MINUTES", "5"));
+        // Default site submissions are only persisted and sent in digests; other sites set Digest in TENANTS_TABLE
+        properties.put("DIGEST_ENABLED",
+                getOrDefault("DIGEST_ENABLED", "false"));
+        // Submissions per digest email, the rest go with the next one
+        properties.put("DIGEST_MAX_SUBMISSIONS",
+                getOrDefault("DIGEST_MAX_SUBMISSIONS", "500"));
+        // Multipart requests may carry files, which are stored in the bucket; files are rejected if not set
+        properties.put("ATTACHMENTS_BUCKET",
+                getOrDefault("ATTACHMENTS_BUCKET", ""));
+        properties.put("ATTACHMENTS_MAX_COUNT",
+                getOrDefault("ATTACHMENTS_MAX_COUNT", "3"));
+        // A Lambda request payload is at most 6 MB, i.e. about 4.5 MB of a base64 multipart body
+        properties.put("ATTACHMENTS_MAX_BYTES",
+                getOrDefault("ATTACHMENTS_MAX_BYTES", "4194304"));
+        properties.put("ATTACHMENTS_CONTENT_TYPES",
+                getOrDefault("ATTACHMENTS_CONTENT_TYPES",
+                        "image/png,image/jpeg,image/gif,image/webp,application/pdf,text/plain"));
+        // Larger files are linked in an email instead of being attached
+        properties.put("ATTACHMENTS_EMAIL_MAX_BYTES",
+                getOrDefault("ATTACHMENTS_EMAIL_MAX_BYTES", "5242880"));
+        properties.put("ATTACHMENTS_LINK_TTL_HOURS",
+                getOrDefault("ATTACHMENTS_LINK_TTL_HOURS", "12"));
+        // An S3-compatible store, e.g. a local one, AWS S3 if empty
+        properties.put("ATTACHMENTS_S3_ENDPOINT",
+                getOrDefault("ATTACHMENTS_S3_ENDPOINT", ""));
+        // Words of subjects and questions are indexed in segments in the bucket; GET ?q= is rejected if not set
+        properties.put("SEARCH_INDEX_BUCKET",
+                getOrDefault("SEARCH_INDEX_BUCKET", ""));
+        // Segments of a level merged into one of the next level
+        properties.put("SEARCH_MERGE_FACTOR",
+                getOrDefault("SEARCH_MERGE_FACTOR", "10"));
+        // Segments kept downloaded and memory-mapped in /tmp, and how often new ones are looked for
+        properties.put("SEARCH_CACHE_MB",
+                getOrDefault("SEARCH_CACHE_MB", "256"));
+        properties.put("SEARCH_REFRESH_SECONDS",
+                getOrDefault("SEARCH_REFRESH_SECONDS", "10"));
+        // Set by Lambda runtime
+        properties.put("AWS_REGION",
+                getOrDefault("AWS_REGION", "eu-west-1"));
+        // Clients built at init phase, the rest are built on the first access
+        properties.put("EAGER_CLIENTS",
+                getOrDefault("EAGER_CLIENTS", "ses,dynamodb"));
+        // Warm-up runs the real hot path on synthetic data, optionally right at init phase
+        // (useful for provisioned concurrency, where init happens ahead of traffic)
+        properties.put("WARM_UP_ITERATIONS",
+                getOrDefault("WARM_UP_ITERATIONS", "20"));
+        properties.put("WARM_UP_CONNECTIONS",
+                getOrDefault("WARM_UP_CONNECTIONS", "true"));
+        properties.put("WARM_UP_ON_INIT",
+                getOrDefault("WARM_UP_ON_INIT", "false"));
+        // Duplicates are answered from an in-container cache and, if the table is set, from DynamoDB
+        properties.put("IDEMPOTENCY_TABLE",
+                getOrDefault("IDEMPOTENCY_TABLE", ""));
+        properties.put("IDEMPOTENCY_TTL_SECONDS",
+                getOrDefault("IDEMPOTENCY_TTL_SECONDS", "3600"));
+        properties.put("IDEMPOTENCY_CACHE_SIZE",
+                getOrDefault("IDEMPOTENCY_CACHE_SIZE", "1000"));
+        // Admission control, token buckets per container; 0 disables a limit (the default)
+        properties.put("RATE_LIMIT_PER_IP_PER_MINUTE",
+                getOrDefault("RATE_LIMIT_PER_IP_PER_MINUTE", "0"));
+        properties.put("RATE_LIMIT_PER_EMAIL_PER_MINUTE",
+                getOrDefault("RATE_LIMIT_PER_EMAIL_PER_MINUTE", "0"));
+        properties.put("RATE_LIMIT_SES_PER_SECOND",
+                getOrDefault("RATE_LIMIT_SES_PER_SECOND", "0"));
+        properties.put("RATE_LIMIT_DB_PER_SECOND",
+                getOrDefault("RATE_LIMIT_DB_PER_SECOND", "0"));
+        // Sdk client policy: per attempt and per call timeouts, the latter is also cut by the invocation deadline
+        properties.put("SDK_CONNECT_TIMEOUT_MS",
+                getOrDefault("SDK_CONNECT_TIMEOUT_MS", "1000"));
+        properties.put("SDK_REQUEST_TIMEOUT_MS",
+                getOrDefault("SDK_REQUEST_TIMEOUT_MS", "3000"));
+        properties.put("SDK_EXECUTION_TIMEOUT_MS",
+                getOrDefault("SDK_EXECUTION_TIMEOUT_MS", "8000"));
+        properties.put("SDK_MAX_RETRIES",
+                getOrDefault("SDK_MAX_RETRIES", "2"));
+        properties.put("SDK_MAX_CONNECTIONS",
+                getOrDefault("SDK_MAX_CONNECTIONS", "10"));
+        properties.put("DEADLINE_MARGIN_MS",
+                getOrDefault("DEADLINE_MARGIN_MS", "500"));
+        // A circuit opens after consecutive failures; SES and DynamoDB requests are queued meanwhile
+        properties.put("CIRCUIT_FAILURE_THRESHOLD",
+                getOrDefault("CIRCUIT_FAILURE_THRESHOLD", "5"));
+        properties.put("CIRCUIT_OPEN_MS",
+                getOrDefault("CIRCUIT_OPEN_MS", "30000"));
+        // SES template for bulk sends of OutboxApp, emails are rendered and sent one by one if empty
+        properties.put("SES_TEMPLATE_NAME",
+                getOrDefault("SES_TEMPLATE_NAME", ""));
+        // Per-stage latencies as CloudWatch Embedded Metric Format lines
+        properties.put("METRICS_ENABLED",
+                getOrDefault("METRICS_ENABLED", "false"));
+        properties.put("METRICS_NAMESPACE",
+                getOrDefault("METRICS_NAMESPACE", "ContactUs"));
+        // Share of requests dumped in logs when debug level is off
+        properties.put("LOG_SAMPLE_RATE",
+                getOrDefault("LOG_SAMPLE_RATE", "0.01"));
     }
 
     private String getOrDefault(String key, String defaultValue) {
@@ -0,0 +1,149 @@
+package com.gralll.sam.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.gralll.sam.exception.ContactUsLambdaClientException;
+import com.gralll.sam.model.ProxyEvent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads an API Gateway proxy event with a streaming parser.
+ * Only HTTP method, body, headers, query string, isBase64Encoded and source IP are kept,
+ * the rest is skipped without materialization.
+ */
+public class ProxyEventReader {
+
+    private final JsonFactory jsonFactory;
+
+    public ProxyEventReader(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    public ProxyEvent read(InputStream input) {
+        try (JsonParser parser = jsonFactory.createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ContactUsLambdaClientException("API Gateway event is not a JSON object.", null);
+            }
+            String httpMethod = null;
+            String body = null;
+            boolean base64Encoded = false;
+            Map<String, String> headers = null;
+            Map<String, List<String>> multiValueHeaders = null;
+            Map<String, String> queryStringParameters = null;
+            Map<String, String> pathParameters = null;
+            String sourceIp = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "httpMethod":
+                        httpMethod = parser.getValueAsString();
+                        break;
+                    case "body":
+                        body = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                        break;
+                    case "isBase64Encoded":
+                        base64Encoded = value == JsonToken.VALUE_TRUE;
+                        break;
+                    case "headers":
+                        headers = readStringMap(parser);
+                        break;
+                    case "queryStringParameters":
+                        queryStringParameters = readStringMap(parser);
+                        break;
+                    case "pathParameters":
+                        pathParameters = readStringMap(parser);
+                        break;
+                    case "multiValueHeaders":
+                        multiValueHeaders = readMultiValueHeaders(parser);
+                        break;
+                    case "requestContext":
+                        sourceIp = readSourceIp(parser);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+
+            ProxyEvent event = new ProxyEvent(httpMethod, body, base64Encoded, headers, multiValueHeaders,
+                    queryStringParameters, pathParameters, sourceIp);
+            // Multipart bodies are decoded while being streamed
+            return base64Encoded && body != null && !event.isMultipart()
+                    ? event.withBody(new String(Base64.getDecoder().decode(body), UTF_8))
+                    : event;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ContactUsLambdaClientException("API Gateway event reading failed.", e);
+        }
+    }
+
+    private String readSourceIp(JsonParser parser) throws IOException {
+        String sourceIp = null;
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT && "identity".equals(field)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String identityField = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("sourceIp".equals(identityField)) {
+                        sourceIp = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return sourceIp;
+    }
+
+    private Map<String, String> readStringMap(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        Map<String, String> values = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            values.put(name, parser.getValueAsString());
+        }
+        return values;
+    }
+
+    private Map<String, List<String>> readMultiValueHeaders(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        Map<String, List<String>> headers = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            List<String> values = new ArrayList<>(1);
+            if (parser.nextToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    values.add(parser.getValueAsString());
+                }
+            } else {
+                parser.skipChildren();
+            }
+            headers.put(name, values);
+        }
+        return headers;
+    }
+}
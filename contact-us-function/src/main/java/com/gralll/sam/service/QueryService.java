@@ -0,0 +1,251 @@
+package com.gralll.sam.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.cache.LruTtlCache;
+import com.gralll.sam.exception.ContactUsLambdaClientException;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.metrics.Metrics;
+import com.gralll.sam.model.SubmissionPage;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Lists persisted submissions by email, by subject or by creation date range,
+ * newest first, through ContactUsTable GSIs keyed by CreatedAt.
+ * <p>
+ * A page is one Query call per index partition with Limit set to the page size and
+ * only list attributes projected, so read cost follows the page size, not the table size.
+ * A date range is read day partition by day partition. Pages are cached in the container
+ * for a short time, repeated dashboard queries do not hit DynamoDB.
+ */
+public class QueryService {
+
+    public static final String EMAIL_INDEX = "EmailIndex";
+    public static final String SUBJECT_INDEX = "SubjectIndex";
+    public static final String DAY_INDEX = "DayIndex";
+
+    private static final String CONTACT_US_TABLE = "ContactUsTable";
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    // Empty days cost a query each, a page stops after that many
+    private static final int MAX_DAYS_PER_PAGE = 31;
+    private static final String DAY_CURSOR = "@day";
+    static final String PROJECTION = "#id, #subject, #username, #email, #createdAt, #status";
+    private static final TypeReference<Map<String, String>> CURSOR_TYPE = new TypeReference<Map<String, String>>() {
+    };
+
+    private final AmazonDynamoDB dynamoDBClient;
+    private final ObjectMapper objectMapper;
+    private final LruTtlCache<String, SubmissionPage> cache;
+
+    public QueryService(AmazonDynamoDB dynamoDBClient, ObjectMapper objectMapper, int cacheSize, long cacheTtlSeconds) {
+        this.dynamoDBClient = dynamoDBClient;
+        this.objectMapper = objectMapper;
+        this.cache = new LruTtlCache<>(cacheSize, cacheTtlSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param parameters email or subject, otherwise a date range is listed;
+     *                   from and to are inclusive ISO dates in UTC, today by default;
+     *                   limit is a page size; cursor is nextCursor of the previous page
+     */
+    public SubmissionPage query(Map<String, String> parameters) {
+        String cacheKey = new TreeMap<>(parameters).toString();
+        SubmissionPage cached = cache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        SubmissionPage page = Metrics.time(Metrics.DB_QUERY, () -> load(parameters));
+        cache.put(cacheKey, page);
+        return page;
+    }
+
+    private SubmissionPage load(Map<String, String> parameters) {
+        LocalDate to = parseDate(parameters.get("to"), LocalDate.now(ZoneOffset.UTC));
+        LocalDate from = parseDate(parameters.get("from"), parameters.containsKey("to") ? to : null);
+        int limit = parseLimit(parameters.get("limit"));
+        Map<String, String> cursor = decodeCursor(parameters.get("cursor"));
+        try {
+            if (parameters.get("email") != null) {
+                return queryIndex(EMAIL_INDEX, "Email", parameters.get("email"), from, to, limit, cursor);
+            }
+            if (parameters.get("subject") != null) {
+                return queryIndex(SUBJECT_INDEX, "Subject", parameters.get("subject"), from, to, limit, cursor);
+            }
+            return queryDays(from != null ? from : to, to, limit, cursor);
+        } catch (AmazonServiceException e) {
+            // E.g. a cursor of another query
+            if ("ValidationException".equals(e.getErrorCode())) {
+                throw new ContactUsLambdaClientException("Query parameters are not valid.", e);
+            }
+            throw e;
+        }
+    }
+
+    private SubmissionPage queryIndex(String index, String keyName, String keyValue, LocalDate from, LocalDate to,
+                                      int limit, Map<String, String> cursor) {
+        QueryResult result = dynamoDBClient.query(
+                buildQuery(index, keyName, keyValue, from, to, limit, toStartKey(cursor)));
+        List<Map<String, String>> items = new ArrayList<>(result.getCount());
+        result.getItems().forEach(item -> items.add(toStrings(item)));
+        return new SubmissionPage(items, encodeCursor(result.getLastEvaluatedKey(), null));
+    }
+
+    private SubmissionPage queryDays(LocalDate from, LocalDate to, int limit, Map<String, String> cursor) {
+        LocalDate day = cursor != null ? parseDate(cursor.get(DAY_CURSOR), to) : to;
+        Map<String, AttributeValue> startKey = toStartKey(cursor);
+        List<Map<String, String>> items = new ArrayList<>(limit);
+        int days = 0;
+        while (items.size() < limit && !day.isBefore(from) && days < MAX_DAYS_PER_PAGE) {
+            QueryResult result = dynamoDBClient.query(
+                    buildQuery(DAY_INDEX, "CreatedDay", day.toString(), day, day, limit - items.size(), startKey));
+            result.getItems().forEach(item -> items.add(toStrings(item)));
+            startKey = result.getLastEvaluatedKey();
+            if (startKey == null) {
+                day = day.minusDays(1);
+                days++;
+            }
+        }
+        return new SubmissionPage(items, day.isBefore(from) ? null : encodeCursor(startKey, day));
+    }
+
+    private QueryRequest buildQuery(String index, String keyName, String keyValue, LocalDate from, LocalDate to,
+                                    int limit, Map<String, AttributeValue> startKey) {
+        Map<String, String> names = projectionNames();
+        names.put("#key", keyName);
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":key", new AttributeValue(keyValue));
+        values.put(":from", number(from == null ? 0 : startOf(from)));
+        values.put(":to", number(startOf(to.plusDays(1)) - 1));
+        return new QueryRequest(CONTACT_US_TABLE)
+                .withIndexName(index)
+                .withKeyConditionExpression("#key = :key AND #createdAt BETWEEN :from AND :to")
+                .withProjectionExpression(PROJECTION)
+                .withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values)
+                .withScanIndexForward(false)
+                .withLimit(limit)
+                .withExclusiveStartKey(startKey);
+    }
+
+    /**
+     * Last evaluated key, and for date ranges the day to go on from, as url-safe base64 JSON.
+     */
+    private String encodeCursor(Map<String, AttributeValue> lastEvaluatedKey, LocalDate day) {
+        if (lastEvaluatedKey == null && day == null) {
+            return null;
+        }
+        Map<String, String> cursor = new LinkedHashMap<>();
+        if (day != null) {
+            cursor.put(DAY_CURSOR, day.toString());
+        }
+        if (lastEvaluatedKey != null) {
+            lastEvaluatedKey.forEach((name, value) -> cursor.put(name,
+                    value.getN() != null ? "N:" + value.getN() : "S:" + value.getS()));
+        }
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(cursor));
+        } catch (IOException e) {
+            throw new ContactUsLambdaServerException("Writing a cursor failed.", e);
+        }
+    }
+
+    private Map<String, String> decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(Base64.getUrlDecoder().decode(cursor), CURSOR_TYPE);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ContactUsLambdaClientException("Cursor is not valid.", e);
+        }
+    }
+
+    private static Map<String, AttributeValue> toStartKey(Map<String, String> cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        Map<String, AttributeValue> startKey = new HashMap<>();
+        cursor.forEach((name, value) -> {
+            if (value.startsWith("N:")) {
+                startKey.put(name, number(value.substring(2)));
+            } else if (value.startsWith("S:")) {
+                startKey.put(name, new AttributeValue(value.substring(2)));
+            }
+        });
+        return startKey.isEmpty() ? null : startKey;
+    }
+
+    /**
+     * @return names of {@link #PROJECTION} attributes, a mutable map
+     */
+    static Map<String, String> projectionNames() {
+        Map<String, String> names = new HashMap<>();
+        names.put("#id", "Id");
+        names.put("#subject", "Subject");
+        names.put("#username", "Username");
+        names.put("#email", "Email");
+        names.put("#createdAt", "CreatedAt");
+        names.put("#status", "DeliveryStatus");
+        return names;
+    }
+
+    static Map<String, String> toStrings(Map<String, AttributeValue> item) {
+        Map<String, String> strings = new LinkedHashMap<>();
+        item.forEach((name, value) -> strings.put(name, value.getN() != null ? value.getN() : value.getS()));
+        return strings;
+    }
+
+    private static LocalDate parseDate(String date, LocalDate defaultValue) {
+        if (date == null || date.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            throw new ContactUsLambdaClientException("Date " + date + " is not an ISO date.", e);
+        }
+    }
+
+    static int parseLimit(String limit) {
+        if (limit == null || limit.isEmpty()) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        try {
+            return Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(limit)));
+        } catch (NumberFormatException e) {
+            throw new ContactUsLambdaClientException("Limit " + limit + " is not a number.", e);
+        }
+    }
+
+    private static long startOf(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private static AttributeValue number(long value) {
+        return number(Long.toString(value));
+    }
+
+    private static AttributeValue number(String value) {
+        return new AttributeValue().withN(value);
+    }
+}
@@ -0,0 +1,51 @@
+package com.gralll.sam.service;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Enqueues raw ContactUs requests for the batch handler.
+ */
+public class QueueService {
+
+    public static final String TENANT_ID_ATTRIBUTE = "TenantId";
+    // Comma separated object keys, sanitized keys have no commas
+    public static final String ATTACHMENTS_ATTRIBUTE = "Attachments";
+
+    private final Supplier<AmazonSQS> sqsClient;
+    private final String queueUrl;
+
+    /**
+     * @param sqsClient client supplier, the client is only needed in QUEUE execution mode
+     */
+    public QueueService(Supplier<AmazonSQS> sqsClient, String queueUrl) {
+        this.sqsClient = sqsClient;
+        this.queueUrl = queueUrl;
+    }
+
+    /**
+     * @param tenantId site of the request, passed as the TenantId message attribute
+     */
+    public String enqueue(String contactUsRequestBody, String tenantId) {
+        return enqueue(contactUsRequestBody, tenantId, Collections.emptyList());
+    }
+
+    /**
+     * @param attachments object keys of stored files, passed as the Attachments message attribute
+     */
+    public String enqueue(String contactUsRequestBody, String tenantId, List<String> attachments) {
+        SendMessageRequest request = new SendMessageRequest(queueUrl, contactUsRequestBody)
+                .addMessageAttributesEntry(TENANT_ID_ATTRIBUTE,
+                        new MessageAttributeValue().withDataType("String").withStringValue(tenantId));
+        if (!attachments.isEmpty()) {
+            request.addMessageAttributesEntry(ATTACHMENTS_ATTRIBUTE,
+                    new MessageAttributeValue().withDataType("String").withStringValue(String.join(",", attachments)));
+        }
+        return sqsClient.get().sendMessage(request).getMessageId();
+    }
+}
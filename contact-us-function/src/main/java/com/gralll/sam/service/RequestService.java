@@ -1,34 +1,102 @@
 package com.gralll.sam.service;
 
-import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gralll.sam.exception.ContactUsLambdaClientException;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.exception.ContactUsLambdaValidationException;
+import com.gralll.sam.json.JsonCodec;
 import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.validation.ContactUsRequestValidator;
 
 import java.io.IOException;
+import java.util.Base64;
+import java.util.Collections;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class RequestService {
 
     private final ObjectMapper objectMapper;
+    private final JsonCodec jsonCodec;
 
     public RequestService(ObjectMapper objectMapper) {
+        this(objectMapper, true);
+    }
+
+    /**
+     * @param jsonCodecs parse ContactUs requests with {@link JsonCodec} instead of databind
+     */
+    public RequestService(ObjectMapper objectMapper, boolean jsonCodecs) {
         this.objectMapper = objectMapper;
+        this.jsonCodec = jsonCodecs ? new JsonCodec(objectMapper.getFactory()) : null;
+    }
+
+    public ContactUsRequest getContactUsRequest(APIGatewayProxyRequestEvent request) {
+        return parseContactUsRequest(getBody(request));
+    }
+
+    /**
+     * @return body decoded if API Gateway has base64 encoded it as binary media
+     */
+    public String getBody(APIGatewayProxyRequestEvent request) {
+        if (!Boolean.TRUE.equals(request.getIsBase64Encoded()) || request.getBody() == null) {
+            return request.getBody();
+        }
+        try {
+            return new String(Base64.getDecoder().decode(request.getBody()), UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ContactUsLambdaClientException("ContactUs request body is not valid base64.", e);
+        }
+    }
+
+    /**
+     * @return a validated and normalized request, see {@link ContactUsRequestValidator}
+     */
+    public ContactUsRequest parseContactUsRequest(String body) {
+        if (body != null && body.length() > ContactUsRequestValidator.MAX_BODY_LENGTH) {
+            throw new ContactUsLambdaValidationException(Collections.singletonMap("body",
+                    "must be at most " + ContactUsRequestValidator.MAX_BODY_LENGTH + " characters"));
+        }
+        return ContactUsRequestValidator.validate(readContactUsRequest(body));
     }
 
-    public ContactUsRequest getContactUsRequest(AwsProxyRequest request) {
+    private ContactUsRequest readContactUsRequest(String body) {
+        if (jsonCodec != null) {
+            return jsonCodec.readContactUsRequest(body);
+        }
         try {
-            return objectMapper.readValue(request.getBody(), ContactUsRequest.class);
-        } catch (IOException e) {
+            return objectMapper.readValue(body, ContactUsRequest.class);
+        } catch (IOException | IllegalArgumentException e) {
             throw new ContactUsLambdaClientException("ContactUs request deserialization failed.", e);
         }
     }
 
-    public String getAsPrettyString(AwsProxyRequest request) {
+    /**
+     * @return JSON of a request, e.g. of a multipart one to be queued
+     */
+    public String writeContactUsRequest(ContactUsRequest request) {
+        try {
+            return objectMapper.writeValueAsString(request);
+        } catch (JsonProcessingException e) {
+            throw new ContactUsLambdaServerException("Writing ContactUsRequest as String failed.", e);
+        }
+    }
+
+    public String getAsString(APIGatewayProxyRequestEvent request) {
+        try {
+            return objectMapper.writeValueAsString(request);
+        } catch (JsonProcessingException e) {
+            throw new ContactUsLambdaClientException("Writing API Gateway request as String failed.", e);
+        }
+    }
+
+    public String getAsPrettyString(APIGatewayProxyRequestEvent request) {
         try {
             return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(request);
         } catch (JsonProcessingException e) {
-            throw new ContactUsLambdaClientException("Writing AwsProxyRequest as String failed.", e);
+            throw new ContactUsLambdaClientException("Writing API Gateway request as String failed.", e);
         }
     }
 
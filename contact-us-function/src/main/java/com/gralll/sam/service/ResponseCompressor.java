@@ -0,0 +1,79 @@
+package com.gralll.sam.service;
+
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.model.ContactUsProxyResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Gzips large response bodies if a client accepts it. API Gateway decodes a base64 encoded body
+ * only if the first media type of the request's Accept header is a binary media type of the API,
+ * application/json here; with any other Accept, e.g. the wildcard one of curl and most sdks,
+ * the client would get base64 text, so such responses are left as is.
+ * Small bodies are left as is: gzip header and base64 would make them bigger.
+ */
+public class ResponseCompressor {
+
+    private static final int MIN_LENGTH = 1024;
+    // Binary media type of the API, see BinaryMediaTypes in template.yaml
+    private static final String BINARY_MEDIA_TYPE = "application/json";
+
+    /**
+     * @param accept         Accept header, may be null
+     * @param acceptEncoding Accept-Encoding header, may be null
+     */
+    public ContactUsProxyResponse compress(ContactUsProxyResponse response, String accept, String acceptEncoding) {
+        if (response.getIsBase64Encoded() || response.getBody() == null || response.getBody().length() < MIN_LENGTH
+                || !isDecodedByApiGateway(accept) || !acceptsGzip(acceptEncoding)) {
+            return response;
+        }
+        Map<String, String> headers = new HashMap<>(response.getHeaders());
+        headers.put("Content-Encoding", "gzip");
+        headers.put("Vary", "Accept, Accept-Encoding");
+        return new ContactUsProxyResponse(response.getStatusCode(), headers, gzip(response.getBody()), true);
+    }
+
+    /**
+     * API Gateway matches only the first media type of Accept, parameters aside, against binary ones.
+     */
+    static boolean isDecodedByApiGateway(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        int end = accept.indexOf(',');
+        String first = end < 0 ? accept : accept.substring(0, end);
+        int parameters = first.indexOf(';');
+        return (parameters < 0 ? first : first.substring(0, parameters)).trim().equalsIgnoreCase(BINARY_MEDIA_TYPE);
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static String gzip(String body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length() / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(body.getBytes(UTF_8));
+        } catch (IOException e) {
+            throw new ContactUsLambdaServerException("Response compression failed.", e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+}
@@ -2,41 +2,137 @@ package com.gralll.sam.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.json.JsonCodec;
 import com.gralll.sam.model.ContactUsResponseBody;
 import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.model.SubmissionPage;
 import org.apache.http.entity.ContentType;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.apache.http.HttpHeaders.CONTENT_TYPE;
 
+/**
+ * Responses are immutable and share one header map.
+ * Constant ones are serialized once and returned as is.
+ */
 public class ResponseService {
 
-    private final ObjectMapper objectMapper;
+    public static final String CLIENT_ERROR = "Client error.";
+    public static final String SERVER_ERROR = "Server error.";
+    public static final String CONFLICT = "Request is already being processed.";
+    public static final String TOO_MANY_REQUESTS = "Too many requests, please retry later.";
+    public static final String UNAVAILABLE = "Service is temporarily unavailable, please retry later.";
+
+    private static final Map<String, String> HEADERS = Collections.unmodifiableMap(createHeaders());
+
+    private final ObjectWriter bodyWriter;
+    private final ObjectWriter pageWriter;
+    private final JsonCodec jsonCodec;
+    // Keyed by body, status is checked on a hit
+    private final Map<String, ContactUsProxyResponse> constantResponses = new HashMap<>();
 
     public ResponseService(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
+        this(objectMapper, true);
+    }
+
+    /**
+     * @param jsonCodecs write bodies with {@link JsonCodec} instead of databind
+     */
+    public ResponseService(ObjectMapper objectMapper, boolean jsonCodecs) {
+        // Writers resolve serializers eagerly, so they are built only if used
+        this.jsonCodec = jsonCodecs ? new JsonCodec(objectMapper.getFactory()) : null;
+        this.bodyWriter = jsonCodecs ? null : objectMapper.writerFor(ContactUsResponseBody.class);
+        this.pageWriter = jsonCodecs ? null : objectMapper.writerFor(SubmissionPage.class);
+        addConstantResponse(400, CLIENT_ERROR);
+        addConstantResponse(409, CONFLICT);
+        addConstantResponse(429, TOO_MANY_REQUESTS);
+        addConstantResponse(500, SERVER_ERROR);
+        addConstantResponse(503, UNAVAILABLE);
+    }
+
+    public ContactUsProxyResponse buildWarmUpResponse(String report) {
+        return buildResponse(201, "Lambda was warmed up: " + report);
+    }
+
+    /**
+     * 429 with Retry-After, so well-behaved clients back off instead of retrying at once.
+     */
+    public ContactUsProxyResponse buildThrottledResponse(long retryAfterSeconds) {
+        return withRetryAfter(buildResponse(429, TOO_MANY_REQUESTS), retryAfterSeconds);
+    }
+
+    /**
+     * 503 with Retry-After while a downstream circuit is open and there is no fallback.
+     */
+    public ContactUsProxyResponse buildUnavailableResponse(long retryAfterSeconds) {
+        return withRetryAfter(buildResponse(503, UNAVAILABLE), retryAfterSeconds);
     }
 
-    public ContactUsProxyResponse buildWarmUpResponse() {
-        return buildResponse(201, "Lambda was warmed up. V2");
+    /**
+     * 400 with an error message per invalid field.
+     */
+    public ContactUsProxyResponse buildValidationErrorResponse(Map<String, String> fieldErrors) {
+        if (jsonCodec != null) {
+            return new ContactUsProxyResponse(400, HEADERS, jsonCodec.writeResponseBody(CLIENT_ERROR, fieldErrors));
+        }
+        try {
+            return new ContactUsProxyResponse(400, HEADERS,
+                    bodyWriter.writeValueAsString(new ContactUsResponseBody(CLIENT_ERROR, fieldErrors)));
+        } catch (JsonProcessingException e) {
+            throw new ContactUsLambdaServerException("Writing ContactUsResponseBody as string failed.", e);
+        }
     }
 
     public ContactUsProxyResponse buildResponse(int statusCode, String body) {
-        Map<String, String> headers = new HashMap<>();
-        headers.put(CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
-        headers.put("Access-Control-Allow-Origin", "*");
-        return new ContactUsProxyResponse(statusCode, headers, getBodyAsString(body));
+        ContactUsProxyResponse constant = constantResponses.get(body);
+        if (constant != null && constant.getStatusCode() == statusCode) {
+            return constant;
+        }
+        return new ContactUsProxyResponse(statusCode, HEADERS, getBodyAsString(body));
+    }
+
+    public ContactUsProxyResponse buildPageResponse(SubmissionPage page) {
+        if (jsonCodec != null) {
+            return new ContactUsProxyResponse(200, HEADERS, jsonCodec.writeSubmissionPage(page));
+        }
+        try {
+            return new ContactUsProxyResponse(200, HEADERS, pageWriter.writeValueAsString(page));
+        } catch (JsonProcessingException e) {
+            throw new ContactUsLambdaServerException("Writing SubmissionPage as string failed.", e);
+        }
+    }
+
+    private ContactUsProxyResponse withRetryAfter(ContactUsProxyResponse constant, long retryAfterSeconds) {
+        Map<String, String> headers = new HashMap<>(HEADERS);
+        headers.put("Retry-After", Long.toString(retryAfterSeconds));
+        return new ContactUsProxyResponse(constant.getStatusCode(), Collections.unmodifiableMap(headers),
+                constant.getBody());
+    }
+
+    private void addConstantResponse(int statusCode, String body) {
+        constantResponses.put(body, new ContactUsProxyResponse(statusCode, HEADERS, getBodyAsString(body)));
     }
 
     private String getBodyAsString(String body) {
+        if (jsonCodec != null) {
+            return jsonCodec.writeResponseBody(body);
+        }
         try {
-            return objectMapper.writeValueAsString(new ContactUsResponseBody(body));
+            return bodyWriter.writeValueAsString(new ContactUsResponseBody(body));
         } catch (JsonProcessingException e) {
             throw new ContactUsLambdaServerException("Writing ContactUsResponseBody as string failed.", e);
         }
     }
-}
 
+    private static Map<String, String> createHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
+        headers.put("Access-Control-Allow-Origin", "*");
+        return headers;
+    }
+}
@@ -0,0 +1,127 @@
+package com.gralll.sam.service;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.gralll.sam.exception.ContactUsLambdaClientException;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.metrics.Metrics;
+import com.gralll.sam.model.SubmissionPage;
+import com.gralll.sam.search.SearchIndex;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Finds persisted submissions by words of their subject and question, newest first.
+ * <p>
+ * Ids of a page come from {@link SearchIndex}, items are read by one BatchGetItem with the list
+ * attributes of {@link QueryService}, so a page costs as much as a listed one whatever the history size.
+ * Submissions deleted meanwhile, e.g. expired by TTL, are left out of a page.
+ */
+public class SearchService {
+
+    private static final String CONTACT_US_TABLE = "ContactUsTable";
+    private static final int MAX_UNPROCESSED_RETRIES = 3;
+    private static final long RETRY_BASE_DELAY_MS = 50;
+
+    private final AmazonDynamoDB dynamoDBClient;
+    private final SearchIndex searchIndex;
+
+    /**
+     * @param searchIndex null if SEARCH_INDEX_BUCKET is not set
+     */
+    public SearchService(AmazonDynamoDB dynamoDBClient, SearchIndex searchIndex) {
+        this.dynamoDBClient = dynamoDBClient;
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * @param parameters q is a query, see {@link SearchIndex#search}; limit is a page size;
+     *                   cursor is nextCursor of the previous page
+     */
+    public SubmissionPage search(Map<String, String> parameters) {
+        if (searchIndex == null) {
+            throw new ContactUsLambdaClientException("Search is not enabled.", null);
+        }
+        int limit = QueryService.parseLimit(parameters.get("limit"));
+        SearchIndex.Hit after = decodeCursor(parameters.get("cursor"));
+        return Metrics.time(Metrics.DB_QUERY, () -> {
+            List<SearchIndex.Hit> hits = searchIndex.search(parameters.get("q"), after, limit);
+            List<SearchIndex.Hit> page = hits.subList(0, Math.min(hits.size(), limit));
+            return new SubmissionPage(load(page),
+                    hits.size() > limit ? encodeCursor(page.get(page.size() - 1)) : null);
+        });
+    }
+
+    private List<Map<String, String>> load(List<SearchIndex.Hit> hits) {
+        if (hits.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Map<String, AttributeValue>> keys = new ArrayList<>(hits.size());
+        hits.forEach(hit -> keys.add(Collections.singletonMap("Id", new AttributeValue(hit.getId()))));
+        Map<String, KeysAndAttributes> request = Collections.singletonMap(CONTACT_US_TABLE, new KeysAndAttributes()
+                .withKeys(keys)
+                .withProjectionExpression(QueryService.PROJECTION)
+                .withExpressionAttributeNames(QueryService.projectionNames()));
+
+        Map<String, Map<String, String>> items = new HashMap<>();
+        try {
+            for (int attempt = 0; !request.isEmpty(); attempt++) {
+                if (attempt > 0) {
+                    if (attempt > MAX_UNPROCESSED_RETRIES) {
+                        throw new ContactUsLambdaServerException(
+                                "Submissions of a page have not been read in " + attempt + " attempts.", null);
+                    }
+                    Thread.sleep(RETRY_BASE_DELAY_MS << (attempt - 1));
+                }
+                BatchGetItemResult result = dynamoDBClient.batchGetItem(new BatchGetItemRequest(request));
+                result.getResponses().getOrDefault(CONTACT_US_TABLE, Collections.emptyList())
+                      .forEach(item -> items.put(item.get("Id").getS(), QueryService.toStrings(item)));
+                request = result.getUnprocessedKeys();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ContactUsLambdaServerException("Reading submissions of a page was interrupted.", e);
+        }
+        // BatchGetItem answers in any order
+        List<Map<String, String>> page = new ArrayList<>(hits.size());
+        for (SearchIndex.Hit hit : hits) {
+            Map<String, String> item = items.get(hit.getId());
+            if (item != null) {
+                page.add(item);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * CreatedAt and Id of the last hit as url-safe base64.
+     */
+    private static String encodeCursor(SearchIndex.Hit hit) {
+        return Base64.getUrlEncoder().withoutPadding()
+                     .encodeToString((hit.getCreatedAt() + ":" + hit.getId()).getBytes(UTF_8));
+    }
+
+    private static SearchIndex.Hit decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), UTF_8);
+            int separator = position.indexOf(':');
+            return new SearchIndex.Hit(position.substring(separator + 1),
+                    Long.parseLong(position.substring(0, separator)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new ContactUsLambdaClientException("Cursor is not valid.", e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.gralll.sam.service;
+
+import com.gralll.sam.model.ContactUsRequest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Primes the hot path of a request: runs JSON binding, template rendering
+ * and response serialization on synthetic data several times, so the classes
+ * are loaded and the JIT has seen the code, and opens SES/DynamoDB connections
+ * with read-only calls. Nothing is sent or written.
+ */
+public class WarmUpService {
+
+    private static final Logger LOG = LogManager.getLogger(WarmUpService.class);
+
+    private static final String SAMPLE_BODY =
+            "{\"subject\":\"Warm-up\",\"question\":\"How much does it cost?\",\"username\":\"Warm Up\","
+                    + "\"phone\":\"+79999999999\",\"email\":\"warm-up@example.com\"}";
+
+    private final RequestService requestService;
+    private final ResponseService responseService;
+    private final EmailService emailService;
+    private final DbService dbService;
+    private final PropertyStorage propertyStorage;
+
+    public WarmUpService(RequestService requestService, ResponseService responseService,
+                         EmailService emailService, DbService dbService, PropertyStorage propertyStorage) {
+        this.requestService = requestService;
+        this.responseService = responseService;
+        this.emailService = emailService;
+        this.dbService = dbService;
+        this.propertyStorage = propertyStorage;
+    }
+
+    /**
+     * @return primed components with their duration, e.g. "json=1.20ms, template=0.40ms, ses=failed"
+     */
+    public String warmUp() {
+        int iterations = Integer.parseInt(propertyStorage.getValue("WARM_UP_ITERATIONS"));
+        Map<String, String> report = new LinkedHashMap<>();
+
+        ContactUsRequest[] sample = new ContactUsRequest[1];
+        prime(report, "json", () -> {
+            for (int i = 0; i < iterations; i++) {
+                sample[0] = requestService.parseContactUsRequest(SAMPLE_BODY);
+            }
+        });
+        prime(report, "template", () -> {
+            for (int i = 0; i < iterations; i++) {
+                emailService.buildSendEmailRequest(
+                        propertyStorage.getValue("SENDER_EMAIL"),
+                        propertyStorage.getValue("RECIPIENT_EMAIL"),
+                        sample[0]);
+            }
+        });
+        prime(report, "response", () -> {
+            for (int i = 0; i < iterations; i++) {
+                responseService.buildResponse(200, "Message warm-up has been sent successfully.");
+            }
+        });
+        if (Boolean.parseBoolean(propertyStorage.getValue("WARM_UP_CONNECTIONS"))) {
+            prime(report, "ses", emailService::primeConnection);
+            prime(report, "dynamodb", dbService::primeConnection);
+        }
+
+        return report.entrySet().stream()
+                     .map(entry -> entry.getKey() + "=" + entry.getValue())
+                     .collect(Collectors.joining(", "));
+    }
+
+    private void prime(Map<String, String> report, String component, Runnable action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            report.put(component, String.format("%.2fms", micros / 1000.0));
+        } catch (RuntimeException e) {
+            // Warm-up must never fail a container, a component stays cold
+            LOG.warn("Priming {} failed.", component, e);
+            report.put(component, "failed");
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.gralll.sam.spam;
+
+/**
+ * Fixed-size Bloom filter of case-insensitive strings, sized for an expected number
+ * of entries and a false positive rate up front. Lookups hash characters in place
+ * and allocate nothing.
+ */
+public final class BloomFilter {
+
+    private final long[] words;
+    private final long bitCount;
+    private final int hashCount;
+
+    public BloomFilter(int expectedEntries, double falsePositiveRate) {
+        long bits = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.words = new long[(int) Math.max(1, (bits + 63) / 64)];
+        this.bitCount = words.length * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEntries * Math.log(2)));
+    }
+
+    /**
+     * @param kind a namespace of the value, e.g. 'e' for emails and 'i' for IPs
+     */
+    public void put(char kind, CharSequence value) {
+        put(kind, value, 0, value.length());
+    }
+
+    public void put(char kind, CharSequence value, int start, int end) {
+        long hash = hash(kind, value, start, end);
+        long step = mix(hash);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(char kind, CharSequence value) {
+        return value != null && mightContain(kind, value, 0, value.length());
+    }
+
+    public boolean mightContain(char kind, CharSequence value, int start, int end) {
+        long hash = hash(kind, value, start, end);
+        long step = mix(hash);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+            if ((words[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int sizeInBytes() {
+        return words.length * Long.BYTES;
+    }
+
+    /**
+     * 64-bit FNV-1a over lower-cased characters, finalized with a murmur mix.
+     */
+    static long hash(char kind, CharSequence value, int start, int end) {
+        long hash = 0xcbf29ce484222325L ^ kind;
+        hash *= 0x100000001b3L;
+        for (int i = start; i < end; i++) {
+            hash ^= Character.toLowerCase(value.charAt(i));
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,104 @@
+package com.gralll.sam.spam;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * An immutable snapshot of spam filter data: a Bloom filter of blocked emails,
+ * email domains and IPs, and weights of spam words.
+ * <p>
+ * Blocklist lines are {@code email <address>}, {@code domain <domain>} or {@code ip <address>},
+ * token lines are {@code <word> <weight>}; '#' starts a comment. Sources are URLs,
+ * {@code classpath:} ones are read from the function package.
+ */
+public final class SpamData {
+
+    public static final char EMAIL = 'e';
+    public static final char DOMAIN = 'd';
+    public static final char IP = 'i';
+
+    private static final double FALSE_POSITIVE_RATE = 0.001;
+
+    private final BloomFilter blocklist;
+    private final TokenWeights tokenWeights;
+
+    private SpamData(BloomFilter blocklist, TokenWeights tokenWeights) {
+        this.blocklist = blocklist;
+        this.tokenWeights = tokenWeights;
+    }
+
+    /**
+     * Memory of a snapshot depends on the capacities only, not on the loaded data.
+     */
+    public static SpamData load(String blocklistUrl, int blocklistCapacity, String tokensUrl, int tokensCapacity) {
+        BloomFilter blocklist = new BloomFilter(blocklistCapacity, FALSE_POSITIVE_RATE);
+        readLines(blocklistUrl, fields -> {
+            if (fields.length != 2) {
+                throw new IllegalArgumentException("Blocklist line must be '<kind> <value>'.");
+            }
+            blocklist.put(kind(fields[0]), fields[1]);
+        });
+        TokenWeights tokenWeights = new TokenWeights(tokensCapacity);
+        readLines(tokensUrl, fields -> {
+            if (fields.length != 2) {
+                throw new IllegalArgumentException("Token line must be '<word> <weight>'.");
+            }
+            tokenWeights.put(fields[0], Float.parseFloat(fields[1]));
+        });
+        return new SpamData(blocklist, tokenWeights);
+    }
+
+    public BloomFilter getBlocklist() {
+        return blocklist;
+    }
+
+    public TokenWeights getTokenWeights() {
+        return tokenWeights;
+    }
+
+    private static char kind(String kind) {
+        switch (kind) {
+            case "email":
+                return EMAIL;
+            case "domain":
+                return DOMAIN;
+            case "ip":
+                return IP;
+            default:
+                throw new IllegalArgumentException("Unknown blocklist kind " + kind + ".");
+        }
+    }
+
+    private static void readLines(String url, Consumer<String[]> consumer) {
+        try (InputStream input = open(url);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(input, UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                String content = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (!content.isEmpty()) {
+                    consumer.accept(content.split("\\s+"));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Reading " + url + " failed.", e);
+        }
+    }
+
+    private static InputStream open(String url) throws IOException {
+        if (url.startsWith("classpath:")) {
+            InputStream input = SpamData.class.getClassLoader().getResourceAsStream(url.substring("classpath:".length()));
+            if (input == null) {
+                throw new IOException(url + " is not found.");
+            }
+            return input;
+        }
+        return new URL(url).openStream();
+    }
+}
@@ -0,0 +1,98 @@
+package com.gralll.sam.spam;
+
+import com.gralll.sam.cache.SnapshotHolder;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.service.PropertyStorage;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Scores a request by a sum of {@link SpamRule} scores, suspect ones are stored
+ * with a flag instead of being emailed.
+ * <p>
+ * Default rules are a honeypot field, a Bloom filter blocklist of emails, email domains and IPs,
+ * and spam word weights of the subject and question. All of them run in place over request strings
+ * with memory fixed by SPAM_BLOCKLIST_CAPACITY and SPAM_TOKENS_CAPACITY.
+ */
+public class SpamFilter {
+
+    public static final double HONEYPOT_SCORE = 10;
+    public static final double BLOCKED_SCORE = 10;
+    public static final double BLOCKED_DOMAIN_SCORE = 3;
+
+    private final List<SpamRule> rules;
+    private final double threshold;
+
+    public SpamFilter(List<SpamRule> rules, double threshold) {
+        this.rules = rules;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return a filter with default rules, or one passing everything if SPAM_FILTER_ENABLED is false
+     */
+    public static SpamFilter create(PropertyStorage propertyStorage) {
+        double threshold = Double.parseDouble(propertyStorage.getValue("SPAM_THRESHOLD"));
+        if (!Boolean.parseBoolean(propertyStorage.getValue("SPAM_FILTER_ENABLED"))) {
+            return new SpamFilter(Collections.emptyList(), threshold);
+        }
+        SnapshotHolder<SpamData> data = new SnapshotHolder<>("Spam data", previous -> SpamData.load(
+                propertyStorage.getValue("SPAM_BLOCKLIST_URL"),
+                Integer.parseInt(propertyStorage.getValue("SPAM_BLOCKLIST_CAPACITY")),
+                propertyStorage.getValue("SPAM_TOKENS_URL"),
+                Integer.parseInt(propertyStorage.getValue("SPAM_TOKENS_CAPACITY"))),
+                TimeUnit.MINUTES.toMillis(Long.parseLong(propertyStorage.getValue("SPAM_REFRESH_MINUTES"))),
+                SnapshotHolder.newReloadExecutor("spam-data-reload"));
+        return new SpamFilter(Arrays.asList(honeypot(), blocklist(data), tokens(data)), threshold);
+    }
+
+    /**
+     * @return a sum of rule scores, 0 for a missing request
+     */
+    public double score(ContactUsRequest request, String sourceIp) {
+        double score = 0;
+        if (request == null) {
+            return score;
+        }
+        for (SpamRule rule : rules) {
+            score += rule.score(request, sourceIp);
+        }
+        return score;
+    }
+
+    public boolean isSuspect(double score) {
+        return score >= threshold;
+    }
+
+    /**
+     * Bots fill in the hidden website field, people do not see it.
+     */
+    public static SpamRule honeypot() {
+        return (request, sourceIp) -> request.getWebsite() != null ? HONEYPOT_SCORE : 0;
+    }
+
+    public static SpamRule blocklist(Supplier<SpamData> data) {
+        return (request, sourceIp) -> {
+            BloomFilter blocklist = data.get().getBlocklist();
+            String email = request.getEmail();
+            if (blocklist.mightContain(SpamData.EMAIL, email) || blocklist.mightContain(SpamData.IP, sourceIp)) {
+                return BLOCKED_SCORE;
+            }
+            int at = email != null ? email.lastIndexOf('@') : -1;
+            return at >= 0 && blocklist.mightContain(SpamData.DOMAIN, email, at + 1, email.length())
+                    ? BLOCKED_DOMAIN_SCORE
+                    : 0;
+        };
+    }
+
+    public static SpamRule tokens(Supplier<SpamData> data) {
+        return (request, sourceIp) -> {
+            TokenWeights tokenWeights = data.get().getTokenWeights();
+            return tokenWeights.score(request.getSubject()) + tokenWeights.score(request.getQuestion());
+        };
+    }
+}
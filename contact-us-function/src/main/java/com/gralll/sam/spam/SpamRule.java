@@ -0,0 +1,16 @@
+package com.gralll.sam.spam;
+
+import com.gralll.sam.model.ContactUsRequest;
+
+/**
+ * One signal of {@link SpamFilter}, a request is suspect once the sum of rule scores reaches a threshold.
+ */
+@FunctionalInterface
+public interface SpamRule {
+
+    /**
+     * @param sourceIp client IP, null for local invocations
+     * @return 0 for nothing suspicious
+     */
+    double score(ContactUsRequest request, String sourceIp);
+}
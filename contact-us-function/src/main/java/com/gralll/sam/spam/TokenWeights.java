@@ -0,0 +1,75 @@
+package com.gralll.sam.spam;
+
+/**
+ * Spam weights of words, kept as an open addressing table of word hashes,
+ * so a text is scored in one pass without splitting it into strings.
+ */
+public final class TokenWeights {
+
+    private final long[] hashes;
+    private final float[] weights;
+    private final int mask;
+    private final int capacity;
+    private int size;
+
+    /**
+     * @param capacity max number of words, the table is twice as large
+     */
+    public TokenWeights(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+        this.hashes = new long[size];
+        this.weights = new float[size];
+        this.mask = size - 1;
+        this.capacity = capacity;
+    }
+
+    public void put(CharSequence token, float weight) {
+        long hash = nonZero(BloomFilter.hash('t', token, 0, token.length()));
+        int slot = (int) hash & mask;
+        while (hashes[slot] != 0 && hashes[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        if (hashes[slot] == 0 && ++size > capacity) {
+            throw new IllegalStateException("More than " + capacity + " spam tokens.");
+        }
+        hashes[slot] = hash;
+        weights[slot] = weight;
+    }
+
+    /**
+     * @return sum of weights of all word occurrences; words are runs of letters and digits
+     */
+    public double score(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        double score = 0;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                score += weight(text, start, i);
+                start = -1;
+            }
+        }
+        return score;
+    }
+
+    private float weight(CharSequence text, int start, int end) {
+        long hash = nonZero(BloomFilter.hash('t', text, start, end));
+        int slot = (int) hash & mask;
+        while (hashes[slot] != 0) {
+            if (hashes[slot] == hash) {
+                return weights[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    private static long nonZero(long hash) {
+        return hash != 0 ? hash : 1;
+    }
+}
@@ -0,0 +1,60 @@
+package com.gralll.sam.startup;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Loads classes recorded by a training run ({@code gradlew classPreloadList}),
+ * so they are read from the jar at init phase instead of the first request.
+ * Classes are not initialized to avoid side effects of static blocks.
+ */
+public final class ClassPreloader {
+
+    public static final String PRELOAD_LIST = "preload-classes.txt";
+
+    private static final Logger LOG = LogManager.getLogger(ClassPreloader.class);
+
+    private ClassPreloader() {
+    }
+
+    /**
+     * @return number of loaded classes
+     */
+    public static int preload(String resourceName) {
+        ClassLoader classLoader = ClassPreloader.class.getClassLoader();
+        InputStream stream = classLoader.getResourceAsStream(resourceName);
+        if (stream == null) {
+            LOG.debug("Class preload list {} is absent.", resourceName);
+            return 0;
+        }
+        int loaded = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, UTF_8))) {
+            String className;
+            while ((className = reader.readLine()) != null) {
+                if (!className.isEmpty() && !className.startsWith("#") && load(className.trim(), classLoader)) {
+                    loaded++;
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Reading class preload list {} failed.", resourceName, e);
+        }
+        return loaded;
+    }
+
+    private static boolean load(String className, ClassLoader classLoader) {
+        try {
+            Class.forName(className, false, classLoader);
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            // The list may be a bit outdated, it is only an optimization
+            return false;
+        }
+    }
+}
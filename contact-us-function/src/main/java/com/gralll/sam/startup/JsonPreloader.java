@@ -0,0 +1,33 @@
+package com.gralll.sam.startup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.model.ContactUsResponseBody;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Builds and caches Jackson (de)serializers of the models in a given mapper
+ * by a round trip of synthetic data.
+ */
+public final class JsonPreloader {
+
+    private static final String SAMPLE_REQUEST =
+            "{\"subject\":\"s\",\"username\":\"u\",\"phone\":\"p\",\"email\":\"e\",\"question\":\"q\"}";
+
+    private JsonPreloader() {
+    }
+
+    public static void preload(ObjectMapper objectMapper) {
+        try {
+            objectMapper.readValue(SAMPLE_REQUEST, ContactUsRequest.class);
+            objectMapper.writeValueAsString(new ContactUsResponseBody("warm"));
+            objectMapper.writeValueAsString(
+                    new ContactUsProxyResponse(200, Collections.singletonMap("k", "v"), "warm"));
+        } catch (IOException e) {
+            throw new IllegalStateException("Models can not be (de)serialized.", e);
+        }
+    }
+}
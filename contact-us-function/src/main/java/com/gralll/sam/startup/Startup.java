@@ -0,0 +1,23 @@
+package com.gralll.sam.startup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Init phase work of a handler. Runs on the main thread
+ * while AwsClientFactory builds eager clients in background.
+ */
+public final class Startup {
+
+    private static final Logger LOG = LogManager.getLogger(Startup.class);
+
+    private Startup() {
+    }
+
+    public static void init(ObjectMapper objectMapper) {
+        int classes = StartupTimer.time("preload-classes", () -> ClassPreloader.preload(ClassPreloader.PRELOAD_LIST));
+        StartupTimer.time("preload-json", () -> JsonPreloader.preload(objectMapper));
+        LOG.debug("{} classes have been preloaded.", classes);
+    }
+}
@@ -0,0 +1,59 @@
+package com.gralll.sam.startup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Collects durations of init phases of a container.
+ * Phases may run in parallel, so the sum of phases may exceed the init time.
+ */
+public final class StartupTimer {
+
+    private static final long CLASS_LOADED_AT = System.nanoTime();
+    private static final Map<String, Long> PHASES = new ConcurrentHashMap<>();
+
+    private StartupTimer() {
+    }
+
+    public static <T> T time(String phase, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            record(phase, start);
+        }
+    }
+
+    public static void time(String phase, Runnable action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            record(phase, start);
+        }
+    }
+
+    public static void record(String phase, long startNanos) {
+        PHASES.put(phase, System.nanoTime() - startNanos);
+    }
+
+    public static Map<String, Long> getPhasesMillis() {
+        return PHASES.entrySet().stream()
+                     .collect(Collectors.toMap(Map.Entry::getKey,
+                             entry -> TimeUnit.NANOSECONDS.toMillis(entry.getValue())));
+    }
+
+    public static long getMillisSinceStart() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - CLASS_LOADED_AT);
+    }
+
+    public static String report() {
+        return PHASES.entrySet().stream()
+                     .sorted(Map.Entry.comparingByKey())
+                     .map(entry -> entry.getKey() + "=" + TimeUnit.NANOSECONDS.toMillis(entry.getValue()) + "ms")
+                     .collect(Collectors.joining(", ", "Startup phases: ", ", total=" + getMillisSinceStart() + "ms"));
+    }
+}
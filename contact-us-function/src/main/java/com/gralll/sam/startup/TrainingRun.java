@@ -0,0 +1,86 @@
+package com.gralll.sam.startup;
+
+import com.gralll.sam.StreamApp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handles sample events in a local JVM, so classes loaded by the hot path
+ * can be recorded with -Xlog:class+load. See {@code gradlew classPreloadList}.
+ * AWS calls are expected to fail without real credentials, sdk classes are loaded anyway.
+ * <p>
+ * With -Dtraining.report=&lt;file&gt; init time, loaded classes and memory after the run are written
+ * to that file, see {@code gradlew footprintReport}.
+ */
+public final class TrainingRun {
+
+    private TrainingRun() {
+    }
+
+    public static void main(String[] events) throws IOException {
+        long start = System.nanoTime();
+        StreamApp streamApp = new StreamApp();
+        long initNanos = System.nanoTime() - start;
+        long firstEventNanos = -1;
+        for (String event : events) {
+            long begin = System.nanoTime();
+            try (InputStream input = new FileInputStream(event)) {
+                streamApp.handleRequest(input, new ByteArrayOutputStream(), null);
+            }
+            if (firstEventNanos < 0) {
+                firstEventNanos = System.nanoTime() - begin;
+            }
+        }
+
+        String report = System.getProperty("training.report");
+        if (report != null) {
+            Properties footprint = new Properties();
+            footprint.setProperty("initMillis", Long.toString(TimeUnit.NANOSECONDS.toMillis(initNanos)));
+            footprint.setProperty("firstEventMillis", Long.toString(TimeUnit.NANOSECONDS.toMillis(firstEventNanos)));
+            footprint.setProperty("loadedClasses",
+                    Long.toString(ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount()));
+            footprint.setProperty("heapUsedBytes",
+                    Long.toString(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed()));
+            footprint.setProperty("metaspaceBytes", Long.toString(getMetaspaceUsed()));
+            footprint.setProperty("rssBytes", Long.toString(getProcessMemory("VmRSS:")));
+            footprint.setProperty("peakRssBytes", Long.toString(getProcessMemory("VmHWM:")));
+            try (OutputStream output = Files.newOutputStream(Paths.get(report))) {
+                footprint.store(output, "TrainingRun footprint");
+            }
+        }
+    }
+
+    private static long getMetaspaceUsed() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                                .filter(pool -> "Metaspace".equals(pool.getName()))
+                                .mapToLong(pool -> pool.getUsage().getUsed())
+                                .findFirst()
+                                .orElse(-1);
+    }
+
+    /**
+     * @return a /proc/self/status value in bytes, -1 if not on Linux
+     */
+    private static long getProcessMemory(String field) throws IOException {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        return Files.readAllLines(status).stream()
+                    .filter(line -> line.startsWith(field))
+                    .map(line -> line.substring(field.length()).trim().split("\\s+")[0])
+                    .mapToLong(kilobytes -> Long.parseLong(kilobytes) * 1024)
+                    .findFirst()
+                    .orElse(-1);
+    }
+}
@@ -0,0 +1,51 @@
+package com.gralll.sam.template;
+
+/**
+ * Allocation-free HTML escaping straight into a target builder.
+ */
+public final class HtmlEscaper {
+
+    private HtmlEscaper() {
+    }
+
+    public static void escape(String value, StringBuilder target) {
+        if (value == null) {
+            return;
+        }
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String replacement = replacement(value.charAt(i));
+            if (replacement != null) {
+                target.append(value, start, i).append(replacement);
+                start = i + 1;
+            }
+        }
+        target.append(value, start, value.length());
+    }
+
+    public static String escape(String value) {
+        if (value == null) {
+            return null;
+        }
+        StringBuilder target = new StringBuilder(value.length() + 16);
+        escape(value, target);
+        return target.toString();
+    }
+
+    private static String replacement(char c) {
+        switch (c) {
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '&':
+                return "&amp;";
+            case '"':
+                return "&quot;";
+            case '\'':
+                return "&#39;";
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.gralll.sam.template;
+
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Pre-compiled template: a list of literal chunks and typed slots.
+ * Source is parsed once, rendering only appends segments to a reusable builder.
+ * <p>
+ * Syntax: {@code {{name}}} is an HTML-escaped slot, {@code {{&name}}} is a raw slot.
+ *
+ * @param <T> model type slots are resolved from
+ */
+public class Template<T> {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+    private static final int SLOT_SIZE_ESTIMATE = 64;
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private final List<Segment<T>> segments;
+    private final int initialCapacity;
+    private final ThreadLocal<StringBuilder> builder;
+
+    private Template(List<Segment<T>> segments, int literalLength, int slotCount) {
+        this.segments = Collections.unmodifiableList(segments);
+        this.initialCapacity = literalLength + slotCount * SLOT_SIZE_ESTIMATE;
+        this.builder = ThreadLocal.withInitial(() -> new StringBuilder(initialCapacity));
+    }
+
+    /**
+     * Parses a template source and binds every slot to a value extractor.
+     *
+     * @param source   template text
+     * @param bindings slot name to model value extractor
+     * @throws ContactUsLambdaServerException if the source references an unknown slot or is malformed
+     */
+    public static <T> Template<T> compile(String source, Map<String, Function<T, String>> bindings) {
+        List<Segment<T>> segments = new ArrayList<>();
+        int literalLength = 0;
+        int slotCount = 0;
+        int position = 0;
+        while (position < source.length()) {
+            int open = source.indexOf(OPEN, position);
+            if (open < 0) {
+                literalLength += addLiteral(segments, source.substring(position));
+                break;
+            }
+            int close = source.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                throw new ContactUsLambdaServerException(
+                        "Unclosed template slot at position " + open + ".", null);
+            }
+            literalLength += addLiteral(segments, source.substring(position, open));
+            segments.add(slot(source.substring(open + OPEN.length(), close).trim(), bindings));
+            slotCount++;
+            position = close + CLOSE.length();
+        }
+        return new Template<>(segments, literalLength, slotCount);
+    }
+
+    /**
+     * Renders the template into a thread-confined builder which is reused between calls.
+     */
+    public String render(T model) {
+        StringBuilder target = builder.get();
+        target.setLength(0);
+        renderTo(model, target);
+        String result = target.toString();
+        if (target.capacity() > MAX_RETAINED_CAPACITY) {
+            // Do not keep a huge buffer alive after an oversized request
+            builder.set(new StringBuilder(initialCapacity));
+        }
+        return result;
+    }
+
+    public void renderTo(T model, StringBuilder target) {
+        for (Segment<T> segment : segments) {
+            segment.appendTo(model, target);
+        }
+    }
+
+    public int getInitialCapacity() {
+        return initialCapacity;
+    }
+
+    private static <T> int addLiteral(List<Segment<T>> segments, String literal) {
+        if (!literal.isEmpty()) {
+            segments.add((model, target) -> target.append(literal));
+        }
+        return literal.length();
+    }
+
+    private static <T> Segment<T> slot(String expression, Map<String, Function<T, String>> bindings) {
+        boolean raw = expression.startsWith("&");
+        String name = raw ? expression.substring(1).trim() : expression;
+        Function<T, String> extractor = bindings.get(name);
+        if (extractor == null) {
+            throw new ContactUsLambdaServerException("Unknown template slot '" + name + "'.", null);
+        }
+        return raw
+                ? (model, target) -> appendRaw(extractor.apply(model), target)
+                : (model, target) -> HtmlEscaper.escape(extractor.apply(model), target);
+    }
+
+    private static void appendRaw(String value, StringBuilder target) {
+        if (value != null) {
+            target.append(value);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Segment<T> {
+        void appendTo(T model, StringBuilder target);
+    }
+}
@@ -0,0 +1,34 @@
+package com.gralll.sam.template;
+
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads templates from the classpath. Supposed to be called once at init phase.
+ */
+public final class TemplateLoader {
+
+    private TemplateLoader() {
+    }
+
+    public static <T> Template<T> load(String resourceName, Map<String, Function<T, String>> bindings) {
+        return Template.compile(readResource(resourceName), bindings);
+    }
+
+    public static String readResource(String resourceName) {
+        try (InputStream stream = TemplateLoader.class.getClassLoader().getResourceAsStream(resourceName)) {
+            if (stream == null) {
+                throw new ContactUsLambdaServerException("Template " + resourceName + " not found.", null);
+            }
+            return new String(stream.readAllBytes(), UTF_8);
+        } catch (IOException e) {
+            throw new ContactUsLambdaServerException("Loading template " + resourceName + " failed.", e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.gralll.sam.tenant;
+
+import com.gralll.sam.ratelimit.TokenBucket;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A site served by the function: where its emails go, whether they go one by one or in digests
+ * and how many submissions it may send.
+ * Instances are immutable apart from the submission bucket, which lives as long as the config is unchanged.
+ */
+public final class Tenant {
+
+    private final String id;
+    private final List<String> hosts;
+    private final String senderEmail;
+    private final String recipientEmail;
+    private final String sesTemplateName;
+    private final double submissionsPerMinute;
+    private final boolean digest;
+    private final TokenBucket submissionBucket;
+
+    /**
+     * @param hosts                lower-case Host header values without a port
+     * @param sesTemplateName      SES template for bulk sends of OutboxApp, empty to render emails one by one
+     * @param submissionsPerMinute per container limit of the site, non-positive disables it
+     */
+    public Tenant(String id, List<String> hosts, String senderEmail, String recipientEmail,
+                  String sesTemplateName, double submissionsPerMinute) {
+        this(id, hosts, senderEmail, recipientEmail, sesTemplateName, submissionsPerMinute, false);
+    }
+
+    /**
+     * @param digest submissions are only persisted and sent in periodic digests by DigestApp
+     */
+    public Tenant(String id, List<String> hosts, String senderEmail, String recipientEmail,
+                  String sesTemplateName, double submissionsPerMinute, boolean digest) {
+        this.id = id;
+        this.hosts = hosts != null ? hosts : Collections.emptyList();
+        this.senderEmail = senderEmail;
+        this.recipientEmail = recipientEmail;
+        this.sesTemplateName = sesTemplateName != null ? sesTemplateName : "";
+        this.submissionsPerMinute = submissionsPerMinute;
+        this.digest = digest;
+        this.submissionBucket = submissionsPerMinute > 0
+                ? new TokenBucket(submissionsPerMinute, submissionsPerMinute / 60)
+                : null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public List<String> getHosts() {
+        return hosts;
+    }
+
+    public String getSenderEmail() {
+        return senderEmail;
+    }
+
+    public String getRecipientEmail() {
+        return recipientEmail;
+    }
+
+    public String getSesTemplateName() {
+        return sesTemplateName;
+    }
+
+    public double getSubmissionsPerMinute() {
+        return submissionsPerMinute;
+    }
+
+    public boolean isDigest() {
+        return digest;
+    }
+
+    /**
+     * @return 0 if a submission is admitted, otherwise nanos until it would be
+     */
+    public long tryAcquire() {
+        return submissionBucket != null ? submissionBucket.tryAcquire() : 0;
+    }
+
+    boolean hasSameConfig(Tenant other) {
+        return other != null
+                && id.equals(other.id)
+                && hosts.equals(other.hosts)
+                && Objects.equals(senderEmail, other.senderEmail)
+                && Objects.equals(recipientEmail, other.recipientEmail)
+                && sesTemplateName.equals(other.sesTemplateName)
+                && submissionsPerMinute == other.submissionsPerMinute
+                && digest == other.digest;
+    }
+}
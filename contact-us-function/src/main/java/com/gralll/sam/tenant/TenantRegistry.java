@@ -0,0 +1,182 @@
+package com.gralll.sam.tenant;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.gralll.sam.cache.SnapshotHolder;
+import com.gralll.sam.exception.ContactUsLambdaClientException;
+import com.gralll.sam.model.ProxyEvent;
+import com.gralll.sam.service.PropertyStorage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Resolves the site of a request, so one fleet of warm containers serves every site.
+ * <p>
+ * A request is routed by its {tenant} path parameter, otherwise by its Host header; requests of
+ * unknown hosts, e.g. of the execute-api host itself, go to the default tenant built from env variables.
+ * Sites are read from TENANTS_TABLE into an immutable snapshot, which is replaced in background
+ * every TENANTS_REFRESH_MINUTES, so a lookup is two map reads.
+ */
+public class TenantRegistry {
+
+    public static final String DEFAULT_TENANT_ID = "default";
+    public static final String PATH_PARAMETER = "tenant";
+
+    private static final Logger LOG = LogManager.getLogger(TenantRegistry.class);
+
+    private final Tenant defaultTenant;
+    private final Supplier<Snapshot> snapshot;
+
+    /**
+     * A registry of the default tenant only.
+     */
+    public TenantRegistry(Tenant defaultTenant) {
+        this.defaultTenant = defaultTenant;
+        Snapshot only = new Snapshot(defaultTenant, Collections.emptyList(), null);
+        this.snapshot = () -> only;
+    }
+
+    public TenantRegistry(Tenant defaultTenant, Supplier<List<Tenant>> source, long refreshMillis,
+                          Executor executor, LongSupplier nanoClock) {
+        this.defaultTenant = defaultTenant;
+        this.snapshot = new SnapshotHolder<>("Tenant registry",
+                previous -> new Snapshot(defaultTenant, source.get(), previous),
+                refreshMillis, executor, nanoClock);
+    }
+
+    /**
+     * @return a registry of TENANTS_TABLE sites, or of the default tenant only if the table is not set
+     */
+    public static TenantRegistry create(PropertyStorage propertyStorage, Supplier<AmazonDynamoDB> dynamoDBClient) {
+        Tenant defaultTenant = new Tenant(DEFAULT_TENANT_ID, Collections.emptyList(),
+                propertyStorage.getValue("SENDER_EMAIL"),
+                propertyStorage.getValue("RECIPIENT_EMAIL"),
+                propertyStorage.getValue("SES_TEMPLATE_NAME"),
+                0,
+                Boolean.parseBoolean(propertyStorage.getValue("DIGEST_ENABLED")));
+        String tableName = propertyStorage.getValue("TENANTS_TABLE");
+        if (tableName.isEmpty()) {
+            return new TenantRegistry(defaultTenant);
+        }
+        return new TenantRegistry(defaultTenant,
+                () -> scan(dynamoDBClient.get(), tableName, defaultTenant),
+                TimeUnit.MINUTES.toMillis(Long.parseLong(propertyStorage.getValue("TENANTS_REFRESH_MINUTES"))),
+                SnapshotHolder.newReloadExecutor("tenant-registry-reload"),
+                System::nanoTime);
+    }
+
+    /**
+     * @throws ContactUsLambdaClientException if the path parameter names an unknown site
+     */
+    public Tenant resolve(ProxyEvent event) {
+        Snapshot current = snapshot.get();
+        String tenantId = event.getPathParameters().get(PATH_PARAMETER);
+        if (tenantId != null) {
+            Tenant tenant = current.byId.get(tenantId);
+            if (tenant == null) {
+                throw new ContactUsLambdaClientException("Site " + tenantId + " is unknown.", null);
+            }
+            return tenant;
+        }
+        String host = normalizeHost(event.getHeader("Host"));
+        Tenant tenant = host != null ? current.byHost.get(host) : null;
+        return tenant != null ? tenant : defaultTenant;
+    }
+
+    /**
+     * @param tenantId id stored with a submission, null for ones stored before sites existed
+     * @return the tenant, the default one if it is unknown by now
+     */
+    public Tenant get(String tenantId) {
+        Tenant tenant = tenantId != null ? snapshot.get().byId.get(tenantId) : null;
+        if (tenant == null && tenantId != null) {
+            LOG.warn("Site {} is unknown, the default one is used.", tenantId);
+        }
+        return tenant != null ? tenant : defaultTenant;
+    }
+
+    /**
+     * @return every site, the default one included
+     */
+    public Collection<Tenant> getTenants() {
+        return snapshot.get().byId.values();
+    }
+
+    static String normalizeHost(String host) {
+        if (host == null) {
+            return null;
+        }
+        int port = host.indexOf(':');
+        return (port >= 0 ? host.substring(0, port) : host).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static List<Tenant> scan(AmazonDynamoDB dynamoDBClient, String tableName, Tenant defaultTenant) {
+        List<Tenant> tenants = new ArrayList<>();
+        Map<String, AttributeValue> startKey = null;
+        do {
+            ScanResult result = dynamoDBClient.scan(new ScanRequest(tableName).withExclusiveStartKey(startKey));
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                tenants.add(toTenant(item, defaultTenant));
+            }
+            startKey = result.getLastEvaluatedKey();
+        } while (startKey != null && !startKey.isEmpty());
+        return tenants;
+    }
+
+    // Absent emails fall back to the default ones
+    private static Tenant toTenant(Map<String, AttributeValue> item, Tenant defaultTenant) {
+        List<String> hosts = new ArrayList<>();
+        AttributeValue hostsValue = item.get("Hosts");
+        if (hostsValue != null && hostsValue.getSS() != null) {
+            hostsValue.getSS().forEach(host -> hosts.add(normalizeHost(host)));
+        }
+        AttributeValue rate = item.get("SubmissionsPerMinute");
+        AttributeValue digest = item.get("Digest");
+        return new Tenant(item.get("Id").getS(), hosts,
+                getString(item, "SenderEmail", defaultTenant.getSenderEmail()),
+                getString(item, "RecipientEmail", defaultTenant.getRecipientEmail()),
+                getString(item, "SesTemplateName", ""),
+                rate != null && rate.getN() != null ? Double.parseDouble(rate.getN()) : 0,
+                digest != null && Boolean.TRUE.equals(digest.getBOOL()));
+    }
+
+    private static String getString(Map<String, AttributeValue> item, String name, String defaultValue) {
+        AttributeValue value = item.get(name);
+        return value != null && value.getS() != null ? value.getS() : defaultValue;
+    }
+
+    /**
+     * Sites by id and host. Tenants of an unchanged config are taken over from the previous snapshot,
+     * so their submission buckets survive a refresh.
+     */
+    private static final class Snapshot {
+
+        private final Map<String, Tenant> byId = new LinkedHashMap<>();
+        private final Map<String, Tenant> byHost = new HashMap<>();
+
+        private Snapshot(Tenant defaultTenant, List<Tenant> tenants, Snapshot previous) {
+            byId.put(defaultTenant.getId(), defaultTenant);
+            for (Tenant tenant : tenants) {
+                Tenant previousTenant = previous != null ? previous.byId.get(tenant.getId()) : null;
+                Tenant current = tenant.hasSameConfig(previousTenant) ? previousTenant : tenant;
+                byId.put(current.getId(), current);
+                current.getHosts().forEach(host -> byHost.put(host, current));
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.gralll.sam.validation;
+
+import com.gralll.sam.exception.ContactUsLambdaValidationException;
+import com.gralll.sam.model.ContactUsRequest;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Size limits, normalization and format checks of ContactUs requests.
+ * <p>
+ * Fields are trimmed and stripped of control characters, only the question keeps
+ * line breaks and tabs; blank fields become null. Phone separators are dropped and an email
+ * domain is lower-cased. HTML is escaped later, once, by the email template.
+ * All field errors are reported at once.
+ */
+public final class ContactUsRequestValidator {
+
+    public static final int MAX_BODY_LENGTH = 16 * 1024;
+
+    private static final Map<String, Integer> MAX_LENGTHS = createMaxLengths();
+    // RFC 5321 limits, a pragmatic subset of RFC 5322 syntax which SES accepts
+    private static final Pattern EMAIL = Pattern.compile(
+            "[A-Za-z0-9.!#$%&'*+/=?^_`{|}~-]{1,64}@[A-Za-z0-9](?:[A-Za-z0-9-]{0,61}[A-Za-z0-9])?"
+                    + "(?:\\.[A-Za-z0-9](?:[A-Za-z0-9-]{0,61}[A-Za-z0-9])?)+");
+    // E.164 after separators are dropped
+    private static final int MIN_PHONE_DIGITS = 7;
+    private static final int MAX_PHONE_DIGITS = 15;
+
+    private ContactUsRequestValidator() {
+    }
+
+    /**
+     * @return max length of a field value, 0 for unknown fields
+     */
+    public static int maxLength(String field) {
+        return MAX_LENGTHS.getOrDefault(field, 0);
+    }
+
+    /**
+     * @return a normalized copy of a request
+     * @throws ContactUsLambdaValidationException with all field errors
+     */
+    public static ContactUsRequest validate(ContactUsRequest request) {
+        if (request == null) {
+            throw new ContactUsLambdaValidationException(Collections.singletonMap("body", "is required"));
+        }
+        Map<String, String> errors = new LinkedHashMap<>();
+        String subject = checkLength("subject", normalize(request.getSubject(), false), errors);
+        String username = checkLength("username", normalize(request.getUsername(), false), errors);
+        String phone = checkLength("phone", normalizePhone(normalize(request.getPhone(), false)), errors);
+        String email = checkLength("email", normalizeEmail(normalize(request.getEmail(), false)), errors);
+        String question = checkLength("question", normalize(request.getQuestion(), true), errors);
+
+        if (phone != null && !errors.containsKey("phone") && !isPhone(phone)) {
+            errors.put("phone", "is not a valid phone number");
+        }
+        if (email == null) {
+            errors.putIfAbsent("email", "is required");
+        } else if (!errors.containsKey("email") && !EMAIL.matcher(email).matches()) {
+            errors.put("email", "is not a valid email address");
+        }
+        if (question == null) {
+            errors.putIfAbsent("question", "is required");
+        }
+        if (!errors.isEmpty()) {
+            throw new ContactUsLambdaValidationException(errors);
+        }
+        ContactUsRequest validated = new ContactUsRequest(subject, username, phone, email, question);
+        validated.setWebsite(normalize(request.getWebsite(), false));
+        return validated;
+    }
+
+    public static String tooLong(String field) {
+        return "must be at most " + maxLength(field) + " characters";
+    }
+
+    private static String checkLength(String field, String value, Map<String, String> errors) {
+        if (value != null && value.length() > maxLength(field)) {
+            errors.put(field, tooLong(field));
+        }
+        return value;
+    }
+
+    /**
+     * The same instance is returned if nothing changes.
+     */
+    static String normalize(String value, boolean multiline) {
+        if (value == null) {
+            return null;
+        }
+        int start = 0;
+        int end = value.length();
+        while (start < end && Character.isWhitespace(value.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(value.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+        StringBuilder normalized = null;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            boolean keep = !Character.isISOControl(c) || multiline && (c == '\n' || c == '\t');
+            if (!keep && normalized == null) {
+                normalized = new StringBuilder(end - start).append(value, start, i);
+            } else if (keep && normalized != null) {
+                normalized.append(c);
+            }
+        }
+        if (normalized != null) {
+            return normalized.toString();
+        }
+        return start == 0 && end == value.length() ? value : value.substring(start, end);
+    }
+
+    private static boolean isPhone(String phone) {
+        int start = phone.startsWith("+") ? 1 : 0;
+        int digits = phone.length() - start;
+        if (digits < MIN_PHONE_DIGITS || digits > MAX_PHONE_DIGITS) {
+            return false;
+        }
+        for (int i = start; i < phone.length(); i++) {
+            if (phone.charAt(i) < '0' || phone.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String normalizePhone(String phone) {
+        if (phone == null) {
+            return null;
+        }
+        StringBuilder digits = null;
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            boolean separator = c == ' ' || c == '-' || c == '(' || c == ')' || c == '.';
+            if (separator && digits == null) {
+                digits = new StringBuilder(phone.length()).append(phone, 0, i);
+            } else if (!separator && digits != null) {
+                digits.append(c);
+            }
+        }
+        return digits != null ? digits.toString() : phone;
+    }
+
+    private static String normalizeEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        int at = email.lastIndexOf('@');
+        if (at < 0) {
+            return email;
+        }
+        for (int i = at + 1; i < email.length(); i++) {
+            if (Character.isUpperCase(email.charAt(i))) {
+                return email.substring(0, at + 1) + email.substring(at + 1).toLowerCase(Locale.ROOT);
+            }
+        }
+        return email;
+    }
+
+    private static Map<String, Integer> createMaxLengths() {
+        Map<String, Integer> maxLengths = new LinkedHashMap<>();
+        maxLengths.put("subject", 200);
+        maxLengths.put("username", 100);
+        maxLengths.put("phone", 32);
+        maxLengths.put("email", 254);
+        maxLengths.put("question", 5000);
+        maxLengths.put("website", 200);
+        return Collections.unmodifiableMap(maxLengths);
+    }
+}
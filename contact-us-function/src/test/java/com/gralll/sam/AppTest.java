@@ -1,10 +1,14 @@
 package com.gralll.sam;
 
-import com.amazonaws.serverless.proxy.model.AwsProxyRequest;
 import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.attachment.AttachmentService;
+import com.gralll.sam.attachment.MultipartRequestReader;
 import com.gralll.sam.exception.ContactUsLambdaClientException;
 import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.model.ContactUsRequest;
 import com.gralll.sam.service.AwsClientFactory;
 import com.gralll.sam.service.DbService;
 import com.gralll.sam.service.EmailService;
@@ -18,6 +22,7 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,6 +33,8 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -38,7 +45,9 @@ import static org.powermock.api.mockito.PowerMockito.whenNew;
 @PrepareForTest(App.class)
 public class AppTest {
 
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    // Unknown event fields are skipped, as the Lambda runtime does
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
 
     private App app;
 
@@ -54,15 +63,21 @@ public class AppTest {
     private Context context;
     @Mock
     private AwsClientFactory awsClientFactory;
+    @Mock
+    private AttachmentService attachmentService;
+    @Mock
+    private MultipartRequestReader multipartRequestReader;
 
     @Before
     public void setUp() throws Exception {
         initMocks(this);
         whenNew(AwsClientFactory.class).withNoArguments().thenReturn(awsClientFactory);
-        whenNew(EmailService.class).withArguments(any()).thenReturn(emailService);
-        whenNew(DbService.class).withArguments(any()).thenReturn(dbService);
-        whenNew(ResponseService.class).withArguments(any()).thenReturn(responseService);
-        whenNew(RequestService.class).withArguments(any()).thenReturn(requestService);
+        whenNew(EmailService.class).withAnyArguments().thenReturn(emailService);
+        whenNew(DbService.class).withAnyArguments().thenReturn(dbService);
+        whenNew(ResponseService.class).withAnyArguments().thenReturn(responseService);
+        whenNew(RequestService.class).withAnyArguments().thenReturn(requestService);
+        whenNew(AttachmentService.class).withAnyArguments().thenReturn(attachmentService);
+        whenNew(MultipartRequestReader.class).withAnyArguments().thenReturn(multipartRequestReader);
         app = new App();
     }
 
@@ -73,10 +88,10 @@ public class AppTest {
         given(responseService.buildResponse(eq(200), anyString())).willReturn(expectedContactUsProxyResponse);
         given(emailService.sendEmail(anyString(), anyString(), any())).willReturn("123");
         doNothing().when(dbService).putContactUsRequest(anyString(), any());
-        AwsProxyRequest awsProxyRequest =
+        APIGatewayProxyRequestEvent awsProxyRequest =
                 OBJECT_MAPPER.readValue(
                         this.getClass().getClassLoader().getResourceAsStream("contact_us_request.json"),
-                        AwsProxyRequest.class);
+                        APIGatewayProxyRequestEvent.class);
 
         // when
         ContactUsProxyResponse contactUsProxyResponse = app.handleRequest(awsProxyRequest, context);
@@ -85,7 +100,7 @@ public class AppTest {
         assertNotNull(contactUsProxyResponse);
         assertEquals(contactUsProxyResponse, expectedContactUsProxyResponse);
         verify(requestService).getAsPrettyString(any());
-        verify(requestService).getContactUsRequest(any());
+        verify(requestService).parseContactUsRequest(anyString());
         verify(responseService).buildResponse(eq(200), anyString());
         verify(emailService).sendEmail(anyString(), anyString(), any());
         verify(dbService).putContactUsRequest(eq("123"), any());
@@ -98,10 +113,10 @@ public class AppTest {
         given(requestService.getAsPrettyString(any()))
                 .willThrow(new ContactUsLambdaClientException("Client ex", new Exception("some ex")));
         given(responseService.buildResponse(eq(400), anyString())).willReturn(expectedContactUsProxyResponse);
-        AwsProxyRequest awsProxyRequest =
+        APIGatewayProxyRequestEvent awsProxyRequest =
                 OBJECT_MAPPER.readValue(
                         this.getClass().getClassLoader().getResourceAsStream("contact_us_request.json"),
-                        AwsProxyRequest.class);
+                        APIGatewayProxyRequestEvent.class);
 
         // when
         ContactUsProxyResponse contactUsProxyResponse = app.handleRequest(awsProxyRequest, context);
@@ -120,10 +135,10 @@ public class AppTest {
         given(emailService.sendEmail(anyString(), anyString(), any()))
                 .willThrow(new RuntimeException("Client ex"));
         given(responseService.buildResponse(eq(500), anyString())).willReturn(expectedContactUsProxyResponse);
-        AwsProxyRequest awsProxyRequest =
+        APIGatewayProxyRequestEvent awsProxyRequest =
                 OBJECT_MAPPER.readValue(
                         this.getClass().getClassLoader().getResourceAsStream("contact_us_request.json"),
-                        AwsProxyRequest.class);
+                        APIGatewayProxyRequestEvent.class);
 
         // when
         ContactUsProxyResponse contactUsProxyResponse = app.handleRequest(awsProxyRequest, context);
@@ -139,11 +154,11 @@ public class AppTest {
     public void shouldOnlyWarmUpLambda() throws IOException {
         // given
         ContactUsProxyResponse expectedContactUsProxyResponse = getStubContactUsProxyResponse();
-        given(responseService.buildWarmUpResponse()).willReturn(expectedContactUsProxyResponse);
-        AwsProxyRequest awsProxyRequest =
+        given(responseService.buildWarmUpResponse(anyString())).willReturn(expectedContactUsProxyResponse);
+        APIGatewayProxyRequestEvent awsProxyRequest =
                 OBJECT_MAPPER.readValue(
                         this.getClass().getClassLoader().getResourceAsStream("warm_up_request.json"),
-                        AwsProxyRequest.class);
+                        APIGatewayProxyRequestEvent.class);
 
         // when
         ContactUsProxyResponse contactUsProxyResponse = app.handleRequest(awsProxyRequest, context);
@@ -152,9 +167,48 @@ public class AppTest {
         assertNotNull(contactUsProxyResponse);
         assertEquals(contactUsProxyResponse, expectedContactUsProxyResponse);
         verify(requestService).getAsPrettyString(any());
-        verify(responseService).buildWarmUpResponse();
-        verifyNoMoreInteractions(requestService, responseService);
-        verifyZeroInteractions(emailService, dbService);
+        verify(responseService).buildWarmUpResponse(anyString());
+        verify(requestService, times(20)).parseContactUsRequest(anyString());
+        verify(requestService, never()).getContactUsRequest(any());
+        verify(emailService, never()).sendEmail(anyString(), anyString(), any());
+        verify(emailService).primeConnection();
+        verify(dbService).primeConnection();
+        verifyNoMoreInteractions(dbService);
+    }
+
+    @Test
+    public void shouldDeleteFilesOfDuplicateMultipartRequest() {
+        // given
+        ContactUsProxyResponse expectedContactUsProxyResponse = getStubContactUsProxyResponse();
+        given(responseService.buildResponse(eq(200), anyString())).willReturn(expectedContactUsProxyResponse);
+        given(emailService.sendEmail(anyString(), anyString(), any())).willReturn("123");
+        // The same form posted twice, its file is stored under a new key each time
+        given(multipartRequestReader.read(any()))
+                .willReturn(getMultipartRequest("attachments/2020-05-01/a/screenshot.png"))
+                .willReturn(getMultipartRequest("attachments/2020-05-01/b/screenshot.png"));
+        APIGatewayProxyRequestEvent awsProxyRequest = new APIGatewayProxyRequestEvent()
+                .withHttpMethod("POST")
+                .withBody("multipart body")
+                .withHeaders(Collections.singletonMap("Content-Type", "multipart/form-data; boundary=b"));
+
+        // when
+        ContactUsProxyResponse first = app.handleRequest(awsProxyRequest, context);
+        ContactUsProxyResponse second = app.handleRequest(awsProxyRequest, context);
+
+        // then
+        assertEquals(expectedContactUsProxyResponse, first);
+        assertEquals(expectedContactUsProxyResponse, second);
+        verify(emailService, times(1)).sendEmail(anyString(), anyString(), any());
+        verify(attachmentService).delete(Collections.singletonList("attachments/2020-05-01/b/screenshot.png"));
+        verifyNoMoreInteractions(attachmentService);
+    }
+
+    private ContactUsRequest getMultipartRequest(String attachment) {
+        ContactUsRequest contactUsRequest =
+                new ContactUsRequest("subject", "Alex", "+79999999999", "alex@gmail.com", "See the screenshot");
+        contactUsRequest.setAttachments(Collections.singletonList(attachment));
+        contactUsRequest.setAttachmentsDigest("digest");
+        return contactUsRequest;
     }
 
     private ContactUsProxyResponse getStubContactUsProxyResponse() {
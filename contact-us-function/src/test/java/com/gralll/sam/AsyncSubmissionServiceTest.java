@@ -0,0 +1,129 @@
+package com.gralll.sam;
+
+import com.gralll.sam.exception.ContactUsLambdaPartialFailureException;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.service.AsyncSubmissionService;
+import com.gralll.sam.service.DbService;
+import com.gralll.sam.service.EmailService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class AsyncSubmissionServiceTest {
+
+    private final ContactUsRequest contactUsRequest =
+            new ContactUsRequest("subject", "name", "+79991234545", "123@mail.ru", "Question");
+
+    @Mock
+    private EmailService emailService;
+    @Mock
+    private DbService dbService;
+
+    private ExecutorService executor;
+    private AsyncSubmissionService asyncSubmissionService;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        executor = Executors.newFixedThreadPool(2);
+        asyncSubmissionService = new AsyncSubmissionService(emailService, dbService, executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldPersistUnderSubmissionIdAndLinkMessageId() {
+        // given
+        given(emailService.sendEmail(anyString(), anyString(), any())).willReturn("123");
+
+        // when
+        String messageId = asyncSubmissionService.submit("from@mail.ru", "to@mail.ru", contactUsRequest);
+
+        // then
+        assertEquals("123", messageId);
+        ArgumentCaptor<String> submissionId = ArgumentCaptor.forClass(String.class);
+        verify(dbService).putContactUsRequest(submissionId.capture(), eq(contactUsRequest));
+        verify(dbService).linkMessageId(submissionId.getValue(), "123");
+    }
+
+    @Test
+    public void shouldMarkDeliveryFailedWhenOnlyPersistingSucceeded() {
+        // given
+        given(emailService.sendEmail(anyString(), anyString(), any())).willThrow(new RuntimeException("SES"));
+
+        // when
+        try {
+            asyncSubmissionService.submit("from@mail.ru", "to@mail.ru", contactUsRequest);
+            fail("Partial failure expected.");
+        } catch (ContactUsLambdaPartialFailureException e) {
+            // then
+            assertFalse(e.isEmailSent());
+            assertTrue(e.isPersisted());
+            verify(dbService).markDeliveryFailed(e.getSubmissionId());
+            verify(dbService, never()).linkMessageId(anyString(), anyString());
+        }
+    }
+
+    @Test
+    public void shouldReportSentEmailWhenPersistingFailed() {
+        // given
+        given(emailService.sendEmail(anyString(), anyString(), any())).willReturn("123");
+        doThrow(new RuntimeException("DynamoDB")).when(dbService).putContactUsRequest(anyString(), any());
+
+        // when
+        try {
+            asyncSubmissionService.submit("from@mail.ru", "to@mail.ru", contactUsRequest);
+            fail("Partial failure expected.");
+        } catch (ContactUsLambdaPartialFailureException e) {
+            // then
+            assertTrue(e.isEmailSent());
+            assertFalse(e.isPersisted());
+        }
+    }
+
+    @Test
+    public void shouldSucceedWhenOnlyLinkingFailed() {
+        // given
+        given(emailService.sendEmail(anyString(), anyString(), any())).willReturn("123");
+        doThrow(new RuntimeException("DynamoDB")).when(dbService).linkMessageId(anyString(), anyString());
+
+        // when
+        String messageId = asyncSubmissionService.submit("from@mail.ru", "to@mail.ru", contactUsRequest);
+
+        // then
+        // A failed response would release the idempotency key and let a retry send the email again
+        assertEquals("123", messageId);
+    }
+
+    @Test(expected = ContactUsLambdaServerException.class)
+    public void shouldFailWhenBothSidesFailed() {
+        // given
+        given(emailService.sendEmail(anyString(), anyString(), any())).willThrow(new RuntimeException("SES"));
+        doThrow(new RuntimeException("DynamoDB")).when(dbService).putContactUsRequest(anyString(), any());
+
+        // when
+        asyncSubmissionService.submit("from@mail.ru", "to@mail.ru", contactUsRequest);
+    }
+}
@@ -0,0 +1,201 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.simpleemail.AmazonSimpleEmailService;
+import com.amazonaws.services.simpleemail.model.SendRawEmailRequest;
+import com.amazonaws.services.simpleemail.model.SendRawEmailResult;
+import com.gralll.sam.attachment.AttachmentService;
+import com.gralll.sam.attachment.MultipartRequestReader;
+import com.gralll.sam.exception.ContactUsLambdaValidationException;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.model.ProxyEvent;
+import com.gralll.sam.service.EmailService;
+import com.gralll.sam.service.PropertyStorage;
+import com.gralll.sam.stub.InMemoryS3Client;
+import com.gralll.sam.template.TemplateLoader;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AttachmentTest {
+
+    private static final String BOUNDARY = "----FormBoundary7MA4YWxkTrZu0gW";
+    private static final int MB = 1024 * 1024;
+    private static final String SUBJECT = "\u0412\u043e\u043f\u0440\u043e\u0441";
+
+    private final InMemoryS3Client s3Client = new InMemoryS3Client();
+
+    @Test
+    public void shouldReadFieldsAndStoreFilesOfBase64MultipartRequest() throws IOException {
+        // given
+        AttachmentService attachmentService = attachmentService(5 * MB);
+        byte[] screenshot = content(20 * 1024);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeField(body, "subject", "Question");
+        writeField(body, "email", "alex@Gmail.com");
+        writeField(body, "question", "Why does it fail?\r\nSee the screenshot.");
+        // A non-ASCII name with a Windows path, as old browsers send it
+        writeFile(body, "screenshot", "C:\\Users\\Alex\\\u0421\u043a\u0440\u0438\u043d 1.png", "image/png",
+                screenshot);
+        body.write(("--" + BOUNDARY + "--\r\n").getBytes(UTF_8));
+        ProxyEvent event = new ProxyEvent("POST", Base64.getEncoder().encodeToString(body.toByteArray()), true,
+                Collections.singletonMap("content-type", "multipart/form-data; boundary=" + BOUNDARY),
+                null, null, null, "10.0.0.1");
+
+        // when
+        ContactUsRequest request = new MultipartRequestReader(attachmentService).read(event);
+        ContactUsRequest retried = new MultipartRequestReader(attachmentService).read(event);
+
+        // then
+        assertEquals("Question", request.getSubject());
+        assertEquals("alex@gmail.com", request.getEmail());
+        assertEquals("Why does it fail?\nSee the screenshot.", request.getQuestion());
+        assertEquals(1, request.getAttachments().size());
+        String key = request.getAttachments().get(0);
+        assertEquals("______1.png", AttachmentService.getFileName(key));
+        assertArrayEquals(screenshot, s3Client.getContent(key));
+        // Stored twice under distinct keys, recognized as the same files
+        assertNotEquals(key, retried.getAttachments().get(0));
+        assertEquals(request.getAttachmentsDigest(), retried.getAttachmentsDigest());
+    }
+
+    @Test
+    public void shouldUploadLargeFileInPartsOfBoundedSize() throws IOException {
+        // given
+        AttachmentService attachmentService = attachmentService(16 * MB);
+        int size = 12 * MB + 12345;
+
+        // when
+        String key = attachmentService.store("video.pdf", "application/pdf", new GeneratedStream(size));
+
+        // then
+        byte[] stored = s3Client.getContent(key);
+        assertEquals(size, stored.length);
+        assertArrayEquals(content(size), stored);
+        assertEquals(5 * MB, s3Client.getMaxChunkSize());
+        assertEquals(0, s3Client.getPendingUploads());
+    }
+
+    @Test
+    public void shouldRejectOversizedFileAndAbortItsUpload() throws IOException {
+        // given
+        AttachmentService attachmentService = attachmentService(6 * MB);
+
+        // when
+        try {
+            attachmentService.store("large.pdf", "application/pdf", new GeneratedStream(7 * MB));
+            fail("Oversized file was stored");
+        } catch (ContactUsLambdaValidationException e) {
+            // then
+            assertEquals("large.pdf must be at most " + 6 * MB + " bytes", e.getFieldErrors().get("attachments"));
+        }
+        assertEquals(1, s3Client.getAbortedUploads());
+        assertEquals(0, s3Client.getPendingUploads());
+        assertEquals(0, s3Client.getObjectCount());
+    }
+
+    @Test
+    public void shouldAttachSmallFilesAndLinkLargeOnesInRawEmail() throws IOException {
+        // given
+        AttachmentService attachmentService = attachmentService(5 * MB);
+        byte[] screenshot = content(20 * 1024);
+        String small = attachmentService.store("screenshot.png", "image/png", new GeneratedStream(screenshot.length));
+        String large = attachmentService.store("report.pdf", "application/pdf", new GeneratedStream(40 * 1024));
+        ContactUsRequest request = new ContactUsRequest(SUBJECT, "Alex", null, "alex@gmail.com", "See files");
+        request.setAttachments(Arrays.asList(small, large));
+        AmazonSimpleEmailService sesClient = mock(AmazonSimpleEmailService.class);
+        when(sesClient.sendRawEmail(any())).thenReturn(new SendRawEmailResult().withMessageId("raw-id"));
+        EmailService emailService = new EmailService(sesClient,
+                TemplateLoader.load(EmailService.EMAIL_TEMPLATE, EmailService.EMAIL_TEMPLATE_BINDINGS),
+                attachmentService, 30 * 1024);
+
+        // when
+        String messageId = emailService.sendEmail("sender@gmail.com", "recipient@gmail.com", request);
+
+        // then
+        assertEquals("raw-id", messageId);
+        ArgumentCaptor<SendRawEmailRequest> captor = ArgumentCaptor.forClass(SendRawEmailRequest.class);
+        verify(sesClient).sendRawEmail(captor.capture());
+        String message = UTF_8.decode(captor.getValue().getRawMessage().getData()).toString();
+        assertTrue(message.contains("Subject: =?UTF-8?B?" + Base64.getEncoder()
+                .encodeToString(SUBJECT.getBytes(UTF_8)) + "?="));
+        assertTrue(message.contains("Content-Disposition: attachment; filename=\"screenshot.png\""));
+        assertTrue(message.contains(Base64.getMimeEncoder().encodeToString(screenshot)));
+        assertTrue(message.contains(Base64.getMimeEncoder().encodeToString(
+                ("Files too large to be attached:\r\nreport.pdf: https://attachments.s3.local/" + large + "\r\n")
+                        .getBytes(UTF_8))));
+        assertTrue(message.endsWith("--\r\n"));
+    }
+
+    private AttachmentService attachmentService(long maxBytes) {
+        PropertyStorage propertyStorage = spy(new PropertyStorage());
+        doReturn("attachments").when(propertyStorage).getValue("ATTACHMENTS_BUCKET");
+        doReturn(Long.toString(maxBytes)).when(propertyStorage).getValue("ATTACHMENTS_MAX_BYTES");
+        return new AttachmentService(() -> s3Client, propertyStorage);
+    }
+
+    private static void writeField(ByteArrayOutputStream body, String name, String value) throws IOException {
+        body.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n"
+                + value + "\r\n").getBytes(UTF_8));
+    }
+
+    private static void writeFile(ByteArrayOutputStream body, String name, String fileName, String contentType,
+                                  byte[] content) throws IOException {
+        body.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"; filename=\""
+                + fileName + "\"\r\nContent-Type: " + contentType + "\r\n\r\n").getBytes(UTF_8));
+        body.write(content);
+        body.write("\r\n".getBytes(UTF_8));
+    }
+
+    private static byte[] content(int size) throws IOException {
+        return new GeneratedStream(size).readAllBytes();
+    }
+
+    /**
+     * Binary content generated on the fly, CR and LF bytes included, so it is never held as a whole.
+     */
+    private static final class GeneratedStream extends InputStream {
+
+        private final long size;
+        private long position;
+
+        private GeneratedStream(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            return position < size ? (int) (position++ % 251) : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= size) {
+                return -1;
+            }
+            int count = (int) Math.min(length, size - position);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) (position++ % 251);
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.service.AwsClientFactory;
+import com.gralll.sam.service.DbService;
+import com.gralll.sam.service.EmailService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(BatchApp.class)
+public class BatchAppTest {
+
+    private static final String BODY =
+            "{\"subject\": \"Question\",\"question\": \"How much does it cost\",\"username\": \"Alex\","
+                    + "\"phone\": \"+79999999999\",\"email\": \"alex@gmail.com\"}";
+
+    private BatchApp batchApp;
+
+    @Mock
+    private EmailService emailService;
+    @Mock
+    private DbService dbService;
+    @Mock
+    private Context context;
+    @Mock
+    private AwsClientFactory awsClientFactory;
+    @Captor
+    private ArgumentCaptor<Map<String, ContactUsRequest>> requests;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        whenNew(AwsClientFactory.class).withNoArguments().thenReturn(awsClientFactory);
+        whenNew(EmailService.class).withAnyArguments().thenReturn(emailService);
+        whenNew(DbService.class).withAnyArguments().thenReturn(dbService);
+        batchApp = new BatchApp();
+    }
+
+    @Test
+    public void shouldReportOnlyFailedMessages() {
+        // given
+        SQSEvent event = getEvent(
+                getMessage("sent", BODY),
+                getMessage("notSent", BODY),
+                getMessage("notWritten", BODY),
+                getMessage("notLinked", BODY),
+                getMessage("malformed", "{not a json"));
+        Map<String, String> messageIds = new HashMap<>();
+        messageIds.put("sent", "ses-1");
+        messageIds.put("notLinked", "ses-3");
+        given(dbService.putQueuedContactUsRequests(anyMap())).willReturn(Collections.singleton("notWritten"));
+        given(emailService.sendEmails(anyString(), anyString(), anyMap())).willReturn(messageIds);
+        willThrow(new IllegalStateException("Throttled")).given(dbService).linkMessageId("notLinked", "ses-3");
+
+        // when
+        SQSBatchResponse response = batchApp.handleRequest(event, context);
+
+        // then
+        // An email which has been sent is not sent again, whether it is linked or not
+        assertEquals(2, response.getBatchItemFailures().size());
+        assertEquals("notSent", response.getBatchItemFailures().get(0).getItemIdentifier());
+        assertEquals("notWritten", response.getBatchItemFailures().get(1).getItemIdentifier());
+        InOrder inOrder = inOrder(dbService, emailService);
+        inOrder.verify(dbService).putQueuedContactUsRequests(anyMap());
+        inOrder.verify(emailService).sendEmails(anyString(), anyString(), requests.capture());
+        inOrder.verify(dbService).linkMessageId("sent", "ses-1");
+        assertEquals(new HashSet<>(Arrays.asList("sent", "notSent", "notLinked")), requests.getValue().keySet());
+    }
+
+    @Test
+    public void shouldNotSendRedeliveredMessageAgainIfSent() {
+        // given
+        SQSEvent event = getEvent(
+                getRedeliveredMessage("sentBefore", BODY),
+                getRedeliveredMessage("notSentBefore", BODY));
+        given(dbService.putQueuedContactUsRequests(anyMap())).willReturn(Collections.emptySet());
+        given(dbService.putQueuedContactUsRequestIfNotSent(eq("sentBefore"), any())).willReturn(false);
+        given(dbService.putQueuedContactUsRequestIfNotSent(eq("notSentBefore"), any())).willReturn(true);
+        given(emailService.sendEmails(anyString(), anyString(), anyMap()))
+                .willReturn(Collections.singletonMap("notSentBefore", "ses-4"));
+
+        // when
+        SQSBatchResponse response = batchApp.handleRequest(event, context);
+
+        // then
+        assertTrue(response.getBatchItemFailures().isEmpty());
+        verify(emailService).sendEmails(anyString(), anyString(), requests.capture());
+        assertEquals(Collections.singleton("notSentBefore"), requests.getValue().keySet());
+        verify(dbService).linkMessageId("notSentBefore", "ses-4");
+        verify(dbService, never()).linkMessageId(eq("sentBefore"), anyString());
+    }
+
+    private SQSEvent getEvent(SQSEvent.SQSMessage... messages) {
+        SQSEvent event = new SQSEvent();
+        event.setRecords(Arrays.asList(messages));
+        return event;
+    }
+
+    private SQSEvent.SQSMessage getRedeliveredMessage(String messageId, String body) {
+        SQSEvent.SQSMessage message = getMessage(messageId, body);
+        message.setAttributes(Collections.singletonMap("ApproximateReceiveCount", "2"));
+        return message;
+    }
+
+    private SQSEvent.SQSMessage getMessage(String messageId, String body) {
+        SQSEvent.SQSMessage message = new SQSEvent.SQSMessage();
+        message.setMessageId(messageId);
+        message.setBody(body);
+        return message;
+    }
+}
@@ -0,0 +1,75 @@
+package com.gralll.sam;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.exception.ContactUsLambdaValidationException;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.service.RequestService;
+import com.gralll.sam.validation.ContactUsRequestValidator;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ContactUsRequestValidatorTest {
+
+    @Test
+    public void shouldNormalizeFields() {
+        // given
+        ContactUsRequest request = new ContactUsRequest(" Question\u0000 ", "  ", "+7 (999) 999-99-99",
+                "Alex@Gmail.COM", "How much\r\ndoes it cost?\t");
+
+        // when
+        ContactUsRequest normalized = ContactUsRequestValidator.validate(request);
+
+        // then
+        assertEquals("Question", normalized.getSubject());
+        assertNull(normalized.getUsername());
+        assertEquals("+79999999999", normalized.getPhone());
+        assertEquals("Alex@gmail.com", normalized.getEmail());
+        assertEquals("How much\ndoes it cost?", normalized.getQuestion());
+    }
+
+    @Test
+    public void shouldReportAllFieldErrors() {
+        // given
+        ContactUsRequest request = new ContactUsRequest(null, null, "call me", "alex@", null);
+
+        // when
+        Map<String, String> errors = validate(request);
+
+        // then
+        assertEquals(Arrays.asList("phone", "email", "question"), Arrays.asList(errors.keySet().toArray()));
+        assertEquals("is not a valid email address", errors.get("email"));
+        assertEquals("is required", errors.get("question"));
+    }
+
+    @Test
+    public void shouldRejectOversizedFieldWhileParsing() {
+        // given
+        char[] question = new char[5001];
+        Arrays.fill(question, 'a');
+        String body = "{\"email\":\"alex@gmail.com\",\"question\":\"" + new String(question) + "\",\"unknown\":1}";
+
+        // when
+        try {
+            new RequestService(new ObjectMapper()).parseContactUsRequest(body);
+            fail("Oversized question must be rejected.");
+        } catch (ContactUsLambdaValidationException e) {
+            // then
+            assertEquals(ContactUsRequestValidator.tooLong("question"), e.getFieldErrors().get("question"));
+        }
+    }
+
+    private static Map<String, String> validate(ContactUsRequest request) {
+        try {
+            ContactUsRequestValidator.validate(request);
+            throw new AssertionError("Request must be rejected.");
+        } catch (ContactUsLambdaValidationException e) {
+            return e.getFieldErrors();
+        }
+    }
+}
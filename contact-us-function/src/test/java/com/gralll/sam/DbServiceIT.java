@@ -15,12 +15,19 @@ import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
 import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
 import com.gralll.sam.model.ContactUsRequest;
 import com.gralll.sam.service.DbService;
+import com.gralll.sam.service.PropertyStorage;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(LocalstackTestRunner.class)
 @LocalstackDockerProperties(services = { "dynamodb" })
@@ -33,7 +40,7 @@ public class DbServiceIT {
     public void setUp() {
         AmazonDynamoDB clientDynamoDB = TestUtils.getClientDynamoDB();
         dynamoDB = new DynamoDB(clientDynamoDB);
-        dbService = new DbService(dynamoDB);
+        dbService = new DbService(clientDynamoDB, new PropertyStorage());
 
         dynamoDB.createTable(
                 new CreateTableRequest()
@@ -63,5 +70,39 @@ public class DbServiceIT {
         assertEquals(item.get("Phone"), contactUsRequest.getPhone());
         assertEquals(item.get("Email"), contactUsRequest.getEmail());
         assertEquals(item.get("Question"), contactUsRequest.getQuestion());
+        assertTrue(item.isPresent("CreatedAt"));
+    }
+
+    @Test
+    public void shouldSkipNullFields() {
+        // given
+        ContactUsRequest contactUsRequest = new ContactUsRequest("subject", "name", null, "123@mail.ru", "Qeustion");
+
+        // when
+        dbService.putContactUsRequest("123", contactUsRequest);
+
+        // then
+        Item item = dynamoDB.getTable("ContactUsTable").getItem(new PrimaryKey("Id", "123"));
+        assertFalse(item.isPresent("Phone"));
+        assertEquals(item.get("Email"), contactUsRequest.getEmail());
+    }
+
+    @Test
+    public void shouldAddContactUsRequestsToDbTableInBatches() {
+        // given
+        Map<String, ContactUsRequest> contactUsRequests = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            contactUsRequests.put("id-" + i,
+                    new ContactUsRequest("subject " + i, "name", "+79991234545", "123@mail.ru", "Qeustion"));
+        }
+
+        // when
+        Set<String> failedIds = dbService.putQueuedContactUsRequests(contactUsRequests);
+
+        // then
+        assertTrue(failedIds.isEmpty());
+        Item item = dynamoDB.getTable("ContactUsTable").getItem(new PrimaryKey("Id", "id-29"));
+        assertEquals(item.get("Subject"), "subject 29");
+        assertEquals(DbService.QUEUED, item.get("DeliveryStatus"));
     }
 }
@@ -0,0 +1,150 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.gralll.sam.attachment.AttachmentService;
+import com.gralll.sam.service.AwsClientFactory;
+import com.gralll.sam.service.DbService;
+import com.gralll.sam.service.EmailService;
+import com.gralll.sam.service.PropertyStorage;
+import com.gralll.sam.tenant.Tenant;
+import com.gralll.sam.tenant.TenantRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DigestApp.class, TenantRegistry.class})
+public class DigestAppTest {
+
+    private DigestApp digestApp;
+
+    @Mock
+    private EmailService emailService;
+    @Mock
+    private DbService dbService;
+    @Mock
+    private AttachmentService attachmentService;
+    @Mock
+    private TenantRegistry tenantRegistry;
+    @Mock
+    private Context context;
+    @Mock
+    private AwsClientFactory awsClientFactory;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        mockStatic(TenantRegistry.class);
+        given(TenantRegistry.create(any(PropertyStorage.class), any())).willReturn(tenantRegistry);
+        whenNew(EmailService.class).withAnyArguments().thenReturn(emailService);
+        whenNew(DbService.class).withAnyArguments().thenReturn(dbService);
+        whenNew(AttachmentService.class).withAnyArguments().thenReturn(attachmentService);
+        digestApp = new DigestApp(awsClientFactory);
+    }
+
+    @Test
+    public void shouldSendOneDigestPerRecipientAndMarkItsSubmissions() throws Exception {
+        // given
+        given(tenantRegistry.getTenants()).willReturn(Arrays.asList(
+                new Tenant("shop", Collections.emptyList(), "shop@gmail.com", "owner@gmail.com", null, 0, true),
+                new Tenant("blog", Collections.emptyList(), "blog@gmail.com", "owner@gmail.com", null, 0, true),
+                new Tenant("docs", Collections.emptyList(), "docs@gmail.com", "docs@gmail.com", null, 0, true),
+                new Tenant("instant", Collections.emptyList(), "it@gmail.com", "owner@gmail.com", null, 0, false)));
+        givenSubmissions("shop", Arrays.asList(
+                getItem("1", "Refund <now>", "attachments/2020-04-01/a/invoice.pdf"),
+                getItem("2", "Delivery", null)));
+        givenSubmissions("blog", Collections.singletonList(getItem("3", "Typo", null)));
+        givenSubmissions("docs", Collections.emptyList());
+        given(attachmentService.getLink(anyString())).willReturn(new URL("https://attachments.s3.local/invoice.pdf"));
+        given(emailService.sendHtmlEmail(anyString(), anyString(), anyString(), anyString())).willReturn("ses-1");
+
+        // when
+        String summary = digestApp.handleRequest(new ScheduledEvent(), context);
+
+        // then
+        assertEquals("1 digests with 3 submissions have been sent.", summary);
+        ArgumentCaptor<String> html = ArgumentCaptor.forClass(String.class);
+        verify(emailService).sendHtmlEmail(eq("shop@gmail.com"), eq("owner@gmail.com"),
+                eq("Contact Us digest: 3 submissions"), html.capture());
+        verify(emailService, never()).sendHtmlEmail(anyString(), eq("docs@gmail.com"), anyString(), anyString());
+        assertTrue(html.getValue().contains("<h2>Site 'shop'</h2>"));
+        assertTrue(html.getValue().contains("<h2>Site 'blog'</h2>"));
+        assertTrue(html.getValue().contains("<p>2020-04-01 12:30 UTC: Refund &lt;now&gt;</p>"));
+        assertTrue(html.getValue().contains("<a href=\"https://attachments.s3.local/invoice.pdf\">invoice.pdf</a>"));
+        assertTrue(html.getValue().contains("<p>3 submissions received until "));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Map<String, AttributeValue>>> items = ArgumentCaptor.forClass(List.class);
+        verify(dbService).markDigestSent(items.capture(), eq("ses-1"));
+        assertEquals(3, items.getValue().size());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void shouldFailInvocationIfDigestCouldNotBeSent() {
+        // given
+        given(tenantRegistry.getTenants()).willReturn(Collections.singletonList(
+                new Tenant("shop", Collections.emptyList(), "shop@gmail.com", "owner@gmail.com", null, 0, true)));
+        givenSubmissions("shop", Collections.singletonList(getItem("1", "Refund", null)));
+        given(emailService.sendHtmlEmail(anyString(), anyString(), anyString(), anyString()))
+                .willThrow(new RuntimeException("SES is down"));
+
+        // when
+        try {
+            digestApp.handleRequest(new ScheduledEvent(), context);
+        } finally {
+            // then
+            verify(dbService, never()).markDigestSent(anyList(), anyString());
+        }
+    }
+
+    private void givenSubmissions(String tenantId, List<Map<String, AttributeValue>> items) {
+        doAnswer(invocation -> {
+            Consumer<Map<String, AttributeValue>> consumer = invocation.getArgument(3);
+            items.forEach(consumer);
+            return items.size();
+        }).when(dbService).queryDigestContactUsRequests(eq(tenantId), anyLong(), anyInt(), any());
+    }
+
+    private Map<String, AttributeValue> getItem(String id, String subject, String attachment) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("Id", new AttributeValue(id));
+        item.put("Subject", new AttributeValue(subject));
+        item.put("Username", new AttributeValue("Alex"));
+        item.put("Email", new AttributeValue("alex@gmail.com"));
+        item.put("Question", new AttributeValue("How much?"));
+        item.put("CreatedAt", new AttributeValue().withN("1585744200000"));
+        if (attachment != null) {
+            item.put("Attachments", new AttributeValue().withSS(attachment));
+        }
+        return item;
+    }
+}
@@ -0,0 +1,97 @@
+package com.gralll.sam;
+
+import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.service.IdempotencyService;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class IdempotencyServiceTest {
+
+    private final IdempotencyService idempotencyService = new IdempotencyService(null, "", 10, 60);
+
+    @Test
+    public void shouldHandleDuplicateOnlyOnce() {
+        // given
+        AtomicInteger calls = new AtomicInteger();
+        ContactUsProxyResponse response = new ContactUsProxyResponse(200, Collections.emptyMap(), "sent");
+
+        // when
+        ContactUsProxyResponse first = idempotencyService.execute("key", () -> {
+            calls.incrementAndGet();
+            return response;
+        });
+        ContactUsProxyResponse second = idempotencyService.execute("key", () -> {
+            calls.incrementAndGet();
+            return new ContactUsProxyResponse(200, Collections.emptyMap(), "sent again");
+        });
+
+        // then
+        assertEquals(1, calls.get());
+        assertEquals(response, first);
+        assertEquals(response, second);
+    }
+
+    @Test
+    public void shouldRetryFailedRequest() {
+        // given
+        AtomicInteger calls = new AtomicInteger();
+
+        // when
+        idempotencyService.execute("key", () -> {
+            calls.incrementAndGet();
+            return new ContactUsProxyResponse(500, Collections.emptyMap(), "failed");
+        });
+        idempotencyService.execute("key", () -> {
+            calls.incrementAndGet();
+            return new ContactUsProxyResponse(200, Collections.emptyMap(), "sent");
+        });
+
+        // then
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void shouldPreferHeaderOverContentHash() {
+        // given
+        ContactUsRequest contactUsRequest =
+                new ContactUsRequest("subject", "Alex", "+79999999999", "alex@gmail.com", "How much?");
+        ContactUsRequest otherRequest =
+                new ContactUsRequest("subject", "Alex", "+79999999999", "alex@gmail.com", "How long?");
+
+        // when
+        String byHeader = idempotencyService.getKey("site", "abc", contactUsRequest);
+        String byContent = idempotencyService.getKey("site", null, contactUsRequest);
+
+        // then
+        assertEquals("key:site:abc", byHeader);
+        assertEquals(byContent, idempotencyService.getKey("site", null, contactUsRequest));
+        assertNotEquals(byContent, idempotencyService.getKey("site", null, otherRequest));
+    }
+
+    @Test
+    public void shouldScopeKeysBySiteAndAttachments() {
+        // given
+        ContactUsRequest contactUsRequest =
+                new ContactUsRequest("subject", "Alex", "+79999999999", "alex@gmail.com", "See the file");
+        String withoutFiles = idempotencyService.getKey("site", null, contactUsRequest);
+
+        // when
+        contactUsRequest.setAttachmentsDigest("digest-1");
+        String withFile = idempotencyService.getKey("site", null, contactUsRequest);
+        contactUsRequest.setAttachmentsDigest("digest-2");
+        String withOtherFile = idempotencyService.getKey("site", null, contactUsRequest);
+
+        // then
+        assertNotEquals(withoutFiles, withFile);
+        assertNotEquals(withFile, withOtherFile);
+        assertNotEquals(withOtherFile, idempotencyService.getKey("other-site", null, contactUsRequest));
+        assertNotEquals(idempotencyService.getKey("site", "abc", contactUsRequest),
+                idempotencyService.getKey("other-site", "abc", contactUsRequest));
+    }
+}
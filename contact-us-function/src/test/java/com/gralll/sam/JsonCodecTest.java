@@ -0,0 +1,67 @@
+package com.gralll.sam;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.exception.ContactUsLambdaClientException;
+import com.gralll.sam.json.JsonCodec;
+import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.model.ContactUsResponseBody;
+import com.gralll.sam.model.SubmissionPage;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JsonCodecTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonCodec jsonCodec = new JsonCodec(objectMapper.getFactory());
+
+    @Test
+    public void shouldReadContactUsRequestAsDatabindDoes() {
+        // given
+        String body = "{\"subject\":\"Question\",\"username\":\"Alex\",\"phone\":79999999999,"
+                + "\"email\":\"alex@gmail.com\",\"question\":null}";
+
+        // when
+        ContactUsRequest request = jsonCodec.readContactUsRequest(body);
+
+        // then
+        assertEquals("Question", request.getSubject());
+        assertEquals("Alex", request.getUsername());
+        assertEquals("79999999999", request.getPhone());
+        assertEquals("alex@gmail.com", request.getEmail());
+        assertNull(request.getQuestion());
+        assertNull(jsonCodec.readContactUsRequest("null"));
+    }
+
+    @Test(expected = ContactUsLambdaClientException.class)
+    public void shouldRejectUnknownField() {
+        // when
+        jsonCodec.readContactUsRequest("{\"subject\":\"Question\",\"admin\":true}");
+    }
+
+    @Test
+    public void shouldWriteTheSameJsonAsDatabind() throws IOException {
+        // given
+        ContactUsProxyResponse response = new ContactUsProxyResponse(
+                200, Collections.singletonMap("Content-Type", "application/json"), "{\"response\":\"\\\"sent\\\"\"}");
+        SubmissionPage page = new SubmissionPage(
+                Collections.singletonList(Collections.singletonMap("Id", "1")), null);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // when
+        jsonCodec.writeProxyResponse(response, output);
+
+        // then
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(response)),
+                objectMapper.readTree(output.toByteArray()));
+        assertEquals(objectMapper.writeValueAsString(new ContactUsResponseBody("Message \"1\" has been sent.")),
+                jsonCodec.writeResponseBody("Message \"1\" has been sent."));
+        assertEquals(objectMapper.writeValueAsString(page), jsonCodec.writeSubmissionPage(page));
+    }
+}
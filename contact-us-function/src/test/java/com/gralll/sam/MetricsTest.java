@@ -0,0 +1,74 @@
+package com.gralll.sam;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.metrics.Histogram;
+import com.gralll.sam.metrics.Metrics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @After
+    public void tearDown() {
+        Metrics.configure(false, "ContactUs");
+    }
+
+    @Test
+    public void shouldKeepPercentilesWithinBucketPrecision() {
+        // given
+        Histogram histogram = new Histogram();
+
+        // when
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value);
+        }
+
+        // then
+        assertEquals(10_000, histogram.getTotalCount());
+        assertEquals(10_000, histogram.getMax());
+        assertEquals(5_000, histogram.getValueAtQuantile(0.5), 5_000 * 0.07);
+        assertEquals(9_900, histogram.getValueAtQuantile(0.99), 9_900 * 0.07);
+        assertEquals(0, new Histogram().getValueAtQuantile(0.5));
+    }
+
+    @Test
+    public void shouldFlushInvocationAsEmf() throws IOException {
+        // given
+        Metrics.configure(true, "Test");
+        Metrics.time(Metrics.SES_SEND, () -> "messageId");
+        Metrics.withoutRecording(() -> Metrics.time(Metrics.DB_PUT, () -> "ignored"));
+
+        // when
+        JsonNode first = new ObjectMapper().readTree(Metrics.flush(500));
+        JsonNode second = new ObjectMapper().readTree(Metrics.flush(200));
+
+        // then
+        JsonNode directive = first.get("_aws").get("CloudWatchMetrics").get(0);
+        assertEquals("Test", directive.get("Namespace").asText());
+        assertEquals("SesSend", directive.get("Metrics").get(1).get("Name").asText());
+        assertEquals(1, first.get("SesSend").size());
+        assertFalse(first.has("DbPut"));
+        assertEquals("ServerError", first.get("Outcome").asText());
+        assertEquals("Cold", first.get("Start").asText());
+        assertEquals("Warm", second.get("Start").asText());
+        assertFalse(second.has("SesSend"));
+        assertTrue(second.get("Container").get("SesSend").get("count").asLong() >= 1);
+    }
+
+    @Test
+    public void shouldSkipEverythingIfDisabled() {
+        // when
+        String line = Metrics.flush(200);
+
+        // then
+        assertNull(line);
+    }
+}
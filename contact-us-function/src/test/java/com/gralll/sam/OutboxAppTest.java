@@ -0,0 +1,200 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
+import com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue;
+import com.amazonaws.services.lambda.runtime.events.models.dynamodb.StreamRecord;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.service.AwsClientFactory;
+import com.gralll.sam.service.DbService;
+import com.gralll.sam.service.EmailService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(OutboxApp.class)
+public class OutboxAppTest {
+
+    private OutboxApp outboxApp;
+
+    @Mock
+    private EmailService emailService;
+    @Mock
+    private DbService dbService;
+    @Mock
+    private Context context;
+    @Mock
+    private AwsClientFactory awsClientFactory;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        whenNew(AwsClientFactory.class).withNoArguments().thenReturn(awsClientFactory);
+        whenNew(EmailService.class).withAnyArguments().thenReturn(emailService);
+        whenNew(DbService.class).withAnyArguments().thenReturn(dbService);
+        outboxApp = new OutboxApp();
+    }
+
+    @Test
+    public void shouldSendPendingRequestsAndRetryFailedOnes() {
+        // given
+        DynamodbEvent event = getEvent(
+                getRecord("1", "sent", "PENDING", 0),
+                getRecord("2", "notSent", "PENDING", 0),
+                getRecord("3", "exhausted", "PENDING", 2),
+                getRecord("4", "alreadySent", "SENT", 0));
+        Map<String, String> messageIds = new HashMap<>();
+        messageIds.put("sent", "ses-1");
+        given(dbService.claimDelivery(anyString(), anyLong())).willReturn(true);
+        given(emailService.sendEmails(anyString(), anyString(), anyMap())).willReturn(messageIds);
+
+        // when
+        StreamsEventResponse response = outboxApp.handleRequest(event, context);
+
+        // then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, ContactUsRequest>> requests = ArgumentCaptor.forClass(Map.class);
+        verify(emailService).sendEmails(anyString(), anyString(), requests.capture());
+        assertEquals(Arrays.asList("sent", "notSent", "exhausted"), Arrays.asList(requests.getValue().keySet().toArray()));
+        assertEquals("How much?", requests.getValue().get("sent").getQuestion());
+        verify(dbService).claimDelivery(eq("sent"), anyLong());
+        verify(dbService).claimDelivery(eq("notSent"), anyLong());
+        verify(dbService).claimDelivery(eq("exhausted"), anyLong());
+        verify(dbService).linkMessageId("sent", "ses-1");
+        verify(dbService).retryDelivery(eq("notSent"), anyLong());
+        verify(dbService).markDeliveryFailed("exhausted");
+        verifyNoMoreInteractions(dbService);
+        assertTrue(response.getBatchItemFailures().isEmpty());
+    }
+
+    @Test
+    public void shouldSkipRequestsWhichAreNotPendingAnymore() {
+        // given
+        // A replayed batch whose first request has been sent and linked meanwhile
+        DynamodbEvent event = getEvent(
+                getRecord("1", "sentBefore", "PENDING", 0),
+                getRecord("2", "notSent", "PENDING", 0));
+        given(dbService.claimDelivery(eq("sentBefore"), anyLong())).willReturn(false);
+        given(dbService.claimDelivery(eq("notSent"), anyLong())).willReturn(true);
+        given(emailService.sendEmails(anyString(), anyString(), anyMap()))
+                .willReturn(Collections.singletonMap("notSent", "ses-2"));
+
+        // when
+        StreamsEventResponse response = outboxApp.handleRequest(event, context);
+
+        // then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, ContactUsRequest>> requests = ArgumentCaptor.forClass(Map.class);
+        verify(emailService).sendEmails(anyString(), anyString(), requests.capture());
+        assertEquals(Collections.singleton("notSent"), requests.getValue().keySet());
+        verify(dbService).linkMessageId("notSent", "ses-2");
+        assertTrue(response.getBatchItemFailures().isEmpty());
+    }
+
+    @Test
+    public void shouldReplayFromRecordWhichCouldNotBeClaimed() {
+        // given
+        DynamodbEvent event = getEvent(
+                getRecord("1", "sent", "PENDING", 0),
+                getRecord("2", "notClaimed", "PENDING", 0),
+                getRecord("3", "notSent", "PENDING", 0));
+        given(dbService.claimDelivery(eq("sent"), anyLong())).willReturn(true);
+        given(dbService.claimDelivery(eq("notClaimed"), anyLong())).willThrow(new RuntimeException("DynamoDB is down"));
+        given(dbService.claimDelivery(eq("notSent"), anyLong())).willReturn(true);
+        given(emailService.sendEmails(anyString(), anyString(), anyMap()))
+                .willReturn(Collections.singletonMap("sent", "ses-1"));
+        doThrow(new RuntimeException("DynamoDB is down")).when(dbService).retryDelivery(anyString(), anyLong());
+
+        // when
+        StreamsEventResponse response = outboxApp.handleRequest(event, context);
+
+        // then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, ContactUsRequest>> requests = ArgumentCaptor.forClass(Map.class);
+        verify(emailService).sendEmails(anyString(), anyString(), requests.capture());
+        assertEquals(Arrays.asList("sent", "notSent"), Arrays.asList(requests.getValue().keySet().toArray()));
+        // A failed retry is not replayed, the request has been claimed and a replay would skip it
+        assertEquals(1, response.getBatchItemFailures().size());
+        assertEquals("2", response.getBatchItemFailures().get(0).getItemIdentifier());
+    }
+
+    @Test
+    public void shouldSkipRequestsWhichAreNotDueYet() {
+        // given
+        // A retry backing off, released by OutboxSweepApp once due
+        DynamodbEvent.DynamodbStreamRecord retry = getRecord("1", "retry", "PENDING", 1);
+        retry.getDynamodb().getNewImage().put("RetryAt",
+                new AttributeValue().withN(Long.toString(System.currentTimeMillis() + 60_000)));
+        DynamodbEvent event = getEvent(retry);
+
+        // when
+        StreamsEventResponse response = outboxApp.handleRequest(event, context);
+
+        // then
+        verify(dbService, never()).claimDelivery(anyString(), anyLong());
+        verifyNoMoreInteractions(emailService);
+        assertTrue(response.getBatchItemFailures().isEmpty());
+    }
+
+    @Test
+    public void shouldClaimRequestsUntilInvocationTimesOut() {
+        // given
+        DynamodbEvent event = getEvent(getRecord("1", "sent", "PENDING", 0));
+        given(context.getRemainingTimeInMillis()).willReturn(60_000);
+        given(dbService.claimDelivery(anyString(), anyLong())).willReturn(true);
+        given(emailService.sendEmails(anyString(), anyString(), anyMap()))
+                .willReturn(Collections.singletonMap("sent", "ses-1"));
+        long start = System.currentTimeMillis();
+
+        // when
+        outboxApp.handleRequest(event, context);
+
+        // then
+        ArgumentCaptor<Long> staleAt = ArgumentCaptor.forClass(Long.class);
+        verify(dbService).claimDelivery(eq("sent"), staleAt.capture());
+        assertTrue(staleAt.getValue() >= start + 60_000);
+    }
+
+    private DynamodbEvent getEvent(DynamodbEvent.DynamodbStreamRecord... records) {
+        DynamodbEvent event = new DynamodbEvent();
+        event.setRecords(Arrays.asList(records));
+        return event;
+    }
+
+    private DynamodbEvent.DynamodbStreamRecord getRecord(String sequenceNumber, String id, String status, int attempts) {
+        Map<String, AttributeValue> image = new HashMap<>();
+        image.put("Id", new AttributeValue(id));
+        image.put("Question", new AttributeValue("How much?"));
+        image.put("DeliveryStatus", new AttributeValue(status));
+        image.put("DeliveryAttempts", new AttributeValue().withN(Integer.toString(attempts)));
+        DynamodbEvent.DynamodbStreamRecord record = new DynamodbEvent.DynamodbStreamRecord();
+        record.setDynamodb(new StreamRecord().withSequenceNumber(sequenceNumber).withNewImage(image));
+        return record;
+    }
+}
@@ -0,0 +1,105 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.service.AwsClientFactory;
+import com.gralll.sam.service.DbService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(OutboxSweepApp.class)
+public class OutboxSweepAppTest {
+
+    private OutboxSweepApp outboxSweepApp;
+
+    @Mock
+    private DbService dbService;
+    @Mock
+    private Context context;
+    @Mock
+    private AwsClientFactory awsClientFactory;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        whenNew(AwsClientFactory.class).withNoArguments().thenReturn(awsClientFactory);
+        whenNew(DbService.class).withAnyArguments().thenReturn(dbService);
+        outboxSweepApp = new OutboxSweepApp();
+    }
+
+    @Test
+    public void shouldReleaseDueRequestsAndReclaimStaleClaims() {
+        // given
+        givenDueDeliveries(DbService.PENDING,
+                Arrays.asList(getItem("due", 100, 1), getItem("claimedMeanwhile", 200, 1)));
+        givenDueDeliveries(DbService.SENDING, Arrays.asList(getItem("stale", 300, 0), getItem("exhausted", 400, 2)));
+        given(dbService.releaseDelivery(eq("due"), anyLong(), anyLong())).willReturn(true);
+        given(dbService.releaseDelivery(eq("claimedMeanwhile"), anyLong(), anyLong())).willReturn(false);
+        given(dbService.reclaimDelivery(anyString(), anyLong(), anyBoolean(), anyLong())).willReturn(true);
+
+        // when
+        String summary = outboxSweepApp.handleRequest(new ScheduledEvent(), context);
+
+        // then
+        verify(dbService).releaseDelivery(eq("due"), eq(100L), anyLong());
+        verify(dbService).reclaimDelivery(eq("stale"), eq(300L), eq(true), anyLong());
+        // No attempts left, its email is not sent again
+        verify(dbService).reclaimDelivery(eq("exhausted"), eq(400L), eq(false), anyLong());
+        assertEquals("1 of 2 due requests have been released, 2 of 2 stale claims reclaimed.", summary);
+    }
+
+    @Test(expected = ContactUsLambdaServerException.class)
+    public void shouldFailInvocationIfRequestCouldNotBeReleased() {
+        // given
+        givenDueDeliveries(DbService.PENDING, Collections.singletonList(getItem("due", 100, 0)));
+        givenDueDeliveries(DbService.SENDING, Collections.emptyList());
+        given(dbService.releaseDelivery(anyString(), anyLong(), anyLong()))
+                .willThrow(new RuntimeException("DynamoDB is down"));
+
+        // when
+        outboxSweepApp.handleRequest(new ScheduledEvent(), context);
+    }
+
+    private void givenDueDeliveries(String status, List<Map<String, AttributeValue>> items) {
+        doAnswer(invocation -> {
+            Consumer<Map<String, AttributeValue>> consumer = invocation.getArgument(3);
+            items.forEach(consumer);
+            return items.size();
+        }).when(dbService).queryDueDeliveries(eq(status), anyLong(), anyInt(), any());
+    }
+
+    private Map<String, AttributeValue> getItem(String id, long retryAt, int attempts) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("Id", new AttributeValue(id));
+        item.put("RetryAt", new AttributeValue().withN(Long.toString(retryAt)));
+        item.put("DeliveryAttempts", new AttributeValue().withN(Integer.toString(attempts)));
+        return item;
+    }
+}
@@ -0,0 +1,115 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.model.SubmissionPage;
+import com.gralll.sam.service.QueryService;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class QueryServiceTest {
+
+    private final AmazonDynamoDB dynamoDBClient = mock(AmazonDynamoDB.class);
+    private final QueryService queryService = new QueryService(dynamoDBClient, new ObjectMapper(), 10, 60);
+
+    @Test
+    public void shouldQueryPageByEmailAndResumeFromCursor() {
+        // given
+        Map<String, AttributeValue> lastKey = new HashMap<>();
+        lastKey.put("Id", new AttributeValue("1"));
+        lastKey.put("Email", new AttributeValue("alex@gmail.com"));
+        lastKey.put("CreatedAt", new AttributeValue().withN("1600000000000"));
+        given(dynamoDBClient.query(any(QueryRequest.class)))
+                .willReturn(new QueryResult().withCount(1).withItems(Collections.singletonList(item("1")))
+                        .withLastEvaluatedKey(lastKey))
+                .willReturn(new QueryResult().withCount(1).withItems(Collections.singletonList(item("2"))));
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("email", "alex@gmail.com");
+        parameters.put("limit", "1");
+
+        // when
+        SubmissionPage first = queryService.query(parameters);
+        parameters.put("cursor", first.getNextCursor());
+        SubmissionPage second = queryService.query(parameters);
+
+        // then
+        ArgumentCaptor<QueryRequest> requests = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(dynamoDBClient, times(2)).query(requests.capture());
+        QueryRequest request = requests.getAllValues().get(0);
+        assertEquals(QueryService.EMAIL_INDEX, request.getIndexName());
+        assertEquals(Integer.valueOf(1), request.getLimit());
+        assertFalse(request.getScanIndexForward());
+        assertFalse(request.getProjectionExpression().contains("question"));
+        assertEquals(lastKey, requests.getAllValues().get(1).getExclusiveStartKey());
+        assertEquals("1", first.getItems().get(0).get("Id"));
+        assertEquals("2", second.getItems().get(0).get("Id"));
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    public void shouldAnswerRepeatedQueryFromCache() {
+        // given
+        given(dynamoDBClient.query(any(QueryRequest.class)))
+                .willReturn(new QueryResult().withCount(1).withItems(Collections.singletonList(item("1"))));
+        Map<String, String> parameters = Collections.singletonMap("subject", "Question");
+
+        // when
+        queryService.query(parameters);
+        SubmissionPage page = queryService.query(parameters);
+
+        // then
+        verify(dynamoDBClient, times(1)).query(any(QueryRequest.class));
+        assertEquals(1, page.getItems().size());
+    }
+
+    @Test
+    public void shouldReadDateRangeDayByDayNewestFirst() {
+        // given
+        given(dynamoDBClient.query(any(QueryRequest.class)))
+                .willReturn(new QueryResult().withCount(1).withItems(Collections.singletonList(item("1"))))
+                .willReturn(new QueryResult().withCount(0).withItems(Collections.emptyList()))
+                .willReturn(new QueryResult().withCount(1).withItems(Collections.singletonList(item("2"))));
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("from", "2020-05-01");
+        parameters.put("to", "2020-05-03");
+        parameters.put("limit", "2");
+
+        // when
+        SubmissionPage page = queryService.query(parameters);
+
+        // then
+        ArgumentCaptor<QueryRequest> requests = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(dynamoDBClient, times(3)).query(requests.capture());
+        List<QueryRequest> values = requests.getAllValues();
+        assertEquals(QueryService.DAY_INDEX, values.get(0).getIndexName());
+        assertEquals("2020-05-03", values.get(0).getExpressionAttributeValues().get(":key").getS());
+        assertEquals("2020-05-01", values.get(2).getExpressionAttributeValues().get(":key").getS());
+        assertEquals(Integer.valueOf(1), values.get(2).getLimit());
+        assertEquals(2, page.getItems().size());
+        assertNull(page.getNextCursor());
+    }
+
+    private static Map<String, AttributeValue> item(String id) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("Id", new AttributeValue(id));
+        item.put("CreatedAt", new AttributeValue().withN("1600000000000"));
+        return item;
+    }
+}
@@ -0,0 +1,130 @@
+package com.gralll.sam;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.http.timers.client.ClientExecutionTimeoutException;
+import com.amazonaws.services.simpleemail.AmazonSimpleEmailService;
+import com.amazonaws.services.simpleemail.AmazonSimpleEmailServiceClient;
+import com.amazonaws.services.simpleemail.model.GetSendQuotaRequest;
+import com.gralll.sam.resilience.CircuitBreaker;
+import com.gralll.sam.resilience.CircuitBreakerOpenException;
+import com.gralll.sam.resilience.Deadline;
+import com.gralll.sam.resilience.ResilienceHandler;
+import com.gralll.sam.stub.FaultInjectingServer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResilienceHandlerTest {
+
+    @After
+    public void tearDown() {
+        Deadline.clear();
+    }
+
+    @Test
+    public void shouldOpenCircuitOnSustainedServerErrors() throws IOException {
+        try (FaultInjectingServer server = new FaultInjectingServer(503, 0)) {
+            // given
+            CircuitBreaker circuitBreaker = new CircuitBreaker("ses", 2, 60_000);
+            AmazonSimpleEmailService ses = buildSesClient(server, circuitBreaker);
+
+            // when
+            callIgnoringErrors(ses);
+            callIgnoringErrors(ses);
+            try {
+                ses.getSendQuota(new GetSendQuotaRequest());
+                fail("Call has not been rejected.");
+            } catch (CircuitBreakerOpenException e) {
+                // then
+                assertEquals(2, server.getHits());
+                assertTrue(circuitBreaker.isOpen());
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotCountClientErrorsAsFailures() throws IOException {
+        try (FaultInjectingServer server = new FaultInjectingServer(400, 0)) {
+            // given
+            CircuitBreaker circuitBreaker = new CircuitBreaker("ses", 1, 60_000);
+            AmazonSimpleEmailService ses = buildSesClient(server, circuitBreaker);
+
+            // when
+            callIgnoringErrors(ses);
+            callIgnoringErrors(ses);
+
+            // then
+            assertEquals(2, server.getHits());
+            assertFalse(circuitBreaker.isOpen());
+        }
+    }
+
+    @Test
+    public void shouldCutSlowCallAtDeadline() throws IOException {
+        try (FaultInjectingServer server = new FaultInjectingServer(200, 3_000)) {
+            // given
+            AmazonSimpleEmailService ses = buildSesClient(server, new CircuitBreaker("ses", 5, 60_000));
+            Deadline.start(500);
+            long start = System.nanoTime();
+
+            // when
+            try {
+                ses.getSendQuota(new GetSendQuotaRequest());
+                fail("Call has not been cut.");
+            } catch (ClientExecutionTimeoutException e) {
+                // then
+                assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000);
+            }
+        }
+    }
+
+    @Test
+    public void shouldCloseCircuitAfterSuccessfulTrialCall() {
+        // given
+        AtomicLong nanos = new AtomicLong();
+        CircuitBreaker circuitBreaker = new CircuitBreaker("dynamodb", 1, 1_000, nanos::get);
+        circuitBreaker.onFailure();
+
+        // when
+        boolean rejected = !circuitBreaker.tryAcquirePermission();
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        boolean trial = circuitBreaker.tryAcquirePermission();
+        boolean secondTrial = circuitBreaker.tryAcquirePermission();
+        circuitBreaker.onSuccess();
+
+        // then
+        assertTrue(rejected);
+        assertTrue(trial);
+        assertFalse(secondTrial);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    private static AmazonSimpleEmailService buildSesClient(FaultInjectingServer server, CircuitBreaker circuitBreaker) {
+        return AmazonSimpleEmailServiceClient.builder()
+                .withEndpointConfiguration(new EndpointConfiguration(server.getEndpoint(), "eu-west-1"))
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("key", "secret")))
+                .withClientConfiguration(new ClientConfiguration().withMaxErrorRetry(0))
+                .withRequestHandlers(new ResilienceHandler(circuitBreaker, 5_000, 0))
+                .build();
+    }
+
+    private static void callIgnoringErrors(AmazonSimpleEmailService ses) {
+        try {
+            ses.getSendQuota(new GetSendQuotaRequest());
+        } catch (AmazonServiceException e) {
+            // expected
+        }
+    }
+}
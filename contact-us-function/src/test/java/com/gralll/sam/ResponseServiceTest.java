@@ -0,0 +1,71 @@
+package com.gralll.sam;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.service.ResponseCompressor;
+import com.gralll.sam.service.ResponseService;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseServiceTest {
+
+    private static final String JSON = "application/json";
+
+    private final ResponseService responseService = new ResponseService(new ObjectMapper());
+    private final ResponseCompressor responseCompressor = new ResponseCompressor();
+
+    @Test
+    public void shouldReuseConstantResponses() {
+        // when
+        ContactUsProxyResponse first = responseService.buildResponse(500, ResponseService.SERVER_ERROR);
+        ContactUsProxyResponse second = responseService.buildResponse(500, ResponseService.SERVER_ERROR);
+        ContactUsProxyResponse otherStatus = responseService.buildResponse(503, ResponseService.SERVER_ERROR);
+
+        // then
+        assertSame(first, second);
+        assertEquals("{\"response\":\"Server error.\"}", first.getBody());
+        assertEquals(503, otherStatus.getStatusCode());
+    }
+
+    @Test
+    public void shouldGzipLargeJsonBodyOnlyIfAccepted() throws IOException {
+        // given
+        ContactUsProxyResponse small = responseService.buildResponse(200, "Message 1 has been sent successfully.");
+        ContactUsProxyResponse large = responseService.buildWarmUpResponse(new String(new char[2000]).replace('\0', 'a'));
+
+        // when
+        ContactUsProxyResponse smallResult = responseCompressor.compress(small, JSON, "gzip, deflate, br");
+        ContactUsProxyResponse notAccepted = responseCompressor.compress(large, JSON, "gzip;q=0, br");
+        // API Gateway would pass base64 through to such clients, e.g. curl --compressed
+        ContactUsProxyResponse anyType = responseCompressor.compress(large, "*/*", "gzip, deflate, br");
+        ContactUsProxyResponse notFirstType = responseCompressor.compress(large, "text/html, application/json",
+                "gzip");
+        ContactUsProxyResponse noAccept = responseCompressor.compress(large, null, "gzip");
+        ContactUsProxyResponse compressed = responseCompressor.compress(large, "Application/JSON; charset=utf-8",
+                "gzip, deflate, br");
+
+        // then
+        assertSame(small, smallResult);
+        assertSame(large, notAccepted);
+        assertSame(large, anyType);
+        assertSame(large, notFirstType);
+        assertSame(large, noAccept);
+        assertTrue(compressed.getIsBase64Encoded());
+        assertEquals("gzip", compressed.getHeaders().get("Content-Encoding"));
+        assertFalse(large.getHeaders().containsKey("Content-Encoding"));
+        try (GZIPInputStream gzip = new GZIPInputStream(
+                new ByteArrayInputStream(Base64.getDecoder().decode(compressed.getBody())))) {
+            assertEquals(large.getBody(), new String(gzip.readAllBytes(), UTF_8));
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.gralll.sam;
+
+import com.gralll.sam.search.SearchIndex;
+import com.gralll.sam.search.Segment;
+import com.gralll.sam.search.SegmentStore;
+import com.gralll.sam.search.SegmentWriter;
+import com.gralll.sam.search.Tokenizer;
+import com.gralll.sam.stub.InMemoryS3Client;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchIndexTest {
+
+    private static final String BUCKET = "search-index";
+
+    @Rule
+    public final TemporaryFolder cacheFolder = new TemporaryFolder();
+
+    private final InMemoryS3Client s3Client = new InMemoryS3Client();
+
+    @Test
+    public void shouldFindSubmissionsHavingAllWordsNewestFirst() {
+        // given
+        SearchIndex searchIndex = searchIndex(10);
+        searchIndex.add(Arrays.asList(
+                document("a", 1000, "Refund request", "Please refund my ORDER #42"),
+                document("b", 2000, "Delivery", "Where is my order?")), Collections.emptySet());
+        searchIndex.add(Arrays.asList(
+                document("c", 3000, "Refund", "The order came broken, refunds are welcome"),
+                // Cyrillic "Vozvrat" ("refund")
+                document("d", 4000, "\u0412\u043e\u0437\u0432\u0440\u0430\u0442", "order 43")), Collections.emptySet());
+
+        // when
+        List<String> refundOrder = ids(searchIndex.search("refund order", null, 10));
+        List<String> refundPrefix = ids(searchIndex.search("REFUND*", null, 10));
+        List<String> cyrillic = ids(searchIndex.search("\u0432\u043e\u0437\u0432\u0440\u0430\u0442", null, 10));
+        List<String> none = ids(searchIndex.search("refund delivery", null, 10));
+
+        // then
+        assertEquals(Arrays.asList("c", "a"), refundOrder);
+        assertEquals(Arrays.asList("c", "a"), refundPrefix);
+        assertEquals(Arrays.asList("d"), cyrillic);
+        assertTrue(none.isEmpty());
+        assertTrue(searchIndex.search("? !", null, 10).isEmpty());
+    }
+
+    @Test
+    public void shouldMergeFullLevelsKeepingSubmissionsDistinct() {
+        // given
+        SegmentStore segmentStore = segmentStore();
+        SearchIndex searchIndex = new SearchIndex(segmentStore, 2);
+        for (int batch = 0; batch < 4; batch++) {
+            List<SegmentWriter.Document> documents = new ArrayList<>(Arrays.asList(
+                    document("id-" + (batch * 2), batch * 2, "Order", "Question q" + batch),
+                    document("id-" + (batch * 2 + 1), batch * 2 + 1, "Order", "Question q" + batch)));
+            if (batch == 3) {
+                // A stream batch retried after its segment was stored
+                documents.add(document("id-5", 5, "Order", "Question q2"));
+            }
+            searchIndex.add(documents, Collections.emptySet());
+        }
+
+        // when
+        int merges = searchIndex.merge();
+        searchIndex.add(Arrays.asList(document("id-7", 7, "Order", "Question q3")), Collections.emptySet());
+
+        // then
+        // 2 + 2 segments of level 0 to level 1, the 2 of level 1 to level 2
+        assertEquals(3, merges);
+        assertEquals(1, segmentStore.list(0).size());
+        assertTrue(segmentStore.list(1).isEmpty());
+        assertEquals(1, segmentStore.list(2).size());
+        Segment merged = segmentStore.open(segmentStore.list(2).get(0));
+        assertEquals(8, merged.getDocCount());
+        assertEquals("id-7", merged.getId(0));
+        assertEquals("id-0", merged.getId(7));
+        assertEquals(Arrays.asList("id-7", "id-6", "id-5", "id-4", "id-3", "id-2", "id-1", "id-0"),
+                ids(searchIndex.search("order", null, 10)));
+        assertEquals(Arrays.asList("id-3", "id-2"), ids(searchIndex.search("q1", null, 10)));
+        // Merged segments and their postings went through temporary files
+        assertEquals(0, cacheFolder.getRoot().list((directory, name) -> name.endsWith(".part")).length);
+    }
+
+    @Test
+    public void shouldHideDeletedSubmissionsAndDropThemInMerges() {
+        // given
+        SegmentStore segmentStore = segmentStore();
+        SearchIndex searchIndex = new SearchIndex(segmentStore, 2);
+        searchIndex.add(Arrays.asList(document("a", 1, "Order", null), document("b", 2, "Order", null)),
+                Collections.emptySet());
+        searchIndex.add(Arrays.asList(document("c", 3, "Order", null), document("d", 4, "Order", null)),
+                Collections.emptySet());
+        searchIndex.merge();
+        // Expired by TTL, "e" is inserted and removed within a batch
+        searchIndex.add(Arrays.asList(document("e", 5, "Order", null), document("f", 6, "Order", null)),
+                new HashSet<>(Arrays.asList("a", "c", "e")));
+
+        // when
+        List<String> beforeMerge = ids(searchIndex.search("order", null, 1));
+        List<String> secondPage = ids(searchIndex.search("order", new SearchIndex.Hit("f", 6), 1));
+        searchIndex.add(Arrays.asList(document("g", 7, "Order", null)), Collections.singleton("b"));
+        int merges = searchIndex.merge();
+
+        // then
+        assertEquals(Arrays.asList("f", "d"), beforeMerge);
+        assertEquals(Arrays.asList("d", "b"), secondPage);
+        // Level 0 into level 1, then both of level 1 into the top level, which needs no deleted Ids
+        assertEquals(2, merges);
+        Segment merged = segmentStore.open(segmentStore.list(2).get(0));
+        assertEquals(Arrays.asList("g", "f", "d"), ids(searchIndex.search("order", null, 10)));
+        assertEquals(3, merged.getDocCount());
+        assertEquals(0, merged.getDeletedCount());
+    }
+
+    @Test
+    public void shouldPageByLastHitAcrossSegments() {
+        // given
+        SearchIndex searchIndex = searchIndex(10);
+        for (int batch = 0; batch < 3; batch++) {
+            List<SegmentWriter.Document> documents = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                // Submissions of the same millisecond are ordered by Id
+                documents.add(document("id-" + batch + i, 100 + i % 2, "Question", "Hello"));
+            }
+            searchIndex.add(documents, Collections.emptySet());
+        }
+
+        // when
+        List<String> pages = new ArrayList<>();
+        SearchIndex.Hit after = null;
+        int requests = 0;
+        do {
+            List<SearchIndex.Hit> hits = searchIndex.search("hello", after, 4);
+            List<SearchIndex.Hit> page = hits.subList(0, Math.min(4, hits.size()));
+            pages.addAll(ids(page));
+            after = hits.size() > 4 ? page.get(page.size() - 1) : null;
+            requests++;
+        } while (after != null);
+
+        // then
+        assertEquals(4, requests);
+        assertEquals(Arrays.asList("id-01", "id-03", "id-11", "id-13", "id-21", "id-23",
+                "id-00", "id-02", "id-04", "id-10", "id-12", "id-14", "id-20", "id-22", "id-24"), pages);
+    }
+
+    @Test
+    public void shouldReadWrittenSegmentInPlace() {
+        // given
+        byte[] bytes = SegmentWriter.write(Arrays.asList(
+                document("x", 5, "Alpha beta", null),
+                document("y", 9, "Beta gamma", "alphabet")), Collections.singleton("w"));
+
+        // when
+        Segment segment = Segment.of(ByteBuffer.wrap(bytes));
+
+        // then
+        assertEquals(2, segment.getDocCount());
+        assertEquals("y", segment.getId(0));
+        assertEquals(9, segment.getCreatedAt(0));
+        assertEquals(1, segment.firstAfter(9, "y"));
+        assertEquals(0, segment.firstAfter(10, "a"));
+        assertEquals(4, segment.getTermCount());
+        assertEquals("alpha", new String(segment.getTerm(0)));
+        assertTrue(Arrays.equals(new int[]{0, 1}, segment.getPostings(2)));
+        assertEquals(1, segment.getDeletedCount());
+        assertTrue(segment.isDeleted("w"));
+        assertFalse(segment.isDeleted("x"));
+        assertNull(segmentStore().open("segments/L0/missing.seg"));
+    }
+
+    private SearchIndex searchIndex(int mergeFactor) {
+        return new SearchIndex(segmentStore(), mergeFactor);
+    }
+
+    private SegmentStore segmentStore() {
+        return new SegmentStore(() -> s3Client, BUCKET, cacheFolder.getRoot().toPath(), 1024 * 1024, 60);
+    }
+
+    private static SegmentWriter.Document document(String id, long createdAt, String subject, String question) {
+        return new SegmentWriter.Document(id, createdAt, Tokenizer.terms(subject, question));
+    }
+
+    private static List<String> ids(List<SearchIndex.Hit> hits) {
+        return hits.stream().map(SearchIndex.Hit::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,84 @@
+package com.gralll.sam;
+
+import com.gralll.sam.cache.SnapshotHolder;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.spam.SpamData;
+import com.gralll.sam.spam.SpamFilter;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SpamFilterTest {
+
+    private static final SpamData DATA = SpamData.load(
+            "classpath:spam/blocklist.txt", 1000, "classpath:spam/tokens.txt", 256);
+
+    private final SpamFilter spamFilter = new SpamFilter(
+            Arrays.asList(SpamFilter.honeypot(), SpamFilter.blocklist(() -> DATA), SpamFilter.tokens(() -> DATA)), 5);
+
+    @Test
+    public void shouldPassRegularRequest() {
+        // given
+        ContactUsRequest request = new ContactUsRequest("Question", "Alex", null, "alex@gmail.com",
+                "How much does it cost?");
+
+        // when
+        double score = spamFilter.score(request, "10.0.0.1");
+
+        // then
+        assertEquals(0, score, 0);
+        assertFalse(spamFilter.isSuspect(score));
+    }
+
+    @Test
+    public void shouldFlagHoneypotBlockedDomainAndSpamWords() {
+        // given
+        ContactUsRequest honeypot = new ContactUsRequest("Question", "Alex", null, "alex@gmail.com", "Hello");
+        honeypot.setWebsite("http://spam.example");
+        ContactUsRequest blockedDomain = new ContactUsRequest("Question", "Alex", null, "bot@Mailinator.com",
+                "Best CASINO bonus");
+
+        // when
+        double honeypotScore = spamFilter.score(honeypot, null);
+        double blockedDomainScore = spamFilter.score(blockedDomain, null);
+
+        // then
+        assertTrue(spamFilter.isSuspect(honeypotScore));
+        assertEquals(SpamFilter.BLOCKED_DOMAIN_SCORE + 3, blockedDomainScore, 0.001);
+        assertTrue(spamFilter.isSuspect(blockedDomainScore));
+    }
+
+    @Test
+    public void shouldReloadStaleDataAndKeepItOnFailure() {
+        // given
+        AtomicLong clock = new AtomicLong();
+        AtomicInteger loads = new AtomicInteger();
+        SnapshotHolder<SpamData> holder = new SnapshotHolder<>("Spam data", previous -> {
+            if (loads.incrementAndGet() == 3) {
+                throw new IllegalStateException("Blocklist is unavailable");
+            }
+            return SpamData.load("classpath:spam/blocklist.txt", 1000, "classpath:spam/tokens.txt", 256);
+        }, 1000, Runnable::run, clock::get);
+        SpamData initial = holder.get();
+
+        // when
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        holder.get();
+        SpamData reloaded = holder.get();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        holder.get();
+
+        // then
+        assertEquals(3, loads.get());
+        assertTrue(reloaded != initial);
+        assertSame(reloaded, holder.get());
+    }
+}
@@ -0,0 +1,211 @@
+package com.gralll.sam;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gralll.sam.exception.ContactUsLambdaClientException;
+import com.gralll.sam.exception.ContactUsLambdaThrottledException;
+import com.gralll.sam.model.ContactUsProxyResponse;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.service.AdmissionService;
+import com.gralll.sam.service.AwsClientFactory;
+import com.gralll.sam.service.DbService;
+import com.gralll.sam.service.EmailService;
+import com.gralll.sam.service.RequestService;
+import com.gralll.sam.service.ResponseService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.verifyZeroInteractions;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(App.class)
+public class StreamAppTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private StreamApp streamApp;
+
+    @Mock
+    private EmailService emailService;
+    @Mock
+    private DbService dbService;
+    @Mock
+    private RequestService requestService;
+    @Mock
+    private ResponseService responseService;
+    @Mock
+    private Context context;
+    @Mock
+    private AwsClientFactory awsClientFactory;
+    @Mock
+    private AdmissionService admissionService;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        whenNew(AwsClientFactory.class).withNoArguments().thenReturn(awsClientFactory);
+        whenNew(EmailService.class).withAnyArguments().thenReturn(emailService);
+        whenNew(DbService.class).withAnyArguments().thenReturn(dbService);
+        whenNew(ResponseService.class).withAnyArguments().thenReturn(responseService);
+        whenNew(RequestService.class).withAnyArguments().thenReturn(requestService);
+        whenNew(AdmissionService.class).withArguments(any()).thenReturn(admissionService);
+        streamApp = new StreamApp();
+    }
+
+    @Test
+    public void shouldReturnSuccessfulResponse() throws IOException {
+        // given
+        ContactUsProxyResponse expectedContactUsProxyResponse = getStubContactUsProxyResponse();
+        ContactUsRequest contactUsRequest = new ContactUsRequest();
+        given(requestService.parseContactUsRequest(anyString())).willReturn(contactUsRequest);
+        given(responseService.buildResponse(eq(200), anyString())).willReturn(expectedContactUsProxyResponse);
+        given(emailService.sendEmail(anyString(), anyString(), any())).willReturn("123");
+
+        // when
+        String response = handle(getResource("contact_us_request.json"));
+
+        // then
+        assertEquals(OBJECT_MAPPER.writeValueAsString(expectedContactUsProxyResponse), response);
+        verify(requestService).parseContactUsRequest(
+                "{\"subject\": \"Question\",\"question\": \"How much does it cost\",\"username\": \"Alex\","
+                        + "\"phone\": \"+79999999999\",\"email\": \"alex@gmail.com\"}");
+        verify(emailService).sendEmail(anyString(), anyString(), eq(contactUsRequest));
+        verify(dbService).putContactUsRequest(eq("123"), eq(contactUsRequest));
+    }
+
+    @Test
+    public void shouldDecodeBase64Body() throws IOException {
+        // given
+        given(responseService.buildResponse(eq(200), anyString())).willReturn(getStubContactUsProxyResponse());
+        given(emailService.sendEmail(anyString(), anyString(), any())).willReturn("123");
+
+        // when
+        handle(new ByteArrayInputStream(
+                "{\"isBase64Encoded\": true, \"body\": \"eyJzdWJqZWN0IjoiUSJ9\"}".getBytes(UTF_8)));
+
+        // then
+        verify(requestService).parseContactUsRequest("{\"subject\":\"Q\"}");
+    }
+
+    @Test
+    public void shouldReturnClientErrorResponse() throws IOException {
+        // given
+        ContactUsProxyResponse expectedContactUsProxyResponse = getStubContactUsProxyResponse();
+        given(responseService.buildResponse(eq(400), anyString())).willReturn(expectedContactUsProxyResponse);
+
+        // when
+        String response = handle(new ByteArrayInputStream("[\"not an event\"]".getBytes(UTF_8)));
+
+        // then
+        assertEquals(OBJECT_MAPPER.writeValueAsString(expectedContactUsProxyResponse), response);
+        verify(responseService).buildResponse(eq(400), eq("Client error."));
+        verifyZeroInteractions(emailService, dbService);
+    }
+
+    @Test
+    public void shouldReturnClientErrorResponseForMalformedBody() throws IOException {
+        // given
+        given(requestService.parseContactUsRequest(anyString()))
+                .willThrow(new ContactUsLambdaClientException("Client ex", new Exception("some ex")));
+        given(responseService.buildResponse(eq(400), anyString())).willReturn(getStubContactUsProxyResponse());
+
+        // when
+        handle(getResource("contact_us_request.json"));
+
+        // then
+        verify(responseService).buildResponse(eq(400), eq("Client error."));
+        verifyZeroInteractions(emailService, dbService);
+    }
+
+    @Test
+    public void shouldReturnServerErrorResponse() throws IOException {
+        // given
+        given(requestService.parseContactUsRequest(anyString())).willReturn(new ContactUsRequest());
+        given(emailService.sendEmail(anyString(), anyString(), any()))
+                .willThrow(new RuntimeException("Client ex"));
+        given(responseService.buildResponse(eq(500), anyString())).willReturn(getStubContactUsProxyResponse());
+
+        // when
+        handle(getResource("contact_us_request.json"));
+
+        // then
+        verify(responseService).buildResponse(eq(500), eq("Server error."));
+        verifyZeroInteractions(dbService);
+    }
+
+    @Test
+    public void shouldShedLoadWithRetryAfter() throws IOException {
+        // given
+        given(requestService.parseContactUsRequest(anyString())).willReturn(new ContactUsRequest());
+        doThrow(new ContactUsLambdaThrottledException("Shed.", null, 7))
+                .when(admissionService).admitSender(eq("127.0.0.1"), any());
+        given(responseService.buildThrottledResponse(7)).willReturn(getStubContactUsProxyResponse());
+
+        // when
+        handle(getResource("contact_us_request.json"));
+
+        // then
+        verify(responseService).buildThrottledResponse(7);
+        verifyZeroInteractions(emailService, dbService);
+    }
+
+    @Test
+    public void shouldOnlyWarmUpLambda() throws IOException {
+        // given
+        ContactUsProxyResponse expectedContactUsProxyResponse = getStubContactUsProxyResponse();
+        given(responseService.buildWarmUpResponse(anyString())).willReturn(expectedContactUsProxyResponse);
+
+        // when
+        String response = handle(getResource("warm_up_request.json"));
+
+        // then
+        assertEquals(OBJECT_MAPPER.writeValueAsString(expectedContactUsProxyResponse), response);
+        verify(responseService).buildWarmUpResponse(anyString());
+        verify(requestService, times(20)).parseContactUsRequest(anyString());
+        verify(requestService, never()).getContactUsRequest(any());
+        verify(emailService, never()).sendEmail(anyString(), anyString(), any());
+        verify(emailService).primeConnection();
+        verify(dbService).primeConnection();
+        verifyNoMoreInteractions(dbService);
+    }
+
+    private String handle(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        streamApp.handleRequest(input, output, context);
+        return output.toString(UTF_8.name());
+    }
+
+    private InputStream getResource(String name) {
+        return this.getClass().getClassLoader().getResourceAsStream(name);
+    }
+
+    private ContactUsProxyResponse getStubContactUsProxyResponse() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("test", "test");
+        return new ContactUsProxyResponse(200, headers, "body");
+    }
+}
@@ -0,0 +1,55 @@
+package com.gralll.sam;
+
+import com.gralll.sam.exception.ContactUsLambdaServerException;
+import com.gralll.sam.model.ContactUsRequest;
+import com.gralll.sam.service.EmailService;
+import com.gralll.sam.template.Template;
+import com.gralll.sam.template.TemplateLoader;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TemplateTest {
+
+    @Test
+    public void shouldRenderEscapedAndRawSlots() {
+        // given
+        Template<ContactUsRequest> template = Template.compile(
+                "<p>{{username}}</p><i>{{&question}}</i>{{phone}}",
+                EmailService.EMAIL_TEMPLATE_BINDINGS);
+        ContactUsRequest contactUsRequest =
+                new ContactUsRequest("subject", "<Alex & Co>", null, "alex@gmail.com", "<b>raw</b>");
+
+        // when
+        String result = template.render(contactUsRequest);
+
+        // then
+        assertEquals("<p>&lt;Alex &amp; Co&gt;</p><i><b>raw</b></i>", result);
+    }
+
+    @Test
+    public void shouldRenderEmailTemplateFromClasspath() {
+        // given
+        Template<ContactUsRequest> template =
+                TemplateLoader.load(EmailService.EMAIL_TEMPLATE, EmailService.EMAIL_TEMPLATE_BINDINGS);
+        ContactUsRequest contactUsRequest =
+                new ContactUsRequest("subject", "Alex", "+79999999999", "alex@gmail.com", "How much?");
+
+        // when
+        String first = template.render(contactUsRequest);
+        String second = template.render(contactUsRequest);
+
+        // then
+        assertEquals(first, second);
+        assertTrue(first.contains("<p>User name: Alex</p>"));
+        assertTrue(first.contains("<cite>Question: How much?</cite>"));
+        assertFalse(first.contains("{{"));
+    }
+
+    @Test(expected = ContactUsLambdaServerException.class)
+    public void shouldFailOnUnknownSlot() {
+        Template.compile("<p>{{unknown}}</p>", EmailService.EMAIL_TEMPLATE_BINDINGS);
+    }
+}
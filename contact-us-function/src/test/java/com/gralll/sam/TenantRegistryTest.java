@@ -0,0 +1,87 @@
+package com.gralll.sam;
+
+import com.gralll.sam.exception.ContactUsLambdaClientException;
+import com.gralll.sam.model.ProxyEvent;
+import com.gralll.sam.tenant.Tenant;
+import com.gralll.sam.tenant.TenantRegistry;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TenantRegistryTest {
+
+    private static final Tenant DEFAULT_TENANT = new Tenant(TenantRegistry.DEFAULT_TENANT_ID, null,
+            "sender@gmail.com", "recipient@gmail.com", "", 0);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicReference<List<Tenant>> tenants = new AtomicReference<>(Arrays.asList(
+            tenant("shop", 0), tenant("blog", 0)));
+    private final TenantRegistry tenantRegistry = new TenantRegistry(DEFAULT_TENANT, tenants::get,
+            1000, Runnable::run, clock::get);
+
+    @Test
+    public void shouldResolveTenantByPathParameterOrHost() {
+        // given
+        ProxyEvent byPath = event("shop.example.com", Collections.singletonMap("tenant", "blog"));
+        ProxyEvent byHost = event("Shop.Example.com:443", null);
+        ProxyEvent unknownHost = event("abc.execute-api.eu-west-1.amazonaws.com", null);
+
+        // when
+        Tenant pathTenant = tenantRegistry.resolve(byPath);
+        Tenant hostTenant = tenantRegistry.resolve(byHost);
+        Tenant defaultTenant = tenantRegistry.resolve(unknownHost);
+
+        // then
+        assertEquals("blog", pathTenant.getId());
+        assertEquals("shop", hostTenant.getId());
+        assertEquals("shop@example.com", hostTenant.getRecipientEmail());
+        assertSame(DEFAULT_TENANT, defaultTenant);
+        assertSame(DEFAULT_TENANT, tenantRegistry.get("removed"));
+    }
+
+    @Test(expected = ContactUsLambdaClientException.class)
+    public void shouldRejectUnknownPathTenant() {
+        // given
+        ProxyEvent event = event(null, Collections.singletonMap("tenant", "unknown"));
+
+        // when
+        tenantRegistry.resolve(event);
+    }
+
+    @Test
+    public void shouldKeepUnchangedTenantsOnRefresh() {
+        // given
+        Tenant shop = tenantRegistry.get("shop");
+        Tenant blog = tenantRegistry.get("blog");
+        tenants.set(Arrays.asList(tenant("shop", 0), tenant("blog", 60)));
+
+        // when
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        tenantRegistry.get("shop");
+
+        // then
+        assertSame(shop, tenantRegistry.get("shop"));
+        assertNotSame(blog, tenantRegistry.get("blog"));
+        assertEquals(60, tenantRegistry.get("blog").getSubmissionsPerMinute(), 0);
+    }
+
+    private static Tenant tenant(String id, double submissionsPerMinute) {
+        return new Tenant(id, Collections.singletonList(id + ".example.com"),
+                "sender@gmail.com", id + "@example.com", "", submissionsPerMinute);
+    }
+
+    private static ProxyEvent event(String host, Map<String, String> pathParameters) {
+        return new ProxyEvent("POST", "{}", false, host != null ? Collections.singletonMap("Host", host) : null,
+                null, null, pathParameters, "10.0.0.1");
+    }
+}
@@ -0,0 +1,107 @@
+package com.gralll.sam;
+
+import com.gralll.sam.ratelimit.KeyedRateLimiter;
+import com.gralll.sam.ratelimit.SendPacer;
+import com.gralll.sam.ratelimit.TokenBucket;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenBucketTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    public void shouldAdmitBurstThenRefill() {
+        // given
+        TokenBucket bucket = new TokenBucket(2, 1, nanos::get);
+
+        // when
+        long first = bucket.tryAcquire();
+        long second = bucket.tryAcquire();
+        long shed = bucket.tryAcquire();
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        long refilled = bucket.tryAcquire();
+
+        // then
+        assertEquals(0, first);
+        assertEquals(0, second);
+        assertEquals(TimeUnit.SECONDS.toNanos(1), shed);
+        assertEquals(0, refilled);
+    }
+
+    @Test
+    public void shouldNotRefillAboveCapacity() {
+        // given
+        TokenBucket bucket = new TokenBucket(1, 10, nanos::get);
+
+        // when
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        long first = bucket.tryAcquire();
+        long shed = bucket.tryAcquire();
+
+        // then
+        assertEquals(0, first);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), shed);
+    }
+
+    @Test
+    public void shouldKeepBucketOfKeyInUseAfterRefillTime() {
+        // given
+        // A full refill takes 2 s
+        KeyedRateLimiter rateLimiter = new KeyedRateLimiter(2, 1, 10, nanos::get);
+        rateLimiter.tryAcquire("10.0.0.1");
+        rateLimiter.tryAcquire("10.0.0.1");
+
+        // when
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1500));
+        long refilled = rateLimiter.tryAcquire("10.0.0.1");
+        // 2.5 s since the bucket was created, 1 s since it was used
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        long first = rateLimiter.tryAcquire("10.0.0.1");
+        long shed = rateLimiter.tryAcquire("10.0.0.1");
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(3));
+        long idle = rateLimiter.tryAcquire("10.0.0.1");
+
+        // then
+        assertEquals(0, refilled);
+        assertEquals(0, first);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), shed);
+        assertEquals(0, idle);
+    }
+
+    @Test
+    public void shouldPaceSendsInChunksOfBucketCapacity() {
+        // given
+        SendPacer pacer = new SendPacer(new TokenBucket(2, 1, nanos::get), nanos::get, nanos::addAndGet);
+        Map<String, String> items = new LinkedHashMap<>();
+        for (String key : Arrays.asList("a", "b", "c", "d", "e")) {
+            items.put(key, key);
+        }
+        List<Map<String, String>> chunks = new ArrayList<>();
+
+        // when
+        Map<String, String> sent = pacer.send(items, chunk -> {
+            chunks.add(chunk);
+            return chunk;
+        }, TimeUnit.SECONDS.toNanos(2));
+
+        // then
+        // A burst of 2, then 1 per second until the timeout, "e" is left for later
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(chunks.get(0).keySet()));
+        assertEquals(Collections.singleton("c"), chunks.get(1).keySet());
+        assertEquals(Collections.singleton("d"), chunks.get(2).keySet());
+        assertEquals(3, chunks.size());
+        assertEquals(Arrays.asList("a", "b", "c", "d"), new ArrayList<>(sent.keySet()));
+        assertEquals(TimeUnit.SECONDS.toNanos(2), nanos.get());
+    }
+}
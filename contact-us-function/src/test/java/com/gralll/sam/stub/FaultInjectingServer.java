@@ -0,0 +1,53 @@
+package com.gralll.sam.stub;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local HTTP endpoint for sdk clients which answers every call with a given status after a given delay.
+ */
+public class FaultInjectingServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final AtomicInteger hits = new AtomicInteger();
+    private volatile int statusCode;
+    private volatile long delayMillis;
+
+    public FaultInjectingServer(int statusCode, long delayMillis) throws IOException {
+        this.statusCode = statusCode;
+        this.delayMillis = delayMillis;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            hits.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(this.delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(this.statusCode, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    public String getEndpoint() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public void setStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,214 @@
+package com.gralll.sam.stub;
+
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * S3 stand-in which keeps objects in memory. Only the calls of AttachmentService and SegmentStore are supported,
+ * the largest uploaded chunk is recorded to check how much a caller buffers.
+ */
+public class InMemoryS3Client extends AbstractAmazonS3 {
+
+    private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger uploadIds = new AtomicInteger();
+    private final AtomicInteger abortedUploads = new AtomicInteger();
+    private final AtomicLong maxChunkSize = new AtomicLong();
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request) {
+        byte[] content = request.getFile() != null ? read(request.getFile().toPath()) : read(request.getInputStream());
+        objects.put(request.getKey(), new StoredObject(content, request.getMetadata().getContentType()));
+        return new PutObjectResult();
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        String uploadId = "upload-" + uploadIds.incrementAndGet();
+        uploads.put(uploadId, new Upload(request.getObjectMetadata().getContentType()));
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request) {
+        byte[] part = read(request.getInputStream());
+        uploads.get(request.getUploadId()).parts.add(part);
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag("etag-" + request.getPartNumber());
+        return result;
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        Upload upload = uploads.remove(request.getUploadId());
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (PartETag partETag : request.getPartETags()) {
+            byte[] part = upload.parts.get(partETag.getPartNumber() - 1);
+            content.write(part, 0, part.length);
+        }
+        objects.put(request.getKey(), new StoredObject(content.toByteArray(), upload.contentType));
+        return new CompleteMultipartUploadResult();
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+        uploads.remove(request.getUploadId());
+        abortedUploads.incrementAndGet();
+    }
+
+    @Override
+    public S3Object getObject(String bucketName, String key) {
+        StoredObject stored = objects.get(key);
+        if (stored == null) {
+            AmazonS3Exception error = new AmazonS3Exception("The specified key does not exist.");
+            error.setStatusCode(404);
+            throw error;
+        }
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(stored.contentType);
+        metadata.setContentLength(stored.content.length);
+        S3Object object = new S3Object();
+        object.setBucketName(bucketName);
+        object.setKey(key);
+        object.setObjectMetadata(metadata);
+        object.setObjectContent(new ByteArrayInputStream(stored.content));
+        return object;
+    }
+
+    @Override
+    public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+        request.getKeys().forEach(key -> objects.remove(key.getKey()));
+        return new DeleteObjectsResult(Collections.emptyList());
+    }
+
+    /**
+     * @return all keys with the prefix in one page, in key order
+     */
+    @Override
+    public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        result.setBucketName(request.getBucketName());
+        result.setPrefix(request.getPrefix());
+        for (String key : new TreeSet<>(objects.keySet())) {
+            if (request.getPrefix() == null || key.startsWith(request.getPrefix())) {
+                S3ObjectSummary summary = new S3ObjectSummary();
+                summary.setBucketName(request.getBucketName());
+                summary.setKey(key);
+                summary.setSize(objects.get(key).content.length);
+                result.getObjectSummaries().add(summary);
+            }
+        }
+        result.setKeyCount(result.getObjectSummaries().size());
+        return result;
+    }
+
+    @Override
+    public URL generatePresignedUrl(String bucketName, String key, Date expiration, HttpMethod method) {
+        try {
+            return new URL("https://" + bucketName + ".s3.local/" + key);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    public byte[] getContent(String key) {
+        StoredObject stored = objects.get(key);
+        return stored != null ? stored.content : null;
+    }
+
+    public int getObjectCount() {
+        return objects.size();
+    }
+
+    public int getPendingUploads() {
+        return uploads.size();
+    }
+
+    public int getAbortedUploads() {
+        return abortedUploads.get();
+    }
+
+    /**
+     * @return the largest object or part which has been uploaded at once
+     */
+    public long getMaxChunkSize() {
+        return maxChunkSize.get();
+    }
+
+    private byte[] read(Path file) {
+        try (InputStream input = Files.newInputStream(file)) {
+            return read(input);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] read(InputStream input) {
+        try {
+            byte[] content = input.readAllBytes();
+            maxChunkSize.accumulateAndGet(content.length, Math::max);
+            return content;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class StoredObject {
+        private final byte[] content;
+        private final String contentType;
+
+        private StoredObject(byte[] content, String contentType) {
+            this.content = content;
+            this.contentType = contentType;
+        }
+    }
+
+    private static final class Upload {
+        private final String contentType;
+        private final List<byte[]> parts = Collections.synchronizedList(new ArrayList<>());
+
+        private Upload(String contentType) {
+            this.contentType = contentType;
+        }
+    }
+}